@@ -19,13 +19,16 @@ package org.keycloak.adapters;
 
 import org.jboss.logging.Logger;
 import org.keycloak.RSATokenVerifier;
+import org.keycloak.adapters.rotation.AdapterRSATokenVerifier;
 import org.keycloak.adapters.spi.AuthChallenge;
 import org.keycloak.adapters.spi.AuthOutcome;
 import org.keycloak.adapters.spi.HttpFacade;
 import org.keycloak.common.VerificationException;
+import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.representations.AccessToken;
 
 import javax.security.cert.X509Certificate;
+import java.security.PublicKey;
 import java.util.List;
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -84,7 +87,7 @@ public class BearerTokenRequestAuthenticator {
     
     protected AuthOutcome authenticateToken(HttpFacade exchange, String tokenString) {
         try {
-            token = RSATokenVerifier.verifyToken(tokenString, deployment.getRealmKey(), deployment.getRealmInfoUrl());
+            token = verifyToken(tokenString);
         } catch (VerificationException e) {
             log.error("Failed to verify token", e);
             challenge = challengeResponse(exchange, OIDCAuthenticationError.Reason.INVALID_TOKEN, "invalid_token", e.getMessage());
@@ -127,6 +130,23 @@ public class BearerTokenRequestAuthenticator {
         return AuthOutcome.AUTHENTICATED;
     }
 
+    protected AccessToken verifyToken(String tokenString) throws VerificationException {
+        VerifiedTokenCache tokenCache = deployment.getTokenCache();
+        if (tokenCache == null) {
+            return AdapterRSATokenVerifier.verifyToken(tokenString, deployment);
+        }
+
+        AccessToken token = tokenCache.get(tokenString);
+        if (token == null) {
+            JWSInput input = RSATokenVerifier.toInput(tokenString);
+            String kid = input.getHeader().getKeyId();
+            PublicKey publicKey = AdapterRSATokenVerifier.getPublicKey(kid, deployment);
+            token = RSATokenVerifier.verifyToken(input, publicKey, deployment.getRealmInfoUrl(), true, true);
+            tokenCache.put(tokenString, kid, token);
+        }
+        return token;
+    }
+
     protected AuthChallenge clientCertChallenge() {
         return new AuthChallenge() {
             @Override
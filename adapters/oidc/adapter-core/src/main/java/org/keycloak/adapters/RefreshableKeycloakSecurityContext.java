@@ -19,13 +19,15 @@ package org.keycloak.adapters;
 
 import org.jboss.logging.Logger;
 import org.keycloak.KeycloakSecurityContext;
-import org.keycloak.RSATokenVerifier;
+import org.keycloak.adapters.rotation.AdapterRSATokenVerifier;
 import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Time;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.IDToken;
 
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -39,6 +41,11 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
     protected transient AdapterTokenStore tokenStore;
     protected String refreshToken;
 
+    // Ensures that just one thread at a time sends refresh request for this context
+    private transient ReentrantLock refreshLock;
+    // Incremented after each refresh attempt. Threads waiting for the lock use it to find out that token was refreshed meanwhile
+    private transient volatile int refreshAttempts;
+
     public RefreshableKeycloakSecurityContext() {
     }
 
@@ -87,7 +94,17 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
     }
 
     /**
-     * @param checkActive if true, then we won't send refresh request if current accessToken is still active.
+     * @return true if token won't expire in the next "token-minimum-time-to-live" seconds
+     */
+    public boolean isTokenTimeToLiveSufficient(AccessToken token) {
+        return token != null && (token.getExpiration() == 0 || token.getExpiration() - deployment.getTokenMinimumTimeToLive() > Time.currentTime());
+    }
+
+    /**
+     * Just single thread sends the refresh request at the time. Other threads either wait for the result or continue to use
+     * current token if it's still active and just going to expire soon.
+     *
+     * @param checkActive if true, then we won't send refresh request if current accessToken is still active and won't expire in the next "token-minimum-time-to-live" seconds.
      * @return true if accessToken is active or was successfully refreshed
      */
     public boolean refreshExpiredToken(boolean checkActive) {
@@ -95,7 +112,7 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
             if (log.isTraceEnabled()) {
                 log.trace("checking whether to refresh.");
             }
-            if (isActive()) return true;
+            if (isActive() && isTokenTimeToLiveSufficient(this.token)) return true;
         }
 
         if (this.deployment == null || refreshToken == null) return false; // Might be serialized in HttpSession?
@@ -105,6 +122,40 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
             return false;
         }
 
+        int attempts = refreshAttempts;
+        ReentrantLock lock = getRefreshLock();
+        if (checkActive && isActive()) {
+            // Token is going to expire soon. If other thread is already refreshing it, we can still use current token
+            if (!lock.tryLock()) return true;
+        } else {
+            lock.lock();
+        }
+
+        try {
+            if (attempts != refreshAttempts) {
+                log.trace("Token refreshed by other thread");
+                return isActive();
+            }
+            if (checkActive && isActive() && isTokenTimeToLiveSufficient(this.token)) return true;
+
+            try {
+                return sendRefreshRequest();
+            } finally {
+                refreshAttempts++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private synchronized ReentrantLock getRefreshLock() {
+        if (refreshLock == null) {
+            refreshLock = new ReentrantLock();
+        }
+        return refreshLock;
+    }
+
+    protected boolean sendRefreshRequest() {
         if (log.isTraceEnabled()) {
             log.trace("Doing refresh");
         }
@@ -124,7 +175,7 @@ public class RefreshableKeycloakSecurityContext extends KeycloakSecurityContext
         String tokenString = response.getToken();
         AccessToken token = null;
         try {
-            token = RSATokenVerifier.verifyToken(tokenString, deployment.getRealmKey(), deployment.getRealmInfoUrl());
+            token = AdapterRSATokenVerifier.verifyToken(tokenString, deployment);
             log.debug("Token Verification succeeded!");
         } catch (VerificationException e) {
             log.error("failed verification of token");
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.adapters;
+
+import org.keycloak.adapters.rotation.PublicKeyLocator;
+import org.keycloak.representations.AccessToken;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded cache of bearer tokens, which were already successfully verified. Allows to skip signature verification and parsing
+ * of the token when the same token is sent repeatedly by a service client.
+ *
+ * Entries are keyed by the whole encoded token, so a cached token can't be reused with a different payload or signature. Entries
+ * are valid until the expiration of the token. The {@link PublicKeyLocator} of the deployment removes the entries of the key IDs,
+ * whose keys were changed or removed, and the whole cache is cleared when the locator of the deployment is replaced. Other checks
+ * (like notBefore policy of the deployment) need to be done by the caller for every request.
+ *
+ * Expired entries are removed lazily when they are read. When the cache is full, the oldest entries are evicted first.
+ */
+public class VerifiedTokenCache {
+
+    private final ConcurrentHashMap<String, Entry> tokens = new ConcurrentHashMap<>();
+
+    // Entries in insertion order. It may contain entries, which were already removed as expired or invalid
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger insertionOrderSize = new AtomicInteger();
+    private final int maxSize;
+
+    public VerifiedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return cached token or null if token is not cached or it's not active anymore
+     */
+    public AccessToken get(String tokenString) {
+        Entry entry = tokens.get(tokenString);
+        if (entry == null) {
+            return null;
+        }
+
+        if (!entry.token.isActive()) {
+            tokens.remove(tokenString, entry);
+            return null;
+        }
+
+        return entry.token;
+    }
+
+    public void put(String tokenString, String kid, AccessToken token) {
+        // Tokens without expiration are never cached
+        if (token.getExpiration() <= 0) {
+            return;
+        }
+
+        Entry entry = new Entry(tokenString, kid, token);
+        if (tokens.putIfAbsent(tokenString, entry) != null) {
+            return;
+        }
+        insertionOrder.add(entry);
+        insertionOrderSize.incrementAndGet();
+
+        // Only the same entry is evicted, so the entry put again after its removal isn't evicted by its older place in the queue
+        while (tokens.size() > maxSize) {
+            Entry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            insertionOrderSize.decrementAndGet();
+            tokens.remove(oldest.tokenString, oldest);
+        }
+
+        // Removed entries aren't polled while the cache isn't full, so they're dropped here to keep the queue bounded
+        if (insertionOrderSize.get() > 2 * maxSize) {
+            removeStaleEntries();
+        }
+    }
+
+    /**
+     * Remove tokens verified by the keys with given key IDs. Null key ID stands for the tokens without key ID
+     */
+    public void removeByKeyId(Set<String> kids) {
+        for (Iterator<Entry> itr = tokens.values().iterator(); itr.hasNext(); ) {
+            if (kids.contains(itr.next().kid)) {
+                itr.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        tokens.clear();
+        insertionOrder.clear();
+        insertionOrderSize.set(0);
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    private synchronized void removeStaleEntries() {
+        if (insertionOrderSize.get() <= 2 * maxSize) {
+            return;
+        }
+
+        for (Iterator<Entry> itr = insertionOrder.iterator(); itr.hasNext(); ) {
+            Entry entry = itr.next();
+            if (tokens.get(entry.tokenString) != entry) {
+                itr.remove();
+                insertionOrderSize.decrementAndGet();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String tokenString;
+        private final String kid;
+        private final AccessToken token;
+
+        private Entry(String tokenString, String kid, AccessToken token) {
+            this.tokenString = tokenString;
+            this.kid = kid;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.adapters.rotation;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.jboss.logging.Logger;
+import org.keycloak.adapters.KeycloakDeployment;
+import org.keycloak.adapters.VerifiedTokenCache;
+import org.keycloak.common.util.Time;
+import org.keycloak.jose.jwk.JSONWebKeySet;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.jose.jwk.JWKParser;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Locator, which retrieves the realm keys from the JWKS endpoint of the realm and indexes them by key ID.
+ *
+ * Lookup of a known key never waits for the network. When the keys are older than {@code public-key-cache-ttl}, they are
+ * refreshed in the background and the current keys are used in the meantime. When a token is signed by an unknown key
+ * (for example right after the realm keys were rotated), the keys are re-fetched synchronously. Such a request is done by
+ * just one thread and at most once per {@code min-time-between-jwks-requests}, so tokens with bogus key IDs can't flood
+ * the auth server. Tokens verified by the keys, which were changed or removed, are removed from the token cache of the deployment.
+ */
+public class JWKPublicKeyLocator implements PublicKeyLocator {
+
+    private static final Logger log = Logger.getLogger(JWKPublicKeyLocator.class);
+
+    // Owned by the locator and so by the deployment. The thread terminates when it's idle, so nothing is left running when
+    // the deployment is undeployed
+    private final ExecutorService refreshExecutor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "keycloak-jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    });
+
+    private final Object fetchLock = new Object();
+
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private volatile Map<String, PublicKey> currentKeys = Collections.emptyMap();
+
+    // Used for tokens without key ID
+    private volatile PublicKey defaultKey;
+
+    private volatile int lastRequestTime = 0;
+
+    @Override
+    public PublicKey getPublicKey(String kid, KeycloakDeployment deployment) {
+        PublicKey publicKey = lookupKey(kid);
+        if (publicKey != null) {
+            if (Time.currentTime() > lastRequestTime + deployment.getPublicKeyCacheTtl()) {
+                scheduleRefresh(deployment);
+            }
+            return publicKey;
+        }
+
+        // Unknown key ID or keys not yet loaded
+        synchronized (fetchLock) {
+            publicKey = lookupKey(kid);
+            if (publicKey == null && Time.currentTime() > lastRequestTime + deployment.getMinTimeBetweenJwksRequests()) {
+                sendRequest(deployment);
+                publicKey = lookupKey(kid);
+            }
+        }
+
+        if (publicKey == null) {
+            log.warnf("Didn't find publicKey for kid: %s", kid);
+        }
+        return publicKey;
+    }
+
+    private PublicKey lookupKey(String kid) {
+        return kid != null ? currentKeys.get(kid) : defaultKey;
+    }
+
+    private void scheduleRefresh(final KeycloakDeployment deployment) {
+        if (!refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        refreshExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    synchronized (fetchLock) {
+                        // Keys might have been fetched meanwhile because of an unknown key ID
+                        if (Time.currentTime() > lastRequestTime + deployment.getPublicKeyCacheTtl()) {
+                            sendRequest(deployment);
+                        }
+                    }
+                } finally {
+                    refreshScheduled.set(false);
+                }
+            }
+
+        });
+    }
+
+    private void sendRequest(KeycloakDeployment deployment) {
+        if (log.isTraceEnabled()) {
+            log.tracef("Going to send request to retrieve new set of realm public keys for client %s", deployment.getResourceName());
+        }
+
+        // Set even when the request fails, so the server is not requested more often than configured
+        lastRequestTime = Time.currentTime();
+
+        if (deployment.getClient() == null) {
+            log.error("KeycloakDeployment was never initialized through appropriate SPIs. Can't retrieve realm public keys");
+            return;
+        }
+
+        HttpGet get = new HttpGet(deployment.getJwksUrl());
+        try {
+            HttpResponse response = deployment.getClient().execute(get);
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status != 200) {
+                if (entity != null) {
+                    entity.getContent().close();
+                }
+                log.errorf("Unable to retrieve realm public keys from %s, status = %d", deployment.getJwksUrl(), status);
+                return;
+            }
+            if (entity == null) {
+                log.errorf("Unable to retrieve realm public keys from %s. There was no entity", deployment.getJwksUrl());
+                return;
+            }
+
+            JSONWebKeySet jwks;
+            InputStream is = entity.getContent();
+            try {
+                jwks = JsonSerialization.readValue(is, JSONWebKeySet.class);
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+
+            Map<String, PublicKey> keys = new HashMap<>();
+            PublicKey firstKey = null;
+            if (jwks.getKeys() != null) {
+                for (JWK jwk : jwks.getKeys()) {
+                    if (jwk.getPublicKeyUse() != null && !JWK.SIG_USE.equals(jwk.getPublicKeyUse())) {
+                        continue;
+                    }
+
+                    PublicKey key = JWKParser.create(jwk).toPublicKey();
+                    if (jwk.getKeyId() != null) {
+                        keys.put(jwk.getKeyId(), key);
+                    }
+                    if (firstKey == null) {
+                        firstKey = key;
+                    }
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debugf("Realm public keys successfully retrieved for client %s. New kids: %s", deployment.getResourceName(), keys.keySet());
+            }
+
+            Set<String> changedKids = new HashSet<>();
+            for (Map.Entry<String, PublicKey> currentKey : currentKeys.entrySet()) {
+                if (!currentKey.getValue().equals(keys.get(currentKey.getKey()))) {
+                    changedKids.add(currentKey.getKey());
+                }
+            }
+            if (defaultKey != null && !defaultKey.equals(firstKey)) {
+                changedKids.add(null);
+            }
+
+            currentKeys = Collections.unmodifiableMap(keys);
+            defaultKey = firstKey;
+
+            VerifiedTokenCache tokenCache = deployment.getTokenCache();
+            if (tokenCache != null && !changedKids.isEmpty()) {
+                tokenCache.removeByKeyId(changedKids);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.errorf(e, "Error when sending request to retrieve realm public keys from %s", deployment.getJwksUrl());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.adapters.rotation;
+
+import org.keycloak.adapters.KeycloakDeployment;
+
+import java.security.PublicKey;
+
+/**
+ * Locates the realm public key, which should be used to verify the signature of tokens.
+ */
+public interface PublicKeyLocator {
+
+    /**
+     * @param kid key ID from the header of the token. May be null
+     * @param deployment the deployment
+     * @return public key or null if the key wasn't found
+     */
+    PublicKey getPublicKey(String kid, KeycloakDeployment deployment);
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.adapters;
+
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RefreshableKeycloakSecurityContextTest {
+
+    @Test
+    public void tokenTimeToLive() {
+        TestSecurityContext ctx = new TestSecurityContext(deployment(10), token(Time.currentTime() + 60));
+
+        assertTrue(ctx.isTokenTimeToLiveSufficient(token(Time.currentTime() + 60)));
+        assertTrue(ctx.isTokenTimeToLiveSufficient(token(0)));
+        assertFalse(ctx.isTokenTimeToLiveSufficient(token(Time.currentTime() + 5)));
+
+        assertTrue(ctx.refreshExpiredToken(true));
+        assertEquals(0, ctx.refreshes.get());
+    }
+
+    @Test
+    public void singleRefreshOfExpiredToken() throws Exception {
+        final TestSecurityContext ctx = new TestSecurityContext(deployment(0), token(Time.currentTime() - 10));
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<AccessToken>> futures = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                futures.add(executor.submit(new Callable<AccessToken>() {
+
+                    @Override
+                    public AccessToken call() throws Exception {
+                        return ctx.getToken();
+                    }
+
+                }));
+            }
+
+            for (Future<AccessToken> future : futures) {
+                assertSame(ctx.refreshedToken, future.get());
+            }
+            assertEquals(1, ctx.refreshes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void currentTokenUsedDuringRefresh() throws Exception {
+        final TestSecurityContext ctx = new TestSecurityContext(deployment(30), token(Time.currentTime() + 20));
+        // Read the token directly, getToken() would already refresh it as its time to live is below the minimum
+        AccessToken current = ctx.currentToken();
+        ctx.block = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<AccessToken> refreshing = executor.submit(new Callable<AccessToken>() {
+
+                @Override
+                public AccessToken call() throws Exception {
+                    return ctx.getToken();
+                }
+
+            });
+            ctx.started.await();
+
+            // Other thread is refreshing the token, which is still active
+            assertSame(current, ctx.getToken());
+            assertEquals(1, ctx.refreshes.get());
+
+            ctx.block.countDown();
+            assertSame(ctx.refreshedToken, refreshing.get());
+            assertEquals(1, ctx.refreshes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private KeycloakDeployment deployment(int tokenMinimumTimeToLive) {
+        KeycloakDeployment deployment = new KeycloakDeployment();
+        deployment.setRealm("demo");
+        deployment.setTokenMinimumTimeToLive(tokenMinimumTimeToLive);
+        return deployment;
+    }
+
+    private static AccessToken token(int expiration) {
+        AccessToken token = new AccessToken();
+        token.issuedAt(Time.currentTime() - 30);
+        token.issuer("http://localhost:8180/auth/realms/demo");
+        token.expiration(expiration);
+        return token;
+    }
+
+    private static class TestSecurityContext extends RefreshableKeycloakSecurityContext {
+
+        private final AtomicInteger refreshes = new AtomicInteger();
+        private final AccessToken refreshedToken = token(Time.currentTime() + 300);
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile CountDownLatch block;
+
+        private TestSecurityContext(KeycloakDeployment deployment, AccessToken token) {
+            super(deployment, null, "token", token, null, null, "refresh-token");
+        }
+
+        private AccessToken currentToken() {
+            return token;
+        }
+
+        @Override
+        protected boolean sendRefreshRequest() {
+            refreshes.incrementAndGet();
+            started.countDown();
+            try {
+                if (block != null) {
+                    block.await();
+                } else {
+                    Thread.sleep(50);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            this.token = refreshedToken;
+            return true;
+        }
+    }
+
+}
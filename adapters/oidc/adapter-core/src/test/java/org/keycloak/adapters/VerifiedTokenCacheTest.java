@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.adapters;
+
+import org.junit.Test;
+import org.keycloak.adapters.rotation.HardcodedPublicKeyLocator;
+import org.keycloak.common.util.Time;
+import org.keycloak.representations.AccessToken;
+
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class VerifiedTokenCacheTest {
+
+    @Test
+    public void cacheToken() throws Exception {
+        PublicKey realmKey = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        PublicKey otherRealmKey = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        KeycloakDeployment deployment = deployment(realmKey);
+
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        deployment.setTokenCache(cache);
+        AccessToken token = token(Time.currentTime() + 60);
+        cache.put("token1", "kid1", token);
+
+        assertSame(token, cache.get("token1"));
+        assertNull(cache.get("token2"));
+
+        // Realm key was changed
+        deployment.setPublicKeyLocator(new HardcodedPublicKeyLocator(otherRealmKey));
+        assertNull(cache.get("token1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void removeByKeyId() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        AccessToken token2 = token(Time.currentTime() + 60);
+        cache.put("token1", "kid1", token(Time.currentTime() + 60));
+        cache.put("token2", "kid2", token2);
+        cache.put("token3", null, token(Time.currentTime() + 60));
+
+        cache.removeByKeyId(new HashSet<>(Arrays.asList("kid1", null)));
+        assertEquals(1, cache.size());
+        assertSame(token2, cache.get("token2"));
+    }
+
+    @Test
+    public void expiredToken() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        cache.put("token1", "kid1", token(Time.currentTime() + 60));
+        cache.put("token2", "kid1", token(0));
+
+        try {
+            Time.setOffset(120);
+            assertNull(cache.get("token1"));
+            assertNull(cache.get("token2"));
+            assertEquals(0, cache.size());
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
+    @Test
+    public void maxSize() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2);
+        cache.put("token1", "kid1", token(Time.currentTime() + 60));
+        cache.put("token2", "kid1", token(Time.currentTime() + 90));
+
+        // Same token again doesn't change the order
+        cache.put("token1", "kid1", token(Time.currentTime() + 60));
+        assertEquals(2, cache.size());
+
+        // Oldest token is evicted to make room for the new one
+        AccessToken token3 = token(Time.currentTime() + 120);
+        cache.put("token3", "kid1", token3);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("token1"));
+        assertSame(token3, cache.get("token3"));
+
+        // Token removed as expired doesn't keep its place
+        try {
+            Time.setOffset(100);
+            assertNull(cache.get("token2"));
+        } finally {
+            Time.setOffset(0);
+        }
+        assertEquals(1, cache.size());
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("token" + (i + 4), "kid1", token(Time.currentTime() + 120));
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void putAgainAfterRemoval() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2);
+        AccessToken token1 = token(Time.currentTime() + 60);
+        cache.put("token1", "kid1", token(Time.currentTime() + 60));
+        cache.put("token2", "kid2", token(Time.currentTime() + 60));
+
+        cache.removeByKeyId(new HashSet<>(Arrays.asList("kid1")));
+        cache.put("token1", "kid1", token1);
+        assertEquals(2, cache.size());
+
+        // Place of the removed entry doesn't evict the new one, so token2 is the oldest now
+        AccessToken token3 = token(Time.currentTime() + 60);
+        cache.put("token3", "kid1", token3);
+        assertEquals(2, cache.size());
+        assertSame(token1, cache.get("token1"));
+        assertNull(cache.get("token2"));
+        assertSame(token3, cache.get("token3"));
+
+        // Removed entries don't take the room of the new ones
+        for (int i = 0; i < 10; i++) {
+            cache.removeByKeyId(new HashSet<>(Arrays.asList("kid1")));
+            AccessToken token = token(Time.currentTime() + 60);
+            cache.put("token" + (i + 4), "kid2", token);
+            assertSame(token, cache.get("token" + (i + 4)));
+        }
+        assertEquals(2, cache.size());
+    }
+
+    private KeycloakDeployment deployment(PublicKey realmKey) {
+        KeycloakDeployment deployment = new KeycloakDeployment();
+        deployment.setPublicKeyLocator(new HardcodedPublicKeyLocator(realmKey));
+        return deployment;
+    }
+
+    private AccessToken token(int expiration) {
+        AccessToken token = new AccessToken();
+        token.expiration(expiration);
+        return token;
+    }
+
+}
@@ -22,6 +22,7 @@ import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPrivateKey;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -170,6 +171,10 @@ public class CertificateUtils {
      */
     public static ContentSigner createSigner(PrivateKey privateKey) {
         try {
+            if (privateKey instanceof ECPrivateKey) {
+                return new JcaContentSignerBuilder("SHA256withECDSA").setProvider("BC").build(privateKey);
+            }
+
             AlgorithmIdentifier sigAlgId = new DefaultSignatureAlgorithmIdentifierFinder().find("SHA256WithRSAEncryption");
             AlgorithmIdentifier digAlgId = new DefaultDigestAlgorithmIdentifierFinder().find(sigAlgId);
 
@@ -53,17 +53,20 @@ public final class DerUtils {
         dis.readFully(keyBytes);
         dis.close();
 
-        PKCS8EncodedKeySpec spec =
-                new PKCS8EncodedKeySpec(keyBytes);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePrivate(spec);
+        return decodePrivateKey(keyBytes);
     }
 
     public static PublicKey decodePublicKey(byte[] der) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         X509EncodedKeySpec spec =
                 new X509EncodedKeySpec(der);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePublic(spec);
+        try {
+            KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
+            return kf.generatePublic(spec);
+        } catch (InvalidKeySpecException e) {
+            // Not RSA key. Try EC
+            KeyFactory kf = KeyFactory.getInstance("EC", "BC");
+            return kf.generatePublic(spec);
+        }
     }
 
     public static X509Certificate decodeCertificate(InputStream is) throws Exception {
@@ -76,7 +79,13 @@ public final class DerUtils {
     public static PrivateKey decodePrivateKey(byte[] der) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         PKCS8EncodedKeySpec spec =
                 new PKCS8EncodedKeySpec(der);
-        KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
-        return kf.generatePrivate(spec);
+        try {
+            KeyFactory kf = KeyFactory.getInstance("RSA", "BC");
+            return kf.generatePrivate(spec);
+        } catch (InvalidKeySpecException e) {
+            // Not RSA key. Try EC
+            KeyFactory kf = KeyFactory.getInstance("EC", "BC");
+            return kf.generatePrivate(spec);
+        }
     }
 }
@@ -18,6 +18,7 @@
 package org.keycloak.common.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -49,4 +50,16 @@ public final class StreamUtil {
 
         return builder.toString();
     }
+
+    public static byte[] readBytes(InputStream in) throws IOException
+    {
+        byte[] buffer = new byte[4096];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int wasRead;
+        while ((wasRead = in.read(buffer)) > -1)
+        {
+            out.write(buffer, 0, wasRead);
+        }
+        return out.toByteArray();
+    }
 }
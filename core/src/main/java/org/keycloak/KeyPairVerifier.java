@@ -21,7 +21,7 @@ import org.keycloak.common.VerificationException;
 import org.keycloak.common.util.PemUtils;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureUtils;
 
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -47,8 +47,8 @@ public class KeyPairVerifier {
         }
 
         try {
-            String jws = new JWSBuilder().content("content".getBytes()).rsa256(privateKey);
-            if (!RSAProvider.verify(new JWSInput(jws), publicKey)) {
+            String jws = new JWSBuilder().content("content".getBytes()).sign(privateKey);
+            if (!SignatureUtils.verify(new JWSInput(jws), publicKey)) {
                 throw new VerificationException("Keys don't match");
             }
         } catch (Exception e) {
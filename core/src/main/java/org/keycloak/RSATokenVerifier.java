@@ -20,7 +20,7 @@ package org.keycloak;
 import org.keycloak.common.VerificationException;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureUtils;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.util.TokenUtil;
 
@@ -36,7 +36,11 @@ public class RSATokenVerifier {
     }
 
     public static AccessToken verifyToken(String tokenString, PublicKey realmKey, String realmUrl, boolean checkActive, boolean checkTokenType) throws VerificationException {
-        AccessToken token = toAccessToken(tokenString, realmKey);
+        return verifyToken(toInput(tokenString), realmKey, realmUrl, checkActive, checkTokenType);
+    }
+
+    public static AccessToken verifyToken(JWSInput input, PublicKey realmKey, String realmUrl, boolean checkActive, boolean checkTokenType) throws VerificationException {
+        AccessToken token = toAccessToken(input, realmKey);
 
         String user = token.getSubject();
         if (user == null) {
@@ -64,12 +68,18 @@ public class RSATokenVerifier {
     }
 
     public static AccessToken toAccessToken(String tokenString, PublicKey realmKey) throws VerificationException {
-        JWSInput input;
+        return toAccessToken(toInput(tokenString), realmKey);
+    }
+
+    public static JWSInput toInput(String tokenString) throws VerificationException {
         try {
-            input = new JWSInput(tokenString);
+            return new JWSInput(tokenString);
         } catch (JWSInputException e) {
             throw new VerificationException("Couldn't parse token", e);
         }
+    }
+
+    private static AccessToken toAccessToken(JWSInput input, PublicKey realmKey) throws VerificationException {
         if (!isPublicKeyValid(input, realmKey)) throw new VerificationException("Invalid token signature.");
 
         AccessToken token;
@@ -83,7 +93,7 @@ public class RSATokenVerifier {
 
     private static boolean isPublicKeyValid(JWSInput input, PublicKey realmKey) throws VerificationException {
         try {
-            return RSAProvider.verify(input, realmKey);
+            return SignatureUtils.verify(input, realmKey);
         } catch (Exception e) {
             throw new VerificationException("Token signature not validated.", e);
         }
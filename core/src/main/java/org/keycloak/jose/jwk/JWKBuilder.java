@@ -18,12 +18,15 @@
 package org.keycloak.jose.jwk;
 
 import org.keycloak.common.util.Base64Url;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
 
 import java.math.BigInteger;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 
 /**
@@ -56,7 +59,52 @@ public class JWKBuilder {
         return k;
     }
 
-    private String createKeyId(Key key) {
+    /**
+     * JWK for the realm key. RS256 for RSA keys and ES256, ES384 or ES512 for EC keys
+     */
+    public JWK key(PublicKey key) {
+        if (key instanceof ECPublicKey) {
+            return ec(key);
+        } else {
+            return rs256(key);
+        }
+    }
+
+    public JWK ec(PublicKey key) {
+        ECPublicKey ecKey = (ECPublicKey) key;
+        Algorithm algorithm = ECDSAProvider.getAlgorithm(ecKey);
+        int length = ECDSAProvider.getSignatureValueLength(algorithm);
+
+        ECPublicJWK k = new ECPublicJWK();
+        k.setKeyId(createKeyId(key));
+        k.setKeyType(ECPublicJWK.EC);
+        k.setAlgorithm(algorithm.name());
+        k.setPublicKeyUse(DEFAULT_PUBLIC_KEY_USE);
+        k.setCurve(getCurve(algorithm));
+        k.setX(Base64Url.encode(toFixedLengthBytes(ecKey.getW().getAffineX(), length)));
+        k.setY(Base64Url.encode(toFixedLengthBytes(ecKey.getW().getAffineY(), length)));
+
+        return k;
+    }
+
+    static String getCurve(Algorithm algorithm) {
+        switch (algorithm) {
+            case ES256:
+                return "P-256";
+            case ES384:
+                return "P-384";
+            case ES512:
+                return "P-521";
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * Key ID of the public key. It's the base64url encoded SHA-256 digest of the encoded key, so it's possible to determine
+     * it without the JWK
+     */
+    public static String createKeyId(Key key) {
         try {
             return Base64Url.encode(MessageDigest.getInstance(DEFAULT_MESSAGE_DIGEST).digest(key.getEncoded()));
         } catch (NoSuchAlgorithmException e) {
@@ -64,6 +112,25 @@ public class JWKBuilder {
         }
     }
 
+    /**
+     * Coordinates of EC point are always encoded with full length of the curve as required by RFC 7518
+     */
+    private static byte[] toFixedLengthBytes(BigInteger bigInt, int length) {
+        byte[] bytes = bigInt.toByteArray();
+        if (bytes.length == length) {
+            return bytes;
+        }
+
+        byte[] result = new byte[length];
+        if (bytes.length > length) {
+            // strip sign byte
+            System.arraycopy(bytes, bytes.length - length, result, 0, length);
+        } else {
+            System.arraycopy(bytes, 0, result, length - bytes.length, bytes.length);
+        }
+        return result;
+    }
+
     /**
      * Copied from org.apache.commons.codec.binary.Base64
      */
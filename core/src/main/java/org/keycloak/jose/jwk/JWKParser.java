@@ -22,8 +22,13 @@ import org.keycloak.common.util.Base64Url;
 import org.keycloak.util.JsonSerialization;
 
 import java.math.BigInteger;
+import java.security.AlgorithmParameters;
 import java.security.KeyFactory;
 import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.Map;
 
@@ -75,9 +80,34 @@ public class JWKParser {
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
+        } else if (ECPublicJWK.EC.equals(algorithm)) {
+            String curve = jwk.getOtherClaims().get(ECPublicJWK.CURVE).toString();
+            BigInteger x = new BigInteger(1, Base64Url.decode(jwk.getOtherClaims().get(ECPublicJWK.X).toString()));
+            BigInteger y = new BigInteger(1, Base64Url.decode(jwk.getOtherClaims().get(ECPublicJWK.Y).toString()));
+
+            try {
+                AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(getCurveName(curve)));
+                ECParameterSpec spec = parameters.getParameterSpec(ECParameterSpec.class);
+                return KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(new ECPoint(x, y), spec));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
         } else {
             throw new RuntimeException("Unsupported algorithm " + algorithm);
         }
     }
 
+    private static String getCurveName(String curve) {
+        if ("P-256".equals(curve)) {
+            return "secp256r1";
+        } else if ("P-384".equals(curve)) {
+            return "secp384r1";
+        } else if ("P-521".equals(curve)) {
+            return "secp521r1";
+        } else {
+            throw new RuntimeException("Unsupported curve " + curve);
+        }
+    }
+
 }
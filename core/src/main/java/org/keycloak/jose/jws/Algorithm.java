@@ -17,6 +17,7 @@
 
 package org.keycloak.jose.jws;
 
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
 import org.keycloak.jose.jws.crypto.RSAProvider;
 import org.keycloak.jose.jws.crypto.SignatureProvider;
 
@@ -33,9 +34,9 @@ public enum Algorithm {
     RS256(new RSAProvider()),
     RS384(new RSAProvider()),
     RS512(new RSAProvider()),
-    ES256(null),
-    ES384(null),
-    ES512(null)
+    ES256(new ECDSAProvider()),
+    ES384(new ECDSAProvider()),
+    ES512(new ECDSAProvider())
     ;
     private SignatureProvider provider;
 
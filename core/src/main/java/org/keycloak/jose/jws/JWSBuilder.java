@@ -17,8 +17,10 @@
 
 package org.keycloak.jose.jws;
 
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
 import org.keycloak.jose.jws.crypto.HMACProvider;
 import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureUtils;
 import org.keycloak.common.util.Base64Url;
 import org.keycloak.util.JsonSerialization;
 
@@ -26,6 +28,7 @@ import javax.crypto.SecretKey;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -33,6 +36,7 @@ import java.security.PrivateKey;
  */
 public class JWSBuilder {
     String type;
+    String kid;
     String contentType;
     byte[] contentBytes;
 
@@ -41,6 +45,11 @@ public class JWSBuilder {
         return this;
     }
 
+    public JWSBuilder kid(String kid) {
+        this.kid = kid;
+        return this;
+    }
+
     public JWSBuilder contentType(String type) {
         this.contentType = type;
         return this;
@@ -66,6 +75,7 @@ public class JWSBuilder {
         builder.append("\"alg\":\"").append(alg.toString()).append("\"");
 
         if (type != null) builder.append(",\"typ\" : \"").append(type).append("\"");
+        if (kid != null) builder.append(",\"kid\" : \"").append(kid).append("\"");
         if (contentType != null) builder.append(",\"cty\":\"").append(contentType).append("\"");
         builder.append("}");
         try {
@@ -140,6 +150,32 @@ public class JWSBuilder {
             return encodeAll(buffer, signature);
         }
 
+        /**
+         * Sign with ES256, ES384 or ES512 according to the curve of the key
+         */
+        public String ecdsa(ECPrivateKey privateKey) {
+            return sign(ECDSAProvider.getAlgorithm(privateKey), privateKey);
+        }
+
+        /**
+         * Sign with the default algorithm for the type of the key. RS256 for RSA keys and ES256, ES384 or ES512 for EC keys
+         */
+        public String sign(PrivateKey privateKey) {
+            return sign(SignatureUtils.getAlgorithm(privateKey), privateKey);
+        }
+
+        public String sign(Algorithm algorithm, PrivateKey privateKey) {
+            StringBuffer buffer = new StringBuffer();
+            byte[] data = marshalContent();
+            encode(algorithm, data, buffer);
+            byte[] signature = null;
+            try {
+                signature = SignatureUtils.sign(buffer.toString().getBytes("UTF-8"), algorithm, privateKey);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            return encodeAll(buffer, signature);
+        }
 
         public String hmac256(byte[] sharedSecret) {
             StringBuffer buffer = new StringBuffer();
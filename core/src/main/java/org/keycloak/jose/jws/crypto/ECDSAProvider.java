@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jws.crypto;
+
+
+import org.keycloak.common.util.PemUtils;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
+
+import java.io.ByteArrayOutputStream;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
+
+/**
+ * ECDSA signatures (ES256, ES384, ES512). JWS signature is the concatenation of R and S values as specified in RFC 7518,
+ * so the DER encoded signatures produced and consumed by the JDK are converted.
+ */
+public class ECDSAProvider implements SignatureProvider {
+    public static String getJavaAlgorithm(Algorithm alg) {
+        switch (alg) {
+            case ES256:
+                return "SHA256withECDSA";
+            case ES384:
+                return "SHA384withECDSA";
+            case ES512:
+                return "SHA512withECDSA";
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * Length in bytes of each of R and S values for given algorithm
+     */
+    public static int getSignatureValueLength(Algorithm alg) {
+        switch (alg) {
+            case ES256:
+                return 32;
+            case ES384:
+                return 48;
+            case ES512:
+                return 66;
+            default:
+                throw new IllegalArgumentException("Not an ECDSA Algorithm");
+        }
+    }
+
+    /**
+     * Algorithm matching to the curve of the key. P-256 is used with ES256, P-384 with ES384 and P-521 with ES512
+     */
+    public static Algorithm getAlgorithm(ECKey key) {
+        int fieldSize = key.getParams().getCurve().getField().getFieldSize();
+        switch (fieldSize) {
+            case 256:
+                return Algorithm.ES256;
+            case 384:
+                return Algorithm.ES384;
+            case 521:
+                return Algorithm.ES512;
+            default:
+                throw new IllegalArgumentException("Unsupported EC key size " + fieldSize);
+        }
+    }
+
+    public static Signature getSignature(Algorithm alg) {
+        try {
+            return Signature.getInstance(getJavaAlgorithm(alg));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        try {
+            Signature signature = getSignature(algorithm);
+            signature.initSign(privateKey);
+            signature.update(data);
+            return derToConcatenated(signature.sign(), getSignatureValueLength(algorithm));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static boolean verifyViaCertificate(JWSInput input, String cert) {
+        X509Certificate certificate = null;
+        try {
+            certificate = PemUtils.decodeCertificate(cert);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return verify(input, certificate.getPublicKey());
+    }
+
+    public static boolean verify(JWSInput input, PublicKey publicKey) {
+        try {
+            Algorithm algorithm = input.getHeader().getAlgorithm();
+            byte[] signature = input.getSignature();
+            if (signature.length != 2 * getSignatureValueLength(algorithm)) {
+                return false;
+            }
+
+            Signature verifier = getSignature(algorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(input.getEncodedSignatureInput().getBytes("UTF-8"));
+            return verifier.verify(concatenatedToDer(signature));
+        } catch (Exception e) {
+            return false;
+        }
+
+    }
+
+    @Override
+    public boolean verify(JWSInput input, String key) {
+        return verifyViaCertificate(input, key);
+    }
+
+    // DER: SEQUENCE { INTEGER r, INTEGER s }
+    static byte[] derToConcatenated(byte[] der, int valueLength) {
+        int offset = 1;
+        offset += (der[offset] & 0x80) != 0 ? 1 + (der[offset] & 0x7f) : 1;
+
+        byte[] result = new byte[2 * valueLength];
+        offset = copyInteger(der, offset, result, 0, valueLength);
+        copyInteger(der, offset, result, valueLength, valueLength);
+        return result;
+    }
+
+    private static int copyInteger(byte[] der, int offset, byte[] result, int resultOffset, int valueLength) {
+        if (der[offset] != 0x02) {
+            throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+        }
+        int length = der[offset + 1] & 0xff;
+        int start = offset + 2;
+
+        // Skip leading zeros (sign byte)
+        int skip = 0;
+        while (length - skip > valueLength && der[start + skip] == 0) {
+            skip++;
+        }
+        if (length - skip > valueLength) {
+            throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+        }
+
+        System.arraycopy(der, start + skip, result, resultOffset + valueLength - (length - skip), length - skip);
+        return start + length;
+    }
+
+    static byte[] concatenatedToDer(byte[] signature) {
+        int valueLength = signature.length / 2;
+        byte[] r = toDerInteger(signature, 0, valueLength);
+        byte[] s = toDerInteger(signature, valueLength, valueLength);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(r.length + s.length + 3);
+        out.write(0x30);
+        writeLength(out, r.length + s.length);
+        out.write(r, 0, r.length);
+        out.write(s, 0, s.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] toDerInteger(byte[] signature, int offset, int valueLength) {
+        int start = offset;
+        int end = offset + valueLength;
+        while (start < end - 1 && signature[start] == 0) {
+            start++;
+        }
+        boolean pad = (signature[start] & 0x80) != 0;
+        int length = end - start + (pad ? 1 : 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 3);
+        out.write(0x02);
+        writeLength(out, length);
+        if (pad) {
+            out.write(0);
+        }
+        out.write(signature, start, end - start);
+        return out.toByteArray();
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        if (length > 127) {
+            out.write(0x81);
+        }
+        out.write(length);
+    }
+
+}
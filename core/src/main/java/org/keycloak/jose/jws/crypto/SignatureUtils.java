@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.jose.jws.crypto;
+
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSInput;
+
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECKey;
+
+/**
+ * Sign and verify with asymmetric keys regardless of the key type. RSA keys are used with RS256 by default and EC keys
+ * with the ES algorithm matching to the curve.
+ */
+public class SignatureUtils {
+
+    private SignatureUtils() {
+    }
+
+    public static Algorithm getAlgorithm(Key key) {
+        if (key instanceof ECKey) {
+            return ECDSAProvider.getAlgorithm((ECKey) key);
+        } else {
+            return Algorithm.RS256;
+        }
+    }
+
+    public static byte[] sign(byte[] data, Algorithm algorithm, PrivateKey privateKey) {
+        switch (algorithm) {
+            case RS256:
+            case RS384:
+            case RS512:
+                return RSAProvider.sign(data, algorithm, privateKey);
+            case ES256:
+            case ES384:
+            case ES512:
+                return ECDSAProvider.sign(data, algorithm, privateKey);
+            default:
+                throw new IllegalArgumentException("Not an asymmetric signature algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Verify with the algorithm from the JWS header
+     */
+    public static boolean verify(JWSInput input, PublicKey publicKey) {
+        Algorithm algorithm = input.getHeader().getAlgorithm();
+        if (algorithm == null) {
+            return false;
+        }
+
+        switch (algorithm) {
+            case RS256:
+            case RS384:
+            case RS512:
+                return RSAProvider.verify(input, publicKey);
+            case ES256:
+            case ES384:
+            case ES512:
+                return ECDSAProvider.verify(input, publicKey);
+            default:
+                return false;
+        }
+    }
+
+}
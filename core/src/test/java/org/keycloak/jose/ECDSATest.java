@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.jose;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.jose.jws.Algorithm;
+import org.keycloak.jose.jws.JWSBuilder;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.crypto.ECDSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureUtils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+
+public class ECDSATest {
+
+    @Test
+    public void testES256() throws Exception {
+        testSignature("secp256r1", Algorithm.ES256, 64);
+    }
+
+    @Test
+    public void testES384() throws Exception {
+        testSignature("secp384r1", Algorithm.ES384, 96);
+    }
+
+    @Test
+    public void testES512() throws Exception {
+        testSignature("secp521r1", Algorithm.ES512, 132);
+    }
+
+    @Test
+    public void testWrongKey() throws Exception {
+        KeyPair keyPair = generateKeyPair("secp256r1");
+        KeyPair otherKeyPair = generateKeyPair("secp256r1");
+
+        String encoded = new JWSBuilder().content("12345678901234567890".getBytes()).ecdsa((ECPrivateKey) keyPair.getPrivate());
+        Assert.assertFalse(SignatureUtils.verify(new JWSInput(encoded), otherKeyPair.getPublic()));
+
+        KeyPair rsaKeyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Assert.assertFalse(SignatureUtils.verify(new JWSInput(encoded), rsaKeyPair.getPublic()));
+    }
+
+    private void testSignature(String curve, Algorithm algorithm, int signatureLength) throws Exception {
+        KeyPair keyPair = generateKeyPair(curve);
+        Assert.assertEquals(algorithm, SignatureUtils.getAlgorithm(keyPair.getPrivate()));
+
+        // Run several times as the length of DER encoded signature varies
+        for (int i = 0; i < 20; i++) {
+            String encoded = new JWSBuilder().content("12345678901234567890".getBytes()).sign(keyPair.getPrivate());
+            JWSInput input = new JWSInput(encoded);
+
+            Assert.assertEquals(algorithm, input.getHeader().getAlgorithm());
+            Assert.assertEquals(signatureLength, input.getSignature().length);
+            Assert.assertTrue(ECDSAProvider.verify(input, keyPair.getPublic()));
+            Assert.assertTrue(SignatureUtils.verify(input, keyPair.getPublic()));
+        }
+    }
+
+    private KeyPair generateKeyPair(String curve) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return generator.generateKeyPair();
+    }
+
+}
@@ -23,6 +23,7 @@ import org.keycloak.util.JsonSerialization;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 
 import static org.junit.Assert.assertArrayEquals;
@@ -56,6 +57,30 @@ public class JWKBuilderTest {
         assertArrayEquals(publicKey.getEncoded(), JWKParser.create().parse(jwkJson).toPublicKey().getEncoded());
     }
 
+    @Test
+    public void publicEc() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp384r1"));
+        PublicKey publicKey = generator.generateKeyPair().getPublic();
+
+        JWK jwk = JWKBuilder.create().key(publicKey);
+
+        assertNotNull(jwk.getKeyId());
+        assertEquals("EC", jwk.getKeyType());
+        assertEquals("ES384", jwk.getAlgorithm());
+        assertEquals("sig", jwk.getPublicKeyUse());
+
+        assertTrue(jwk instanceof ECPublicJWK);
+        assertEquals("P-384", ((ECPublicJWK) jwk).getCurve());
+        assertNotNull(((ECPublicJWK) jwk).getX());
+        assertNotNull(((ECPublicJWK) jwk).getY());
+
+        String jwkJson = JsonSerialization.writeValueAsString(jwk);
+
+        // Parse
+        assertArrayEquals(publicKey.getEncoded(), JWKParser.create().parse(jwkJson).toPublicKey().getEncoded());
+    }
+
     @Test
     public void parse() throws NoSuchAlgorithmException, InvalidKeySpecException {
         String jwkJson = "{" +
@@ -29,6 +29,7 @@ import org.keycloak.models.UserModel;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -146,6 +147,18 @@ public abstract class BasePropertiesFederationProvider implements UserFederation
         return properties.containsKey(local.getUsername());
     }
 
+    @Override
+    public Map<String, UserModel> validateAndProxy(RealmModel realm, List<UserModel> locals) {
+        Map<String, UserModel> result = new HashMap<String, UserModel>();
+        for (UserModel local : locals) {
+            UserModel proxied = validateAndProxy(realm, local);
+            if (proxied != null) {
+                result.put(local.getId(), proxied);
+            }
+        }
+        return result;
+    }
+
     /**
      * hardcoded to only return PASSWORD
      *
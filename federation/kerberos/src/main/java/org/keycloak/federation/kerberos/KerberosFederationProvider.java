@@ -74,6 +74,18 @@ public class KerberosFederationProvider implements UserFederationProvider {
         }
     }
 
+    @Override
+    public Map<String, UserModel> validateAndProxy(RealmModel realm, List<UserModel> locals) {
+        Map<String, UserModel> result = new HashMap<String, UserModel>();
+        for (UserModel local : locals) {
+            UserModel proxied = validateAndProxy(realm, local);
+            if (proxied != null) {
+                result.put(local.getId(), proxied);
+            }
+        }
+        return result;
+    }
+
     @Override
     public boolean synchronizeRegistrations() {
         return false;
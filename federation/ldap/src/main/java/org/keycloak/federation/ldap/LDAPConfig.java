@@ -108,6 +108,36 @@ public class LDAPConfig {
         return config.get(LDAPConstants.CONNECTION_POOLING);
     }
 
+    public boolean isConnectionPooling() {
+        return Boolean.parseBoolean(getConnectionPooling());
+    }
+
+    /**
+     * Max count of connections in each of the pools (search/modify and authentication) of this provider. Defaults to the
+     * limit configured for JDK connection pooling
+     */
+    public int getConnectionPoolingMaxSize() {
+        String maxSize = config.get(LDAPConstants.CONNECTION_POOLING_MAX_SIZE);
+        if (maxSize == null) {
+            maxSize = System.getProperty("com.sun.jndi.ldap.connect.pool.maxsize", "1000");
+        }
+        int size = Integer.parseInt(maxSize);
+
+        // Zero means unlimited for JDK pooling. Our pool is always bounded
+        return size > 0 ? size : 1000;
+    }
+
+    /**
+     * Milliseconds after which idle pooled connection is closed. Defaults to the timeout configured for JDK connection pooling
+     */
+    public long getConnectionPoolingIdleTimeout() {
+        String timeout = config.get(LDAPConstants.CONNECTION_POOLING_IDLE_TIMEOUT);
+        if (timeout == null) {
+            timeout = System.getProperty("com.sun.jndi.ldap.connect.pool.timeout", "300000");
+        }
+        return Long.parseLong(timeout);
+    }
+
     public Properties getAdditionalConnectionProperties() {
         // not supported for now
         return null;
@@ -139,6 +169,18 @@ public class LDAPConfig {
         return pageSizeConfig!=null ? Integer.parseInt(pageSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_SYNC;
     }
 
+    public int getBatchSizeForImport() {
+        String batchSizeConfig = config.get(LDAPConstants.BATCH_SIZE_FOR_IMPORT);
+        int batchSize = batchSizeConfig!=null ? Integer.parseInt(batchSizeConfig) : LDAPConstants.DEFAULT_BATCH_SIZE_FOR_IMPORT;
+        return Math.max(batchSize, 1);
+    }
+
+    public int getSyncThreads() {
+        String threadsConfig = config.get(LDAPConstants.SYNC_THREADS);
+        int threads = threadsConfig!=null ? Integer.parseInt(threadsConfig) : LDAPConstants.DEFAULT_SYNC_THREADS;
+        return Math.max(threads, 1);
+    }
+
     public String getUsernameLdapAttribute() {
         String username = config.get(LDAPConstants.USERNAME_LDAP_ATTRIBUTE);
         if (username == null) {
@@ -52,6 +52,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -67,6 +68,9 @@ import javax.naming.AuthenticationException;
 public class LDAPFederationProvider implements UserFederationProvider {
     private static final Logger logger = Logger.getLogger(LDAPFederationProvider.class);
 
+    // Max count of usernames in the single LDAP filter used by batch validation
+    private static final int VALIDATION_BATCH_SIZE = 100;
+
     protected LDAPFederationProviderFactory factory;
     protected KeycloakSession session;
     protected UserFederationProviderModel model;
@@ -116,6 +120,57 @@ public class LDAPFederationProvider implements UserFederationProvider {
         return proxy(realm, local, ldapObject);
     }
 
+    @Override
+    public Map<String, UserModel> validateAndProxy(RealmModel realm, List<UserModel> locals) {
+        Map<String, UserModel> result = new HashMap<>();
+        LDAPValidatedUsersCache validatedUsersCache = factory.getValidatedUsersCache();
+
+        // Lower-cased username -> local user, which needs to be validated against LDAP
+        Map<String, UserModel> toValidate = new LinkedHashMap<>();
+        for (UserModel local : locals) {
+            LDAPObject cached = validatedUsersCache.get(model.getId(), local);
+            if (cached != null) {
+                result.put(local.getId(), proxy(realm, local, cached));
+            } else {
+                toValidate.put(local.getUsername().toLowerCase(), local);
+            }
+        }
+
+        List<String> usernames = new ArrayList<>(toValidate.keySet());
+        for (int i = 0; i < usernames.size(); i += VALIDATION_BATCH_SIZE) {
+            List<String> batch = usernames.subList(i, Math.min(i + VALIDATION_BATCH_SIZE, usernames.size()));
+
+            for (LDAPObject ldapUser : loadLDAPUsersByUsernames(realm, batch)) {
+                // Malformed LDAP entry is skipped, so it doesn't fail validation of the other users. Its local user isn't in the result
+                // and it's validated by the single user validation, which reports the error
+                try {
+                    LDAPUtils.getUsername(ldapUser, ldapIdentityStore.getConfig());
+                    LDAPUtils.checkUuid(ldapUser, ldapIdentityStore.getConfig());
+                } catch (ModelException me) {
+                    logger.warnf("Skipped LDAP user %s in batch validation: %s", ldapUser.getDn(), me.getMessage());
+                    continue;
+                }
+
+                // Username attribute may be multivalued (for example "cn") and the filter matched any of the values
+                for (String ldapUsername : ldapUser.getAttributeAsSet(ldapIdentityStore.getConfig().getUsernameLdapAttribute())) {
+                    UserModel local = toValidate.get(ldapUsername.toLowerCase());
+                    if (local == null || result.containsKey(local.getId())) {
+                        continue;
+                    }
+
+                    if (ldapUser.getUuid().equals(local.getFirstAttribute(LDAPConstants.LDAP_ID))) {
+                        validatedUsersCache.put(model.getId(), local, ldapUser);
+                        result.put(local.getId(), proxy(realm, local, ldapUser));
+                    } else {
+                        logger.warnf("LDAP User invalid. ID doesn't match. ID from LDAP [%s], LDAP ID from local DB: [%s]", ldapUser.getUuid(), local.getFirstAttribute(LDAPConstants.LDAP_ID));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
     protected UserModel proxy(RealmModel realm, UserModel local, LDAPObject ldapObject) {
         UserModel proxied = local;
         switch (editMode) {
@@ -178,6 +233,8 @@ public class LDAPFederationProvider implements UserFederationProvider {
 
     @Override
     public boolean removeUser(RealmModel realm, UserModel user) {
+        factory.getValidatedUsersCache().remove(model.getId(), user.getId());
+
         if (editMode == EditMode.READ_ONLY || editMode == EditMode.UNSYNCED) {
             logger.warnf("User '%s' can't be deleted in LDAP as editMode is '%s'. Deleting user just from Keycloak DB, but he will be re-imported from LDAP again once searched in Keycloak", user.getUsername(), editMode.toString());
             return true;
@@ -515,6 +572,20 @@ public class LDAPFederationProvider implements UserFederationProvider {
         return ldapUser;
     }
 
+    protected List<LDAPObject> loadLDAPUsersByUsernames(RealmModel realm, List<String> usernames) {
+        LDAPQuery ldapQuery = LDAPUtils.createQueryForUserSearch(this, realm);
+        LDAPQueryConditionsBuilder conditionsBuilder = new LDAPQueryConditionsBuilder();
+
+        String usernameMappedAttribute = this.ldapIdentityStore.getConfig().getUsernameLdapAttribute();
+        Condition[] usernameConditions = new Condition[usernames.size()];
+        for (int i = 0; i < usernameConditions.length; i++) {
+            usernameConditions[i] = conditionsBuilder.equal(usernameMappedAttribute, usernames.get(i));
+        }
+        ldapQuery.addWhereCondition(conditionsBuilder.orCondition(usernameConditions));
+
+        return ldapQuery.getResultList();
+    }
+
     public LDAPFederationMapper getMapper(UserFederationMapperModel mapperModel) {
         LDAPFederationMapper ldapMapper = (LDAPFederationMapper) getSession().getProvider(UserFederationMapper.class, mapperModel.getFederationMapperType());
         if (ldapMapper == null) {
@@ -27,6 +27,7 @@ import org.keycloak.federation.ldap.idm.model.LDAPObject;
 import org.keycloak.federation.ldap.idm.query.Condition;
 import org.keycloak.federation.ldap.idm.query.internal.LDAPQuery;
 import org.keycloak.federation.ldap.idm.query.internal.LDAPQueryConditionsBuilder;
+import org.keycloak.federation.ldap.idm.store.ldap.LDAPContextPool;
 import org.keycloak.federation.ldap.idm.store.ldap.LDAPIdentityStore;
 import org.keycloak.federation.ldap.mappers.FullNameLDAPFederationMapper;
 import org.keycloak.federation.ldap.mappers.FullNameLDAPFederationMapperFactory;
@@ -50,22 +51,43 @@ import org.keycloak.models.UserFederationSyncResult;
 import org.keycloak.models.UserFederationValidatingProviderFactory;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+import org.keycloak.timer.TimerProvider;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class LDAPFederationProviderFactory extends UserFederationEventAwareProviderFactory implements UserFederationValidatingProviderFactory {
+public class LDAPFederationProviderFactory extends UserFederationEventAwareProviderFactory implements UserFederationValidatingProviderFactory, ServerInfoAwareProviderFactory {
     private static final Logger logger = Logger.getLogger(LDAPFederationProviderFactory.class);
     public static final String PROVIDER_NAME = LDAPConstants.LDAP_PROVIDER;
 
-    private LDAPIdentityStoreRegistry ldapStoreRegistry;
+    private volatile LDAPIdentityStoreRegistry ldapStoreRegistry;
+
+    // Shared by all the syncs. Parallelism of every sync is limited by "syncThreads" of its federation provider
+    private ExecutorService syncExecutor;
+
+    private LDAPValidatedUsersCache validatedUsersCache;
+
+    private long connectionPoolEvictionInterval;
 
     @Override
     public UserFederationProvider create(KeycloakSession session) {
@@ -88,11 +110,87 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
     @Override
     public void init(Config.Scope config) {
         this.ldapStoreRegistry = new LDAPIdentityStoreRegistry();
+
+        long validationCacheTimeout = config.getLong("validationCacheTimeout", LDAPValidatedUsersCache.DEFAULT_TIMEOUT);
+        int validationCacheMaxSize = config.getInt("validationCacheMaxSize", LDAPValidatedUsersCache.DEFAULT_MAX_SIZE);
+        this.validatedUsersCache = new LDAPValidatedUsersCache(validationCacheTimeout, validationCacheMaxSize);
+
+        this.connectionPoolEvictionInterval = config.getLong("connectionPoolEvictionInterval", 60000L);
+
+        this.syncExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ldap-sync-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        super.postInit(factory);
+
+        // Idle connections are evicted when the pool is used. Evict them periodically also for the pools, which aren't used anymore
+        KeycloakSession session = factory.create();
+        try {
+            TimerProvider timer = session.getProvider(TimerProvider.class);
+            if (timer != null) {
+                timer.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        LDAPIdentityStoreRegistry registry = ldapStoreRegistry;
+                        if (registry != null) {
+                            try {
+                                registry.evictIdleConnections();
+                            } catch (RuntimeException e) {
+                                logger.error("Failed to evict idle LDAP connections", e);
+                            }
+                        }
+                    }
+
+                }, connectionPoolEvictionInterval, "LDAPConnectionPoolEviction");
+            }
+        } finally {
+            session.close();
+        }
     }
 
     @Override
     public void close() {
+        if (this.ldapStoreRegistry != null) {
+            this.ldapStoreRegistry.close();
+        }
         this.ldapStoreRegistry = null;
+
+        if (this.validatedUsersCache != null) {
+            this.validatedUsersCache.clear();
+        }
+
+        if (this.syncExecutor != null) {
+            this.syncExecutor.shutdownNow();
+        }
+    }
+
+    public LDAPValidatedUsersCache getValidatedUsersCache() {
+        return validatedUsersCache;
+    }
+
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        LDAPIdentityStoreRegistry registry = this.ldapStoreRegistry;
+        if (registry != null) {
+            for (Map.Entry<String, LDAPContextPool.Statistics> statistics : registry.getConnectionPoolStatistics().entrySet()) {
+                info.put(statistics.getKey(), statistics.getValue().toString());
+            }
+        }
+        return info;
     }
 
     @Override
@@ -280,33 +378,110 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         });
     }
 
+    /**
+     * Streams the users from LDAP page by page. While the users of one page are imported by the worker threads, the next page
+     * is fetched from LDAP, so at most two pages are kept in memory. Users are imported in batches, each batch in single
+     * transaction.
+     */
     protected UserFederationSyncResult syncImpl(KeycloakSessionFactory sessionFactory, LDAPQuery userQuery, final String realmId, final UserFederationProviderModel fedModel) {
 
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
 
         LDAPConfig ldapConfig = new LDAPConfig(fedModel.getConfig());
-        boolean pagination = ldapConfig.isPagination();
-        if (pagination) {
-            int pageSize = ldapConfig.getBatchSizeForSync();
+        int batchSize = ldapConfig.getBatchSizeForImport();
+        int threads = ldapConfig.getSyncThreads();
+
+        List<Future<UserFederationSyncResult>> previousPage = Collections.emptyList();
+        try {
+            boolean pagination = ldapConfig.isPagination();
+            if (pagination) {
+                int pageSize = ldapConfig.getBatchSizeForSync();
+                int pages = 0;
+
+                boolean nextPage = true;
+                while (nextPage) {
+                    userQuery.setLimit(pageSize);
+                    final List<LDAPObject> users = userQuery.getResultList();
+                    nextPage = userQuery.getPaginationContext() != null;
+
+                    // Wait for previous page before submitting next one, so the LDAP fetch overlaps with the import, but the
+                    // memory is bounded
+                    syncResult.add(awaitImport(previousPage));
+                    if (pages > 0) {
+                        logger.debugf("Sync of federation provider '%s': %d pages processed. %s", fedModel.getDisplayName(), pages, syncResult.getStatus());
+                    }
 
-            boolean nextPage = true;
-            while (nextPage) {
-                userQuery.setLimit(pageSize);
+                    previousPage = submitImport(sessionFactory, realmId, fedModel, users, batchSize, threads);
+                    pages++;
+                }
+
+                syncResult.add(awaitImport(previousPage));
+            } else {
+                // LDAP pagination not available. Load everything at once
                 final List<LDAPObject> users = userQuery.getResultList();
-                nextPage = userQuery.getPaginationContext() != null;
-                UserFederationSyncResult currentPageSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-                syncResult.add(currentPageSync);
+                previousPage = submitImport(sessionFactory, realmId, fedModel, users, batchSize, threads);
+                syncResult.add(awaitImport(previousPage));
             }
-        } else {
-            // LDAP pagination not available. Do everything in single transaction
-            final List<LDAPObject> users = userQuery.getResultList();
-            UserFederationSyncResult currentSync = importLdapUsers(sessionFactory, realmId, fedModel, users);
-            syncResult.add(currentSync);
+        } finally {
+            // Stop the import of the current page and release the LDAP connection of the paged search if the sync failed
+            for (Future<UserFederationSyncResult> future : previousPage) {
+                future.cancel(true);
+            }
+            userQuery.closePaginatedSearch();
         }
 
         return syncResult;
     }
 
+    /**
+     * Submit as many workers as is the number of threads. Workers import the batches of the page one by one
+     */
+    private List<Future<UserFederationSyncResult>> submitImport(final KeycloakSessionFactory sessionFactory, final String realmId,
+                                                                final UserFederationProviderModel fedModel, List<LDAPObject> users, int batchSize, int threads) {
+        final Queue<List<LDAPObject>> batches = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < users.size(); i += batchSize) {
+            batches.add(users.subList(i, Math.min(i + batchSize, users.size())));
+        }
+
+        List<Future<UserFederationSyncResult>> futures = new ArrayList<>();
+        int workers = Math.min(threads, batches.size());
+        for (int i = 0; i < workers; i++) {
+            futures.add(syncExecutor.submit(new Callable<UserFederationSyncResult>() {
+
+                @Override
+                public UserFederationSyncResult call() {
+                    UserFederationSyncResult result = new UserFederationSyncResult();
+                    List<LDAPObject> batch;
+                    while (!Thread.currentThread().isInterrupted() && (batch = batches.poll()) != null) {
+                        result.add(importLdapUsersBatch(sessionFactory, realmId, fedModel, batch));
+                    }
+                    return result;
+                }
+
+            }));
+        }
+        return futures;
+    }
+
+    private UserFederationSyncResult awaitImport(List<Future<UserFederationSyncResult>> futures) {
+        UserFederationSyncResult result = new UserFederationSyncResult();
+        for (Future<UserFederationSyncResult> future : futures) {
+            try {
+                result.add(future.get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new ModelException("Interrupted when waiting for import of users from LDAP", ie);
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ModelException("Failed during import users from LDAP", cause);
+            }
+        }
+        return result;
+    }
+
     private LDAPQuery createQuery(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel model) {
         class QueryHolder {
             LDAPQuery query;
@@ -326,12 +501,37 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return queryHolder.query;
     }
 
+    /**
+     * Import all the users in single transaction. If it fails, fallback to import each user in it's own transaction, so the
+     * failure of one user doesn't affect others.
+     */
+    protected UserFederationSyncResult importLdapUsersBatch(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, final List<LDAPObject> ldapUsers) {
+        if (ldapUsers.size() == 1) {
+            return importLdapUsers(sessionFactory, realmId, fedModel, ldapUsers);
+        }
+
+        final UserFederationSyncResult batchResult = new UserFederationSyncResult();
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    for (LDAPObject ldapUser : ldapUsers) {
+                        importLdapUser(session, realmId, fedModel, ldapUser, batchResult, new BooleanHolder());
+                    }
+                }
+
+            });
+            return batchResult;
+        } catch (ModelException me) {
+            logger.debugf(me, "Failed to import batch of %d users from LDAP. Importing them one by one", ldapUsers.size());
+            return importLdapUsers(sessionFactory, realmId, fedModel, ldapUsers);
+        }
+    }
+
     protected UserFederationSyncResult importLdapUsers(KeycloakSessionFactory sessionFactory, final String realmId, final UserFederationProviderModel fedModel, List<LDAPObject> ldapUsers) {
         final UserFederationSyncResult syncResult = new UserFederationSyncResult();
 
-        class BooleanHolder {
-            private boolean value = true;
-        }
         final BooleanHolder exists = new BooleanHolder();
 
         for (final LDAPObject ldapUser : ldapUsers) {
@@ -343,39 +543,7 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
 
                     @Override
                     public void run(KeycloakSession session) {
-                        LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
-                        RealmModel currentRealm = session.realms().getRealm(realmId);
-
-                        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        exists.value = true;
-                        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
-                        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
-
-                        if (currentUser == null) {
-
-                            // Add new user to Keycloak
-                            exists.value = false;
-                            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
-                            syncResult.increaseAdded();
-
-                        } else {
-                            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
-
-                                // Update keycloak user
-                                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
-                                List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
-                                for (UserFederationMapperModel mapperModel : sortedMappers) {
-                                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
-                                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
-                                }
-
-                                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
-                                syncResult.increaseUpdated();
-                            } else {
-                                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
-                                syncResult.increaseFailed();
-                            }
-                        }
+                        importLdapUser(session, realmId, fedModel, ldapUser, syncResult, exists);
                     }
 
                 });
@@ -413,6 +581,46 @@ public class LDAPFederationProviderFactory extends UserFederationEventAwareProvi
         return syncResult;
     }
 
+    private void importLdapUser(KeycloakSession session, String realmId, UserFederationProviderModel fedModel, LDAPObject ldapUser, UserFederationSyncResult syncResult, BooleanHolder exists) {
+        LDAPFederationProvider ldapFedProvider = getInstance(session, fedModel);
+        RealmModel currentRealm = session.realms().getRealm(realmId);
+
+        String username = LDAPUtils.getUsername(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        exists.value = true;
+        LDAPUtils.checkUuid(ldapUser, ldapFedProvider.getLdapIdentityStore().getConfig());
+        UserModel currentUser = session.userStorage().getUserByUsername(username, currentRealm);
+
+        if (currentUser == null) {
+
+            // Add new user to Keycloak
+            exists.value = false;
+            ldapFedProvider.importUserFromLDAP(session, currentRealm, ldapUser);
+            syncResult.increaseAdded();
+
+        } else {
+            if ((fedModel.getId().equals(currentUser.getFederationLink())) && (ldapUser.getUuid().equals(currentUser.getFirstAttribute(LDAPConstants.LDAP_ID)))) {
+
+                // Update keycloak user
+                Set<UserFederationMapperModel> federationMappers = currentRealm.getUserFederationMappersByFederationProvider(fedModel.getId());
+                List<UserFederationMapperModel> sortedMappers = ldapFedProvider.sortMappersDesc(federationMappers);
+                for (UserFederationMapperModel mapperModel : sortedMappers) {
+                    LDAPFederationMapper ldapMapper = ldapFedProvider.getMapper(mapperModel);
+                    ldapMapper.onImportUserFromLDAP(mapperModel, ldapFedProvider, ldapUser, currentUser, currentRealm, false);
+                }
+
+                logger.debugf("Updated user from LDAP: %s", currentUser.getUsername());
+                syncResult.increaseUpdated();
+            } else {
+                logger.warnf("User '%s' is not updated during sync as he already exists in Keycloak database but is not linked to federation provider '%s'", username, fedModel.getDisplayName());
+                syncResult.increaseFailed();
+            }
+        }
+    }
+
+    private static class BooleanHolder {
+        private boolean value = true;
+    }
+
     protected SPNEGOAuthenticator createSPNEGOAuthenticator(String spnegoToken, CommonKerberosConfig kerberosConfig) {
         KerberosServerSubjectAuthenticator kerberosAuth = createKerberosSubjectAuthenticator(kerberosConfig);
         return new SPNEGOAuthenticator(kerberosConfig, kerberosAuth, spnegoToken);
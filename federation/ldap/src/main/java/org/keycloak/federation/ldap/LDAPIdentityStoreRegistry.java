@@ -19,9 +19,11 @@ package org.keycloak.federation.ldap;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.jboss.logging.Logger;
+import org.keycloak.federation.ldap.idm.store.ldap.LDAPContextPool;
 import org.keycloak.federation.ldap.idm.store.ldap.LDAPIdentityStore;
 import org.keycloak.models.LDAPConstants;
 import org.keycloak.models.UserFederationProviderModel;
@@ -44,12 +46,51 @@ public class LDAPIdentityStoreRegistry {
             logLDAPConfig(model.getDisplayName(), config);
 
             LDAPIdentityStore store = createLdapIdentityStore(config);
-            context = new LDAPIdentityStoreContext(config, store);
-            ldapStores.put(model.getId(), context);
+            context = new LDAPIdentityStoreContext(model.getDisplayName(), config, store);
+            LDAPIdentityStoreContext previous = ldapStores.put(model.getId(), context);
+            if (previous != null) {
+                logConnectionPoolStatistics(model.getDisplayName(), previous.store);
+                previous.store.close();
+            }
         }
         return context.store;
     }
 
+    /**
+     * @return statistics of LDAP connection pools of all federation providers, which were already used, keyed by the display
+     * name of the provider and the name of the pool
+     */
+    public Map<String, LDAPContextPool.Statistics> getConnectionPoolStatistics() {
+        Map<String, LDAPContextPool.Statistics> statistics = new TreeMap<String, LDAPContextPool.Statistics>();
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            for (LDAPContextPool.Statistics poolStatistics : context.store.getConnectionPoolStatistics()) {
+                statistics.put(context.displayName + " " + poolStatistics.getName(), poolStatistics);
+            }
+        }
+        return statistics;
+    }
+
+    public void evictIdleConnections() {
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            context.store.evictIdleConnections();
+        }
+    }
+
+    public void close() {
+        for (LDAPIdentityStoreContext context : ldapStores.values()) {
+            context.store.close();
+        }
+        ldapStores.clear();
+    }
+
+    private void logConnectionPoolStatistics(String fedProviderDisplayName, LDAPIdentityStore store) {
+        if (logger.isDebugEnabled()) {
+            for (LDAPContextPool.Statistics statistics : store.getConnectionPoolStatistics()) {
+                logger.debugf("Closing connection pool %s of the Federation provider %s. %s", statistics.getName(), fedProviderDisplayName, statistics);
+            }
+        }
+    }
+
     // Don't log LDAP password
     private void logLDAPConfig(String fedProviderDisplayName, Map<String, String> ldapConfig) {
         Map<String, String> copy = new HashMap<String, String>(ldapConfig);
@@ -84,11 +125,13 @@ public class LDAPIdentityStoreRegistry {
 
     private class LDAPIdentityStoreContext {
 
-        private LDAPIdentityStoreContext(Map<String,String> config, LDAPIdentityStore store) {
+        private LDAPIdentityStoreContext(String displayName, Map<String,String> config, LDAPIdentityStore store) {
+            this.displayName = displayName;
             this.config = config;
             this.store = store;
         }
 
+        private String displayName;
         private Map<String,String> config;
         private LDAPIdentityStore store;
     }
@@ -248,11 +248,15 @@ public class LDAPUtils {
             List<LDAPObject> result = new LinkedList<>();
             boolean nextPage = true;
 
-            while (nextPage) {
-                ldapQuery.setLimit(pageSize);
-                final List<LDAPObject> currentPageGroups = ldapQuery.getResultList();
-                result.addAll(currentPageGroups);
-                nextPage = ldapQuery.getPaginationContext() != null;
+            try {
+                while (nextPage) {
+                    ldapQuery.setLimit(pageSize);
+                    final List<LDAPObject> currentPageGroups = ldapQuery.getResultList();
+                    result.addAll(currentPageGroups);
+                    nextPage = ldapQuery.getPaginationContext() != null;
+                }
+            } finally {
+                ldapQuery.closePaginatedSearch();
             }
 
             return result;
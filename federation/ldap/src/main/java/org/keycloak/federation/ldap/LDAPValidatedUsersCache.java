@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.keycloak.federation.ldap.idm.model.LDAPDn;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+import org.keycloak.models.LDAPConstants;
+import org.keycloak.models.UserModel;
+
+/**
+ * Short-lived cache of users recently validated against LDAP by the batch validation. It avoids repeated LDAP validation of
+ * the same users when admin goes back and forth through the pages of the users list.
+ *
+ * Cached entry is used just if the username and LDAP_ID of the local user are still same as when the user was validated.
+ * Changes done directly in LDAP may not be visible until the entry expires.
+ */
+public class LDAPValidatedUsersCache {
+
+    public static final long DEFAULT_TIMEOUT = 30000;
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final long timeout;
+    private final int maxSize;
+
+    // Key is federation provider ID + user ID
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public LDAPValidatedUsersCache(long timeout, int maxSize) {
+        this.timeout = timeout;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return copy of the LDAP object the user was validated with or null if user wasn't validated recently
+     */
+    public LDAPObject get(String providerId, UserModel local) {
+        if (timeout <= 0) {
+            return null;
+        }
+
+        String key = getKey(providerId, local.getId());
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiration < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+
+        if (!entry.username.equals(local.getUsername()) || !entry.ldapId.equals(local.getFirstAttribute(LDAPConstants.LDAP_ID))) {
+            entries.remove(key);
+            return null;
+        }
+
+        return copy(entry.ldapObject);
+    }
+
+    public void put(String providerId, UserModel local, LDAPObject ldapObject) {
+        if (timeout <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (entries.size() >= maxSize) {
+            removeExpired(now);
+            if (entries.size() >= maxSize) {
+                return;
+            }
+        }
+
+        entries.put(getKey(providerId, local.getId()), new Entry(local.getUsername(), ldapObject.getUuid(), copy(ldapObject), now + timeout));
+    }
+
+    public void remove(String providerId, String userId) {
+        entries.remove(getKey(providerId, userId));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiration < now) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String getKey(String providerId, String userId) {
+        return providerId + "/" + userId;
+    }
+
+    // Proxies may update the LDAP object, so every user of the cache needs its own copy
+    private static LDAPObject copy(LDAPObject ldapObject) {
+        LDAPObject copy = new LDAPObject();
+        copy.setUuid(ldapObject.getUuid());
+        if (ldapObject.getDn() != null) {
+            copy.setDn(LDAPDn.fromString(ldapObject.getDn().toString()));
+        }
+        copy.setRdnAttributeName(ldapObject.getRdnAttributeName());
+        copy.setObjectClasses(ldapObject.getObjectClasses());
+        for (String readOnlyAttribute : ldapObject.getReadOnlyAttributeNames()) {
+            copy.addReadOnlyAttributeName(readOnlyAttribute);
+        }
+        for (Map.Entry<String, Set<String>> attribute : ldapObject.getAttributes().entrySet()) {
+            copy.setAttribute(attribute.getKey(), new LinkedHashSet<>(attribute.getValue()));
+        }
+        return copy;
+    }
+
+    private static class Entry {
+
+        private final String username;
+        private final String ldapId;
+        private final LDAPObject ldapObject;
+        private final long expiration;
+
+        private Entry(String username, String ldapId, LDAPObject ldapObject, long expiration) {
+            this.username = username;
+            this.ldapId = ldapId;
+            this.ldapObject = ldapObject;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.naming.directory.SearchControls;
+import javax.naming.ldap.LdapContext;
 
 import org.keycloak.federation.ldap.LDAPFederationProvider;
 import org.keycloak.federation.ldap.idm.model.LDAPObject;
@@ -50,6 +51,8 @@ public class LDAPQuery {
     private int offset;
     private int limit;
     private byte[] paginationContext;
+    // Context of the paged search in progress. Paging cookie is valid just for the LDAP connection, which started the search
+    private LdapContext paginationLdapContext;
     private String searchDn;
     private final Set<Condition> conditions = new LinkedHashSet<Condition>();
     private final Set<Sort> ordering = new LinkedHashSet<Sort>();
@@ -149,6 +152,10 @@ public class LDAPQuery {
         return paginationContext;
     }
 
+    public LdapContext getPaginationLdapContext() {
+        return paginationLdapContext;
+    }
+
 
     public List<LDAPObject> getResultList() {
 
@@ -203,6 +210,18 @@ public class LDAPQuery {
         return this;
     }
 
+    public LDAPQuery setPaginationLdapContext(LdapContext paginationLdapContext) {
+        this.paginationLdapContext = paginationLdapContext;
+        return this;
+    }
+
+    /**
+     * Release the LDAP connection of the paged search, which wasn't read up to the last page. Does nothing if there is no such search
+     */
+    public void closePaginatedSearch() {
+        ldapFedProvider.getLdapIdentityStore().closePaginatedSearch(this);
+    }
+
     public Set<Condition> getConditions() {
         return this.conditions;
     }
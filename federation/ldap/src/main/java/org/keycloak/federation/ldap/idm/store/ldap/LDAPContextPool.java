@@ -0,0 +1,380 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
+
+import org.jboss.logging.Logger;
+
+/**
+ * <p>Bounded pool of LDAP contexts. It replaces the JDK built-in pooling (<code>com.sun.jndi.ldap.connect.pool</code>), which
+ * can't be bounded per federation provider, doesn't validate connections and doesn't provide any statistics.</p>
+ *
+ * <p>Contexts are borrowed in LIFO order, so the least recently used contexts stay at the end of the idle queue and are closed
+ * after being idle for longer than idle timeout. Context, which was idle for longer than validation interval, is validated with
+ * a base object search on the root entry before it's handed out. Idle contexts of the pools, which aren't used at all, are
+ * closed by the periodic {@link #evictIdle()}.</p>
+ */
+public class LDAPContextPool {
+
+    private static final Logger logger = Logger.getLogger(LDAPContextPool.class);
+
+    public static final long DEFAULT_MAX_WAIT = 30000;
+    public static final long DEFAULT_VALIDATION_INTERVAL = 30000;
+
+    private final String name;
+    private final ContextFactory factory;
+    private final int maxSize;
+    private final long maxWait;
+    private final long idleTimeout;
+    private final long validationInterval;
+
+    // guarded by this
+    private final Deque<IdleContext> idle = new ArrayDeque<IdleContext>();
+    private int total;
+    private boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+
+    public LDAPContextPool(String name, ContextFactory factory, int maxSize, long maxWait, long idleTimeout, long validationInterval) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size of LDAP connection pool must be positive");
+        }
+
+        this.name = name;
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.maxWait = maxWait;
+        this.idleTimeout = idleTimeout;
+        this.validationInterval = validationInterval;
+    }
+
+    /**
+     * Borrow idle context or create new one if pool is not full. Otherwise wait up to maxWait for some context to be released.
+     */
+    public LdapContext borrow() throws NamingException {
+        long deadline = System.currentTimeMillis() + maxWait;
+
+        while (true) {
+            IdleContext pooled = null;
+            boolean reserved = false;
+            List<IdleContext> expired = new ArrayList<IdleContext>();
+
+            synchronized (this) {
+                if (!closed) {
+                    expired = removeExpired(System.currentTimeMillis());
+                }
+
+                while (pooled == null && !closed) {
+                    pooled = idle.pollFirst();
+                    if (pooled == null) {
+                        if (total < maxSize) {
+                            total++;
+                            reserved = true;
+                            break;
+                        }
+
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            waitTimeouts.incrementAndGet();
+                            throw new NamingException("Timeout when waiting for connection from LDAP connection pool " + name);
+                        }
+                        try {
+                            wait(wait);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            throw new NamingException("Interrupted when waiting for connection from LDAP connection pool " + name);
+                        }
+                    }
+                }
+            }
+
+            for (IdleContext e : expired) {
+                closeContext(e.context);
+            }
+
+            if (reserved) {
+                return create();
+            } else if (pooled == null) {
+                // Pool was closed (for example after the change of federation provider configuration), but some threads
+                // may still use it. Serve them with contexts, which are closed when released
+                return factory.create();
+            }
+
+            if (System.currentTimeMillis() - pooled.lastUsed > validationInterval && !validate(pooled.context)) {
+                validationFailures.incrementAndGet();
+                destroy(pooled.context);
+                continue;
+            }
+
+            borrowed.incrementAndGet();
+            return pooled.context;
+        }
+    }
+
+    /**
+     * Return healthy context to the pool. Request controls set by the previous operation are removed.
+     */
+    public void release(LdapContext context) {
+        try {
+            context.setRequestControls(null);
+        } catch (NamingException ne) {
+            destroy(context);
+            return;
+        }
+
+        boolean close;
+        synchronized (this) {
+            close = closed;
+            if (!close) {
+                idle.offerFirst(new IdleContext(context, System.currentTimeMillis()));
+                notify();
+            }
+        }
+
+        if (close) {
+            closeContext(context);
+        }
+    }
+
+    /**
+     * Close the context, which can't be used anymore (for example due to communication error) and free its place in the pool.
+     */
+    public void destroy(LdapContext context) {
+        synchronized (this) {
+            if (!closed) {
+                total--;
+                notify();
+            }
+        }
+        closeContext(context);
+    }
+
+    /**
+     * Close idle contexts, which weren't used for longer than idle timeout
+     */
+    public void evictIdle() {
+        List<IdleContext> expired;
+        synchronized (this) {
+            expired = removeExpired(System.currentTimeMillis());
+        }
+        for (IdleContext e : expired) {
+            closeContext(e.context);
+        }
+    }
+
+    /**
+     * Close idle contexts. Contexts currently borrowed are closed when released
+     */
+    public void close() {
+        List<IdleContext> all;
+        synchronized (this) {
+            closed = true;
+            all = new ArrayList<IdleContext>(idle);
+            total = 0;
+            idle.clear();
+            notifyAll();
+        }
+        for (IdleContext e : all) {
+            closeContext(e.context);
+        }
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(name, maxSize, total - idle.size(), idle.size(), created.get(), destroyed.get(), borrowed.get(),
+                validationFailures.get(), idleEvictions.get(), waitTimeouts.get());
+    }
+
+    private LdapContext create() throws NamingException {
+        try {
+            LdapContext context = factory.create();
+            created.incrementAndGet();
+            borrowed.incrementAndGet();
+            return context;
+        } catch (NamingException | RuntimeException e) {
+            synchronized (this) {
+                if (!closed) {
+                    total--;
+                    notify();
+                }
+            }
+            throw e;
+        }
+    }
+
+    // Must be called with the lock held. Oldest idle contexts are at the end of the queue
+    private List<IdleContext> removeExpired(long now) {
+        List<IdleContext> expired = new ArrayList<IdleContext>();
+        Iterator<IdleContext> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            IdleContext e = it.next();
+            if (now - e.lastUsed <= idleTimeout) {
+                break;
+            }
+            it.remove();
+            total--;
+            expired.add(e);
+        }
+        if (!expired.isEmpty()) {
+            idleEvictions.addAndGet(expired.size());
+            notifyAll();
+        }
+        return expired;
+    }
+
+    private boolean validate(LdapContext context) {
+        NamingEnumeration<SearchResult> search = null;
+        try {
+            SearchControls controls = new SearchControls();
+            controls.setSearchScope(SearchControls.OBJECT_SCOPE);
+            controls.setReturningAttributes(new String[] { "1.1" });
+            controls.setTimeLimit(5000);
+
+            // Communication errors may be reported just when the result is read
+            search = context.search("", "(objectClass=*)", controls);
+            while (search.hasMore()) {
+                search.next();
+            }
+            return true;
+        } catch (NamingException ne) {
+            logger.debugf(ne, "Validation of LDAP connection from pool %s failed", name);
+            return false;
+        } finally {
+            if (search != null) {
+                try {
+                    search.close();
+                } catch (NamingException ignore) {
+                }
+            }
+        }
+    }
+
+    private void closeContext(LdapContext context) {
+        destroyed.incrementAndGet();
+        try {
+            context.close();
+        } catch (NamingException ne) {
+            logger.debugf(ne, "Could not close LDAP context from pool %s", name);
+        }
+    }
+
+    public interface ContextFactory {
+        LdapContext create() throws NamingException;
+    }
+
+    private static class IdleContext {
+
+        private final LdapContext context;
+        private final long lastUsed;
+
+        private IdleContext(LdapContext context, long lastUsed) {
+            this.context = context;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public static class Statistics {
+
+        private final String name;
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final long created;
+        private final long destroyed;
+        private final long borrowed;
+        private final long validationFailures;
+        private final long idleEvictions;
+        private final long waitTimeouts;
+
+        private Statistics(String name, int maxSize, int active, int idle, long created, long destroyed, long borrowed,
+                           long validationFailures, long idleEvictions, long waitTimeouts) {
+            this.name = name;
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.borrowed = borrowed;
+            this.validationFailures = validationFailures;
+            this.idleEvictions = idleEvictions;
+            this.waitTimeouts = waitTimeouts;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getDestroyed() {
+            return destroyed;
+        }
+
+        public long getBorrowed() {
+            return borrowed;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public long getIdleEvictions() {
+            return idleEvictions;
+        }
+
+        public long getWaitTimeouts() {
+            return waitTimeouts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("maxSize=%d, active=%d, idle=%d, created=%d, destroyed=%d, borrowed=%d, validationFailures=%d, idleEvictions=%d, waitTimeouts=%d",
+                    maxSize, active, idle, created, destroyed, borrowed, validationFailures, idleEvictions, waitTimeouts);
+        }
+    }
+}
@@ -80,6 +80,21 @@ public class LDAPIdentityStore implements IdentityStore {
         return this.config;
     }
 
+    public List<LDAPContextPool.Statistics> getConnectionPoolStatistics() {
+        return this.operationManager.getConnectionPoolStatistics();
+    }
+
+    public void evictIdleConnections() {
+        this.operationManager.evictIdleConnections();
+    }
+
+    /**
+     * Close pooled LDAP connections. Called when the store is replaced or the provider factory is closed
+     */
+    public void close() {
+        this.operationManager.close();
+    }
+
     @Override
     public void add(LDAPObject ldapObject) {
         // id will be assigned by the ldap server
@@ -188,6 +203,10 @@ public class LDAPIdentityStore implements IdentityStore {
         return resultCount;
     }
 
+    public void closePaginatedSearch(LDAPQuery identityQuery) {
+        this.operationManager.closePaginatedSearch(identityQuery);
+    }
+
     // *************** CREDENTIALS AND USER SPECIFIC STUFF
 
     @Override
@@ -31,10 +31,12 @@ import java.util.Set;
 
 import javax.naming.AuthenticationException;
 import javax.naming.Binding;
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
@@ -66,9 +68,72 @@ public class LDAPOperationManager {
     private final LDAPConfig config;
     private final Map<String, Object> connectionProperties;
 
+    // Pools for search/modify operations and for password validation. Null if connection pooling is disabled
+    private final LDAPContextPool contextPool;
+    private final LDAPContextPool authenticationPool;
+
     public LDAPOperationManager(LDAPConfig config) throws NamingException {
         this.config = config;
         this.connectionProperties = Collections.unmodifiableMap(createConnectionProperties());
+
+        if (config.isConnectionPooling()) {
+            String url = config.getConnectionUrl();
+            int maxSize = config.getConnectionPoolingMaxSize();
+            long idleTimeout = config.getConnectionPoolingIdleTimeout();
+
+            this.contextPool = new LDAPContextPool(url, new LDAPContextPool.ContextFactory() {
+
+                @Override
+                public LdapContext create() throws NamingException {
+                    return createLdapContext();
+                }
+
+            }, maxSize, LDAPContextPool.DEFAULT_MAX_WAIT, idleTimeout, LDAPContextPool.DEFAULT_VALIDATION_INTERVAL);
+
+            this.authenticationPool = new LDAPContextPool(url + " (authentication)", new LDAPContextPool.ContextFactory() {
+
+                @Override
+                public LdapContext create() throws NamingException {
+                    return createAuthenticationContext();
+                }
+
+            }, maxSize, LDAPContextPool.DEFAULT_MAX_WAIT, idleTimeout, LDAPContextPool.DEFAULT_VALIDATION_INTERVAL);
+        } else {
+            this.contextPool = null;
+            this.authenticationPool = null;
+        }
+    }
+
+    /**
+     * @return statistics of the connection pools or empty list if connection pooling is disabled
+     */
+    public List<LDAPContextPool.Statistics> getConnectionPoolStatistics() {
+        List<LDAPContextPool.Statistics> statistics = new ArrayList<LDAPContextPool.Statistics>();
+        if (contextPool != null) {
+            statistics.add(contextPool.getStatistics());
+            statistics.add(authenticationPool.getStatistics());
+        }
+        return statistics;
+    }
+
+    /**
+     * Close pooled connections, which weren't used for longer than idle timeout
+     */
+    public void evictIdleConnections() {
+        if (contextPool != null) {
+            contextPool.evictIdle();
+            authenticationPool.evictIdle();
+        }
+    }
+
+    /**
+     * Close pooled connections. Connections in use are closed once the operation finishes
+     */
+    public void close() {
+        if (contextPool != null) {
+            contextPool.close();
+            authenticationPool.close();
+        }
     }
 
     /**
@@ -183,48 +248,75 @@ public class LDAPOperationManager {
         }
     }
 
+    /**
+     * Read the next page of the paged search. Paging cookie is valid just for the connection, which started the search, so all
+     * the pages are read with the same context. The query keeps the context until the last page is read, the search fails or
+     * {@link #closePaginatedSearch(LDAPQuery)} is called.
+     */
     public List<SearchResult> searchPaginated(final String baseDN, final String filter, final LDAPQuery identityQuery) throws NamingException {
         final List<SearchResult> result = new ArrayList<SearchResult>();
         final SearchControls cons = getSearchControls(identityQuery.getReturningLdapAttributes(), identityQuery.getSearchScope());
 
+        LdapContext context = identityQuery.getPaginationLdapContext();
+        if (context == null) {
+            context = contextPool != null ? contextPool.borrow() : createLdapContext();
+        }
+        boolean finished = true;
+        boolean broken = true;
+
         try {
-            return execute(new LdapOperation<List<SearchResult>>() {
-                @Override
-                public List<SearchResult> execute(LdapContext context) throws NamingException {
-                    try {
-                        byte[] cookie = identityQuery.getPaginationContext();
-                        PagedResultsControl pagedControls = new PagedResultsControl(identityQuery.getLimit(), cookie, Control.CRITICAL);
-                        context.setRequestControls(new Control[] { pagedControls });
+            byte[] cookie = identityQuery.getPaginationContext();
+            PagedResultsControl pagedControls = new PagedResultsControl(identityQuery.getLimit(), cookie, Control.CRITICAL);
+            context.setRequestControls(new Control[] { pagedControls });
 
-                        NamingEnumeration<SearchResult> search = context.search(baseDN, filter, cons);
+            NamingEnumeration<SearchResult> search = context.search(baseDN, filter, cons);
 
-                        while (search.hasMoreElements()) {
-                            result.add(search.nextElement());
-                        }
+            while (search.hasMoreElements()) {
+                result.add(search.nextElement());
+            }
 
-                        search.close();
-
-                        Control[] responseControls = context.getResponseControls();
-                        if (responseControls != null) {
-                            for (Control respControl : responseControls) {
-                                if (respControl instanceof PagedResultsResponseControl) {
-                                    PagedResultsResponseControl prrc = (PagedResultsResponseControl)respControl;
-                                    cookie = prrc.getCookie();
-                                    identityQuery.setPaginationContext(cookie);
-                                }
-                            }
-                        }
+            search.close();
 
-                        return result;
-                    } catch (IOException ioe) {
-                        logger.errorf(ioe, "Could not query server with paginated query using DN [%s], filter [%s]", baseDN, filter);
-                        throw new NamingException(ioe.getMessage());
+            Control[] responseControls = context.getResponseControls();
+            if (responseControls != null) {
+                for (Control respControl : responseControls) {
+                    if (respControl instanceof PagedResultsResponseControl) {
+                        PagedResultsResponseControl prrc = (PagedResultsResponseControl)respControl;
+                        cookie = prrc.getCookie();
+                        identityQuery.setPaginationContext(cookie);
                     }
                 }
-            });
+            }
+
+            broken = false;
+            finished = identityQuery.getPaginationContext() == null;
+            return result;
+        } catch (IOException ioe) {
+            logger.errorf(ioe, "Could not query server with paginated query using DN [%s], filter [%s]", baseDN, filter);
+            throw new NamingException(ioe.getMessage());
         } catch (NamingException e) {
             logger.errorf(e, "Could not query server using DN [%s] and filter [%s]", baseDN, filter);
             throw e;
+        } finally {
+            if (finished) {
+                identityQuery.setPaginationLdapContext(null);
+                closeContext(context, broken);
+            } else {
+                identityQuery.setPaginationLdapContext(context);
+            }
+        }
+    }
+
+    /**
+     * Close the context of the paged search, which wasn't read up to the last page. Server may still keep the state of the search
+     * for the connection, so the connection isn't reused.
+     */
+    public void closePaginatedSearch(LDAPQuery identityQuery) {
+        LdapContext context = identityQuery.getPaginationLdapContext();
+        if (context != null) {
+            identityQuery.setPaginationLdapContext(null);
+            identityQuery.setPaginationContext(null);
+            closeContext(context, true);
         }
     }
 
@@ -342,6 +434,11 @@ public class LDAPOperationManager {
      *
      */
     public void authenticate(String dn, String password) throws AuthenticationException {
+        if (authenticationPool != null) {
+            authenticatePooled(dn, password);
+            return;
+        }
+
         InitialContext authCtx = null;
 
         try {
@@ -380,6 +477,60 @@ public class LDAPOperationManager {
         }
     }
 
+    /**
+     * Bind as the user on the connection from authentication pool. LDAPv3 allows to bind multiple times on the same connection,
+     * so no new TCP connection (and TLS handshake) is needed. Credentials are removed from the context environment afterwards,
+     * so the password isn't kept in the pool. The connection stays bound as the last user until it's re-bound by another
+     * authentication. Connection is closed after failed bind.
+     */
+    private void authenticatePooled(String dn, String password) throws AuthenticationException {
+        LdapContext authCtx = null;
+        boolean success = false;
+
+        try {
+            if (password == null || password.isEmpty()) {
+                throw new AuthenticationException("Empty password used");
+            }
+
+            authCtx = authenticationPool.borrow();
+            authCtx.addToEnvironment(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_SIMPLE);
+            authCtx.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            authCtx.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+            authCtx.reconnect(null);
+
+            success = true;
+        } catch (AuthenticationException ae) {
+            if (logger.isDebugEnabled()) {
+                logger.debugf(ae, "Authentication failed for DN [%s]", dn);
+            }
+
+            throw ae;
+        } catch (Exception e) {
+            logger.errorf(e, "Unexpected exception when validating password of DN [%s]", dn);
+            throw new AuthenticationException("Unexpected exception when validating password of user");
+        } finally {
+            if (authCtx != null) {
+                if (success && resetAuthenticationContext(authCtx)) {
+                    authenticationPool.release(authCtx);
+                } else {
+                    authenticationPool.destroy(authCtx);
+                }
+            }
+        }
+    }
+
+    private boolean resetAuthenticationContext(LdapContext authCtx) {
+        try {
+            authCtx.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
+            authCtx.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+            authCtx.addToEnvironment(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_NONE);
+            return true;
+        } catch (NamingException ne) {
+            logger.debugf(ne, "Could not reset authentication context");
+            return false;
+        }
+    }
+
     public void modifyAttributes(final String dn, final ModificationItem[] mods) {
         try {
             if (logger.isTraceEnabled()) {
@@ -473,6 +624,15 @@ public class LDAPOperationManager {
         return new InitialLdapContext(new Hashtable<Object, Object>(this.connectionProperties), null);
     }
 
+    // Connection without bind. It's bound as the user for each password validation
+    private LdapContext createAuthenticationContext() throws NamingException {
+        Hashtable<Object, Object> env = new Hashtable<Object, Object>(this.connectionProperties);
+        env.put(Context.SECURITY_AUTHENTICATION, LDAPConstants.AUTH_TYPE_NONE);
+        env.remove(Context.SECURITY_PRINCIPAL);
+        env.remove(Context.SECURITY_CREDENTIALS);
+        return new InitialLdapContext(env, null);
+    }
+
     private Map<String, Object> createConnectionProperties() {
         HashMap<String, Object> env = new HashMap<String, Object>();
 
@@ -504,9 +664,9 @@ public class LDAPOperationManager {
         String useTruststoreSpi = this.config.getUseTruststoreSpi();
         LDAPConstants.setTruststoreSpiIfNeeded(useTruststoreSpi, url, env);
 
-        String connectionPooling = this.config.getConnectionPooling();
-        if (connectionPooling != null) {
-            env.put("com.sun.jndi.ldap.connect.pool", connectionPooling);
+        // Connections are pooled by LDAPContextPool. Never pool them twice
+        if (this.config.getConnectionPooling() != null) {
+            env.put("com.sun.jndi.ldap.connect.pool", "false");
         }
 
         // Just dump the additional properties
@@ -529,6 +689,10 @@ public class LDAPOperationManager {
     }
 
     private <R> R execute(LdapOperation<R> operation) throws NamingException {
+        if (contextPool != null) {
+            return executePooled(operation);
+        }
+
         LdapContext context = null;
 
         try {
@@ -547,6 +711,37 @@ public class LDAPOperationManager {
         }
     }
 
+    private <R> R executePooled(LdapOperation<R> operation) throws NamingException {
+        LdapContext context = contextPool.borrow();
+        boolean broken = true;
+
+        try {
+            R result = operation.execute(context);
+            broken = false;
+            return result;
+        } catch (NamingException ne) {
+            // Errors like NameNotFoundException don't affect the connection
+            broken = ne instanceof CommunicationException || ne instanceof ServiceUnavailableException;
+            throw ne;
+        } finally {
+            closeContext(context, broken);
+        }
+    }
+
+    private void closeContext(LdapContext context, boolean broken) {
+        if (contextPool == null) {
+            try {
+                context.close();
+            } catch (NamingException ne) {
+                logger.error("Could not close Ldap context.", ne);
+            }
+        } else if (broken) {
+            contextPool.destroy(context);
+        } else {
+            contextPool.release(context);
+        }
+    }
+
     private interface LdapOperation<R> {
         R execute(LdapContext context) throws NamingException;
     }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.federation.ldap.idm.model.LDAPDn;
+import org.keycloak.federation.ldap.idm.model.LDAPObject;
+import org.keycloak.models.LDAPConstants;
+import org.keycloak.models.UserModel;
+
+public class LDAPValidatedUsersCacheTest {
+
+    @Test
+    public void testCopy() {
+        LDAPValidatedUsersCache cache = new LDAPValidatedUsersCache(60000, 10);
+        UserModel john = createUser("1", "john", "uuid-1");
+        cache.put("ldap", john, createLDAPObject("john", "uuid-1"));
+
+        LDAPObject cached = cache.get("ldap", john);
+        Assert.assertEquals("uuid-1", cached.getUuid());
+        Assert.assertEquals("uid=john,ou=People,dc=keycloak,dc=org", cached.getDn().toString());
+        Assert.assertEquals("John", cached.getAttributeAsString("givenName"));
+
+        // Updates of returned object are not visible to others
+        cached.setSingleAttribute("givenName", "Johny");
+        Assert.assertEquals("John", cache.get("ldap", john).getAttributeAsString("givenName"));
+
+        Assert.assertNull(cache.get("other-ldap", john));
+    }
+
+    @Test
+    public void testChangedUser() {
+        LDAPValidatedUsersCache cache = new LDAPValidatedUsersCache(60000, 10);
+        cache.put("ldap", createUser("1", "john", "uuid-1"), createLDAPObject("john", "uuid-1"));
+        Assert.assertNull(cache.get("ldap", createUser("1", "john", "uuid-2")));
+
+        cache.put("ldap", createUser("1", "john", "uuid-1"), createLDAPObject("john", "uuid-1"));
+        Assert.assertNull(cache.get("ldap", createUser("1", "johny", "uuid-1")));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        LDAPValidatedUsersCache cache = new LDAPValidatedUsersCache(1, 1);
+        UserModel john = createUser("1", "john", "uuid-1");
+        cache.put("ldap", john, createLDAPObject("john", "uuid-1"));
+        Thread.sleep(5);
+
+        Assert.assertNull(cache.get("ldap", john));
+
+        // Expired entries are removed when cache is full
+        cache.put("ldap", john, createLDAPObject("john", "uuid-1"));
+        Thread.sleep(5);
+        UserModel mary = createUser("2", "mary", "uuid-2");
+        cache.put("ldap", mary, createLDAPObject("mary", "uuid-2"));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        LDAPValidatedUsersCache cache = new LDAPValidatedUsersCache(60000, 1);
+        UserModel john = createUser("1", "john", "uuid-1");
+        UserModel mary = createUser("2", "mary", "uuid-2");
+        cache.put("ldap", john, createLDAPObject("john", "uuid-1"));
+        cache.put("ldap", mary, createLDAPObject("mary", "uuid-2"));
+
+        Assert.assertNotNull(cache.get("ldap", john));
+        Assert.assertNull(cache.get("ldap", mary));
+
+        cache.remove("ldap", "1");
+        Assert.assertNull(cache.get("ldap", john));
+    }
+
+    @Test
+    public void testDisabled() {
+        LDAPValidatedUsersCache cache = new LDAPValidatedUsersCache(0, 10);
+        UserModel john = createUser("1", "john", "uuid-1");
+        cache.put("ldap", john, createLDAPObject("john", "uuid-1"));
+
+        Assert.assertNull(cache.get("ldap", john));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    private static LDAPObject createLDAPObject(String username, String uuid) {
+        LDAPObject ldapObject = new LDAPObject();
+        ldapObject.setUuid(uuid);
+        ldapObject.setDn(LDAPDn.fromString("uid=" + username + ",ou=People,dc=keycloak,dc=org"));
+        ldapObject.setRdnAttributeName("uid");
+        ldapObject.setSingleAttribute("uid", username);
+        ldapObject.setSingleAttribute("givenName", "John");
+        return ldapObject;
+    }
+
+    private static UserModel createUser(final String id, final String username, final String ldapId) {
+        return (UserModel) Proxy.newProxyInstance(LDAPValidatedUsersCacheTest.class.getClassLoader(), new Class[] { UserModel.class }, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getId")) {
+                    return id;
+                } else if (name.equals("getUsername")) {
+                    return username;
+                } else if (name.equals("getFirstAttribute") && LDAPConstants.LDAP_ID.equals(args[0])) {
+                    return ldapId;
+                }
+                return null;
+            }
+        });
+    }
+}
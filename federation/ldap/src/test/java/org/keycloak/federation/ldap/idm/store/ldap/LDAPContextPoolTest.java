@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LDAPContextPoolTest {
+
+    @Test
+    public void testReuse() throws Exception {
+        TestFactory factory = new TestFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 100, 60000, 60000);
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1);
+        LdapContext ctx2 = pool.borrow();
+
+        Assert.assertSame(ctx1, ctx2);
+        Assert.assertEquals(1, factory.created);
+
+        LDAPContextPool.Statistics stats = pool.getStatistics();
+        Assert.assertEquals(1, stats.getActive());
+        Assert.assertEquals(0, stats.getIdle());
+        Assert.assertEquals(2, stats.getBorrowed());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        TestFactory factory = new TestFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 50, 60000, 60000);
+
+        pool.borrow();
+        LdapContext ctx2 = pool.borrow();
+
+        try {
+            pool.borrow();
+            Assert.fail("Not expected to borrow more than max size");
+        } catch (NamingException expected) {
+        }
+        Assert.assertEquals(1, pool.getStatistics().getWaitTimeouts());
+
+        pool.destroy(ctx2);
+        Assert.assertTrue(((TestContext) Proxy.getInvocationHandler(ctx2)).closed);
+
+        Assert.assertNotNull(pool.borrow());
+        Assert.assertEquals(3, factory.created);
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        TestFactory factory = new TestFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 100, 0, 60000);
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1);
+        Thread.sleep(5);
+        pool.evictIdle();
+
+        Assert.assertTrue(((TestContext) Proxy.getInvocationHandler(ctx1)).closed);
+        Assert.assertEquals(0, pool.getStatistics().getIdle());
+        Assert.assertEquals(1, pool.getStatistics().getIdleEvictions());
+    }
+
+    @Test
+    public void testValidation() throws Exception {
+        TestFactory factory = new TestFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 100, 60000, 0);
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1);
+        ((TestContext) Proxy.getInvocationHandler(ctx1)).broken = true;
+        Thread.sleep(5);
+
+        LdapContext ctx2 = pool.borrow();
+
+        Assert.assertNotSame(ctx1, ctx2);
+        Assert.assertTrue(((TestContext) Proxy.getInvocationHandler(ctx1)).closed);
+        Assert.assertEquals(1, pool.getStatistics().getValidationFailures());
+    }
+
+    @Test
+    public void testValidationReadsResult() throws Exception {
+        TestFactory factory = new TestFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 2, 100, 60000, 0);
+
+        LdapContext ctx1 = pool.borrow();
+        pool.release(ctx1);
+        ((TestContext) Proxy.getInvocationHandler(ctx1)).brokenResult = true;
+        Thread.sleep(5);
+
+        LdapContext ctx2 = pool.borrow();
+
+        Assert.assertNotSame(ctx1, ctx2);
+        Assert.assertTrue(((TestContext) Proxy.getInvocationHandler(ctx1)).closed);
+        Assert.assertEquals(1, pool.getStatistics().getValidationFailures());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        TestFactory factory = new TestFactory();
+        LDAPContextPool pool = new LDAPContextPool("test", factory, 1, 100, 60000, 60000);
+
+        LdapContext idle = pool.borrow();
+        pool.release(idle);
+        LdapContext borrowed = pool.borrow();
+        pool.close();
+
+        // Not bounded anymore and released contexts are closed
+        LdapContext afterClose = pool.borrow();
+        pool.release(borrowed);
+        pool.release(afterClose);
+
+        Assert.assertTrue(((TestContext) Proxy.getInvocationHandler(borrowed)).closed);
+        Assert.assertTrue(((TestContext) Proxy.getInvocationHandler(afterClose)).closed);
+        Assert.assertEquals(0, pool.getStatistics().getIdle());
+    }
+
+    private static class TestFactory implements LDAPContextPool.ContextFactory {
+
+        private int created;
+
+        @Override
+        public LdapContext create() throws NamingException {
+            created++;
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { LdapContext.class }, new TestContext());
+        }
+    }
+
+    private static class TestContext implements InvocationHandler {
+
+        private boolean closed;
+        private boolean broken;
+        private boolean brokenResult;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("close")) {
+                closed = true;
+            } else if (name.equals("search")) {
+                if (broken) {
+                    throw new CommunicationException("broken");
+                }
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { NamingEnumeration.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("hasMore") && brokenResult) {
+                            throw new CommunicationException("broken");
+                        }
+                        return method.getReturnType() == boolean.class ? false : null;
+                    }
+
+                });
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return null;
+        }
+    }
+}
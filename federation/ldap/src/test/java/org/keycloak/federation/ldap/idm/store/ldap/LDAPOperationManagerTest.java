@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.federation.ldap.idm.store.ldap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsResponseControl;
+import javax.naming.spi.InitialContextFactory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.federation.ldap.LDAPConfig;
+import org.keycloak.federation.ldap.idm.query.internal.LDAPQuery;
+import org.keycloak.models.LDAPConstants;
+
+public class LDAPOperationManagerTest {
+
+    // Contexts, which executed the searches, in the order of the searches
+    private static final List<TestContext> searches = new ArrayList<>();
+
+    // Count of pages returned by the server for each search
+    private static int pages;
+
+    private LDAPOperationManager operationManager;
+
+    @Before
+    public void before() throws NamingException {
+        searches.clear();
+        pages = 3;
+
+        Map<String, String> config = new HashMap<>();
+        config.put(LDAPConstants.CONNECTION_URL, "ldap://localhost:10389");
+        config.put(LDAPConstants.CONNECTION_POOLING, "true");
+        config.put(LDAPConstants.AUTH_TYPE, LDAPConstants.AUTH_TYPE_NONE);
+        operationManager = new LDAPOperationManager(new LDAPConfig(config) {
+
+            @Override
+            public String getFactoryName() {
+                return TestContextFactory.class.getName();
+            }
+
+        });
+    }
+
+    @Test
+    public void testPagesReadWithSameContext() throws NamingException {
+        LDAPQuery query = new LDAPQuery(null).setLimit(10);
+
+        for (int i = 0; i < pages; i++) {
+            operationManager.searchPaginated("dc=keycloak,dc=org", "(objectClass=*)", query);
+            Assert.assertEquals(i < pages - 1, query.getPaginationContext() != null);
+        }
+
+        Assert.assertEquals(pages, searches.size());
+        for (TestContext context : searches) {
+            Assert.assertSame(searches.get(0), context);
+        }
+
+        // Context is returned to the pool after the last page
+        Assert.assertNull(query.getPaginationLdapContext());
+        LDAPContextPool.Statistics stats = operationManager.getConnectionPoolStatistics().get(0);
+        Assert.assertEquals(1, stats.getIdle());
+        Assert.assertEquals(1, stats.getBorrowed());
+        Assert.assertFalse(searches.get(0).closed);
+    }
+
+    @Test
+    public void testClosePaginatedSearch() throws NamingException {
+        LDAPQuery query = new LDAPQuery(null).setLimit(10);
+
+        operationManager.searchPaginated("dc=keycloak,dc=org", "(objectClass=*)", query);
+        Assert.assertNotNull(query.getPaginationLdapContext());
+
+        // Connection of the search, which wasn't finished, isn't reused
+        operationManager.closePaginatedSearch(query);
+        Assert.assertNull(query.getPaginationLdapContext());
+        Assert.assertNull(query.getPaginationContext());
+        Assert.assertTrue(searches.get(0).closed);
+
+        LDAPContextPool.Statistics stats = operationManager.getConnectionPoolStatistics().get(0);
+        Assert.assertEquals(0, stats.getActive());
+        Assert.assertEquals(1, stats.getDestroyed());
+    }
+
+    public static class TestContextFactory implements InitialContextFactory {
+
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
+            return (Context) Proxy.newProxyInstance(LDAPOperationManagerTest.class.getClassLoader(), new Class[] { LdapContext.class },
+                    new TestContext());
+        }
+    }
+
+    private static class TestContext implements InvocationHandler {
+
+        private int page;
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "search":
+                    searches.add(this);
+                    page++;
+                    return emptyResult();
+                case "getResponseControls":
+                    // Cookie is empty for the last page
+                    byte[] cookie = page < pages ? new byte[] { (byte) page } : new byte[0];
+                    return new Control[] { new PagedResultsResponseControl(PagedResultsResponseControl.OID, false, encode(cookie)) };
+                case "close":
+                    closed = true;
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        }
+
+        private static NamingEnumeration<?> emptyResult() {
+            return (NamingEnumeration<?>) Proxy.newProxyInstance(LDAPOperationManagerTest.class.getClassLoader(), new Class[] { NamingEnumeration.class },
+                    new InvocationHandler() {
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            return method.getName().startsWith("has") ? false : null;
+                        }
+
+                    });
+        }
+
+        // BER encoded sequence of the result size and the cookie
+        private static byte[] encode(byte[] cookie) {
+            byte[] value = new byte[7 + cookie.length];
+            value[0] = 0x30;
+            value[1] = (byte) (5 + cookie.length);
+            value[2] = 0x02;
+            value[3] = 0x01;
+            value[4] = 0x00;
+            value[5] = 0x04;
+            value[6] = (byte) cookie.length;
+            System.arraycopy(cookie, 0, value, 7, cookie.length);
+            return value;
+        }
+    }
+}
@@ -41,6 +41,12 @@ public interface UsersResource {
                                            @QueryParam("first") Integer firstResult,
                                            @QueryParam("max") Integer maxResults);
 
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    List<UserRepresentation> searchByPrefix(@QueryParam("search") String search,
+                                            @QueryParam("after") String after,
+                                            @QueryParam("max") Integer maxResults);
+
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     Response create(UserRepresentation userRepresentation);
@@ -21,6 +21,8 @@ import org.infinispan.configuration.cache.CacheMode;
 import org.infinispan.configuration.cache.Configuration;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.eviction.EvictionType;
 import org.infinispan.manager.DefaultCacheManager;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.transaction.LockingMode;
@@ -30,8 +32,10 @@ import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.sessions.infinispan.marshall.SessionExternalizers;
 
 import javax.naming.InitialContext;
+import java.util.Arrays;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -46,6 +50,9 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
 
     protected boolean containerManaged;
 
+    // Estimated average size of the cached realm or user object, used to convert the max memory of the cache to the number of entries
+    protected static final long DEFAULT_ENTRY_SIZE = 2048;
+
     @Override
     public InfinispanConnectionProvider create(KeycloakSession session) {
         lazyInit();
@@ -113,6 +120,8 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
             gcb.transport().defaultTransport();
         }
         gcb.globalJmxStatistics().allowDuplicateDomains(allowDuplicateJMXDomains);
+        gcb.globalJmxStatistics().enabled(config.getBoolean("statistics", true));
+        SessionExternalizers.register(gcb);
 
         cacheManager = new DefaultCacheManager(gcb.build());
         containerManaged = false;
@@ -125,8 +134,8 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
         }
         Configuration invalidationCacheConfiguration = invalidationConfigBuilder.build();
 
-        cacheManager.defineConfiguration(InfinispanConnectionProvider.REALM_CACHE_NAME, invalidationCacheConfiguration);
-        cacheManager.defineConfiguration(InfinispanConnectionProvider.USER_CACHE_NAME, invalidationCacheConfiguration);
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.REALM_CACHE_NAME, getBoundedCacheConfiguration(invalidationCacheConfiguration, "realms"));
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.USER_CACHE_NAME, getBoundedCacheConfiguration(invalidationCacheConfiguration, "users"));
 
         ConfigurationBuilder sessionConfigBuilder = new ConfigurationBuilder();
         if (clustered) {
@@ -166,4 +175,49 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
         cacheManager.defineConfiguration(InfinispanConnectionProvider.VERSION_CACHE_NAME, counterCacheConfiguration);
     }
 
+    /**
+     * Realm and user caches are bounded, so they don't grow with every object ever looked up. The size is limited by the number of
+     * entries ("realmsMaxEntries", "usersMaxEntries") and optionally by the approximate memory in MB ("realmsMaxMemory",
+     * "usersMaxMemory"), which is converted to the number of entries with the estimated entry size ("realmsEntrySize",
+     * "usersEntrySize" in bytes). Entries not accessed for "realmsMaxIdle" or "usersMaxIdle" ms are expired. Hits, misses and
+     * evictions are exposed through JMX.
+     */
+    protected Configuration getBoundedCacheConfiguration(Configuration base, String cacheName) {
+        long maxEntries = getPositiveLong(cacheName + "MaxEntries", 10000L);
+        if (config.get(cacheName + "MaxMemory") != null) {
+            long maxMemory = getPositiveLong(cacheName + "MaxMemory", null);
+            long entrySize = getPositiveLong(cacheName + "EntrySize", DEFAULT_ENTRY_SIZE);
+            maxEntries = Math.max(1L, Math.min(maxEntries, maxMemory * 1024 * 1024 / entrySize));
+        }
+
+        String strategyName = config.get("evictionStrategy", EvictionStrategy.LIRS.name());
+        EvictionStrategy strategy;
+        try {
+            strategy = EvictionStrategy.valueOf(strategyName.trim().toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            throw new RuntimeException("Invalid value for evictionStrategy: " + strategyName + ". Valid values are " + Arrays.toString(EvictionStrategy.values()));
+        }
+
+        ConfigurationBuilder builder = new ConfigurationBuilder().read(base);
+        builder.eviction().strategy(strategy).type(EvictionType.COUNT).size(maxEntries);
+        builder.expiration().maxIdle(config.getLong(cacheName + "MaxIdle", -1L));
+        builder.jmxStatistics().enabled(config.getBoolean("statistics", true));
+
+        logger.debugv("Cache {0} limited to {1} entries with {2} eviction", cacheName, maxEntries, strategy);
+        return builder.build();
+    }
+
+    private long getPositiveLong(String key, Long defaultValue) {
+        Long value;
+        try {
+            value = config.getLong(key, defaultValue);
+        } catch (NumberFormatException nfe) {
+            throw new RuntimeException("Invalid value for " + key + ": " + config.get(key) + ". Must be a positive number");
+        }
+        if (value == null || value <= 0) {
+            throw new RuntimeException("Invalid value for " + key + ": " + value + ". Must be a positive number");
+        }
+        return value;
+    }
+
 }
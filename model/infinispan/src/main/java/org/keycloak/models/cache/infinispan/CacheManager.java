@@ -1,6 +1,8 @@
 package org.keycloak.models.cache.infinispan;
 
+import org.infinispan.AdvancedCache;
 import org.infinispan.Cache;
+import org.infinispan.context.Flag;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
 import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
@@ -8,11 +10,18 @@ import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEve
 import org.jboss.logging.Logger;
 import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.models.cache.infinispan.index.InvalidationIndex;
 
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 /**
@@ -24,11 +33,18 @@ public abstract class CacheManager {
     protected final Cache<String, Long> revisions;
     protected final Cache<String, Revisioned> cache;
     protected final UpdateCounter counter = new UpdateCounter();
+    protected final InvalidationIndex index;
+
+    // Number of batches run against the revisions cache and number of objects processed within them. Without batching
+    // every single object costs one batch (and one lock round for added objects)
+    protected final AtomicLong revisionBatches = new AtomicLong();
+    protected final AtomicLong revisionBatchObjects = new AtomicLong();
 
     public CacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         this.cache = cache;
         this.revisions = revisions;
         this.cache.addListener(this);
+        this.index = InvalidationIndex.register(cache);
     }
 
     public Cache<String, Revisioned> getCache() {
@@ -39,6 +55,13 @@ public abstract class CacheManager {
         return counter.current();
     }
 
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("revisionBatches", String.valueOf(revisionBatches.get()));
+        info.put("revisionBatchObjects", String.valueOf(revisionBatchObjects.get()));
+        return info;
+    }
+
     public Long getCurrentRevision(String id) {
         Long revision = revisions.get(id);
         if (revision == null) {
@@ -51,6 +74,22 @@ public abstract class CacheManager {
         return revision;
     }
 
+    /**
+     * Revision of the key, which doesn't belong to any cached object, but which is invalidated together with other objects.
+     * Unlike {@link #getCurrentRevision(String)}, missing revision is stored, so it doesn't change until the key is invalidated.
+     */
+    public long getMarkerRevision(String key) {
+        Long revision = revisions.get(key);
+        if (revision == null) {
+            Long current = counter.current();
+            revision = revisions.putIfAbsent(key, current);
+            if (revision == null) revision = current;
+        }
+        String invalidationKey = "invalidation.key" + key;
+        cache.putForExternalRead(invalidationKey, new AbstractRevisioned(-1L, invalidationKey));
+        return revision;
+    }
+
     public void endRevisionBatch() {
         try {
             revisions.endBatch(true);
@@ -91,68 +130,136 @@ public abstract class CacheManager {
         Object rev = revisions.put(id, next);
     }
 
-    public void addRevisioned(Revisioned object, long startupRevision) {
-        //startRevisionBatch();
-        String id = object.getId();
+    /**
+     * Invalidate all the objects and bump their revisions in single batch of the revisions cache.
+     */
+    public void invalidateObjects(Collection<String> ids) {
+        if (ids.isEmpty()) return;
+
+        AdvancedCache<String, Revisioned> c = cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES);
+        Map<String, Long> bumped = new HashMap<>();
+        for (String id : ids) {
+            c.remove(id);
+            // if you do cache.remove() on node 1 and the entry doesn't exist on node 2, node 2 never receives a invalidation event
+            // so, we do this to force the event.
+            c.remove("invalidation.key" + id);
+            bumped.put(id, counter.next());
+        }
+
+        revisions.startBatch();
         try {
-            //revisions.getAdvancedCache().lock(id);
-            Long rev = revisions.get(id);
-            if (rev == null) {
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.trace("addRevisioned rev == null realm.clients");
-                rev = counter.current();
-                revisions.put(id, rev);
-            }
-            revisions.startBatch();
-            if (!revisions.getAdvancedCache().lock(id)) {
-                RealmCacheManager.logger.trace("Could not obtain version lock");
-                return;
+            revisions.putAll(bumped);
+        } finally {
+            endRevisionBatch();
+        }
+        batchProcessed(bumped.size());
+    }
+
+    public void addRevisioned(Revisioned object, long startupRevision) {
+        addRevisioned(Collections.singletonList(object), startupRevision);
+    }
+
+    /**
+     * Add all the objects loaded by single transaction. Revisions of all of them are locked and checked in single batch.
+     */
+    public void addRevisioned(Collection<? extends Revisioned> objects, long startupRevision) {
+        if (objects.isEmpty()) return;
+
+        // sorted for lock ordering
+        Map<String, Revisioned> byId = new TreeMap<>();
+        for (Revisioned object : objects) {
+            byId.put(object.getId(), object);
+        }
+
+        Map<String, Long> current = revisions.getAdvancedCache().getAll(byId.keySet());
+        if (current.size() < byId.size()) {
+            Map<String, Long> missing = new HashMap<>();
+            for (String id : byId.keySet()) {
+                if (current.get(id) == null) missing.put(id, counter.current());
             }
-            rev = revisions.get(id);
-            if (rev == null) {
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.trace("addRevisioned rev2 == null realm.clients");
+            revisions.putAll(missing);
+        }
+
+        revisions.startBatch();
+        try {
+            if (!revisions.getAdvancedCache().lock(byId.keySet())) {
+                logger.trace("Could not obtain version locks");
                 return;
             }
-            if (rev > startupRevision) { // revision is ahead transaction start. Other transaction updated in the meantime. Don't cache
-                if (RealmCacheManager.logger.isTraceEnabled()) {
-                    RealmCacheManager.logger.tracev("Skipped cache. Current revision {0}, Transaction start revision {1}", object.getRevision(), startupRevision);
+            current = revisions.getAdvancedCache().getAll(byId.keySet());
+
+            Map<String, Long> updated = new HashMap<>();
+            for (Revisioned object : byId.values()) {
+                String id = object.getId();
+                Long rev = current.get(id);
+                if (rev == null) {
+                    continue;
                 }
-                return;
-            }
-            if (rev.equals(object.getRevision())) {
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.tracev("adding Object.revision {0} rev {1}", object.getRevision(), rev);
+                if (rev > startupRevision) { // revision is ahead transaction start. Other transaction updated in the meantime. Don't cache
+                    if (logger.isTraceEnabled()) {
+                        logger.tracev("Skipped cache. Current revision {0}, Transaction start revision {1}", object.getRevision(), startupRevision);
+                    }
+                    continue;
+                }
+                if (rev.equals(object.getRevision())) {
+                    cache.putForExternalRead(id, object);
+                    continue;
+                }
+                if (rev > object.getRevision()) { // revision is ahead, don't cache
+                    continue;
+                }
+                // revisions cache has a lower value than the object.revision, so update revision and add it to cache
+                updated.put(id, object.getRevision());
                 cache.putForExternalRead(id, object);
-                return;
             }
-            if (rev > object.getRevision()) { // revision is ahead, don't cache
-                if (id.endsWith("realm.clients")) RealmCacheManager.logger.trace("addRevisioned revision is ahead realm.clients");
-                return;
+            if (!updated.isEmpty()) {
+                revisions.putAll(updated);
             }
-            // revisions cache has a lower value than the object.revision, so update revision and add it to cache
-            if (id.endsWith("realm.clients")) RealmCacheManager.logger.tracev("adding Object.revision {0} rev {1}", object.getRevision(), rev);
-            revisions.put(id, object.getRevision());
-            cache.putForExternalRead(id, object);
         } finally {
             endRevisionBatch();
         }
+        batchProcessed(byId.size());
+    }
 
+    private void batchProcessed(int objects) {
+        long batches = revisionBatches.incrementAndGet();
+        long total = revisionBatchObjects.addAndGet(objects);
+        if (logger.isTraceEnabled()) {
+            logger.tracev("Revision batch of {0} objects. Total batches {1}, total objects {2}", objects, batches, total);
+        }
     }
 
     public void clear() {
         cache.clear();
     }
 
-    public void addInvalidations(Predicate<Map.Entry<String, Revisioned>> predicate, Set<String> invalidations) {
-        Iterator<Map.Entry<String, Revisioned>> it = getEntryIterator(predicate);
-        while (it.hasNext()) {
-            invalidations.add(it.next().getKey());
+    public InvalidationIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Add keys of the candidates, which match the predicate. Candidates are looked up from the {@link InvalidationIndex}, so
+     * just the affected entries are checked instead of the whole cache.
+     */
+    public void addInvalidations(Collection<String> candidates, Predicate<Map.Entry<String, Revisioned>> predicate, Set<String> invalidations) {
+        for (String key : candidates) {
+            Revisioned value = cache.get(key);
+            if (value != null && predicate.test(new AbstractMap.SimpleImmutableEntry<>(key, value))) {
+                invalidations.add(key);
+            }
         }
     }
 
-    private Iterator<Map.Entry<String, Revisioned>> getEntryIterator(Predicate<Map.Entry<String, Revisioned>> predicate) {
-        return cache
-                .entrySet()
-                .stream()
-                .filter(predicate).iterator();
+    /**
+     * Add keys of the objects loaded by current transaction, which match the predicate. Those are not in the cache yet, so
+     * {@link #addInvalidations(Collection, Predicate, Set)} can't see them.
+     */
+    public static void addPendingInvalidations(Map<String, Revisioned> pending, Predicate<Map.Entry<String, Revisioned>> predicate, Set<String> invalidations) {
+        for (Map.Entry<String, Revisioned> entry : pending.entrySet()) {
+            if (predicate.test(entry)) {
+                invalidations.add(entry.getKey());
+            }
+        }
     }
 
     @CacheEntryInvalidated
@@ -183,8 +290,7 @@ public abstract class CacheManager {
             Object object = event.getValue();
             if (object != null) {
                 bumpVersion(key);
-                Predicate<Map.Entry<String, Revisioned>> predicate = getInvalidationPredicate(object);
-                if (predicate != null) runEvictions(predicate);
+                runEvictions(object);
                 RealmCacheManager.logger.tracev("invalidating: {0}" + object.getClass().getName());
             }
         }
@@ -198,14 +304,13 @@ public abstract class CacheManager {
             bumpVersion(entry.getKey());
             if (object == null) continue;
             RealmCacheManager.logger.tracev("evicting: {0}" + object.getClass().getName());
-            Predicate<Map.Entry<String, Revisioned>> predicate = getInvalidationPredicate(object);
-            if (predicate != null) runEvictions(predicate);
+            runEvictions(object);
         }
     }
 
-    public void runEvictions(Predicate<Map.Entry<String, Revisioned>> current) {
+    public void runEvictions(Object object) {
         Set<String> evictions = new HashSet<>();
-        addInvalidations(current, evictions);
+        addDependentInvalidations(object, evictions);
         RealmCacheManager.logger.tracev("running evictions size: {0}", evictions.size());
         for (String key : evictions) {
             cache.evict(key);
@@ -213,5 +318,8 @@ public abstract class CacheManager {
         }
     }
 
-    protected abstract Predicate<Map.Entry<String, Revisioned>> getInvalidationPredicate(Object object);
+    /**
+     * Add keys of the entries, which depend on the invalidated or evicted object
+     */
+    protected abstract void addDependentInvalidations(Object object, Set<String> invalidations);
 }
@@ -26,17 +26,24 @@ import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CacheRealmProviderFactory;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFactory {
+public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final Logger log = Logger.getLogger(InfinispanCacheRealmProviderFactory.class);
 
     protected volatile RealmCacheManager realmCache;
 
+    // Max number of entries of single realm in the cache on this node. Disabled if not positive
+    protected int realmQuota;
+
     @Override
     public CacheRealmProvider create(KeycloakSession session) {
         lazyInit(session);
@@ -50,6 +57,9 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
                     Cache<String, Revisioned> cache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.REALM_CACHE_NAME);
                     Cache<String, Long> revisions = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.VERSION_CACHE_NAME);
                     realmCache = new RealmCacheManager(cache, revisions);
+                    if (realmQuota > 0) {
+                        RealmQuota.register(cache, realmQuota);
+                    }
                 }
             }
         }
@@ -57,6 +67,7 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
 
     @Override
     public void init(Config.Scope config) {
+        realmQuota = config.getInt("realmQuota", -1);
     }
 
     @Override
@@ -68,6 +79,16 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
     public void close() {
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        RealmCacheManager cacheManager = realmCache;
+        if (cacheManager != null) {
+            info.putAll(cacheManager.getOperationalInfo());
+        }
+        return info;
+    }
+
     @Override
     public String getId() {
         return "default";
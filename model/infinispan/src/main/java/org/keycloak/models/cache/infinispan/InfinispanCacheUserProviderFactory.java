@@ -30,18 +30,24 @@ import org.keycloak.models.cache.CacheUserProvider;
 import org.keycloak.models.cache.CacheUserProviderFactory;
 import org.keycloak.models.cache.infinispan.entities.CachedUser;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class InfinispanCacheUserProviderFactory implements CacheUserProviderFactory {
+public class InfinispanCacheUserProviderFactory implements CacheUserProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final Logger log = Logger.getLogger(InfinispanCacheUserProviderFactory.class);
 
     protected volatile UserCacheManager userCache;
 
+    // Max number of entries of single realm in the cache on this node. Disabled if not positive
+    protected int realmQuota;
+
 
 
     @Override
@@ -57,6 +63,9 @@ public class InfinispanCacheUserProviderFactory implements CacheUserProviderFact
                     Cache<String, Revisioned> cache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.USER_CACHE_NAME);
                     Cache<String, Long> revisions = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.VERSION_CACHE_NAME);
                     userCache = new UserCacheManager(cache, revisions);
+                    if (realmQuota > 0) {
+                        RealmQuota.register(cache, realmQuota);
+                    }
                 }
             }
         }
@@ -64,6 +73,7 @@ public class InfinispanCacheUserProviderFactory implements CacheUserProviderFact
 
     @Override
     public void init(Config.Scope config) {
+        realmQuota = config.getInt("realmQuota", -1);
     }
 
     @Override
@@ -75,6 +85,16 @@ public class InfinispanCacheUserProviderFactory implements CacheUserProviderFact
     public void close() {
     }
 
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        UserCacheManager cacheManager = userCache;
+        if (cacheManager != null) {
+            info.putAll(cacheManager.getOperationalInfo());
+        }
+        return info;
+    }
+
     @Override
     public String getId() {
         return "default";
@@ -22,6 +22,9 @@ import org.keycloak.common.enums.SslRequired;
 import org.keycloak.models.*;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.infinispan.entities.CachedRealm;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmAuthentication;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmIdentityProviders;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmUserFederation;
 import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.security.Key;
@@ -38,6 +41,10 @@ public class RealmAdapter implements RealmModel {
     protected CachedRealm cached;
     protected RealmCacheSession cacheSession;
     protected RealmModel updated;
+    protected RealmModel delegate;
+    protected CachedRealmIdentityProviders cachedIdentityProviders;
+    protected CachedRealmAuthentication cachedAuthentication;
+    protected CachedRealmUserFederation cachedUserFederation;
     protected RealmCache cache;
     protected volatile transient PublicKey publicKey;
     protected volatile transient PrivateKey privateKey;
@@ -52,7 +59,7 @@ public class RealmAdapter implements RealmModel {
     protected void getDelegateForUpdate() {
         if (updated == null) {
             cacheSession.registerRealmInvalidation(cached.getId());
-            updated = cacheSession.getDelegate().getRealm(cached.getId());
+            updated = delegate != null ? delegate : cacheSession.getDelegate().getRealm(cached.getId());
             if (updated == null) throw new IllegalStateException("Not found in database");
         }
     }
@@ -70,6 +77,56 @@ public class RealmAdapter implements RealmModel {
         return true;
     }
 
+    /**
+     * Identity providers, authentication flows and user federation are cached separately from the realm, so changing
+     * one of them invalidates just that part. They are read and written through this delegate, which doesn't invalidate
+     * the realm itself.
+     */
+    protected RealmModel getDelegate() {
+        if (isUpdated()) return updated;
+        if (delegate == null) {
+            delegate = cacheSession.getDelegate().getRealm(cached.getId());
+            if (delegate == null) throw new IllegalStateException("Not found in database");
+        }
+        return delegate;
+    }
+
+    protected CachedRealmIdentityProviders getCachedIdentityProviders() {
+        if (isUpdated()) return null;
+        if (cachedIdentityProviders == null) cachedIdentityProviders = cacheSession.getRealmIdentityProviders(cached.getId());
+        return cachedIdentityProviders;
+    }
+
+    protected RealmModel getDelegateForIdentityProvidersUpdate() {
+        cachedIdentityProviders = null;
+        cacheSession.registerRealmPartInvalidation(cacheSession.getRealmIdentityProvidersCacheKey(cached.getId()));
+        return getDelegate();
+    }
+
+    protected CachedRealmAuthentication getCachedAuthentication() {
+        if (isUpdated()) return null;
+        if (cachedAuthentication == null) cachedAuthentication = cacheSession.getRealmAuthentication(cached.getId());
+        return cachedAuthentication;
+    }
+
+    protected RealmModel getDelegateForAuthenticationUpdate() {
+        cachedAuthentication = null;
+        cacheSession.registerRealmPartInvalidation(cacheSession.getRealmAuthenticationCacheKey(cached.getId()));
+        return getDelegate();
+    }
+
+    protected CachedRealmUserFederation getCachedUserFederation() {
+        if (isUpdated()) return null;
+        if (cachedUserFederation == null) cachedUserFederation = cacheSession.getRealmUserFederation(cached.getId());
+        return cachedUserFederation;
+    }
+
+    protected RealmModel getDelegateForUserFederationUpdate() {
+        cachedUserFederation = null;
+        cacheSession.registerRealmPartInvalidation(cacheSession.getRealmUserFederationCacheKey(cached.getId()));
+        return getDelegate();
+    }
+
 
     @Override
     public String getId() {
@@ -673,14 +730,16 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public List<IdentityProviderModel> getIdentityProviders() {
-        if (isUpdated()) return updated.getIdentityProviders();
-        return cached.getIdentityProviders();
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().getIdentityProviders();
+        return identityProviders.getIdentityProviders();
     }
 
     @Override
     public IdentityProviderModel getIdentityProviderByAlias(String alias) {
-        if (isUpdated()) return updated.getIdentityProviderByAlias(alias);
-        for (IdentityProviderModel identityProviderModel : getIdentityProviders()) {
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().getIdentityProviderByAlias(alias);
+        for (IdentityProviderModel identityProviderModel : identityProviders.getIdentityProviders()) {
             if (identityProviderModel.getAlias().equals(alias)) {
                 return identityProviderModel;
             }
@@ -691,51 +750,45 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public void addIdentityProvider(IdentityProviderModel identityProvider) {
-        getDelegateForUpdate();
-        updated.addIdentityProvider(identityProvider);
+        getDelegateForIdentityProvidersUpdate().addIdentityProvider(identityProvider);
     }
 
     @Override
     public void updateIdentityProvider(IdentityProviderModel identityProvider) {
-        getDelegateForUpdate();
-        updated.updateIdentityProvider(identityProvider);
+        getDelegateForIdentityProvidersUpdate().updateIdentityProvider(identityProvider);
     }
 
     @Override
     public void removeIdentityProviderByAlias(String alias) {
-        getDelegateForUpdate();
-        updated.removeIdentityProviderByAlias(alias);
+        getDelegateForIdentityProvidersUpdate().removeIdentityProviderByAlias(alias);
     }
 
     @Override
     public List<UserFederationProviderModel> getUserFederationProviders() {
-        if (isUpdated()) return updated.getUserFederationProviders();
-        return cached.getUserFederationProviders();
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+        if (userFederation == null) return getDelegate().getUserFederationProviders();
+        return userFederation.getUserFederationProviders();
     }
 
     @Override
     public void setUserFederationProviders(List<UserFederationProviderModel> providers) {
-        getDelegateForUpdate();
-        updated.setUserFederationProviders(providers);
+        getDelegateForUserFederationUpdate().setUserFederationProviders(providers);
     }
 
     @Override
     public UserFederationProviderModel addUserFederationProvider(String providerName, Map<String, String> config, int priority, String displayName, int fullSyncPeriod, int changedSyncPeriod, int lastSync) {
-        getDelegateForUpdate();
-        return updated.addUserFederationProvider(providerName, config, priority, displayName, fullSyncPeriod, changedSyncPeriod, lastSync);
+        return getDelegateForUserFederationUpdate().addUserFederationProvider(providerName, config, priority, displayName, fullSyncPeriod, changedSyncPeriod, lastSync);
     }
 
     @Override
     public void removeUserFederationProvider(UserFederationProviderModel provider) {
-        getDelegateForUpdate();
-        updated.removeUserFederationProvider(provider);
+        getDelegateForUserFederationUpdate().removeUserFederationProvider(provider);
 
     }
 
     @Override
     public void updateUserFederationProvider(UserFederationProviderModel provider) {
-        getDelegateForUpdate();
-        updated.updateUserFederationProvider(provider);
+        getDelegateForUserFederationUpdate().updateUserFederationProvider(provider);
 
     }
 
@@ -927,8 +980,9 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public boolean isIdentityFederationEnabled() {
-        if (isUpdated()) return updated.isIdentityFederationEnabled();
-        return cached.isIdentityFederationEnabled();
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().isIdentityFederationEnabled();
+        return identityProviders.isIdentityFederationEnabled();
     }
 
 
@@ -983,15 +1037,17 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public Set<IdentityProviderMapperModel> getIdentityProviderMappers() {
-        if (isUpdated()) return updated.getIdentityProviderMappers();
-        return cached.getIdentityProviderMapperSet();
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().getIdentityProviderMappers();
+        return identityProviders.getIdentityProviderMapperSet();
     }
 
     @Override
     public Set<IdentityProviderMapperModel> getIdentityProviderMappersByAlias(String brokerAlias) {
-        if (isUpdated()) return updated.getIdentityProviderMappersByAlias(brokerAlias);
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().getIdentityProviderMappersByAlias(brokerAlias);
         Set<IdentityProviderMapperModel> mappings = new HashSet<>();
-        List<IdentityProviderMapperModel> list = cached.getIdentityProviderMappers().getList(brokerAlias);
+        List<IdentityProviderMapperModel> list = identityProviders.getIdentityProviderMappers().getList(brokerAlias);
         for (IdentityProviderMapperModel entity : list) {
             mappings.add(entity);
         }
@@ -1000,26 +1056,24 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public IdentityProviderMapperModel addIdentityProviderMapper(IdentityProviderMapperModel model) {
-        getDelegateForUpdate();
-        return updated.addIdentityProviderMapper(model);
+        return getDelegateForIdentityProvidersUpdate().addIdentityProviderMapper(model);
     }
 
     @Override
     public void removeIdentityProviderMapper(IdentityProviderMapperModel mapping) {
-        getDelegateForUpdate();
-        updated.removeIdentityProviderMapper(mapping);
+        getDelegateForIdentityProvidersUpdate().removeIdentityProviderMapper(mapping);
     }
 
     @Override
     public void updateIdentityProviderMapper(IdentityProviderMapperModel mapping) {
-        getDelegateForUpdate();
-        updated.updateIdentityProviderMapper(mapping);
+        getDelegateForIdentityProvidersUpdate().updateIdentityProviderMapper(mapping);
     }
 
     @Override
     public IdentityProviderMapperModel getIdentityProviderMapperById(String id) {
-        if (isUpdated()) return updated.getIdentityProviderMapperById(id);
-        for (List<IdentityProviderMapperModel> models : cached.getIdentityProviderMappers().values()) {
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().getIdentityProviderMapperById(id);
+        for (List<IdentityProviderMapperModel> models : identityProviders.getIdentityProviderMappers().values()) {
             for (IdentityProviderMapperModel model : models) {
                 if (model.getId().equals(id)) return model;
             }
@@ -1029,8 +1083,9 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public IdentityProviderMapperModel getIdentityProviderMapperByName(String alias, String name) {
-        if (isUpdated()) return updated.getIdentityProviderMapperByName(alias, name);
-        List<IdentityProviderMapperModel> models = cached.getIdentityProviderMappers().getList(alias);
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        if (identityProviders == null) return getDelegate().getIdentityProviderMapperByName(alias, name);
+        List<IdentityProviderMapperModel> models = identityProviders.getIdentityProviderMappers().getList(alias);
         if (models == null) return null;
         for (IdentityProviderMapperModel model : models) {
             if (model.getName().equals(name)) return model;
@@ -1040,15 +1095,17 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public Set<UserFederationMapperModel> getUserFederationMappers() {
-        if (isUpdated()) return updated.getUserFederationMappers();
-        return cached.getUserFederationMapperSet();
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+        if (userFederation == null) return getDelegate().getUserFederationMappers();
+        return userFederation.getUserFederationMapperSet();
     }
 
     @Override
     public Set<UserFederationMapperModel> getUserFederationMappersByFederationProvider(String federationProviderId) {
-        if (isUpdated()) return updated.getUserFederationMappersByFederationProvider(federationProviderId);
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+        if (userFederation == null) return getDelegate().getUserFederationMappersByFederationProvider(federationProviderId);
         Set<UserFederationMapperModel> mappers = new HashSet<>();
-        List<UserFederationMapperModel> list = cached.getUserFederationMappers().getList(federationProviderId);
+        List<UserFederationMapperModel> list = userFederation.getUserFederationMappers().getList(federationProviderId);
         for (UserFederationMapperModel entity : list) {
             mappers.add(entity);
         }
@@ -1057,26 +1114,24 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public UserFederationMapperModel addUserFederationMapper(UserFederationMapperModel mapper) {
-        getDelegateForUpdate();
-        return updated.addUserFederationMapper(mapper);
+        return getDelegateForUserFederationUpdate().addUserFederationMapper(mapper);
     }
 
     @Override
     public void removeUserFederationMapper(UserFederationMapperModel mapper) {
-        getDelegateForUpdate();
-        updated.removeUserFederationMapper(mapper);
+        getDelegateForUserFederationUpdate().removeUserFederationMapper(mapper);
     }
 
     @Override
     public void updateUserFederationMapper(UserFederationMapperModel mapper) {
-        getDelegateForUpdate();
-        updated.updateUserFederationMapper(mapper);
+        getDelegateForUserFederationUpdate().updateUserFederationMapper(mapper);
     }
 
     @Override
     public UserFederationMapperModel getUserFederationMapperById(String id) {
-        if (isUpdated()) return updated.getUserFederationMapperById(id);
-        for (List<UserFederationMapperModel> models : cached.getUserFederationMappers().values()) {
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+        if (userFederation == null) return getDelegate().getUserFederationMapperById(id);
+        for (List<UserFederationMapperModel> models : userFederation.getUserFederationMappers().values()) {
             for (UserFederationMapperModel model : models) {
                 if (model.getId().equals(id)) return model;
             }
@@ -1086,8 +1141,9 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public UserFederationMapperModel getUserFederationMapperByName(String federationProviderId, String name) {
-        if (isUpdated()) return updated.getUserFederationMapperByName(federationProviderId, name);
-        List<UserFederationMapperModel> models = cached.getUserFederationMappers().getList(federationProviderId);
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+        if (userFederation == null) return getDelegate().getUserFederationMapperByName(federationProviderId, name);
+        List<UserFederationMapperModel> models = userFederation.getUserFederationMappers().getList(federationProviderId);
         if (models == null) return null;
         for (UserFederationMapperModel model : models) {
             if (model.getName().equals(name)) return model;
@@ -1098,7 +1154,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public AuthenticationFlowModel getBrowserFlow() {
         if (isUpdated()) return updated.getBrowserFlow();
-        return cached.getBrowserFlow();
+        return getBoundFlow(cached.getBrowserFlowId());
     }
 
     @Override
@@ -1111,7 +1167,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public AuthenticationFlowModel getRegistrationFlow() {
         if (isUpdated()) return updated.getRegistrationFlow();
-        return cached.getRegistrationFlow();
+        return getBoundFlow(cached.getRegistrationFlowId());
     }
 
     @Override
@@ -1124,7 +1180,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public AuthenticationFlowModel getDirectGrantFlow() {
         if (isUpdated()) return updated.getDirectGrantFlow();
-        return cached.getDirectGrantFlow();
+        return getBoundFlow(cached.getDirectGrantFlowId());
     }
 
     @Override
@@ -1136,7 +1192,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public AuthenticationFlowModel getResetCredentialsFlow() {
         if (isUpdated()) return updated.getResetCredentialsFlow();
-        return cached.getResetCredentialsFlow();
+        return getBoundFlow(cached.getResetCredentialsFlowId());
     }
 
     @Override
@@ -1149,7 +1205,7 @@ public class RealmAdapter implements RealmModel {
     @Override
     public AuthenticationFlowModel getClientAuthenticationFlow() {
         if (isUpdated()) return updated.getClientAuthenticationFlow();
-        return cached.getClientAuthenticationFlow();
+        return getBoundFlow(cached.getClientAuthenticationFlowId());
     }
 
     @Override
@@ -1158,10 +1214,16 @@ public class RealmAdapter implements RealmModel {
         updated.setClientAuthenticationFlow(flow);
     }
 
+    protected AuthenticationFlowModel getBoundFlow(String flowId) {
+        if (flowId == null) return null;
+        return getAuthenticationFlowById(flowId);
+    }
+
     @Override
     public List<AuthenticationFlowModel> getAuthenticationFlows() {
-        if (isUpdated()) return updated.getAuthenticationFlows();
-        return cached.getAuthenticationFlowList();
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getAuthenticationFlows();
+        return authentication.getAuthenticationFlowList();
     }
 
     @Override
@@ -1187,132 +1249,128 @@ public class RealmAdapter implements RealmModel {
 
     @Override
     public AuthenticationFlowModel addAuthenticationFlow(AuthenticationFlowModel model) {
-        getDelegateForUpdate();
-        return updated.addAuthenticationFlow(model);
+        return getDelegateForAuthenticationUpdate().addAuthenticationFlow(model);
     }
 
     @Override
     public AuthenticationFlowModel getAuthenticationFlowById(String id) {
-        if (isUpdated()) return updated.getAuthenticationFlowById(id);
-        return cached.getAuthenticationFlows().get(id);
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getAuthenticationFlowById(id);
+        return authentication.getAuthenticationFlows().get(id);
     }
 
     @Override
     public void removeAuthenticationFlow(AuthenticationFlowModel model) {
-        getDelegateForUpdate();
-        updated.removeAuthenticationFlow(model);
+        getDelegateForAuthenticationUpdate().removeAuthenticationFlow(model);
 
     }
 
     @Override
     public void updateAuthenticationFlow(AuthenticationFlowModel model) {
-        getDelegateForUpdate();
-        updated.updateAuthenticationFlow(model);
+        getDelegateForAuthenticationUpdate().updateAuthenticationFlow(model);
 
     }
 
     @Override
     public List<AuthenticationExecutionModel> getAuthenticationExecutions(String flowId) {
-        if (isUpdated()) return updated.getAuthenticationExecutions(flowId);
-        return cached.getAuthenticationExecutions().get(flowId);
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getAuthenticationExecutions(flowId);
+        return authentication.getAuthenticationExecutions().get(flowId);
     }
 
     @Override
     public AuthenticationExecutionModel getAuthenticationExecutionById(String id) {
-        if (isUpdated()) return updated.getAuthenticationExecutionById(id);
-        return cached.getExecutionsById().get(id);
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getAuthenticationExecutionById(id);
+        return authentication.getExecutionsById().get(id);
     }
 
     @Override
     public AuthenticationExecutionModel addAuthenticatorExecution(AuthenticationExecutionModel model) {
-        getDelegateForUpdate();
-        return updated.addAuthenticatorExecution(model);
+        return getDelegateForAuthenticationUpdate().addAuthenticatorExecution(model);
     }
 
     @Override
     public void updateAuthenticatorExecution(AuthenticationExecutionModel model) {
-        getDelegateForUpdate();
-        updated.updateAuthenticatorExecution(model);
+        getDelegateForAuthenticationUpdate().updateAuthenticatorExecution(model);
 
     }
 
     @Override
     public void removeAuthenticatorExecution(AuthenticationExecutionModel model) {
-        getDelegateForUpdate();
-        updated.removeAuthenticatorExecution(model);
+        getDelegateForAuthenticationUpdate().removeAuthenticatorExecution(model);
 
     }
 
     @Override
     public List<AuthenticatorConfigModel> getAuthenticatorConfigs() {
-        if (isUpdated()) return updated.getAuthenticatorConfigs();
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getAuthenticatorConfigs();
         List<AuthenticatorConfigModel> models = new ArrayList<>();
-        models.addAll(cached.getAuthenticatorConfigs().values());
+        models.addAll(authentication.getAuthenticatorConfigs().values());
         return Collections.unmodifiableList(models);
     }
 
     @Override
     public AuthenticatorConfigModel addAuthenticatorConfig(AuthenticatorConfigModel model) {
-        getDelegateForUpdate();
-        return updated.addAuthenticatorConfig(model);
+        return getDelegateForAuthenticationUpdate().addAuthenticatorConfig(model);
     }
 
     @Override
     public void updateAuthenticatorConfig(AuthenticatorConfigModel model) {
-        getDelegateForUpdate();
-        updated.updateAuthenticatorConfig(model);
+        getDelegateForAuthenticationUpdate().updateAuthenticatorConfig(model);
 
     }
 
     @Override
     public void removeAuthenticatorConfig(AuthenticatorConfigModel model) {
-        getDelegateForUpdate();
-        updated.removeAuthenticatorConfig(model);
+        getDelegateForAuthenticationUpdate().removeAuthenticatorConfig(model);
 
     }
 
     @Override
     public AuthenticatorConfigModel getAuthenticatorConfigById(String id) {
-        if (isUpdated()) return updated.getAuthenticatorConfigById(id);
-        return cached.getAuthenticatorConfigs().get(id);
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getAuthenticatorConfigById(id);
+        return authentication.getAuthenticatorConfigs().get(id);
     }
 
     @Override
     public List<RequiredActionProviderModel> getRequiredActionProviders() {
-        if (isUpdated()) return updated.getRequiredActionProviders();
-        return cached.getRequiredActionProviderList();
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getRequiredActionProviders();
+        return authentication.getRequiredActionProviderList();
     }
 
     @Override
     public RequiredActionProviderModel addRequiredActionProvider(RequiredActionProviderModel model) {
-        getDelegateForUpdate();
-        return updated.addRequiredActionProvider(model);
+        return getDelegateForAuthenticationUpdate().addRequiredActionProvider(model);
     }
 
     @Override
     public void updateRequiredActionProvider(RequiredActionProviderModel model) {
-        getDelegateForUpdate();
-        updated.updateRequiredActionProvider(model);
+        getDelegateForAuthenticationUpdate().updateRequiredActionProvider(model);
 
     }
 
     @Override
     public void removeRequiredActionProvider(RequiredActionProviderModel model) {
-        getDelegateForUpdate();
-        updated.removeRequiredActionProvider(model);
+        getDelegateForAuthenticationUpdate().removeRequiredActionProvider(model);
 
     }
 
     @Override
     public RequiredActionProviderModel getRequiredActionProviderById(String id) {
-        if (isUpdated()) return updated.getRequiredActionProviderById(id);
-        return cached.getRequiredActionProviders().get(id);
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getRequiredActionProviderById(id);
+        return authentication.getRequiredActionProviders().get(id);
     }
 
     @Override
     public RequiredActionProviderModel getRequiredActionProviderByAlias(String alias) {
-        if (isUpdated()) return updated.getRequiredActionProviderByAlias(alias);
-        return cached.getRequiredActionProvidersByAlias().get(alias);
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        if (authentication == null) return getDelegate().getRequiredActionProviderByAlias(alias);
+        return authentication.getRequiredActionProvidersByAlias().get(alias);
     }
 
     @Override
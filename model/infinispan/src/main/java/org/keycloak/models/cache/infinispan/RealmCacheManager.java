@@ -34,6 +34,7 @@ import org.keycloak.models.cache.infinispan.stream.InClientPredicate;
 import org.keycloak.models.cache.infinispan.stream.InRealmPredicate;
 import org.keycloak.models.cache.infinispan.stream.RealmQueryPredicate;
 
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
@@ -52,8 +53,7 @@ public class RealmCacheManager extends CacheManager {
 
 
     public void realmInvalidation(String id, Set<String> invalidations) {
-        Predicate<Map.Entry<String, Revisioned>> predicate = getRealmInvalidationPredicate(id);
-        addInvalidations(predicate, invalidations);
+        addInvalidations(index.getRealmQueries(id), getRealmInvalidationPredicate(id), invalidations);
     }
 
     public Predicate<Map.Entry<String, Revisioned>> getRealmInvalidationPredicate(String id) {
@@ -61,7 +61,7 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void clientInvalidation(String id, Set<String> invalidations) {
-        addInvalidations(getClientInvalidationPredicate(id), invalidations);
+        addInvalidations(index.getClientQueries(id), getClientInvalidationPredicate(id), invalidations);
     }
 
     public Predicate<Map.Entry<String, Revisioned>> getClientInvalidationPredicate(String id) {
@@ -69,7 +69,7 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void roleInvalidation(String id, Set<String> invalidations) {
-        addInvalidations(getRoleInvalidationPredicate(id), invalidations);
+        addInvalidations(index.getHasRole(id), getRoleInvalidationPredicate(id), invalidations);
 
     }
 
@@ -78,7 +78,7 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void groupInvalidation(String id, Set<String> invalidations) {
-        addInvalidations(getGroupInvalidationPredicate(id), invalidations);
+        addInvalidations(index.getGroupQueries(id), getGroupInvalidationPredicate(id), invalidations);
 
     }
 
@@ -87,7 +87,7 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void clientTemplateInvalidation(String id, Set<String> invalidations) {
-        addInvalidations(getClientTemplateInvalidationPredicate(id), invalidations);
+        addInvalidations(index.getClientTemplateQueries(id), getClientTemplateInvalidationPredicate(id), invalidations);
 
     }
 
@@ -96,8 +96,9 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void realmRemoval(String id, Set<String> invalidations) {
-        Predicate<Map.Entry<String, Revisioned>> predicate = getRealmRemovalPredicate(id);
-        addInvalidations(predicate, invalidations);
+        Set<String> candidates = new HashSet<>(index.getRealmQueries(id));
+        candidates.addAll(index.getInRealm(id));
+        addInvalidations(candidates, getRealmRemovalPredicate(id), invalidations);
     }
 
     public Predicate<Map.Entry<String, Revisioned>> getRealmRemovalPredicate(String id) {
@@ -108,7 +109,7 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void clientAdded(String realmId, String id, Set<String> invalidations) {
-        addInvalidations(getClientAddedPredicate(realmId), invalidations);
+        addInvalidations(index.getClientQueriesInRealm(realmId), getClientAddedPredicate(realmId), invalidations);
     }
 
     public Predicate<Map.Entry<String, Revisioned>> getClientAddedPredicate(String realmId) {
@@ -116,9 +117,10 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void clientRemoval(String realmId, String id, Set<String> invalidations) {
-        Predicate<Map.Entry<String, Revisioned>> predicate = null;
-        predicate = getClientRemovalPredicate(realmId, id);
-        addInvalidations(predicate, invalidations);
+        Set<String> candidates = new HashSet<>(index.getClientQueriesInRealm(realmId));
+        candidates.addAll(index.getClientQueries(id));
+        candidates.addAll(index.getInClient(id));
+        addInvalidations(candidates, getClientRemovalPredicate(realmId, id), invalidations);
     }
 
     public Predicate<Map.Entry<String, Revisioned>> getClientRemovalPredicate(String realmId, String id) {
@@ -130,7 +132,7 @@ public class RealmCacheManager extends CacheManager {
     }
 
     public void roleRemoval(String id, Set<String> invalidations) {
-        addInvalidations(getRoleRemovalPredicate(id), invalidations);
+        addInvalidations(index.getHasRole(id), getRoleRemovalPredicate(id), invalidations);
 
     }
 
@@ -139,24 +141,22 @@ public class RealmCacheManager extends CacheManager {
     }
 
     @Override
-    protected Predicate<Map.Entry<String, Revisioned>> getInvalidationPredicate(Object object) {
+    protected void addDependentInvalidations(Object object, Set<String> invalidations) {
         if (object instanceof CachedRealm) {
             CachedRealm cached = (CachedRealm)object;
-            return getRealmRemovalPredicate(cached.getId());
+            realmRemoval(cached.getId(), invalidations);
         } else if (object instanceof CachedClient) {
             CachedClient cached = (CachedClient)object;
-            Predicate<Map.Entry<String, Revisioned>> predicate = getClientRemovalPredicate(cached.getRealm(), cached.getId());
-            return predicate;
+            clientRemoval(cached.getRealm(), cached.getId(), invalidations);
         } else if (object instanceof CachedRole) {
             CachedRole cached = (CachedRole)object;
-            return getRoleRemovalPredicate(cached.getId());
+            roleRemoval(cached.getId(), invalidations);
         } else if (object instanceof CachedGroup) {
             CachedGroup cached = (CachedGroup)object;
-            return getGroupInvalidationPredicate(cached.getId());
+            groupInvalidation(cached.getId(), invalidations);
         } else if (object instanceof CachedClientTemplate) {
             CachedClientTemplate cached = (CachedClientTemplate)object;
-            return getClientTemplateInvalidationPredicate(cached.getId());
+            clientTemplateInvalidation(cached.getId(), invalidations);
         }
-        return null;
     }
 }
@@ -33,19 +33,26 @@ import org.keycloak.models.cache.infinispan.entities.CachedClientRole;
 import org.keycloak.models.cache.infinispan.entities.CachedClientTemplate;
 import org.keycloak.models.cache.infinispan.entities.CachedGroup;
 import org.keycloak.models.cache.infinispan.entities.CachedRealm;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmAuthentication;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmIdentityProviders;
 import org.keycloak.models.cache.infinispan.entities.CachedRealmRole;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmUserFederation;
 import org.keycloak.models.cache.infinispan.entities.CachedRole;
 import org.keycloak.models.cache.infinispan.entities.ClientListQuery;
 import org.keycloak.models.cache.infinispan.entities.RealmListQuery;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.entities.RoleListQuery;
 import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 
 /**
@@ -111,6 +118,12 @@ public class RealmCacheSession implements CacheRealmProvider {
     public static final String REALM_CLIENTS_QUERY_SUFFIX = ".realm.clients";
     public static final String ROLES_QUERY_SUFFIX = ".roles";
     public static final String ROLE_BY_NAME_QUERY_SUFFIX = ".role.by-name";
+    // Parts of the realm cached and invalidated separately from the CachedRealm itself
+    public static final String REALM_IDENTITY_PROVIDERS_SUFFIX = ".realm.identity-providers";
+    public static final String REALM_AUTHENTICATION_SUFFIX = ".realm.authentication";
+    public static final String REALM_USER_FEDERATION_SUFFIX = ".realm.user-federation";
+    // Invalidated together with any realm model object. Data computed from multiple objects (like scoped role mappings of users) are cached under its revision
+    public static final String REALM_MODEL_REVISION_KEY = "realm.model.revision";
     protected RealmCacheManager cache;
     protected KeycloakSession session;
     protected RealmProvider delegate;
@@ -124,6 +137,10 @@ public class RealmCacheSession implements CacheRealmProvider {
     protected Map<String, GroupAdapter> managedGroups = new HashMap<>();
     protected Set<String> listInvalidations = new HashSet<>();
     protected Set<String> invalidations = new HashSet<>();
+    // objects loaded from delegate. They are added to the cache together at the end of the transaction
+    protected Map<String, Revisioned> pendingRevisioned = new LinkedHashMap<>();
+    // invalidations of dependent objects. Those are applied to pendingRevisioned as well, which are not in the cache yet
+    protected List<Predicate<Map.Entry<String, Revisioned>>> pendingInvalidations = new LinkedList<>();
 
     protected boolean clearAll;
     protected final long startupRevision;
@@ -144,6 +161,15 @@ public class RealmCacheSession implements CacheRealmProvider {
         return invalidations.contains(id);
     }
 
+    /**
+     * @return current revision of the whole realm model or null if this session already changed it, so the data computed
+     * from the realm model in this session can't be shared with other sessions
+     */
+    public Long getRealmModelRevision() {
+        if (!invalidations.isEmpty() || clearAll) return null;
+        return cache.getMarkerRevision(REALM_MODEL_REVISION_KEY);
+    }
+
     @Override
     public void clear() {
         cache.clear();
@@ -166,6 +192,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public void registerRealmInvalidation(String id) {
         invalidateRealm(id);
         cache.realmInvalidation(id, invalidations);
+        pendingInvalidation(cache.getRealmInvalidationPredicate(id), invalidations);
     }
 
     private void invalidateRealm(String id) {
@@ -174,10 +201,25 @@ public class RealmCacheSession implements CacheRealmProvider {
         if (adapter != null) adapter.invalidate();
     }
 
+    /**
+     * Invalidate just one separately cached part of the realm (see {@link #getRealmIdentityProvidersCacheKey(String)} and others).
+     * Unlike {@link #registerRealmInvalidation(String)} the {@link CachedRealm} and objects depending on it stay cached.
+     */
+    public void registerRealmPartInvalidation(String cacheKey) {
+        invalidations.add(cacheKey);
+    }
+
+    private void invalidateRealmParts(String id) {
+        invalidations.add(getRealmIdentityProvidersCacheKey(id));
+        invalidations.add(getRealmAuthenticationCacheKey(id));
+        invalidations.add(getRealmUserFederationCacheKey(id));
+    }
+
     @Override
     public void registerClientInvalidation(String id) {
         invalidateClient(id);
         cache.clientInvalidation(id, invalidations);
+        pendingInvalidation(cache.getClientInvalidationPredicate(id), invalidations);
     }
 
     private void invalidateClient(String id) {
@@ -190,6 +232,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public void registerClientTemplateInvalidation(String id) {
         invalidateClientTemplate(id);
         cache.clientTemplateInvalidation(id, invalidations);
+        pendingInvalidation(cache.getClientTemplateInvalidationPredicate(id), invalidations);
     }
 
     private void invalidateClientTemplate(String id) {
@@ -207,6 +250,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     private void roleInvalidations(String roleId) {
         Set<String> newInvalidations = new HashSet<>();
         cache.roleInvalidation(roleId, newInvalidations);
+        pendingInvalidation(cache.getRoleInvalidationPredicate(roleId), newInvalidations);
         invalidations.addAll(newInvalidations);
         // need to make sure that scope and group mapping clients and groups are invalidated
         for (String id : newInvalidations) {
@@ -243,6 +287,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public void registerGroupInvalidation(String id) {
         invalidateGroup(id);
         cache.groupInvalidation(id, invalidations);
+        pendingInvalidation(cache.getGroupInvalidationPredicate(id), invalidations);
     }
 
     private void invalidateGroup(String id) {
@@ -251,10 +296,41 @@ public class RealmCacheSession implements CacheRealmProvider {
         if (adapter != null) adapter.invalidate();
     }
 
+    /**
+     * Objects loaded by this transaction are not in the cache yet, so the dependent invalidations must be checked against
+     * them too. The predicate is checked again at commit for the objects loaded after the invalidation.
+     */
+    private void pendingInvalidation(Predicate<Map.Entry<String, Revisioned>> predicate, Set<String> target) {
+        pendingInvalidations.add(predicate);
+        CacheManager.addPendingInvalidations(pendingRevisioned, predicate, target);
+    }
+
     protected void runInvalidations() {
-        for (String id : invalidations) {
-            cache.invalidateObject(id);
+        for (Predicate<Map.Entry<String, Revisioned>> predicate : pendingInvalidations) {
+            CacheManager.addPendingInvalidations(pendingRevisioned, predicate, invalidations);
+        }
+        if (!invalidations.isEmpty() || clearAll) {
+            invalidations.add(REALM_MODEL_REVISION_KEY);
+        }
+        cache.invalidateObjects(invalidations);
+    }
+
+    protected void addPendingRevisioned() {
+        pendingRevisioned.keySet().removeAll(invalidations);
+        cache.addRevisioned(pendingRevisioned.values(), startupRevision);
+        pendingRevisioned.clear();
+    }
+
+    private void addRevisioned(Revisioned object) {
+        pendingRevisioned.put(object.getId(), object);
+    }
+
+    private <T> T getCached(String id, Class<T> type) {
+        Revisioned pending = pendingRevisioned.get(id);
+        if (pending != null) {
+            return type.isInstance(pending) ? type.cast(pending) : null;
         }
+        return cache.get(id, type);
     }
 
     private KeycloakTransaction getPrepareTransaction() {
@@ -317,6 +393,7 @@ public class RealmCacheSession implements CacheRealmProvider {
                         cache.clear();
                     }
                     runInvalidations();
+                    addPendingRevisioned();
                     transactionActive = false;
                 } finally {
                     cache.endRevisionBatch();
@@ -327,6 +404,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             public void rollback() {
                 try {
                     setRollbackOnly = true;
+                    pendingRevisioned.clear();
                     runInvalidations();
                     transactionActive = false;
                 } finally {
@@ -355,6 +433,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public RealmModel createRealm(String name) {
         RealmModel realm = getDelegate().createRealm(name);
         registerRealmInvalidation(realm.getId());
+        invalidateRealmParts(realm.getId());
         return realm;
     }
 
@@ -362,12 +441,13 @@ public class RealmCacheSession implements CacheRealmProvider {
     public RealmModel createRealm(String id, String name) {
         RealmModel realm =  getDelegate().createRealm(id, name);
         registerRealmInvalidation(realm.getId());
+        invalidateRealmParts(realm.getId());
         return realm;
     }
 
     @Override
     public RealmModel getRealm(String id) {
-        CachedRealm cached = cache.get(id, CachedRealm.class);
+        CachedRealm cached = getCached(id, CachedRealm.class);
         if (cached != null) {
             logger.tracev("by id cache hit: {0}", cached.getName());
         }
@@ -377,7 +457,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (model == null) return null;
             if (invalidations.contains(id)) return model;
             cached = new CachedRealm(loaded, model);
-            cache.addRevisioned(cached, startupRevision);
+            addRevisioned(cached);
         } else if (invalidations.contains(id)) {
             return getDelegate().getRealm(id);
         } else if (managedRealms.containsKey(id)) {
@@ -391,7 +471,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public RealmModel getRealmByName(String name) {
         String cacheKey = getRealmByNameCacheKey(name);
-        RealmListQuery query = cache.get(cacheKey, RealmListQuery.class);
+        RealmListQuery query = getCached(cacheKey, RealmListQuery.class);
         if (query != null) {
             logger.tracev("realm by name cache hit: {0}", name);
         }
@@ -401,7 +481,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (model == null) return null;
             if (invalidations.contains(model.getId())) return model;
             query = new RealmListQuery(loaded, cacheKey, model.getId());
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         } else if (invalidations.contains(cacheKey)) {
             return getDelegate().getRealmByName(name);
@@ -418,6 +498,63 @@ public class RealmCacheSession implements CacheRealmProvider {
         return "realm.query.by.name." + name;
     }
 
+    public String getRealmIdentityProvidersCacheKey(String realmId) {
+        return realmId + REALM_IDENTITY_PROVIDERS_SUFFIX;
+    }
+
+    public String getRealmAuthenticationCacheKey(String realmId) {
+        return realmId + REALM_AUTHENTICATION_SUFFIX;
+    }
+
+    public String getRealmUserFederationCacheKey(String realmId) {
+        return realmId + REALM_USER_FEDERATION_SUFFIX;
+    }
+
+    /**
+     * @return cached identity providers of the realm or null if they or the realm were changed in this session, so the
+     * delegate must be used
+     */
+    public CachedRealmIdentityProviders getRealmIdentityProviders(String realmId) {
+        String cacheKey = getRealmIdentityProvidersCacheKey(realmId);
+        return getRealmPart(realmId, cacheKey, CachedRealmIdentityProviders.class,
+                (revision, model) -> new CachedRealmIdentityProviders(revision, cacheKey, model));
+    }
+
+    /**
+     * @return cached authentication flows, authenticator configs and required actions of the realm or null if they
+     * or the realm were changed in this session, so the delegate must be used
+     */
+    public CachedRealmAuthentication getRealmAuthentication(String realmId) {
+        String cacheKey = getRealmAuthenticationCacheKey(realmId);
+        return getRealmPart(realmId, cacheKey, CachedRealmAuthentication.class,
+                (revision, model) -> new CachedRealmAuthentication(revision, cacheKey, model));
+    }
+
+    /**
+     * @return cached user federation providers and mappers of the realm or null if they or the realm were changed in
+     * this session, so the delegate must be used
+     */
+    public CachedRealmUserFederation getRealmUserFederation(String realmId) {
+        String cacheKey = getRealmUserFederationCacheKey(realmId);
+        return getRealmPart(realmId, cacheKey, CachedRealmUserFederation.class,
+                (revision, model) -> new CachedRealmUserFederation(revision, cacheKey, model));
+    }
+
+    private <T extends Revisioned> T getRealmPart(String realmId, String cacheKey, Class<T> type, BiFunction<Long, RealmModel, T> loader) {
+        if (invalidations.contains(realmId) || invalidations.contains(cacheKey)) return null;
+        T cached = getCached(cacheKey, type);
+        if (cached != null) {
+            logger.tracev("realm part cache hit: {0}", cacheKey);
+            return cached;
+        }
+        Long loaded = cache.getCurrentRevision(cacheKey);
+        RealmModel model = getDelegate().getRealm(realmId);
+        if (model == null) return null;
+        cached = loader.apply(loaded, model);
+        addRevisioned(cached);
+        return cached;
+    }
+
     @Override
     public List<RealmModel> getRealms() {
         // Retrieve realms from backend
@@ -439,8 +576,10 @@ public class RealmCacheSession implements CacheRealmProvider {
 
         invalidations.add(getRealmClientsQueryCacheKey(id));
         invalidations.add(getRealmByNameCacheKey(realm.getName()));
+        invalidateRealmParts(id);
         cache.invalidateObject(id);
         cache.realmRemoval(id, invalidations);
+        pendingInvalidation(cache.getRealmRemovalPredicate(id), invalidations);
         return getDelegate().removeRealm(id);
     }
 
@@ -469,6 +608,7 @@ public class RealmCacheSession implements CacheRealmProvider {
         // need to invalidate realm client query cache every time as it may not be loaded on this node, but loaded on another
         invalidateClient(realm, client);
         cache.clientAdded(realm.getId(), client.getId(), invalidations);
+        pendingInvalidation(cache.getClientAddedPredicate(realm.getId()), invalidations);
         // this is needed so that a new client that hasn't been committed isn't cached in a query
         listInvalidations.add(realm.getId());
         return client;
@@ -501,7 +641,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getClients(realm);
         }
 
-        ClientListQuery query = cache.get(cacheKey, ClientListQuery.class);
+        ClientListQuery query = getCached(cacheKey, ClientListQuery.class);
         if (query != null) {
             logger.tracev("getClients cache hit: {0}", realm.getName());
         }
@@ -514,7 +654,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             for (ClientModel client : model) ids.add(client.getId());
             query = new ClientListQuery(loaded, cacheKey, realm, ids);
             logger.tracev("adding realm clients cache miss: realm {0} key {1}", realm.getName(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         List<ClientModel> list = new LinkedList<>();
@@ -537,6 +677,7 @@ public class RealmCacheSession implements CacheRealmProvider {
         // need to invalidate realm client query cache every time client list is changed
         invalidateClient(realm, client);
         cache.clientRemoval(realm.getId(), id, invalidations);
+        pendingInvalidation(cache.getClientRemovalPredicate(realm.getId(), id), invalidations);
         for (RoleModel role : client.getRoles()) {
             String roleId = role.getId();
             roleInvalidations(roleId);
@@ -573,7 +714,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getRealmRoles(realm);
         }
 
-        RoleListQuery query = cache.get(cacheKey, RoleListQuery.class);
+        RoleListQuery query = getCached(cacheKey, RoleListQuery.class);
         if (query != null) {
             logger.tracev("getRealmRoles cache hit: {0}", realm.getName());
         }
@@ -586,7 +727,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             for (RoleModel role : model) ids.add(role.getId());
             query = new RoleListQuery(loaded, cacheKey, realm, ids);
             logger.tracev("adding realm roles cache miss: realm {0} key {1}", realm.getName(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         Set<RoleModel> list = new HashSet<>();
@@ -609,7 +750,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getClientRoles(realm, client);
         }
 
-        RoleListQuery query = cache.get(cacheKey, RoleListQuery.class);
+        RoleListQuery query = getCached(cacheKey, RoleListQuery.class);
         if (query != null) {
             logger.tracev("getClientRoles cache hit: {0}", client.getClientId());
         }
@@ -622,7 +763,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             for (RoleModel role : model) ids.add(role.getId());
             query = new RoleListQuery(loaded, cacheKey, realm, ids, client.getClientId());
             logger.tracev("adding client roles cache miss: client {0} key {1}", client.getClientId(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         Set<RoleModel> list = new HashSet<>();
@@ -660,7 +801,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getRealmRole(realm, name);
         }
 
-        RoleListQuery query = cache.get(cacheKey, RoleListQuery.class);
+        RoleListQuery query = getCached(cacheKey, RoleListQuery.class);
         if (query != null) {
             logger.tracev("getRealmRole cache hit: {0}.{1}", realm.getName(), name);
         }
@@ -671,7 +812,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (model == null) return null;
             query = new RoleListQuery(loaded, cacheKey, realm, model.getId());
             logger.tracev("adding realm role cache miss: client {0} key {1}", realm.getName(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         RoleModel role = getRoleById(query.getRoles().iterator().next(), realm);
@@ -690,7 +831,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getClientRole(realm, client, name);
         }
 
-        RoleListQuery query = cache.get(cacheKey, RoleListQuery.class);
+        RoleListQuery query = getCached(cacheKey, RoleListQuery.class);
         if (query != null) {
             logger.tracev("getClientRole cache hit: {0}.{1}", client.getClientId(), name);
         }
@@ -701,7 +842,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (model == null) return null;
             query = new RoleListQuery(loaded, cacheKey, realm, model.getId(), client.getClientId());
             logger.tracev("adding client role cache miss: client {0} key {1}", client.getClientId(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         RoleModel role = getRoleById(query.getRoles().iterator().next(), realm);
@@ -723,7 +864,7 @@ public class RealmCacheSession implements CacheRealmProvider {
 
     @Override
     public RoleModel getRoleById(String id, RealmModel realm) {
-        CachedRole cached = cache.get(id, CachedRole.class);
+        CachedRole cached = getCached(id, CachedRole.class);
         if (cached != null && !cached.getRealm().equals(realm.getId())) {
             cached = null;
         }
@@ -738,7 +879,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             } else {
                 cached = new CachedRealmRole(loaded, model, realm);
             }
-            cache.addRevisioned(cached, startupRevision);
+            addRevisioned(cached);
 
         } else if (invalidations.contains(id)) {
             return getDelegate().getRoleById(id, realm);
@@ -752,7 +893,7 @@ public class RealmCacheSession implements CacheRealmProvider {
 
     @Override
     public GroupModel getGroupById(String id, RealmModel realm) {
-        CachedGroup cached = cache.get(id, CachedGroup.class);
+        CachedGroup cached = getCached(id, CachedGroup.class);
         if (cached != null && !cached.getRealm().equals(realm.getId())) {
             cached = null;
         }
@@ -763,7 +904,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (model == null) return null;
             if (invalidations.contains(id)) return model;
             cached = new CachedGroup(loaded, realm, model);
-            cache.addRevisioned(cached, startupRevision);
+            addRevisioned(cached);
 
         } else if (invalidations.contains(id)) {
             return getDelegate().getGroupById(id, realm);
@@ -790,7 +931,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getGroups(realm);
         }
 
-        GroupListQuery query = cache.get(cacheKey, GroupListQuery.class);
+        GroupListQuery query = getCached(cacheKey, GroupListQuery.class);
         if (query != null) {
             logger.tracev("getGroups cache hit: {0}", realm.getName());
         }
@@ -803,7 +944,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             for (GroupModel client : model) ids.add(client.getId());
             query = new GroupListQuery(loaded, cacheKey, realm, ids);
             logger.tracev("adding realm getGroups cache miss: realm {0} key {1}", realm.getName(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         List<GroupModel> list = new LinkedList<>();
@@ -826,7 +967,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             return getDelegate().getTopLevelGroups(realm);
         }
 
-        GroupListQuery query = cache.get(cacheKey, GroupListQuery.class);
+        GroupListQuery query = getCached(cacheKey, GroupListQuery.class);
         if (query != null) {
             logger.tracev("getTopLevelGroups cache hit: {0}", realm.getName());
         }
@@ -839,7 +980,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             for (GroupModel client : model) ids.add(client.getId());
             query = new GroupListQuery(loaded, cacheKey, realm, ids);
             logger.tracev("adding realm getTopLevelGroups cache miss: realm {0} key {1}", realm.getName(), cacheKey);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             return model;
         }
         List<GroupModel> list = new LinkedList<>();
@@ -900,7 +1041,7 @@ public class RealmCacheSession implements CacheRealmProvider {
 
     @Override
     public ClientModel getClientById(String id, RealmModel realm) {
-        CachedClient cached = cache.get(id, CachedClient.class);
+        CachedClient cached = getCached(id, CachedClient.class);
         if (cached != null && !cached.getRealm().equals(realm.getId())) {
             cached = null;
         }
@@ -915,7 +1056,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (invalidations.contains(id)) return model;
             cached = new CachedClient(loaded, realm, model);
             logger.tracev("adding client by id cache miss: {0}", cached.getClientId());
-            cache.addRevisioned(cached, startupRevision);
+            addRevisioned(cached);
         } else if (invalidations.contains(id)) {
             return getDelegate().getClientById(id, realm);
         } else if (managedApplications.containsKey(id)) {
@@ -929,7 +1070,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public ClientModel getClientByClientId(String clientId, RealmModel realm) {
         String cacheKey = getClientByClientIdCacheKey(clientId, realm);
-        ClientListQuery query = cache.get(cacheKey, ClientListQuery.class);
+        ClientListQuery query = getCached(cacheKey, ClientListQuery.class);
         String id = null;
 
         if (query != null) {
@@ -944,7 +1085,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             id = model.getId();
             query = new ClientListQuery(loaded, cacheKey, realm, id);
             logger.tracev("adding client by name cache miss: {0}", clientId);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
         } else if (invalidations.contains(cacheKey)) {
             return getDelegate().getClientByClientId(clientId, realm);
         } else {
@@ -962,7 +1103,7 @@ public class RealmCacheSession implements CacheRealmProvider {
 
     @Override
     public ClientTemplateModel getClientTemplateById(String id, RealmModel realm) {
-        CachedClientTemplate cached = cache.get(id, CachedClientTemplate.class);
+        CachedClientTemplate cached = getCached(id, CachedClientTemplate.class);
         if (cached != null && !cached.getRealm().equals(realm.getId())) {
             cached = null;
         }
@@ -973,7 +1114,7 @@ public class RealmCacheSession implements CacheRealmProvider {
             if (model == null) return null;
             if (invalidations.contains(id)) return model;
             cached = new CachedClientTemplate(loaded, realm, model);
-            cache.addRevisioned(cached, startupRevision);
+            addRevisioned(cached);
         } else if (invalidations.contains(id)) {
             return getDelegate().getClientTemplateById(id, realm);
         } else if (managedClientTemplates.containsKey(id)) {
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryVisited;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryVisitedEvent;
+import org.jboss.logging.Logger;
+import org.keycloak.models.cache.infinispan.entities.InRealm;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node-local limit of the number of {@link InRealm} entries, which single realm can have in the realm or user cache. When the
+ * realm exceeds its quota, its least recently used entries are evicted. The cache is bounded as a whole by its eviction
+ * configuration, so without the quota a large realm would push the hot entries of the small realms out of the cache.
+ *
+ * Reads just record the access time of the entry, so they don't lock anything. The least recently used entries are looked up
+ * only when the realm exceeds its quota. It's then trimmed a bit under the quota, so the lookup isn't repeated for every
+ * subsequently added entry.
+ *
+ * Evicted entries are handled by the {@link CacheManager} the same way as the entries evicted by Infinispan.
+ */
+@Listener
+public class RealmQuota {
+
+    private static final Logger logger = Logger.getLogger(RealmQuota.class);
+
+    private static final Comparator<Map.Entry<String, Long>> LEAST_RECENTLY_USED = new Comparator<Map.Entry<String, Long>>() {
+
+        @Override
+        public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+            return Long.compare(e1.getValue(), e2.getValue());
+        }
+
+    };
+
+    private final Cache<String, Revisioned> cache;
+    private final int maxEntriesPerRealm;
+
+    // Number of entries the realm is trimmed to when it exceeds the quota
+    private final int trimmedEntriesPerRealm;
+
+    // realm -> keys of its entries with the time of their last access
+    private final ConcurrentMap<String, ConcurrentMap<String, Long>> realms = new ConcurrentHashMap<>();
+
+    // key -> realm. Used for cleanup when the entry is removed
+    private final ConcurrentMap<String, String> keys = new ConcurrentHashMap<>();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private RealmQuota(Cache<String, Revisioned> cache, int maxEntriesPerRealm) {
+        this.cache = cache;
+        this.maxEntriesPerRealm = maxEntriesPerRealm;
+        this.trimmedEntriesPerRealm = maxEntriesPerRealm - maxEntriesPerRealm / 10;
+    }
+
+    public static RealmQuota register(Cache<String, Revisioned> cache, int maxEntriesPerRealm) {
+        RealmQuota quota = new RealmQuota(cache, maxEntriesPerRealm);
+        cache.addListener(quota);
+        logger.debugv("Limited entries of cache {0} to {1} per realm", cache.getName(), maxEntriesPerRealm);
+        return quota;
+    }
+
+    public int getMaxEntriesPerRealm() {
+        return maxEntriesPerRealm;
+    }
+
+    /**
+     * Number of the entries of the realm tracked on this node
+     */
+    public int getSize(String realm) {
+        ConcurrentMap<String, Long> realmKeys = realms.get(realm);
+        return realmKeys != null ? realmKeys.size() : 0;
+    }
+
+    /**
+     * Number of the entries evicted because their realm exceeded the quota
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @CacheEntryCreated
+    public void entryCreated(CacheEntryCreatedEvent<String, Object> event) {
+        if (!event.isPre() && event.getValue() instanceof InRealm) {
+            added(event.getKey(), ((InRealm) event.getValue()).getRealm());
+        }
+    }
+
+    @CacheEntryVisited
+    public void entryVisited(CacheEntryVisitedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            visited(event.getKey());
+        }
+    }
+
+    @CacheEntryRemoved
+    public void entryRemoved(CacheEntryRemovedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            removed(event.getKey());
+        }
+    }
+
+    @CacheEntryInvalidated
+    public void entryInvalidated(CacheEntryInvalidatedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            removed(event.getKey());
+        }
+    }
+
+    @CacheEntriesEvicted
+    public void entriesEvicted(CacheEntriesEvictedEvent<String, Object> event) {
+        for (String key : event.getEntries().keySet()) {
+            removed(key);
+        }
+    }
+
+    void added(String key, String realm) {
+        if (realm == null) {
+            return;
+        }
+        String previous = keys.put(key, realm);
+        if (previous != null && !previous.equals(realm)) {
+            removeKey(previous, key);
+        }
+
+        ConcurrentMap<String, Long> realmKeys = realms.computeIfAbsent(realm, r -> new ConcurrentHashMap<>());
+        realmKeys.put(key, System.nanoTime());
+        if (realmKeys.size() <= maxEntriesPerRealm) {
+            return;
+        }
+
+        List<String> exceeding = new ArrayList<>();
+        synchronized (realmKeys) {
+            // Other thread could have already trimmed the realm
+            if (realmKeys.size() > maxEntriesPerRealm) {
+                List<Map.Entry<String, Long>> entries = new ArrayList<>(realmKeys.entrySet());
+                Collections.sort(entries, LEAST_RECENTLY_USED);
+                int exceedingCount = entries.size() - trimmedEntriesPerRealm;
+                for (int i = 0; i < exceedingCount; i++) {
+                    exceeding.add(entries.get(i).getKey());
+                }
+            }
+        }
+
+        // Evicted outside of the lock, as the eviction events call back to this listener
+        for (String exceedingKey : exceeding) {
+            logger.tracev("Evicting {0} as realm {1} exceeded quota", exceedingKey, realm);
+            cache.evict(exceedingKey);
+            removed(exceedingKey);
+            evictions.incrementAndGet();
+        }
+    }
+
+    void visited(String key) {
+        String realm = keys.get(key);
+        if (realm == null) {
+            return;
+        }
+        ConcurrentMap<String, Long> realmKeys = realms.get(realm);
+        if (realmKeys != null) {
+            // Updates just entries still tracked, so the removed entry isn't added back by concurrent read
+            realmKeys.replace(key, System.nanoTime());
+        }
+    }
+
+    void removed(String key) {
+        String realm = keys.remove(key);
+        if (realm != null) {
+            removeKey(realm, key);
+        }
+    }
+
+    private void removeKey(String realm, String key) {
+        ConcurrentMap<String, Long> realmKeys = realms.get(realm);
+        if (realmKeys != null) {
+            realmKeys.remove(key);
+        }
+    }
+
+}
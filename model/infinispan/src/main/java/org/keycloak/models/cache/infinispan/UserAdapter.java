@@ -28,9 +28,11 @@ import org.keycloak.models.UserConsentModel;
 import org.keycloak.models.UserCredentialModel;
 import org.keycloak.models.UserCredentialValueModel;
 import org.keycloak.models.UserModel;
+import org.keycloak.models.cache.CachedUserModel;
 import org.keycloak.models.cache.infinispan.entities.CachedUser;
 import org.keycloak.models.cache.infinispan.entities.CachedUserConsent;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.RoleUtils;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -44,7 +46,7 @@ import java.util.Set;
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class UserAdapter implements UserModel {
+public class UserAdapter implements CachedUserModel {
     protected UserModel updated;
     protected CachedUser cached;
     protected UserCacheSession userProviderCache;
@@ -344,6 +346,12 @@ public class UserAdapter implements UserModel {
         return roles;
     }
 
+    @Override
+    public Set<RoleModel> getScopedRoleMappings(ClientModel client) {
+        if (updated != null) return RoleUtils.getScopedRoleMappings(client, updated);
+        return userProviderCache.getScopedRoleMappings(this, cached, realm, client);
+    }
+
     @Override
     public void deleteRoleMapping(RoleModel role) {
         getDelegateForUpdate();
@@ -48,11 +48,14 @@ public class UserCacheManager extends CacheManager {
     }
 
     @Override
-    protected Predicate<Map.Entry<String, Revisioned>> getInvalidationPredicate(Object object) {
-        return null;
+    protected void addDependentInvalidations(Object object, Set<String> invalidations) {
     }
 
     public void invalidateRealmUsers(String realm, Set<String> invalidations) {
-        addInvalidations(InRealmPredicate.create().realm(realm), invalidations);
+        addInvalidations(index.getInRealm(realm), getRealmUsersInvalidationPredicate(realm), invalidations);
+    }
+
+    public Predicate<Map.Entry<String, Revisioned>> getRealmUsersInvalidationPredicate(String realm) {
+        return InRealmPredicate.create().realm(realm);
     }
 }
@@ -32,10 +32,14 @@ import org.keycloak.models.UserCredentialModel;
 import org.keycloak.models.UserFederationProviderModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserProvider;
+import org.keycloak.models.RealmProvider;
 import org.keycloak.models.cache.CacheUserProvider;
 import org.keycloak.models.cache.infinispan.entities.CachedFederatedIdentityLinks;
+import org.keycloak.models.cache.infinispan.entities.CachedScopedRoleMappings;
 import org.keycloak.models.cache.infinispan.entities.CachedUser;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.entities.UserListQuery;
+import org.keycloak.models.utils.RoleUtils;
 
 import java.util.*;
 
@@ -55,6 +59,8 @@ public class UserCacheSession implements CacheUserProvider {
 
     protected Set<String> invalidations = new HashSet<>();
     protected Set<String> realmInvalidations = new HashSet<>();
+    // objects loaded from delegate. They are added to the cache together at the end of the transaction
+    protected Map<String, Revisioned> pendingRevisioned = new LinkedHashMap<>();
     protected Map<String, UserModel> managedUsers = new HashMap<>();
 
     public UserCacheSession(UserCacheManager cache, KeycloakSession session) {
@@ -88,10 +94,60 @@ public class UserCacheSession implements CacheUserProvider {
     protected void runInvalidations() {
         for (String realmId : realmInvalidations) {
             cache.invalidateRealmUsers(realmId, invalidations);
+            // users loaded by this transaction are not in the cache yet
+            CacheManager.addPendingInvalidations(pendingRevisioned, cache.getRealmUsersInvalidationPredicate(realmId), invalidations);
         }
-        for (String invalidation : invalidations) {
-            cache.invalidateObject(invalidation);
+        cache.invalidateObjects(invalidations);
+    }
+
+    protected void addPendingRevisioned() {
+        pendingRevisioned.keySet().removeAll(invalidations);
+        cache.addRevisioned(pendingRevisioned.values(), startupRevision);
+        pendingRevisioned.clear();
+    }
+
+    private void addRevisioned(Revisioned object) {
+        pendingRevisioned.put(object.getId(), object);
+    }
+
+    private <T> T getCached(String id, Class<T> type) {
+        Revisioned pending = pendingRevisioned.get(id);
+        if (pending != null) {
+            return type.isInstance(pending) ? type.cast(pending) : null;
         }
+        return cache.get(id, type);
+    }
+
+    /**
+     * Scoped role mappings of the cached user. They are cached in the user entry together with the revision of the realm
+     * model, so they are recomputed once the user or anything in the realm model is changed
+     */
+    protected Set<RoleModel> getScopedRoleMappings(UserModel user, CachedUser cached, RealmModel realm, ClientModel client) {
+        RealmProvider realms = session.realms();
+        Long realmModelRevision = realms instanceof RealmCacheSession ? ((RealmCacheSession) realms).getRealmModelRevision() : null;
+        if (realmModelRevision == null) {
+            return RoleUtils.getScopedRoleMappings(client, user);
+        }
+
+        CachedScopedRoleMappings scoped = cached.getScopedRoleMappings().get(client.getId());
+        if (scoped != null && scoped.getRealmModelRevision() == realmModelRevision) {
+            Set<RoleModel> roles = new HashSet<>();
+            for (String roleId : scoped.getRoleIds()) {
+                RoleModel role = realms.getRoleById(roleId, realm);
+                if (role == null) {
+                    roles = null;
+                    break;
+                }
+                roles.add(role);
+            }
+            if (roles != null) {
+                return roles;
+            }
+        }
+
+        Set<RoleModel> roles = RoleUtils.getScopedRoleMappings(client, user);
+        cached.getScopedRoleMappings().put(client.getId(), new CachedScopedRoleMappings(realmModelRevision, roles));
+        return roles;
     }
 
     private KeycloakTransaction getTransaction() {
@@ -105,12 +161,14 @@ public class UserCacheSession implements CacheUserProvider {
             public void commit() {
                 if (delegate == null) return;
                 runInvalidations();
+                addPendingRevisioned();
                 transactionActive = false;
             }
 
             @Override
             public void rollback() {
                 setRollbackOnly = true;
+                pendingRevisioned.clear();
                 runInvalidations();
                 transactionActive = false;
             }
@@ -144,7 +202,7 @@ public class UserCacheSession implements CacheUserProvider {
             return getDelegate().getUserById(id, realm);
         }
 
-        CachedUser cached = cache.get(id, CachedUser.class);
+        CachedUser cached = getCached(id, CachedUser.class);
         if (cached == null) {
             logger.trace("not cached");
             Long loaded = cache.getCurrentRevision(id);
@@ -159,7 +217,7 @@ public class UserCacheSession implements CacheUserProvider {
             }
             if (invalidations.contains(id)) return model;
             cached = new CachedUser(loaded, realm, model);
-            cache.addRevisioned(cached, startupRevision);
+            addRevisioned(cached);
         } else if (managedUsers.containsKey(id)) {
             logger.trace("return managedusers");
             return managedUsers.get(id);
@@ -199,7 +257,7 @@ public class UserCacheSession implements CacheUserProvider {
             logger.tracev("invalidations");
             return getDelegate().getUserByUsername(username, realm);
         }
-        UserListQuery query = cache.get(cacheKey, UserListQuery.class);
+        UserListQuery query = getCached(cacheKey, UserListQuery.class);
 
         String userId = null;
         if (query == null) {
@@ -212,17 +270,17 @@ public class UserCacheSession implements CacheUserProvider {
             }
             userId = model.getId();
             query = new UserListQuery(loaded, cacheKey, realm, model.getId());
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             if (invalidations.contains(userId)) return model;
             if (managedUsers.containsKey(userId)) {
                 logger.tracev("return managed user");
                 return managedUsers.get(userId);
             }
 
-            CachedUser cached = cache.get(userId, CachedUser.class);
+            CachedUser cached = getCached(userId, CachedUser.class);
             if (cached == null) {
                 cached = new CachedUser(loaded, realm, model);
-                cache.addRevisioned(cached, startupRevision);
+                addRevisioned(cached);
             }
             logger.trace("return new cache adapter");
             UserAdapter adapter = new UserAdapter(cached, this, session, realm);
@@ -251,7 +309,7 @@ public class UserCacheSession implements CacheUserProvider {
         if (invalidations.contains(cacheKey)) {
             return getDelegate().getUserByEmail(email, realm);
         }
-        UserListQuery query = cache.get(cacheKey, UserListQuery.class);
+        UserListQuery query = getCached(cacheKey, UserListQuery.class);
 
         String userId = null;
         if (query == null) {
@@ -260,14 +318,14 @@ public class UserCacheSession implements CacheUserProvider {
             if (model == null) return null;
             userId = model.getId();
             query = new UserListQuery(loaded, cacheKey, realm, model.getId());
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             if (invalidations.contains(userId)) return model;
             if (managedUsers.containsKey(userId)) return managedUsers.get(userId);
 
-            CachedUser cached = cache.get(userId, CachedUser.class);
+            CachedUser cached = getCached(userId, CachedUser.class);
             if (cached == null) {
                 cached = new CachedUser(loaded, realm, model);
-                cache.addRevisioned(cached, startupRevision);
+                addRevisioned(cached);
             }
             UserAdapter adapter = new UserAdapter(cached, this, session, realm);
             managedUsers.put(userId, adapter);
@@ -299,7 +357,7 @@ public class UserCacheSession implements CacheUserProvider {
         if (invalidations.contains(cacheKey)) {
             return getDelegate().getUserByFederatedIdentity(socialLink, realm);
         }
-        UserListQuery query = cache.get(cacheKey, UserListQuery.class);
+        UserListQuery query = getCached(cacheKey, UserListQuery.class);
 
         String userId = null;
         if (query == null) {
@@ -308,14 +366,14 @@ public class UserCacheSession implements CacheUserProvider {
             if (model == null) return null;
             userId = model.getId();
             query = new UserListQuery(loaded, cacheKey, realm, userId);
-            cache.addRevisioned(query, startupRevision);
+            addRevisioned(query);
             if (invalidations.contains(userId)) return model;
             if (managedUsers.containsKey(userId)) return managedUsers.get(userId);
 
-            CachedUser cached = cache.get(userId, CachedUser.class);
+            CachedUser cached = getCached(userId, CachedUser.class);
             if (cached == null) {
                 cached = new CachedUser(loaded, realm, model);
-                cache.addRevisioned(cached, startupRevision);
+                addRevisioned(cached);
             }
             UserAdapter adapter = new UserAdapter(cached, this, session, realm);
             managedUsers.put(userId, adapter);
@@ -388,6 +446,11 @@ public class UserCacheSession implements CacheUserProvider {
         return getDelegate().searchForUserByAttributes(attributes, realm, firstResult, maxResults);
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        return getDelegate().searchForUserByPrefix(search, realm, lastUsername, maxResults);
+    }
+
     @Override
     public List<UserModel> searchForUserByUserAttribute(String attrName, String attrValue, RealmModel realm) {
         return getDelegate().searchForUserByUserAttribute(attrName, attrValue, realm);
@@ -402,13 +465,13 @@ public class UserCacheSession implements CacheUserProvider {
             return getDelegate().getFederatedIdentities(user, realm);
         }
 
-        CachedFederatedIdentityLinks cachedLinks = cache.get(cacheKey, CachedFederatedIdentityLinks.class);
+        CachedFederatedIdentityLinks cachedLinks = getCached(cacheKey, CachedFederatedIdentityLinks.class);
 
         if (cachedLinks == null) {
             Long loaded = cache.getCurrentRevision(cacheKey);
             Set<FederatedIdentityModel> federatedIdentities = getDelegate().getFederatedIdentities(user, realm);
             cachedLinks = new CachedFederatedIdentityLinks(loaded, cacheKey, realm, federatedIdentities);
-            cache.addRevisioned(cachedLinks, startupRevision);
+            addRevisioned(cachedLinks);
             return federatedIdentities;
         } else {
             return new HashSet<>(cachedLinks.getFederatedIdentities());
@@ -18,34 +18,23 @@
 package org.keycloak.models.cache.infinispan.entities;
 
 import org.keycloak.common.enums.SslRequired;
-import org.keycloak.models.AuthenticationExecutionModel;
 import org.keycloak.models.AuthenticationFlowModel;
-import org.keycloak.models.AuthenticatorConfigModel;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientTemplateModel;
 import org.keycloak.models.GroupModel;
-import org.keycloak.models.IdentityProviderMapperModel;
-import org.keycloak.models.IdentityProviderModel;
 import org.keycloak.models.OTPPolicy;
 import org.keycloak.models.PasswordPolicy;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
-import org.keycloak.models.RequiredActionProviderModel;
 import org.keycloak.models.RequiredCredentialModel;
 import org.keycloak.models.RoleModel;
-import org.keycloak.models.UserFederationMapperModel;
-import org.keycloak.models.UserFederationProviderModel;
 import org.keycloak.models.cache.infinispan.RealmCache;
-import org.keycloak.common.util.MultivaluedHashMap;
 
 import java.io.Serializable;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -68,7 +57,6 @@ public class CachedRealm extends AbstractRevisioned {
     protected boolean rememberMe;
     protected boolean verifyEmail;
     protected boolean resetPasswordAllowed;
-    protected boolean identityFederationEnabled;
     protected boolean editUsernameAllowed;
     //--- brute force settings
     protected boolean bruteForceProtected;
@@ -108,27 +96,16 @@ public class CachedRealm extends AbstractRevisioned {
     protected String masterAdminClient;
 
     protected List<RequiredCredentialModel> requiredCredentials;
-    protected List<UserFederationProviderModel> userFederationProviders;
-    protected MultivaluedHashMap<String, UserFederationMapperModel> userFederationMappers = new MultivaluedHashMap<String, UserFederationMapperModel>();
-    protected Set<UserFederationMapperModel> userFederationMapperSet;
-    protected List<IdentityProviderModel> identityProviders;
 
     protected Map<String, String> browserSecurityHeaders;
     protected Map<String, String> smtpConfig;
-    protected Map<String, AuthenticationFlowModel> authenticationFlows = new HashMap<>();
-    protected List<AuthenticationFlowModel> authenticationFlowList;
-    protected Map<String, AuthenticatorConfigModel> authenticatorConfigs = new HashMap<>();
-    protected Map<String, RequiredActionProviderModel> requiredActionProviders = new HashMap<>();
-    protected List<RequiredActionProviderModel> requiredActionProviderList;
-    protected Map<String, RequiredActionProviderModel> requiredActionProvidersByAlias = new HashMap<>();
-    protected MultivaluedHashMap<String, AuthenticationExecutionModel> authenticationExecutions = new MultivaluedHashMap<>();
-    protected Map<String, AuthenticationExecutionModel> executionsById = new HashMap<>();
-
-    protected AuthenticationFlowModel browserFlow;
-    protected AuthenticationFlowModel registrationFlow;
-    protected AuthenticationFlowModel directGrantFlow;
-    protected AuthenticationFlowModel resetCredentialsFlow;
-    protected AuthenticationFlowModel clientAuthenticationFlow;
+
+    // flows themselves are cached in CachedRealmAuthentication
+    protected String browserFlow;
+    protected String registrationFlow;
+    protected String directGrantFlow;
+    protected String resetCredentialsFlow;
+    protected String clientAuthenticationFlow;
 
     protected boolean eventsEnabled;
     protected long eventsExpiration;
@@ -139,18 +116,12 @@ public class CachedRealm extends AbstractRevisioned {
     protected boolean adminEventsDetailsEnabled;
     protected List<String> defaultRoles;
 
-    public Set<IdentityProviderMapperModel> getIdentityProviderMapperSet() {
-        return identityProviderMapperSet;
-    }
-
     protected List<String> defaultGroups = new LinkedList<String>();
     protected Set<String> groups = new HashSet<String>();
     protected List<String> clientTemplates= new LinkedList<>();
     protected boolean internationalizationEnabled;
     protected Set<String> supportedLocales;
     protected String defaultLocale;
-    protected MultivaluedHashMap<String, IdentityProviderMapperModel> identityProviderMappers = new MultivaluedHashMap<>();
-    protected Set<IdentityProviderMapperModel> identityProviderMapperSet;
 
     public CachedRealm(Long revision, RealmModel model) {
         super(revision, model.getId());
@@ -164,7 +135,6 @@ public class CachedRealm extends AbstractRevisioned {
         rememberMe = model.isRememberMe();
         verifyEmail = model.isVerifyEmail();
         resetPasswordAllowed = model.isResetPasswordAllowed();
-        identityFederationEnabled = model.isIdentityFederationEnabled();
         editUsernameAllowed = model.isEditUsernameAllowed();
         //--- brute force settings
         bruteForceProtected = model.isBruteForceProtected();
@@ -203,25 +173,6 @@ public class CachedRealm extends AbstractRevisioned {
         emailTheme = model.getEmailTheme();
 
         requiredCredentials = model.getRequiredCredentials();
-        userFederationProviders = model.getUserFederationProviders();
-        userFederationMapperSet = model.getUserFederationMappers();
-        for (UserFederationMapperModel mapper : userFederationMapperSet) {
-            this.userFederationMappers.add(mapper.getFederationProviderId(), mapper);
-        }
-
-        this.identityProviders = new ArrayList<>();
-
-        for (IdentityProviderModel identityProviderModel : model.getIdentityProviders()) {
-            this.identityProviders.add(new IdentityProviderModel(identityProviderModel));
-        }
-        this.identityProviders = Collections.unmodifiableList(this.identityProviders);
-
-        this.identityProviderMapperSet = model.getIdentityProviderMappers();
-        for (IdentityProviderMapperModel mapper : identityProviderMapperSet) {
-            identityProviderMappers.add(mapper.getIdentityProviderAlias(), mapper);
-        }
-
-
 
         smtpConfig = model.getSmtpConfig();
         browserSecurityHeaders = model.getBrowserSecurityHeaders();
@@ -243,39 +194,26 @@ public class CachedRealm extends AbstractRevisioned {
         internationalizationEnabled = model.isInternationalizationEnabled();
         supportedLocales = model.getSupportedLocales();
         defaultLocale = model.getDefaultLocale();
-        authenticationFlowList = model.getAuthenticationFlows();
-        for (AuthenticationFlowModel flow : authenticationFlowList) {
-            this.authenticationFlows.put(flow.getId(), flow);
-            authenticationExecutions.put(flow.getId(), new LinkedList<AuthenticationExecutionModel>());
-            for (AuthenticationExecutionModel execution : model.getAuthenticationExecutions(flow.getId())) {
-                authenticationExecutions.add(flow.getId(), execution);
-                executionsById.put(execution.getId(), execution);
-            }
-        }
         for (GroupModel group : model.getGroups()) {
             groups.add(group.getId());
         }
-        for (AuthenticatorConfigModel authenticator : model.getAuthenticatorConfigs()) {
-            authenticatorConfigs.put(authenticator.getId(), authenticator);
-        }
-        requiredActionProviderList = model.getRequiredActionProviders();
-        for (RequiredActionProviderModel action : requiredActionProviderList) {
-            this.requiredActionProviders.put(action.getId(), action);
-            requiredActionProvidersByAlias.put(action.getAlias(), action);
-        }
 
         for (GroupModel group : model.getDefaultGroups()) {
             defaultGroups.add(group.getId());
         }
 
-        browserFlow = model.getBrowserFlow();
-        registrationFlow = model.getRegistrationFlow();
-        directGrantFlow = model.getDirectGrantFlow();
-        resetCredentialsFlow = model.getResetCredentialsFlow();
-        clientAuthenticationFlow = model.getClientAuthenticationFlow();
+        browserFlow = getFlowId(model.getBrowserFlow());
+        registrationFlow = getFlowId(model.getRegistrationFlow());
+        directGrantFlow = getFlowId(model.getDirectGrantFlow());
+        resetCredentialsFlow = getFlowId(model.getResetCredentialsFlow());
+        clientAuthenticationFlow = getFlowId(model.getClientAuthenticationFlow());
 
     }
 
+    protected static String getFlowId(AuthenticationFlowModel flow) {
+        return flow != null ? flow.getId() : null;
+    }
+
     protected void cacheClientTemplates(RealmModel model) {
         for (ClientTemplateModel template : model.getClientTemplates()) {
             clientTemplates.add(template.getId());
@@ -417,10 +355,6 @@ public class CachedRealm extends AbstractRevisioned {
         return passwordPolicy;
     }
 
-    public boolean isIdentityFederationEnabled() {
-        return identityFederationEnabled;
-    }
-
     public Map<String, String> getSmtpConfig() {
         return smtpConfig;
     }
@@ -477,22 +411,10 @@ public class CachedRealm extends AbstractRevisioned {
         return adminEventsDetailsEnabled;
     }
 
-    public List<UserFederationProviderModel> getUserFederationProviders() {
-        return userFederationProviders;
-    }
-
-    public MultivaluedHashMap<String, UserFederationMapperModel> getUserFederationMappers() {
-        return userFederationMappers;
-    }
-
     public String getCertificatePem() {
         return certificatePem;
     }
 
-    public List<IdentityProviderModel> getIdentityProviders() {
-        return identityProviders;
-    }
-
     public boolean isInternationalizationEnabled() {
         return internationalizationEnabled;
     }
@@ -505,55 +427,27 @@ public class CachedRealm extends AbstractRevisioned {
         return defaultLocale;
     }
 
-    public MultivaluedHashMap<String, IdentityProviderMapperModel> getIdentityProviderMappers() {
-        return identityProviderMappers;
-    }
-
-    public Map<String, AuthenticationFlowModel> getAuthenticationFlows() {
-        return authenticationFlows;
-    }
-
-    public Map<String, AuthenticatorConfigModel> getAuthenticatorConfigs() {
-        return authenticatorConfigs;
-    }
-
-    public MultivaluedHashMap<String, AuthenticationExecutionModel> getAuthenticationExecutions() {
-        return authenticationExecutions;
-    }
-
-    public Map<String, AuthenticationExecutionModel> getExecutionsById() {
-        return executionsById;
-    }
-
-    public Map<String, RequiredActionProviderModel> getRequiredActionProviders() {
-        return requiredActionProviders;
-    }
-
-    public Map<String, RequiredActionProviderModel> getRequiredActionProvidersByAlias() {
-        return requiredActionProvidersByAlias;
-    }
-
     public OTPPolicy getOtpPolicy() {
         return otpPolicy;
     }
 
-    public AuthenticationFlowModel getBrowserFlow() {
+    public String getBrowserFlowId() {
         return browserFlow;
     }
 
-    public AuthenticationFlowModel getRegistrationFlow() {
+    public String getRegistrationFlowId() {
         return registrationFlow;
     }
 
-    public AuthenticationFlowModel getDirectGrantFlow() {
+    public String getDirectGrantFlowId() {
         return directGrantFlow;
     }
 
-    public AuthenticationFlowModel getResetCredentialsFlow() {
+    public String getResetCredentialsFlowId() {
         return resetCredentialsFlow;
     }
 
-    public AuthenticationFlowModel getClientAuthenticationFlow() {
+    public String getClientAuthenticationFlowId() {
         return clientAuthenticationFlow;
     }
 
@@ -581,15 +475,4 @@ public class CachedRealm extends AbstractRevisioned {
         return certificate;
     }
 
-    public Set<UserFederationMapperModel> getUserFederationMapperSet() {
-        return userFederationMapperSet;
-    }
-
-    public List<AuthenticationFlowModel> getAuthenticationFlowList() {
-        return authenticationFlowList;
-    }
-
-    public List<RequiredActionProviderModel> getRequiredActionProviderList() {
-        return requiredActionProviderList;
-    }
 }
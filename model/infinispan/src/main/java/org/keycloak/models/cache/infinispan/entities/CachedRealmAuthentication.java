@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import org.keycloak.common.util.MultivaluedHashMap;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.AuthenticationFlowModel;
+import org.keycloak.models.AuthenticatorConfigModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RequiredActionProviderModel;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Authentication flows, executions, authenticator configs and required actions of a realm. Cached separately from
+ * {@link CachedRealm}, so changing them doesn't invalidate the rest of the realm. Flow bindings of the realm stay in
+ * {@link CachedRealm} as ids.
+ */
+public class CachedRealmAuthentication extends AbstractRevisioned {
+
+    protected String realm;
+    protected Map<String, AuthenticationFlowModel> authenticationFlows = new HashMap<>();
+    protected List<AuthenticationFlowModel> authenticationFlowList;
+    protected Map<String, AuthenticatorConfigModel> authenticatorConfigs = new HashMap<>();
+    protected Map<String, RequiredActionProviderModel> requiredActionProviders = new HashMap<>();
+    protected List<RequiredActionProviderModel> requiredActionProviderList;
+    protected Map<String, RequiredActionProviderModel> requiredActionProvidersByAlias = new HashMap<>();
+    protected MultivaluedHashMap<String, AuthenticationExecutionModel> authenticationExecutions = new MultivaluedHashMap<>();
+    protected Map<String, AuthenticationExecutionModel> executionsById = new HashMap<>();
+
+    public CachedRealmAuthentication(Long revision, String id, RealmModel model) {
+        super(revision, id);
+        realm = model.getId();
+        authenticationFlowList = model.getAuthenticationFlows();
+        for (AuthenticationFlowModel flow : authenticationFlowList) {
+            authenticationFlows.put(flow.getId(), flow);
+            authenticationExecutions.put(flow.getId(), new LinkedList<AuthenticationExecutionModel>());
+            for (AuthenticationExecutionModel execution : model.getAuthenticationExecutions(flow.getId())) {
+                authenticationExecutions.add(flow.getId(), execution);
+                executionsById.put(execution.getId(), execution);
+            }
+        }
+        for (AuthenticatorConfigModel authenticator : model.getAuthenticatorConfigs()) {
+            authenticatorConfigs.put(authenticator.getId(), authenticator);
+        }
+        requiredActionProviderList = model.getRequiredActionProviders();
+        for (RequiredActionProviderModel action : requiredActionProviderList) {
+            requiredActionProviders.put(action.getId(), action);
+            requiredActionProvidersByAlias.put(action.getAlias(), action);
+        }
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    public Map<String, AuthenticationFlowModel> getAuthenticationFlows() {
+        return authenticationFlows;
+    }
+
+    public List<AuthenticationFlowModel> getAuthenticationFlowList() {
+        return authenticationFlowList;
+    }
+
+    public MultivaluedHashMap<String, AuthenticationExecutionModel> getAuthenticationExecutions() {
+        return authenticationExecutions;
+    }
+
+    public Map<String, AuthenticationExecutionModel> getExecutionsById() {
+        return executionsById;
+    }
+
+    public Map<String, AuthenticatorConfigModel> getAuthenticatorConfigs() {
+        return authenticatorConfigs;
+    }
+
+    public Map<String, RequiredActionProviderModel> getRequiredActionProviders() {
+        return requiredActionProviders;
+    }
+
+    public List<RequiredActionProviderModel> getRequiredActionProviderList() {
+        return requiredActionProviderList;
+    }
+
+    public Map<String, RequiredActionProviderModel> getRequiredActionProvidersByAlias() {
+        return requiredActionProvidersByAlias;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import org.keycloak.common.util.MultivaluedHashMap;
+import org.keycloak.models.IdentityProviderMapperModel;
+import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.RealmModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Identity providers and their mappers of a realm. Cached separately from {@link CachedRealm}, so changing them doesn't
+ * invalidate the rest of the realm.
+ */
+public class CachedRealmIdentityProviders extends AbstractRevisioned {
+
+    protected String realm;
+    protected List<IdentityProviderModel> identityProviders;
+    protected MultivaluedHashMap<String, IdentityProviderMapperModel> identityProviderMappers = new MultivaluedHashMap<>();
+    protected Set<IdentityProviderMapperModel> identityProviderMapperSet;
+
+    public CachedRealmIdentityProviders(Long revision, String id, RealmModel model) {
+        super(revision, id);
+        realm = model.getId();
+
+        identityProviders = new ArrayList<>();
+        for (IdentityProviderModel identityProviderModel : model.getIdentityProviders()) {
+            identityProviders.add(new IdentityProviderModel(identityProviderModel));
+        }
+        identityProviders = Collections.unmodifiableList(identityProviders);
+
+        identityProviderMapperSet = model.getIdentityProviderMappers();
+        for (IdentityProviderMapperModel mapper : identityProviderMapperSet) {
+            identityProviderMappers.add(mapper.getIdentityProviderAlias(), mapper);
+        }
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    public boolean isIdentityFederationEnabled() {
+        return !identityProviders.isEmpty();
+    }
+
+    public List<IdentityProviderModel> getIdentityProviders() {
+        return identityProviders;
+    }
+
+    public MultivaluedHashMap<String, IdentityProviderMapperModel> getIdentityProviderMappers() {
+        return identityProviderMappers;
+    }
+
+    public Set<IdentityProviderMapperModel> getIdentityProviderMapperSet() {
+        return identityProviderMapperSet;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import org.keycloak.common.util.MultivaluedHashMap;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserFederationMapperModel;
+import org.keycloak.models.UserFederationProviderModel;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * User federation providers and their mappers of a realm. Cached separately from {@link CachedRealm}, so changing them
+ * (e.g. updating last sync time) doesn't invalidate the rest of the realm.
+ */
+public class CachedRealmUserFederation extends AbstractRevisioned {
+
+    protected String realm;
+    protected List<UserFederationProviderModel> userFederationProviders;
+    protected MultivaluedHashMap<String, UserFederationMapperModel> userFederationMappers = new MultivaluedHashMap<>();
+    protected Set<UserFederationMapperModel> userFederationMapperSet;
+
+    public CachedRealmUserFederation(Long revision, String id, RealmModel model) {
+        super(revision, id);
+        realm = model.getId();
+        userFederationProviders = model.getUserFederationProviders();
+        userFederationMapperSet = model.getUserFederationMappers();
+        for (UserFederationMapperModel mapper : userFederationMapperSet) {
+            userFederationMappers.add(mapper.getFederationProviderId(), mapper);
+        }
+    }
+
+    public String getRealm() {
+        return realm;
+    }
+
+    public List<UserFederationProviderModel> getUserFederationProviders() {
+        return userFederationProviders;
+    }
+
+    public MultivaluedHashMap<String, UserFederationMapperModel> getUserFederationMappers() {
+        return userFederationMappers;
+    }
+
+    public Set<UserFederationMapperModel> getUserFederationMapperSet() {
+        return userFederationMapperSet;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.cache.infinispan.entities;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.keycloak.models.RoleModel;
+
+/**
+ * Roles of the user in the scope of some client. Valid just for the revision of the realm model it was computed from.
+ */
+public class CachedScopedRoleMappings {
+
+    private final long realmModelRevision;
+    private final Set<String> roleIds;
+
+    public CachedScopedRoleMappings(long realmModelRevision, Set<RoleModel> roles) {
+        this.realmModelRevision = realmModelRevision;
+        Set<String> roleIds = new HashSet<>();
+        for (RoleModel role : roles) {
+            roleIds.add(role.getId());
+        }
+        this.roleIds = Collections.unmodifiableSet(roleIds);
+    }
+
+    public long getRealmModelRevision() {
+        return realmModelRevision;
+    }
+
+    public Set<String> getRoleIds() {
+        return roleIds;
+    }
+}
@@ -31,6 +31,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -54,6 +56,7 @@ public class CachedUser extends AbstractRevisioned implements InRealm  {
     private Set<String> roleMappings = new HashSet<>();
     private Set<String> groups = new HashSet<>();
     private Map<String, CachedUserConsent> consents = new HashMap<>(); // Key is client DB Id
+    private ConcurrentMap<String, CachedScopedRoleMappings> scopedRoleMappings = new ConcurrentHashMap<>(); // Key is client DB Id
 
 
 
@@ -158,4 +161,11 @@ public class CachedUser extends AbstractRevisioned implements InRealm  {
     public Map<String, CachedUserConsent> getConsents() {
         return consents;
     }
+
+    /**
+     * Scoped role mappings computed for the clients. They are added while the user is cached and dropped together with the user
+     */
+    public ConcurrentMap<String, CachedScopedRoleMappings> getScopedRoleMappings() {
+        return scopedRoleMappings;
+    }
 }
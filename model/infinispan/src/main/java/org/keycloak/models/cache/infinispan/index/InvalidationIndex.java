@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.context.Flag;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.keycloak.models.cache.infinispan.entities.CachedClient;
+import org.keycloak.models.cache.infinispan.entities.CachedClientTemplate;
+import org.keycloak.models.cache.infinispan.entities.CachedGroup;
+import org.keycloak.models.cache.infinispan.entities.CachedRole;
+import org.keycloak.models.cache.infinispan.entities.ClientQuery;
+import org.keycloak.models.cache.infinispan.entities.ClientTemplateQuery;
+import org.keycloak.models.cache.infinispan.entities.GroupQuery;
+import org.keycloak.models.cache.infinispan.entities.InClient;
+import org.keycloak.models.cache.infinispan.entities.InRealm;
+import org.keycloak.models.cache.infinispan.entities.RealmQuery;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.models.cache.infinispan.entities.RoleQuery;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-local reverse dependency index of the realm and user caches. It maps realm, client, role, group and client template
+ * ids to the keys of the cached objects, which depend on them, so invalidation doesn't need to stream the whole cache.
+ *
+ * The index may contain keys of already removed or replaced entries. Callers must verify the returned keys against the
+ * cache with the corresponding predicate from the stream package.
+ */
+@Listener
+public class InvalidationIndex {
+
+    private static final String IN_REALM = "realm::";
+    private static final String IN_CLIENT = "client::";
+    private static final String REALM_QUERY = "realm.query::";
+    private static final String CLIENT_QUERY = "client.query::";
+    private static final String CLIENT_QUERY_IN_REALM = "client.query.realm::";
+    private static final String CLIENT_TEMPLATE_QUERY = "template.query::";
+    private static final String GROUP_QUERY = "group.query::";
+    private static final String HAS_ROLE = "role::";
+
+    // cache key -> dependencies under which the key is indexed. Used for cleanup when the entry is removed
+    private final ConcurrentMap<String, Set<String>> indexed = new ConcurrentHashMap<>();
+
+    // dependency -> cache keys
+    private final ConcurrentMap<String, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    private InvalidationIndex() {
+    }
+
+    public static InvalidationIndex register(Cache<String, Revisioned> cache) {
+        InvalidationIndex index = new InvalidationIndex();
+        cache.addListener(index);
+
+        // includeCurrentState is not supported for the local listener. Entries changed meanwhile may be indexed with stale
+        // dependencies, which is fine as the callers verify the candidates
+        for (Map.Entry<String, Revisioned> entry : cache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL, Flag.SKIP_CACHE_LOAD).entrySet()) {
+            index.add(entry.getKey(), entry.getValue());
+        }
+        return index;
+    }
+
+    /**
+     * Keys of all the {@link InRealm} entries of the realm
+     */
+    public Set<String> getInRealm(String realm) {
+        return lookup(IN_REALM, realm);
+    }
+
+    /**
+     * Keys of all the {@link InClient} entries of the client
+     */
+    public Set<String> getInClient(String client) {
+        return lookup(IN_CLIENT, client);
+    }
+
+    public Set<String> getRealmQueries(String realm) {
+        return lookup(REALM_QUERY, realm);
+    }
+
+    public Set<String> getClientQueries(String client) {
+        return lookup(CLIENT_QUERY, client);
+    }
+
+    public Set<String> getClientQueriesInRealm(String realm) {
+        return lookup(CLIENT_QUERY_IN_REALM, realm);
+    }
+
+    public Set<String> getClientTemplateQueries(String template) {
+        return lookup(CLIENT_TEMPLATE_QUERY, template);
+    }
+
+    public Set<String> getGroupQueries(String group) {
+        return lookup(GROUP_QUERY, group);
+    }
+
+    /**
+     * Keys of the roles, groups, clients, client templates and role queries referencing the role
+     */
+    public Set<String> getHasRole(String role) {
+        return lookup(HAS_ROLE, role);
+    }
+
+    public int size() {
+        return indexed.size();
+    }
+
+    @CacheEntryCreated
+    public void entryCreated(CacheEntryCreatedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            add(event.getKey(), event.getValue());
+        }
+    }
+
+    @CacheEntryModified
+    public void entryModified(CacheEntryModifiedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            add(event.getKey(), event.getValue());
+        }
+    }
+
+    @CacheEntryRemoved
+    public void entryRemoved(CacheEntryRemovedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            remove(event.getKey());
+        }
+    }
+
+    @CacheEntryInvalidated
+    public void entryInvalidated(CacheEntryInvalidatedEvent<String, Object> event) {
+        if (!event.isPre()) {
+            remove(event.getKey());
+        }
+    }
+
+    @CacheEntriesEvicted
+    public void entriesEvicted(CacheEntriesEvictedEvent<String, Object> event) {
+        for (String key : event.getEntries().keySet()) {
+            remove(key);
+        }
+    }
+
+    void add(String key, Object value) {
+        Set<String> current = getDependencies(value);
+        Set<String> previous = current.isEmpty() ? indexed.remove(key) : indexed.put(key, current);
+        if (current.equals(previous)) {
+            return;
+        }
+
+        if (previous != null) {
+            for (String dependency : previous) {
+                if (!current.contains(dependency)) delete(dependency, key);
+            }
+        }
+        for (String dependency : current) {
+            // Add inside compute, so the set can't be concurrently dropped by delete() after it became empty
+            dependents.compute(dependency, (d, keys) -> {
+                if (keys == null) keys = ConcurrentHashMap.newKeySet();
+                keys.add(key);
+                return keys;
+            });
+        }
+    }
+
+    void remove(String key) {
+        Set<String> previous = indexed.remove(key);
+        if (previous != null) {
+            for (String dependency : previous) {
+                delete(dependency, key);
+            }
+        }
+    }
+
+    private void delete(String dependency, String key) {
+        dependents.computeIfPresent(dependency, (d, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private Set<String> lookup(String type, String id) {
+        Set<String> keys = dependents.get(type + id);
+        return keys != null ? new HashSet<>(keys) : Collections.<String>emptySet();
+    }
+
+    private static Set<String> getDependencies(Object value) {
+        if (!(value instanceof Revisioned)) {
+            return Collections.emptySet();
+        }
+
+        Set<String> dependencies = new HashSet<>();
+        if (value instanceof InRealm) {
+            addDependency(dependencies, IN_REALM, ((InRealm) value).getRealm());
+        }
+        if (value instanceof InClient) {
+            addDependency(dependencies, IN_CLIENT, ((InClient) value).getClientId());
+        }
+        if (value instanceof RealmQuery) {
+            addDependencies(dependencies, REALM_QUERY, ((RealmQuery) value).getRealms());
+        }
+        if (value instanceof ClientQuery) {
+            ClientQuery query = (ClientQuery) value;
+            addDependencies(dependencies, CLIENT_QUERY, query.getClients());
+            addDependency(dependencies, CLIENT_QUERY_IN_REALM, query.getRealm());
+        }
+        if (value instanceof ClientTemplateQuery) {
+            addDependencies(dependencies, CLIENT_TEMPLATE_QUERY, ((ClientTemplateQuery) value).getTemplates());
+        }
+        if (value instanceof GroupQuery) {
+            addDependencies(dependencies, GROUP_QUERY, ((GroupQuery) value).getGroups());
+        }
+
+        // Same as HasRolePredicate
+        if (value instanceof CachedRole) {
+            addDependencies(dependencies, HAS_ROLE, ((CachedRole) value).getComposites());
+        }
+        if (value instanceof CachedGroup) {
+            addDependencies(dependencies, HAS_ROLE, ((CachedGroup) value).getRoleMappings());
+        }
+        if (value instanceof RoleQuery) {
+            addDependencies(dependencies, HAS_ROLE, ((RoleQuery) value).getRoles());
+        }
+        if (value instanceof CachedClient) {
+            addDependencies(dependencies, HAS_ROLE, ((CachedClient) value).getScope());
+        }
+        if (value instanceof CachedClientTemplate) {
+            addDependencies(dependencies, HAS_ROLE, ((CachedClientTemplate) value).getScope());
+        }
+        return dependencies;
+    }
+
+    private static void addDependencies(Set<String> dependencies, String type, Collection<String> ids) {
+        if (ids != null) {
+            for (String id : ids) {
+                addDependency(dependencies, type, id);
+            }
+        }
+    }
+
+    private static void addDependency(Set<String> dependencies, String type, String id) {
+        if (id != null) {
+            dependencies.add(type + id);
+        }
+    }
+}
@@ -174,17 +174,14 @@ public class ClientSessionAdapter implements ClientSessionModel {
 
     @Override
     public void setNote(String name, String value) {
-        if (entity.getNotes() == null) {
-            entity.setNotes(new HashMap<String, String>());
-        }
-        entity.getNotes().put(name, value);
+        entity.setNote(name, value);
         update();
     }
 
     @Override
     public void removeNote(String name) {
         if (entity.getNotes() != null) {
-            entity.getNotes().remove(name);
+            entity.removeNote(name);
             update();
         }
     }
@@ -199,10 +196,7 @@ public class ClientSessionAdapter implements ClientSessionModel {
 
     @Override
     public void setUserSessionNote(String name, String value) {
-        if (entity.getUserSessionNotes() == null) {
-            entity.setUserSessionNotes(new HashMap<String, String>());
-        }
-        entity.getUserSessionNotes().put(name, value);
+        entity.setUserSessionNote(name, value);
         update();
 
     }
@@ -233,14 +227,14 @@ public class ClientSessionAdapter implements ClientSessionModel {
 
     @Override
     public void addRequiredAction(String action) {
-        entity.getRequiredActions().add(action);
+        entity.addRequiredAction(action);
         update();
 
     }
 
     @Override
     public void removeRequiredAction(String action) {
-        entity.getRequiredActions().remove(action);
+        entity.removeRequiredAction(action);
         update();
 
     }
@@ -266,14 +260,14 @@ public class ClientSessionAdapter implements ClientSessionModel {
 
     @Override
     public void setExecutionStatus(String authenticator, ExecutionStatus status) {
-        entity.getAuthenticatorStatus().put(authenticator, status);
+        entity.setAuthenticatorStatus(authenticator, status);
         update();
 
     }
 
     @Override
     public void clearExecutionStatus() {
-        entity.getAuthenticatorStatus().clear();
+        entity.clearAuthenticatorStatus();
         update();
     }
 
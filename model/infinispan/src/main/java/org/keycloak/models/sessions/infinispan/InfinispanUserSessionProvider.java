@@ -19,12 +19,16 @@ package org.keycloak.models.sessions.infinispan;
 
 import org.infinispan.Cache;
 import org.infinispan.CacheStream;
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.context.Flag;
 import org.jboss.logging.Logger;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.ClientInitialAccessModel;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.ClientSessionModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionTask;
 import org.keycloak.models.KeycloakTransaction;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
@@ -32,30 +36,38 @@ import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UserSessionProvider;
 import org.keycloak.models.UsernameLoginFailureModel;
 import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.sessions.infinispan.entities.ChangeTrackingEntity;
 import org.keycloak.models.sessions.infinispan.entities.ClientInitialAccessEntity;
 import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
 import org.keycloak.models.sessions.infinispan.stream.ClientInitialAccessPredicate;
 import org.keycloak.models.sessions.infinispan.stream.ClientSessionPredicate;
 import org.keycloak.models.sessions.infinispan.stream.Comparators;
 import org.keycloak.models.sessions.infinispan.stream.Mappers;
+import org.keycloak.models.sessions.infinispan.stream.SessionExpirationPredicate;
 import org.keycloak.models.sessions.infinispan.stream.SessionPredicate;
 import org.keycloak.models.sessions.infinispan.stream.UserLoginFailurePredicate;
 import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.RealmInfoUtil;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -67,27 +79,77 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     private static final Logger log = Logger.getLogger(InfinispanUserSessionProvider.class);
 
+    private static final int EXPIRATION_BATCH_SIZE = 100;
+
     protected final KeycloakSession session;
     protected final Cache<String, SessionEntity> sessionCache;
     protected final Cache<String, SessionEntity> offlineSessionCache;
     protected final Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache;
+    protected final SessionIndex sessionIndex;
+    protected final SessionIndex offlineSessionIndex;
+    protected final OfflineSessionRefreshWriter offlineSessionRefreshWriter;
+    protected final SessionExpirationStatistics expirationStatistics;
     protected final InfinispanKeycloakTransaction tx;
 
     public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
                                          Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache) {
+        this(session, sessionCache, offlineSessionCache, loginFailureCache, null, null);
+    }
+
+    public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
+                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache, SessionIndex sessionIndex, SessionIndex offlineSessionIndex) {
+        this(session, sessionCache, offlineSessionCache, loginFailureCache, sessionIndex, offlineSessionIndex, null, new SessionExpirationStatistics());
+    }
+
+    public InfinispanUserSessionProvider(KeycloakSession session, Cache<String, SessionEntity> sessionCache, Cache<String, SessionEntity> offlineSessionCache,
+                                         Cache<LoginFailureKey, LoginFailureEntity> loginFailureCache, SessionIndex sessionIndex, SessionIndex offlineSessionIndex,
+                                         OfflineSessionRefreshWriter offlineSessionRefreshWriter, SessionExpirationStatistics expirationStatistics) {
         this.session = session;
         this.sessionCache = sessionCache;
         this.offlineSessionCache = offlineSessionCache;
         this.loginFailureCache = loginFailureCache;
+        this.sessionIndex = sessionIndex;
+        this.offlineSessionIndex = offlineSessionIndex;
+        this.offlineSessionRefreshWriter = offlineSessionRefreshWriter;
+        this.expirationStatistics = expirationStatistics;
         this.tx = new InfinispanKeycloakTransaction();
 
         session.getTransaction().enlistAfterCompletion(tx);
     }
 
+    // Persist the refresh of offline userSession after the transaction is committed, if write-behind of refreshes is enabled
+    void offlineSessionRefreshed(String userSessionId, int lastSessionRefresh) {
+        if (offlineSessionRefreshWriter != null) {
+            tx.sessionRefreshed(userSessionId, lastSessionRefresh);
+        }
+    }
+
     protected Cache<String, SessionEntity> getCache(boolean offline) {
         return offline ? offlineSessionCache : sessionCache;
     }
 
+    // Null if index is disabled. In that case, lookups fallback to stream the whole cache
+    protected SessionIndex getIndex(boolean offline) {
+        return offline ? offlineSessionIndex : sessionIndex;
+    }
+
+    // Lookup the sessions by ids from the index. Index may contain stale ids, so we always check the predicate against current value
+    protected List<Map.Entry<String, SessionEntity>> getIndexedEntries(Cache<String, SessionEntity> cache, Collection<String> ids, Predicate<Map.Entry<String, SessionEntity>> predicate) {
+        List<Map.Entry<String, SessionEntity>> entries = new LinkedList<>();
+        for (String id : ids) {
+            SessionEntity entity = cache.get(id);
+            if (entity == null) {
+                continue;
+            }
+
+            Map.Entry<String, SessionEntity> entry = new AbstractMap.SimpleImmutableEntry<>(id, entity);
+            if (predicate.test(entry)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
     @Override
     public ClientSessionModel createClientSession(RealmModel realm, ClientModel client) {
         String id = KeycloakModelUtils.generateId();
@@ -184,6 +246,15 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected List<UserSessionModel> getUserSessions(RealmModel realm, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
         CacheStream<Map.Entry<String, SessionEntity>> cacheStream = getCache(offline).entrySet().stream();
         Iterator<Map.Entry<String, SessionEntity>> itr = cacheStream.filter(predicate).iterator();
+        return wrapUserSessions(realm, itr, offline);
+    }
+
+    protected List<UserSessionModel> getUserSessions(RealmModel realm, Collection<String> indexedIds, Predicate<Map.Entry<String, SessionEntity>> predicate, boolean offline) {
+        Iterator<Map.Entry<String, SessionEntity>> itr = getIndexedEntries(getCache(offline), indexedIds, predicate).iterator();
+        return wrapUserSessions(realm, itr, offline);
+    }
+
+    private List<UserSessionModel> wrapUserSessions(RealmModel realm, Iterator<Map.Entry<String, SessionEntity>> itr, boolean offline) {
         List<UserSessionModel> sessions = new LinkedList<>();
         while (itr.hasNext()) {
             UserSessionEntity e = (UserSessionEntity) itr.next().getValue();
@@ -194,17 +265,31 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<UserSessionModel> getUserSessions(final RealmModel realm, UserModel user) {
-        return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).user(user.getId()), false);
+        UserSessionPredicate predicate = UserSessionPredicate.create(realm.getId()).user(user.getId());
+        if (sessionIndex != null) {
+            return getUserSessions(realm, sessionIndex.getUserSessionsByUser(realm.getId(), user.getId()), predicate, false);
+        }
+        return getUserSessions(realm, predicate, false);
     }
 
     @Override
     public List<UserSessionModel> getUserSessionByBrokerUserId(RealmModel realm, String brokerUserId) {
-        return getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId), false);
+        UserSessionPredicate predicate = UserSessionPredicate.create(realm.getId()).brokerUserId(brokerUserId);
+        if (sessionIndex != null) {
+            return getUserSessions(realm, sessionIndex.getUserSessionsByBrokerUserId(realm.getId(), brokerUserId), predicate, false);
+        }
+        return getUserSessions(realm, predicate, false);
     }
 
     @Override
     public UserSessionModel getUserSessionByBrokerSessionId(RealmModel realm, String brokerSessionId) {
-        List<UserSessionModel> userSessions = getUserSessions(realm, UserSessionPredicate.create(realm.getId()).brokerSessionId(brokerSessionId), false);
+        UserSessionPredicate predicate = UserSessionPredicate.create(realm.getId()).brokerSessionId(brokerSessionId);
+        List<UserSessionModel> userSessions;
+        if (sessionIndex != null) {
+            userSessions = getUserSessions(realm, sessionIndex.getUserSessionsByBrokerSessionId(realm.getId(), brokerSessionId), predicate, false);
+        } else {
+            userSessions = getUserSessions(realm, predicate, false);
+        }
         return userSessions.isEmpty() ? null : userSessions.get(0);
     }
 
@@ -221,8 +306,13 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected List<UserSessionModel> getUserSessions(final RealmModel realm, ClientModel client, int firstResult, int maxResults, final boolean offline) {
         final Cache<String, SessionEntity> cache = getCache(offline);
 
-        Iterator<UserSessionTimestamp> itr = cache.entrySet().stream()
-                .filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession())
+        SessionIndex index = getIndex(offline);
+        ClientSessionPredicate predicate = ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession();
+
+        Stream<Map.Entry<String, SessionEntity>> clientSessions = index != null
+                ? getIndexedEntries(cache, index.getClientSessionsByClient(realm.getId(), client.getId()), predicate).stream()
+                : cache.entrySet().stream().filter(predicate);
+        Iterator<UserSessionTimestamp> itr = clientSessions
                 .map(Mappers.clientSessionToUserSessionTimestamp())
                 .iterator();
 
@@ -264,7 +354,15 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     protected long getUserSessionsCount(RealmModel realm, ClientModel client, boolean offline) {
-        return getCache(offline).entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession()).map(Mappers.clientSessionToUserSessionId()).distinct().count();
+        Cache<String, SessionEntity> cache = getCache(offline);
+        SessionIndex index = getIndex(offline);
+        ClientSessionPredicate predicate = ClientSessionPredicate.create(realm.getId()).client(client.getId()).requireUserSession();
+
+        if (index != null) {
+            return getIndexedEntries(cache, index.getClientSessionsByClient(realm.getId(), client.getId()), predicate).stream().map(Mappers.clientSessionToUserSessionId()).distinct().count();
+        }
+
+        return cache.entrySet().stream().filter(predicate).map(Mappers.clientSessionToUserSessionId()).distinct().count();
     }
 
     @Override
@@ -281,85 +379,134 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     protected void removeUserSessions(RealmModel realm, UserModel user, boolean offline) {
-        Cache<String, SessionEntity> cache = getCache(offline);
-
-        Iterator<SessionEntity> itr = cache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).map(Mappers.sessionEntity()).iterator();
+        Iterator<Map.Entry<String, SessionEntity>> itr = getUserSessionEntries(realm, user, offline);
         while (itr.hasNext()) {
-            UserSessionEntity userSessionEntity = (UserSessionEntity) itr.next();
+            UserSessionEntity userSessionEntity = (UserSessionEntity) itr.next().getValue();
             removeUserSession(realm, userSessionEntity, offline);
         }
     }
 
+    protected Iterator<Map.Entry<String, SessionEntity>> getUserSessionEntries(RealmModel realm, UserModel user, boolean offline) {
+        Cache<String, SessionEntity> cache = getCache(offline);
+        SessionIndex index = getIndex(offline);
+        UserSessionPredicate predicate = UserSessionPredicate.create(realm.getId()).user(user.getId());
+
+        if (index != null) {
+            return getIndexedEntries(cache, index.getUserSessionsByUser(realm.getId(), user.getId()), predicate).iterator();
+        }
+        return cache.entrySet().stream().filter(predicate).iterator();
+    }
+
     @Override
     public void removeExpired(RealmModel realm) {
-        removeExpiredUserSessions(realm);
-        removeExpiredClientSessions(realm);
-        removeExpiredOfflineUserSessions(realm);
-        removeExpiredOfflineClientSessions(realm);
-        removeExpiredClientInitialAccess(realm);
+        removeExpired(Collections.singletonList(realm));
     }
 
-    private void removeExpiredUserSessions(RealmModel realm) {
-        int expired = Time.currentTime() - realm.getSsoSessionMaxLifespan();
-        int expiredRefresh = Time.currentTime() - realm.getSsoSessionIdleTimeout();
-
-        Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).expired(expired, expiredRefresh)).iterator();
+    // Single pass through each of sessions and offlineSessions cache for all the realms
+    @Override
+    public void removeExpired(List<RealmModel> realms) {
+        int currentTime = Time.currentTime();
 
-        while (itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
-            tx.remove(sessionCache, entity.getId());
+        SessionExpirationPredicate predicate = SessionExpirationPredicate.create(false, currentTime);
+        SessionExpirationPredicate offlinePredicate = SessionExpirationPredicate.create(true, currentTime);
+        for (RealmModel realm : realms) {
+            int expired = currentTime - realm.getSsoSessionMaxLifespan();
+            int expiredRefresh = currentTime - realm.getSsoSessionIdleTimeout();
+            int expiredDettachedClientSession = currentTime - RealmInfoUtil.getDettachedClientSessionLifespan(realm);
+            predicate.realm(realm.getId(), expired, expiredRefresh, expiredDettachedClientSession);
 
-            if (entity.getClientSessions() != null) {
-                for (String clientSessionId : entity.getClientSessions()) {
-                    tx.remove(sessionCache, clientSessionId);
-                }
-            }
+            int expiredOffline = currentTime - realm.getOfflineSessionIdleTimeout();
+            offlinePredicate.realm(realm.getId(), expiredOffline, expiredOffline, expiredOffline);
         }
-    }
 
-    private void removeExpiredClientSessions(RealmModel realm) {
-        int expiredDettachedClientSession = Time.currentTime() - RealmInfoUtil.getDettachedClientSessionLifespan(realm);
+        long start = System.currentTimeMillis();
+        ExpiredCounts counts = new ExpiredCounts();
+        removeExpired(predicate, false, counts);
+        removeExpired(offlinePredicate, true, counts);
+        expirationStatistics.expirationRun(start, counts.userSessions, counts.clientSessions, counts.clientInitialAccess);
+    }
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = sessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredDettachedClientSession).requireNullUserSession()).iterator();
-        while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next().getKey());
-        }
+    private static class ExpiredCounts {
+        private int userSessions;
+        private int clientSessions;
+        private int clientInitialAccess;
     }
 
-    private void removeExpiredOfflineUserSessions(RealmModel realm) {
-        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
+    // Expired entries are removed in batches. Every batch is committed in its own transaction together with the removals from the
+    // persister, so the sweep over all the realms doesn't hold all the removals in memory and a failed batch doesn't roll back the others
+    private void removeExpired(SessionExpirationPredicate predicate, boolean offline, ExpiredCounts counts) {
+        long start = System.currentTimeMillis();
+
+        Cache<String, SessionEntity> cache = getCache(offline);
+
+        int userSessions = 0;
+        int clientSessions = 0;
+        int clientInitialAccess = 0;
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).expired(null, expiredOffline)).iterator();
+        List<SessionEntity> batch = new ArrayList<>(EXPIRATION_BATCH_SIZE);
+        Iterator<Map.Entry<String, SessionEntity>> itr = cache.entrySet().stream().filter(predicate).iterator();
         while (itr.hasNext()) {
-            UserSessionEntity entity = (UserSessionEntity) itr.next().getValue();
-            tx.remove(offlineSessionCache, entity.getId());
+            SessionEntity entity = itr.next().getValue();
+            batch.add(entity);
 
-            persister.removeUserSession(entity.getId(), true);
+            if (entity instanceof UserSessionEntity) {
+                userSessions++;
+            } else if (entity instanceof ClientSessionEntity) {
+                clientSessions++;
+            } else {
+                clientInitialAccess++;
+            }
 
-            for (String clientSessionId : entity.getClientSessions()) {
-                tx.remove(offlineSessionCache, clientSessionId);
+            if (batch.size() >= EXPIRATION_BATCH_SIZE) {
+                removeExpiredBatch(cache, batch, offline);
             }
         }
-    }
+        removeExpiredBatch(cache, batch, offline);
 
-    private void removeExpiredOfflineClientSessions(RealmModel realm) {
-        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        int expiredOffline = Time.currentTime() - realm.getOfflineSessionIdleTimeout();
+        counts.userSessions += userSessions;
+        counts.clientSessions += clientSessions;
+        counts.clientInitialAccess += clientInitialAccess;
 
-        Iterator<String> itr = offlineSessionCache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).expiredRefresh(expiredOffline)).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            String sessionId = itr.next();
-            tx.remove(offlineSessionCache, sessionId);
-            persister.removeClientSession(sessionId, true);
-        }
+        log.debugf("Removed expired entries from cache '%s' in %d ms. userSessions: %d, clientSessions: %d, clientInitialAccess: %d",
+                cache.getName(), System.currentTimeMillis() - start, userSessions, clientSessions, clientInitialAccess);
     }
 
-    private void removeExpiredClientInitialAccess(RealmModel realm) {
-        Iterator<String> itr = sessionCache.entrySet().stream().filter(ClientInitialAccessPredicate.create(realm.getId()).expired(Time.currentTime())).map(Mappers.sessionId()).iterator();
-        while (itr.hasNext()) {
-            tx.remove(sessionCache, itr.next());
+    private void removeExpiredBatch(final Cache<String, SessionEntity> cache, final List<SessionEntity> batch, final boolean offline) {
+        if (batch.isEmpty()) {
+            return;
         }
+
+        KeycloakModelUtils.runJobInTransaction(session.getKeycloakSessionFactory(), new KeycloakSessionTask() {
+
+            @Override
+            public void run(KeycloakSession batchSession) {
+                // Removals of the whole batch are sent together when the transaction commits
+                InfinispanKeycloakTransaction batchTx = new InfinispanKeycloakTransaction();
+                batchSession.getTransaction().enlistAfterCompletion(batchTx);
+                UserSessionPersisterProvider persister = offline ? batchSession.getProvider(UserSessionPersisterProvider.class) : null;
+
+                for (SessionEntity entity : batch) {
+                    batchTx.remove(cache, entity.getId());
+
+                    if (entity instanceof UserSessionEntity) {
+                        UserSessionEntity userSession = (UserSessionEntity) entity;
+                        if (userSession.getClientSessions() != null) {
+                            for (String clientSessionId : userSession.getClientSessions()) {
+                                batchTx.remove(cache, clientSessionId);
+                            }
+                        }
+                        if (offline) {
+                            persister.removeUserSession(entity.getId(), true);
+                        }
+                    } else if (entity instanceof ClientSessionEntity && offline) {
+                        persister.removeClientSession(entity.getId(), true);
+                    }
+                }
+            }
+
+        });
+
+        batch.clear();
     }
 
     @Override
@@ -421,8 +568,12 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     private void onClientRemoved(RealmModel realm, ClientModel client, boolean offline) {
         Cache<String, SessionEntity> cache = getCache(offline);
+        SessionIndex index = getIndex(offline);
+        ClientSessionPredicate predicate = ClientSessionPredicate.create(realm.getId()).client(client.getId());
 
-        Iterator<Map.Entry<String, SessionEntity>> itr = cache.entrySet().stream().filter(ClientSessionPredicate.create(realm.getId()).client(client.getId())).iterator();
+        Iterator<Map.Entry<String, SessionEntity>> itr = index != null
+                ? getIndexedEntries(cache, index.getClientSessionsByClient(realm.getId(), client.getId()), predicate).iterator()
+                : cache.entrySet().stream().filter(predicate).iterator();
         while (itr.hasNext()) {
             ClientSessionEntity entity = (ClientSessionEntity) itr.next().getValue();
             ClientSessionAdapter adapter = wrap(realm, entity, offline);
@@ -448,11 +599,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     void attachSession(UserSessionAdapter userSession, ClientSessionModel clientSession) {
         UserSessionEntity entity = userSession.getEntity();
         String clientSessionId = clientSession.getId();
-        if (entity.getClientSessions() == null) {
-            entity.setClientSessions(new HashSet<String>());
-        }
-        if (!entity.getClientSessions().contains(clientSessionId)) {
-            entity.getClientSessions().add(clientSessionId);
+        if (entity.getClientSessions() == null || !entity.getClientSessions().contains(clientSessionId)) {
+            entity.addClientSession(clientSessionId);
             userSession.update();
         }
     }
@@ -469,7 +617,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         if (userSession != null)  {
             UserSessionEntity entity = ((UserSessionAdapter) userSession).getEntity();
             if (entity.getClientSessions() != null) {
-                entity.getClientSessions().remove(clientSession.getId());
+                entity.removeClientSession(clientSession.getId());
 
             }
             tx.replace(cache, entity.getId(), entity);
@@ -482,7 +630,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         UserSessionEntity entity = userSession.getEntity();
         String clientSessionId = clientSession.getId();
         if (entity.getClientSessions() != null && entity.getClientSessions().contains(clientSessionId)) {
-            entity.getClientSessions().remove(clientSessionId);
+            entity.removeClientSession(clientSessionId);
             if (entity.getClientSessions().isEmpty()) {
                 entity.setClientSessions(null);
             }
@@ -602,7 +750,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public List<ClientSessionModel> getOfflineClientSessions(RealmModel realm, UserModel user) {
-        Iterator<Map.Entry<String, SessionEntity>> itr = offlineSessionCache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).iterator();
+        Iterator<Map.Entry<String, SessionEntity>> itr = getUserSessionEntries(realm, user, true);
         List<ClientSessionModel> clientSessions = new LinkedList<>();
 
         while(itr.hasNext()) {
@@ -733,7 +881,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
         private boolean active;
         private boolean rollback;
-        private Map<Object, CacheTask> tasks = new HashMap<>();
+        // Ordered, so the tasks are executed in the order they were added
+        private Map<Object, CacheTask> tasks = new LinkedHashMap<>();
+        private Map<String, Integer> refreshedSessions = new HashMap<>();
 
         @Override
         public void begin() {
@@ -746,14 +896,69 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                 throw new RuntimeException("Rollback only!");
             }
 
+            // All the operations are started asynchronously and we wait for them together, so the commit takes single round-trip to the
+            // other nodes instead of one per operation. Consecutive added entries are put to every cache in single bulk operation (for
+            // example all the sessions loaded from the persister in the same page). The bulk is started before the next other task, so
+            // the operations are started in the order of the tasks
+            List<Future<?>> futures = new LinkedList<>();
+            Map<Cache, Map<Object, Object>> added = new LinkedHashMap<>();
             for (CacheTask task : tasks.values()) {
-                task.execute();
+                if (task.operation == CacheOperation.ADD) {
+                    Map<Object, Object> entries = added.get(task.cache);
+                    if (entries == null) {
+                        entries = new LinkedHashMap<>();
+                        added.put(task.cache, entries);
+                    }
+                    entries.put(task.key, task.value);
+                } else {
+                    putAllAsync(added, futures);
+                    futures.add(task.executeAsync());
+                }
+            }
+            putAllAsync(added, futures);
+
+            // Fails with the exception of the first failed operation as the synchronous operation would. The other operations are still finished
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted when waiting for cache operations", ie);
+                } catch (ExecutionException ee) {
+                    if (failure == null) {
+                        failure = ee.getCause() instanceof RuntimeException ? (RuntimeException) ee.getCause() : new RuntimeException(ee.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            // Values were marshalled, so the changes tracked for the replication can be forgotten
+            for (CacheTask task : tasks.values()) {
+                if (task.value instanceof DeltaAware) {
+                    ((DeltaAware) task.value).commit();
+                }
+            }
+
+            for (Map.Entry<String, Integer> entry : refreshedSessions.entrySet()) {
+                offlineSessionRefreshWriter.sessionRefreshed(entry.getKey(), entry.getValue());
             }
         }
 
+        private void putAllAsync(Map<Cache, Map<Object, Object>> added, List<Future<?>> futures) {
+            for (Map.Entry<Cache, Map<Object, Object>> entry : added.entrySet()) {
+                log.tracev("Executing cache operation: {0} of {1} entries", CacheOperation.ADD, entry.getValue().size());
+                futures.add(entry.getKey().putAllAsync(entry.getValue()));
+            }
+            added.clear();
+        }
+
         @Override
         public void rollback() {
             tasks.clear();
+            refreshedSessions.clear();
         }
 
         @Override
@@ -801,6 +1006,10 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             }
         }
 
+        public void sessionRefreshed(String userSessionId, int lastSessionRefresh) {
+            refreshedSessions.put(userSessionId, lastSessionRefresh);
+        }
+
         public void remove(Cache cache, Object key) {
             log.tracev("Adding cache operation: {0} on {1}", CacheOperation.REMOVE, key);
 
@@ -846,19 +1055,25 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                 this.value = value;
             }
 
-            public void execute() {
+            public Future<?> executeAsync() {
                 log.tracev("Executing cache operation: {0} on {1}", operation, key);
 
                 switch (operation) {
                     case ADD:
-                        cache.put(key, value);
-                        break;
+                        return cache.putAsync(key, value);
                     case REMOVE:
-                        cache.remove(key);
-                        break;
+                        return cache.removeAsync(key);
                     case REPLACE:
-                        cache.replace(key, value);
-                        break;
+                        if (value instanceof ChangeTrackingEntity) {
+                            // Just the changes are sent and the owners merge them into their entry under its lock. Merging them into the entry
+                            // removed in the meantime (logout, expiration) gives null, so the put doesn't recreate it
+                            Delta changes = ((ChangeTrackingEntity) value).changes();
+                            return cache.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).putAsync(key, changes);
+                        } else {
+                            return cache.replaceAsync(key, value);
+                        }
+                    default:
+                        throw new IllegalStateException("Unknown operation " + operation);
                 }
             }
         }
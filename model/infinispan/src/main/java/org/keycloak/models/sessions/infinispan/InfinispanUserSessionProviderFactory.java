@@ -18,6 +18,7 @@
 package org.keycloak.models.sessions.infinispan;
 
 import java.io.Serializable;
+import java.util.Map;
 
 import org.infinispan.Cache;
 import org.jboss.logging.Logger;
@@ -27,19 +28,29 @@ import org.keycloak.models.*;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
 import org.keycloak.models.sessions.infinispan.initializer.InfinispanUserSessionInitializer;
 import org.keycloak.models.sessions.infinispan.initializer.OfflineUserSessionLoader;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.PostMigrationEvent;
 import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
-public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory {
+public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory, ServerInfoAwareProviderFactory {
 
     private static final Logger log = Logger.getLogger(InfinispanUserSessionProviderFactory.class);
 
     private Config.Scope config;
 
+    private volatile SessionIndex sessionIndex;
+    private volatile SessionIndex offlineSessionIndex;
+
+    // Not null if write-behind of offline session refreshes is enabled
+    private OfflineSessionRefreshWriter offlineSessionRefreshWriter;
+
+    private final SessionExpirationStatistics expirationStatistics = new SessionExpirationStatistics();
+
     @Override
     public UserSessionProvider create(KeycloakSession session) {
         InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
@@ -47,7 +58,20 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         Cache<String, SessionEntity> offlineSessionsCache = connections.getCache(InfinispanConnectionProvider.OFFLINE_SESSION_CACHE_NAME);
         Cache<LoginFailureKey, LoginFailureEntity> loginFailures = connections.getCache(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME);
 
-        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures);
+        lazyInitIndexes(cache, offlineSessionsCache);
+
+        return new InfinispanUserSessionProvider(session, cache, offlineSessionsCache, loginFailures, sessionIndex, offlineSessionIndex, offlineSessionRefreshWriter, expirationStatistics);
+    }
+
+    private void lazyInitIndexes(Cache<String, SessionEntity> cache, Cache<String, SessionEntity> offlineSessionsCache) {
+        if (sessionIndex == null && config.getBoolean("sessionIndex", true)) {
+            synchronized (this) {
+                if (sessionIndex == null) {
+                    offlineSessionIndex = SessionIndex.register(offlineSessionsCache);
+                    sessionIndex = SessionIndex.register(cache);
+                }
+            }
+        }
     }
 
     @Override
@@ -63,6 +87,12 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         // Count of sessions to be computed in each segment
         final int sessionsPerSegment = config.getInt("sessionsPerSegment", 100);
 
+        // Refreshes of offline sessions are persisted in bulk after this interval (in seconds). The persisted time may be older
+        // up to 2 intervals, so the interval should be small compared to the offline session idle timeout
+        if (config.getBoolean("offlineRefreshWriteBehind", false)) {
+            offlineSessionRefreshWriter = new OfflineSessionRefreshWriter(factory, config.getInt("offlineRefreshFlushInterval", 60));
+        }
+
         factory.register(new ProviderEventListener() {
 
             @Override
@@ -86,7 +116,7 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
                 InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
                 Cache<String, Serializable> cache = connections.getCache(InfinispanConnectionProvider.WORK_CACHE_NAME);
 
-                InfinispanUserSessionInitializer initializer = new InfinispanUserSessionInitializer(sessionFactory, cache, new OfflineUserSessionLoader(), maxErrors, sessionsPerSegment, "offlineUserSessions");
+                InfinispanUserSessionInitializer initializer = new InfinispanUserSessionInitializer(sessionFactory, cache, new OfflineUserSessionLoader(offlineSessionRefreshWriter == null), maxErrors, sessionsPerSegment, "offlineUserSessions");
                 initializer.initCache();
                 initializer.loadPersistentSessions();
             }
@@ -98,6 +128,18 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     @Override
     public void close() {
+        if (sessionIndex != null) {
+            sessionIndex.unregister();
+            offlineSessionIndex.unregister();
+        }
+        if (offlineSessionRefreshWriter != null) {
+            offlineSessionRefreshWriter.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        return expirationStatistics.getOperationalInfo();
     }
 
     @Override
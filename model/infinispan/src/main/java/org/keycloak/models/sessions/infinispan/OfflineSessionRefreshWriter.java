@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.sessions.infinispan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PreShutdownEvent;
+import org.keycloak.provider.ProviderEvent;
+import org.keycloak.provider.ProviderEventListener;
+
+/**
+ * <p>Write-behind of the "lastSessionRefresh" of offline userSessions to the {@link UserSessionPersisterProvider}. Refreshes are
+ * coalesced per userSession in memory and flushed periodically.</p>
+ *
+ * <p>Refresh times are rounded down to the flush interval when flushed, so the sessions refreshed in the same interval are updated
+ * with single bulk update. Persisted time is never later than the real one, but it may be older up to 2 flush intervals. Pending
+ * refreshes are flushed also on shutdown. It's done on {@link PreShutdownEvent}, as the persister may be already closed when
+ * the factory owning this writer is closed.</p>
+ */
+public class OfflineSessionRefreshWriter {
+
+    private static final Logger log = Logger.getLogger(OfflineSessionRefreshWriter.class);
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final int flushInterval;
+    private final ConcurrentHashMap<String, Integer> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    public OfflineSessionRefreshWriter(KeycloakSessionFactory sessionFactory, int flushInterval) {
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+
+        this.sessionFactory = sessionFactory;
+        this.flushInterval = flushInterval;
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "offline-session-refresh-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                flush();
+            }
+
+        }, flushInterval, flushInterval, TimeUnit.SECONDS);
+        this.executor = executor;
+
+        sessionFactory.register(new ProviderEventListener() {
+
+            @Override
+            public void onEvent(ProviderEvent event) {
+                if (event instanceof PreShutdownEvent) {
+                    close();
+                }
+            }
+
+        });
+    }
+
+    public void sessionRefreshed(String userSessionId, int lastSessionRefresh) {
+        pending.merge(userSessionId, lastSessionRefresh, Math::max);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Write all the pending refreshes. Refreshes, which failed to be written, are kept for the next flush
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Remove just the taken refreshes. Refreshes added in the meantime are taken by next flush
+        Map<Integer, List<String>> byTime = new TreeMap<>();
+        for (String userSessionId : pending.keySet()) {
+            Integer lastSessionRefresh = pending.remove(userSessionId);
+            if (lastSessionRefresh != null) {
+                Integer rounded = lastSessionRefresh - lastSessionRefresh % flushInterval;
+                List<String> ids = byTime.get(rounded);
+                if (ids == null) {
+                    ids = new ArrayList<>();
+                    byTime.put(rounded, ids);
+                }
+                ids.add(userSessionId);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int written = 0;
+        for (final Map.Entry<Integer, List<String>> entry : byTime.entrySet()) {
+            try {
+                KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+                        persister.updateLastSessionRefreshes(entry.getValue(), entry.getKey(), true);
+                    }
+
+                });
+                written += entry.getValue().size();
+            } catch (RuntimeException e) {
+                log.warnf(e, "Failed to write refreshes of %d offline sessions. Will retry with next flush", entry.getValue().size());
+                for (String userSessionId : entry.getValue()) {
+                    pending.putIfAbsent(userSessionId, entry.getKey());
+                }
+            }
+        }
+
+        log.debugf("Written refreshes of %d offline sessions in %d ms", written, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Stop the periodic flush and write the pending refreshes. It's safe to call it more times
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(flushInterval, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the removal of expired sessions on this node. They are shown on the "Server Info" page of the admin console.
+ * Expired entries are counted when found. They are removed from the cache when the transaction of the expiration task commits.
+ */
+public class SessionExpirationStatistics {
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong userSessions = new AtomicLong();
+    private final AtomicLong clientSessions = new AtomicLong();
+    private final AtomicLong clientInitialAccess = new AtomicLong();
+    private volatile long lastRunTime;
+    private volatile long lastRunDuration;
+
+    void expirationRun(long start, int userSessions, int clientSessions, int clientInitialAccess) {
+        runs.incrementAndGet();
+        this.userSessions.addAndGet(userSessions);
+        this.clientSessions.addAndGet(clientSessions);
+        this.clientInitialAccess.addAndGet(clientInitialAccess);
+        lastRunTime = start;
+        lastRunDuration = System.currentTimeMillis() - start;
+    }
+
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        info.put("expirationRuns", String.valueOf(runs.get()));
+        info.put("expirationLastRunTime", String.valueOf(lastRunTime));
+        info.put("expirationLastRunDurationMs", String.valueOf(lastRunDuration));
+        info.put("expiredUserSessions", String.valueOf(userSessions.get()));
+        info.put("expiredClientSessions", String.valueOf(clientSessions.get()));
+        info.put("expiredClientInitialAccess", String.valueOf(clientInitialAccess.get()));
+        return info;
+    }
+
+}
@@ -27,7 +27,6 @@ import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -111,6 +110,9 @@ public class UserSessionAdapter implements UserSessionModel {
     public void setLastSessionRefresh(int lastSessionRefresh) {
         entity.setLastSessionRefresh(lastSessionRefresh);
         update();
+        if (offline) {
+            provider.offlineSessionRefreshed(entity.getId(), lastSessionRefresh);
+        }
     }
 
     @Override
@@ -120,17 +122,14 @@ public class UserSessionAdapter implements UserSessionModel {
 
     @Override
     public void setNote(String name, String value) {
-        if (entity.getNotes() == null) {
-            entity.setNotes(new HashMap<String, String>());
-        }
-        entity.getNotes().put(name, value);
+        entity.setNote(name, value);
         update();
     }
 
     @Override
     public void removeNote(String name) {
         if (entity.getNotes() != null) {
-            entity.getNotes().remove(name);
+            entity.removeNote(name);
             update();
         }
     }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+
+/**
+ * Session entity, which tracks its changes, so just the changes are sent to the other owners when it is replaced.
+ * {@link #delta()} is sent by Infinispan when the entity itself is put, so it carries the whole entity and creates the entry
+ * when it doesn't exist.
+ */
+public interface ChangeTrackingEntity extends DeltaAware {
+
+    /**
+     * @return changes since the last {@link #commit()}. Merging them updates just the existing entry. If it was removed in the
+     * meantime (for example by logout or expiration), nothing is created
+     */
+    Delta changes();
+
+}
@@ -17,9 +17,13 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.marshall.SessionExternalizers;
+
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
+@SerializeWith(SessionExternalizers.ClientInitialAccessEntityExternalizer.class)
 public class ClientInitialAccessEntity extends SessionEntity {
 
     private int timestamp;
@@ -17,7 +17,10 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.atomic.Delta;
+import org.infinispan.commons.marshall.SerializeWith;
 import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.sessions.infinispan.marshall.SessionExternalizers;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -25,9 +28,13 @@ import java.util.Map;
 import java.util.Set;
 
 /**
+ * Entity is replicated as {@link ClientSessionEntityDelta} when replaced, so just the changed notes, authenticator statuses and
+ * required actions are sent to the other owners. These must be changed through the methods of the entity to be included in the changes.
+ *
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class ClientSessionEntity extends SessionEntity {
+@SerializeWith(SessionExternalizers.ClientSessionEntityExternalizer.class)
+public class ClientSessionEntity extends SessionEntity implements ChangeTrackingEntity {
 
     private String client;
 
@@ -49,6 +56,13 @@ public class ClientSessionEntity extends SessionEntity {
     private String authUserId;
     private Set<String> requiredActions = new HashSet<>();
 
+    // Changes since the entity was last replicated. Roles and protocol mappers are only set as a whole
+    private transient SetDelta rolesDelta;
+    private transient SetDelta protocolMappersDelta;
+    private transient MapDelta<String> notesDelta;
+    private transient MapDelta<String> userSessionNotesDelta;
+    private transient MapDelta<ClientSessionModel.ExecutionStatus> authenticatorStatusDelta;
+    private transient SetDelta requiredActionsDelta;
 
     public String getClient() {
         return client;
@@ -104,6 +118,8 @@ public class ClientSessionEntity extends SessionEntity {
 
     public void setRoles(Set<String> roles) {
         this.roles = roles;
+        rolesDelta = new SetDelta();
+        rolesDelta.replace(roles);
     }
 
     public Set<String> getProtocolMappers() {
@@ -112,6 +128,8 @@ public class ClientSessionEntity extends SessionEntity {
 
     public void setProtocolMappers(Set<String> protocolMappers) {
         this.protocolMappers = protocolMappers;
+        protocolMappersDelta = new SetDelta();
+        protocolMappersDelta.replace(protocolMappers);
     }
 
     public Map<String, String> getNotes() {
@@ -120,6 +138,22 @@ public class ClientSessionEntity extends SessionEntity {
 
     public void setNotes(Map<String, String> notes) {
         this.notes = notes;
+        getNotesDelta().replace(notes);
+    }
+
+    public void setNote(String name, String value) {
+        if (notes == null) {
+            notes = new HashMap<>();
+        }
+        notes.put(name, value);
+        getNotesDelta().put(name, value);
+    }
+
+    public void removeNote(String name) {
+        if (notes != null) {
+            notes.remove(name);
+        }
+        getNotesDelta().remove(name);
     }
 
     public Map<String, ClientSessionModel.ExecutionStatus> getAuthenticatorStatus() {
@@ -128,6 +162,22 @@ public class ClientSessionEntity extends SessionEntity {
 
     public void setAuthenticatorStatus(Map<String, ClientSessionModel.ExecutionStatus> authenticatorStatus) {
         this.authenticatorStatus = authenticatorStatus;
+        getAuthenticatorStatusDelta().replace(authenticatorStatus);
+    }
+
+    public void setAuthenticatorStatus(String authenticator, ClientSessionModel.ExecutionStatus status) {
+        if (authenticatorStatus == null) {
+            authenticatorStatus = new HashMap<>();
+        }
+        authenticatorStatus.put(authenticator, status);
+        getAuthenticatorStatusDelta().put(authenticator, status);
+    }
+
+    public void clearAuthenticatorStatus() {
+        if (authenticatorStatus != null) {
+            authenticatorStatus.clear();
+        }
+        getAuthenticatorStatusDelta().replace(authenticatorStatus);
     }
 
     public String getAuthUserId() {
@@ -144,9 +194,130 @@ public class ClientSessionEntity extends SessionEntity {
 
     public void setUserSessionNotes(Map<String, String> userSessionNotes) {
         this.userSessionNotes = userSessionNotes;
+        getUserSessionNotesDelta().replace(userSessionNotes);
+    }
+
+    public void setUserSessionNote(String name, String value) {
+        if (userSessionNotes == null) {
+            userSessionNotes = new HashMap<>();
+        }
+        userSessionNotes.put(name, value);
+        getUserSessionNotesDelta().put(name, value);
     }
 
     public Set<String> getRequiredActions() {
         return requiredActions;
     }
+
+    public void addRequiredAction(String action) {
+        requiredActions.add(action);
+        getRequiredActionsDelta().add(action);
+    }
+
+    public void removeRequiredAction(String action) {
+        requiredActions.remove(action);
+        getRequiredActionsDelta().remove(action);
+    }
+
+    @Override
+    public Delta delta() {
+        return new ClientSessionEntityDelta(copyWithoutCollections(), SetDelta.of(roles), SetDelta.of(protocolMappers), MapDelta.of(notes),
+                MapDelta.of(userSessionNotes), MapDelta.of(authenticatorStatus), SetDelta.of(requiredActions), true);
+    }
+
+    @Override
+    public Delta changes() {
+        return new ClientSessionEntityDelta(copyWithoutCollections(),
+                rolesDelta != null ? rolesDelta.copy() : null,
+                protocolMappersDelta != null ? protocolMappersDelta.copy() : null,
+                notesDelta != null ? notesDelta.copy() : null,
+                userSessionNotesDelta != null ? userSessionNotesDelta.copy() : null,
+                authenticatorStatusDelta != null ? authenticatorStatusDelta.copy() : null,
+                requiredActionsDelta != null ? requiredActionsDelta.copy() : null,
+                false);
+    }
+
+    @Override
+    public void commit() {
+        rolesDelta = null;
+        protocolMappersDelta = null;
+        notesDelta = null;
+        userSessionNotesDelta = null;
+        authenticatorStatusDelta = null;
+        requiredActionsDelta = null;
+    }
+
+    void applyDelta(ClientSessionEntityDelta delta) {
+        ClientSessionEntity fields = delta.getFields();
+        setId(fields.getId());
+        setRealm(fields.getRealm());
+        client = fields.client;
+        userSession = fields.userSession;
+        authMethod = fields.authMethod;
+        redirectUri = fields.redirectUri;
+        timestamp = fields.timestamp;
+        action = fields.action;
+        authUserId = fields.authUserId;
+
+        if (delta.getRoles() != null) {
+            roles = delta.getRoles().apply(roles);
+        }
+        if (delta.getProtocolMappers() != null) {
+            protocolMappers = delta.getProtocolMappers().apply(protocolMappers);
+        }
+        if (delta.getNotes() != null) {
+            notes = delta.getNotes().apply(notes);
+        }
+        if (delta.getUserSessionNotes() != null) {
+            userSessionNotes = delta.getUserSessionNotes().apply(userSessionNotes);
+        }
+        if (delta.getAuthenticatorStatus() != null) {
+            authenticatorStatus = delta.getAuthenticatorStatus().apply(authenticatorStatus);
+        }
+        if (delta.getRequiredActions() != null) {
+            requiredActions = delta.getRequiredActions().apply(requiredActions);
+        }
+    }
+
+    private ClientSessionEntity copyWithoutCollections() {
+        ClientSessionEntity copy = new ClientSessionEntity();
+        copy.setId(getId());
+        copy.setRealm(getRealm());
+        copy.client = client;
+        copy.userSession = userSession;
+        copy.authMethod = authMethod;
+        copy.redirectUri = redirectUri;
+        copy.timestamp = timestamp;
+        copy.action = action;
+        copy.authUserId = authUserId;
+        return copy;
+    }
+
+    private MapDelta<String> getNotesDelta() {
+        if (notesDelta == null) {
+            notesDelta = new MapDelta<>();
+        }
+        return notesDelta;
+    }
+
+    private MapDelta<String> getUserSessionNotesDelta() {
+        if (userSessionNotesDelta == null) {
+            userSessionNotesDelta = new MapDelta<>();
+        }
+        return userSessionNotesDelta;
+    }
+
+    private MapDelta<ClientSessionModel.ExecutionStatus> getAuthenticatorStatusDelta() {
+        if (authenticatorStatusDelta == null) {
+            authenticatorStatusDelta = new MapDelta<>();
+        }
+        return authenticatorStatusDelta;
+    }
+
+    private SetDelta getRequiredActionsDelta() {
+        if (requiredActionsDelta == null) {
+            requiredActionsDelta = new SetDelta();
+        }
+        return requiredActionsDelta;
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.sessions.infinispan.marshall.SessionExternalizers;
+
+/**
+ * Changes of the client session sent to the other owners instead of the whole entity. All the fields except the collections are
+ * always included. Changes of the collections are null if the collection wasn't changed.
+ *
+ * <p>Only the complete delta (see {@link ClientSessionEntity#delta()}) creates the entity on the node, which doesn't have it.
+ * Merging just the changes (see {@link ClientSessionEntity#changes()}) into the missing entry gives null, so nothing is stored
+ * and the session removed in the meantime isn't recreated.
+ */
+@SerializeWith(SessionExternalizers.ClientSessionEntityDeltaExternalizer.class)
+public class ClientSessionEntityDelta implements Delta {
+
+    private final ClientSessionEntity fields;
+    private final SetDelta roles;
+    private final SetDelta protocolMappers;
+    private final MapDelta<String> notes;
+    private final MapDelta<String> userSessionNotes;
+    private final MapDelta<ClientSessionModel.ExecutionStatus> authenticatorStatus;
+    private final SetDelta requiredActions;
+    private final boolean complete;
+
+    public ClientSessionEntityDelta(ClientSessionEntity fields, SetDelta roles, SetDelta protocolMappers, MapDelta<String> notes,
+                                    MapDelta<String> userSessionNotes, MapDelta<ClientSessionModel.ExecutionStatus> authenticatorStatus,
+                                    SetDelta requiredActions, boolean complete) {
+        this.fields = fields;
+        this.roles = roles;
+        this.protocolMappers = protocolMappers;
+        this.notes = notes;
+        this.userSessionNotes = userSessionNotes;
+        this.authenticatorStatus = authenticatorStatus;
+        this.requiredActions = requiredActions;
+        this.complete = complete;
+    }
+
+    /**
+     * @return entity with the fields of the session without the collections
+     */
+    public ClientSessionEntity getFields() {
+        return fields;
+    }
+
+    public SetDelta getRoles() {
+        return roles;
+    }
+
+    public SetDelta getProtocolMappers() {
+        return protocolMappers;
+    }
+
+    public MapDelta<String> getNotes() {
+        return notes;
+    }
+
+    public MapDelta<String> getUserSessionNotes() {
+        return userSessionNotes;
+    }
+
+    public MapDelta<ClientSessionModel.ExecutionStatus> getAuthenticatorStatus() {
+        return authenticatorStatus;
+    }
+
+    public SetDelta getRequiredActions() {
+        return requiredActions;
+    }
+
+    /**
+     * @return true if the delta carries the whole entity
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public DeltaAware merge(DeltaAware d) {
+        ClientSessionEntity entity;
+        if (d instanceof ClientSessionEntity) {
+            entity = (ClientSessionEntity) d;
+        } else if (complete) {
+            entity = new ClientSessionEntity();
+        } else {
+            return null;
+        }
+        entity.applyDelta(this);
+        return entity;
+    }
+
+}
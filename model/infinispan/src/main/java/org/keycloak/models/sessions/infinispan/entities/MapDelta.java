@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Changes of the map in the session entity since the entity was last replicated. Null value means the entry was removed. When
+ * the whole map was replaced, the map is rebuilt just from the changes.
+ */
+public class MapDelta<V> {
+
+    private boolean replaced;
+    private boolean nulled;
+    private final Map<String, V> changes;
+
+    public MapDelta() {
+        this(false, false, new HashMap<String, V>());
+    }
+
+    public MapDelta(boolean replaced, boolean nulled, Map<String, V> changes) {
+        this.replaced = replaced;
+        this.nulled = nulled;
+        this.changes = changes;
+    }
+
+    public void put(String key, V value) {
+        nulled = false;
+        changes.put(key, value);
+    }
+
+    public void remove(String key) {
+        if (replaced) {
+            changes.remove(key);
+        } else {
+            changes.put(key, null);
+        }
+    }
+
+    public void replace(Map<String, V> map) {
+        replaced = true;
+        nulled = map == null;
+        changes.clear();
+        if (map != null) {
+            changes.putAll(map);
+        }
+    }
+
+    public boolean isReplaced() {
+        return replaced;
+    }
+
+    /**
+     * @return true if the map was replaced with null
+     */
+    public boolean isNulled() {
+        return nulled;
+    }
+
+    public Map<String, V> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the passed map with the changes applied or new map, if the passed one is null or the whole map was replaced. Null
+     * if the map was replaced with null
+     */
+    public Map<String, V> apply(Map<String, V> map) {
+        if (nulled) {
+            return null;
+        }
+        Map<String, V> result = replaced || map == null ? new HashMap<String, V>() : map;
+        for (Map.Entry<String, V> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                result.remove(entry.getKey());
+            } else {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return delta, which replaces the map with the passed one
+     */
+    public static <V> MapDelta<V> of(Map<String, V> map) {
+        MapDelta<V> delta = new MapDelta<>();
+        delta.replace(map);
+        return delta;
+    }
+
+    public MapDelta<V> copy() {
+        return new MapDelta<>(replaced, nulled, new HashMap<>(changes));
+    }
+
+}
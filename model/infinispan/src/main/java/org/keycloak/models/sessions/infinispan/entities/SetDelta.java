@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Changes of the set in the session entity since the entity was last replicated. When the whole set was replaced, the set is
+ * rebuilt just from the added elements.
+ */
+public class SetDelta {
+
+    private boolean replaced;
+    private boolean nulled;
+    private final Set<String> added;
+    private final Set<String> removed;
+
+    public SetDelta() {
+        this(false, false, new HashSet<String>(), new HashSet<String>());
+    }
+
+    public SetDelta(boolean replaced, boolean nulled, Set<String> added, Set<String> removed) {
+        this.replaced = replaced;
+        this.nulled = nulled;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    public void add(String element) {
+        nulled = false;
+        added.add(element);
+        removed.remove(element);
+    }
+
+    public void remove(String element) {
+        added.remove(element);
+        if (!replaced) {
+            removed.add(element);
+        }
+    }
+
+    public void replace(Set<String> set) {
+        replaced = true;
+        nulled = set == null;
+        added.clear();
+        removed.clear();
+        if (set != null) {
+            added.addAll(set);
+        }
+    }
+
+    public boolean isReplaced() {
+        return replaced;
+    }
+
+    /**
+     * @return true if the set was replaced with null
+     */
+    public boolean isNulled() {
+        return nulled;
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the passed set with the changes applied or new set, if the passed one is null or the whole set was replaced. Null
+     * if the set was replaced with null
+     */
+    public Set<String> apply(Set<String> set) {
+        if (nulled) {
+            return null;
+        }
+        Set<String> result = replaced || set == null ? new HashSet<String>() : set;
+        result.removeAll(removed);
+        result.addAll(added);
+        return result;
+    }
+
+    /**
+     * @return delta, which replaces the set with the passed one
+     */
+    public static SetDelta of(Set<String> set) {
+        SetDelta delta = new SetDelta();
+        delta.replace(set);
+        return delta;
+    }
+
+    public SetDelta copy() {
+        return new SetDelta(replaced, nulled, new HashSet<>(added), new HashSet<>(removed));
+    }
+
+}
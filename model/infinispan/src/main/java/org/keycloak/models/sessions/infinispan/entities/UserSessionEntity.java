@@ -17,15 +17,24 @@
 
 package org.keycloak.models.sessions.infinispan.entities;
 
+import org.infinispan.atomic.Delta;
+import org.infinispan.commons.marshall.SerializeWith;
 import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.marshall.SessionExternalizers;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * Entity is replicated as {@link UserSessionEntityDelta} when replaced, so just the changed notes and client sessions are sent to
+ * the other owners. Notes and client sessions must be changed through the methods of the entity to be included in the changes.
+ *
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class UserSessionEntity extends SessionEntity {
+@SerializeWith(SessionExternalizers.UserSessionEntityExternalizer.class)
+public class UserSessionEntity extends SessionEntity implements ChangeTrackingEntity {
 
     private String user;
 
@@ -50,6 +59,10 @@ public class UserSessionEntity extends SessionEntity {
 
     private Map<String, String> notes;
 
+    // Changes since the entity was last replicated
+    private transient MapDelta<String> notesDelta;
+    private transient SetDelta clientSessionsDelta;
+
     public String getUser() {
         return user;
     }
@@ -112,6 +125,22 @@ public class UserSessionEntity extends SessionEntity {
 
     public void setClientSessions(Set<String> clientSessions) {
         this.clientSessions = clientSessions;
+        getClientSessionsDelta().replace(clientSessions);
+    }
+
+    public void addClientSession(String clientSessionId) {
+        if (clientSessions == null) {
+            clientSessions = new HashSet<>();
+        }
+        clientSessions.add(clientSessionId);
+        getClientSessionsDelta().add(clientSessionId);
+    }
+
+    public void removeClientSession(String clientSessionId) {
+        if (clientSessions != null) {
+            clientSessions.remove(clientSessionId);
+        }
+        getClientSessionsDelta().remove(clientSessionId);
     }
 
     public Map<String, String> getNotes() {
@@ -120,6 +149,22 @@ public class UserSessionEntity extends SessionEntity {
 
     public void setNotes(Map<String, String> notes) {
         this.notes = notes;
+        getNotesDelta().replace(notes);
+    }
+
+    public void setNote(String name, String value) {
+        if (notes == null) {
+            notes = new HashMap<>();
+        }
+        notes.put(name, value);
+        getNotesDelta().put(name, value);
+    }
+
+    public void removeNote(String name) {
+        if (notes != null) {
+            notes.remove(name);
+        }
+        getNotesDelta().remove(name);
     }
 
     public UserSessionModel.State getState() {
@@ -145,4 +190,77 @@ public class UserSessionEntity extends SessionEntity {
     public void setBrokerUserId(String brokerUserId) {
         this.brokerUserId = brokerUserId;
     }
+
+    @Override
+    public Delta delta() {
+        return new UserSessionEntityDelta(copyWithoutCollections(), MapDelta.of(notes), SetDelta.of(clientSessions), true);
+    }
+
+    @Override
+    public Delta changes() {
+        return new UserSessionEntityDelta(copyWithoutCollections(),
+                notesDelta != null ? notesDelta.copy() : null,
+                clientSessionsDelta != null ? clientSessionsDelta.copy() : null,
+                false);
+    }
+
+    @Override
+    public void commit() {
+        notesDelta = null;
+        clientSessionsDelta = null;
+    }
+
+    void applyDelta(UserSessionEntityDelta delta) {
+        UserSessionEntity fields = delta.getFields();
+        setId(fields.getId());
+        setRealm(fields.getRealm());
+        user = fields.user;
+        brokerSessionId = fields.brokerSessionId;
+        brokerUserId = fields.brokerUserId;
+        loginUsername = fields.loginUsername;
+        ipAddress = fields.ipAddress;
+        authMethod = fields.authMethod;
+        rememberMe = fields.rememberMe;
+        started = fields.started;
+        lastSessionRefresh = fields.lastSessionRefresh;
+        state = fields.state;
+
+        if (delta.getNotes() != null) {
+            notes = delta.getNotes().apply(notes);
+        }
+        if (delta.getClientSessions() != null) {
+            clientSessions = delta.getClientSessions().apply(clientSessions);
+        }
+    }
+
+    private UserSessionEntity copyWithoutCollections() {
+        UserSessionEntity copy = new UserSessionEntity();
+        copy.setId(getId());
+        copy.setRealm(getRealm());
+        copy.user = user;
+        copy.brokerSessionId = brokerSessionId;
+        copy.brokerUserId = brokerUserId;
+        copy.loginUsername = loginUsername;
+        copy.ipAddress = ipAddress;
+        copy.authMethod = authMethod;
+        copy.rememberMe = rememberMe;
+        copy.started = started;
+        copy.lastSessionRefresh = lastSessionRefresh;
+        copy.state = state;
+        return copy;
+    }
+
+    private MapDelta<String> getNotesDelta() {
+        if (notesDelta == null) {
+            notesDelta = new MapDelta<>();
+        }
+        return notesDelta;
+    }
+
+    private SetDelta getClientSessionsDelta() {
+        if (clientSessionsDelta == null) {
+            clientSessionsDelta = new SetDelta();
+        }
+        return clientSessionsDelta;
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.entities;
+
+import org.infinispan.atomic.Delta;
+import org.infinispan.atomic.DeltaAware;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.marshall.SessionExternalizers;
+
+/**
+ * Changes of the user session sent to the other owners instead of the whole entity. All the fields except notes and client
+ * sessions are always included. Notes and client sessions are included if changed.
+ *
+ * <p>Only the complete delta (see {@link UserSessionEntity#delta()}) creates the entity on the node, which doesn't have it.
+ * Merging just the changes (see {@link UserSessionEntity#changes()}) into the missing entry gives null, so nothing is stored and
+ * the session removed in the meantime isn't recreated.
+ */
+@SerializeWith(SessionExternalizers.UserSessionEntityDeltaExternalizer.class)
+public class UserSessionEntityDelta implements Delta {
+
+    private final UserSessionEntity fields;
+    private final MapDelta<String> notes;
+    private final SetDelta clientSessions;
+    private final boolean complete;
+
+    public UserSessionEntityDelta(UserSessionEntity fields, MapDelta<String> notes, SetDelta clientSessions, boolean complete) {
+        this.fields = fields;
+        this.notes = notes;
+        this.clientSessions = clientSessions;
+        this.complete = complete;
+    }
+
+    /**
+     * @return entity with the fields of the session without notes and client sessions
+     */
+    public UserSessionEntity getFields() {
+        return fields;
+    }
+
+    /**
+     * @return changes of the notes or null if they weren't changed
+     */
+    public MapDelta<String> getNotes() {
+        return notes;
+    }
+
+    /**
+     * @return changes of the client sessions or null if they weren't changed
+     */
+    public SetDelta getClientSessions() {
+        return clientSessions;
+    }
+
+    /**
+     * @return true if the delta carries the whole entity
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public DeltaAware merge(DeltaAware d) {
+        UserSessionEntity entity;
+        if (d instanceof UserSessionEntity) {
+            entity = (UserSessionEntity) d;
+        } else if (complete) {
+            entity = new UserSessionEntity();
+        } else {
+            return null;
+        }
+        entity.applyDelta(this);
+        return entity;
+    }
+
+}
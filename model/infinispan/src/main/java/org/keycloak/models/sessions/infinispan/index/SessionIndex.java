@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.jboss.logging.Logger;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-local secondary index over a session cache. It maps userId, brokerSessionId, brokerUserId and clientId to the ids
+ * of the matching sessions, so lookups don't need to stream the whole cache.
+ *
+ * The index is registered as clustered listener with current state included. Hence every node receives the events for all
+ * the cache entries (not just the owned segments) and a node, which joins the cluster or re-registers the listener after
+ * rebalance, is fed with the current content of the cache first.
+ *
+ * Indexed attributes never change during the lifetime of the session, so just creations and removals are listened to.
+ * Modifications (e.g. every refresh of the session) aren't shipped to the index at all. The index may be temporarily stale
+ * just in a way, that it contains ids of already removed sessions. Callers must always verify the returned sessions against the cache.
+ */
+@Listener(clustered = true, includeCurrentState = true)
+public class SessionIndex {
+
+    private static final Logger log = Logger.getLogger(SessionIndex.class);
+
+    private final Cache<String, SessionEntity> cache;
+
+    // sessionId -> keys under which the session is indexed. Used for cleanup when the session is removed
+    private final ConcurrentMap<String, IndexedSession> indexed = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Set<String>> byUser = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> byBrokerSessionId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> byBrokerUserId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> byClient = new ConcurrentHashMap<>();
+
+    private SessionIndex(Cache<String, SessionEntity> cache) {
+        this.cache = cache;
+    }
+
+    public static SessionIndex register(Cache<String, SessionEntity> cache) {
+        SessionIndex index = new SessionIndex(cache);
+        cache.addListener(index);
+
+        log.debugf("Registered session index on cache '%s'. Indexed sessions: %d", cache.getName(), index.size());
+        return index;
+    }
+
+    public void unregister() {
+        cache.removeListener(this);
+        log.debugf("Unregistered session index from cache '%s'", cache.getName());
+    }
+
+    public Set<String> getUserSessionsByUser(String realm, String user) {
+        return lookup(byUser, realm, user);
+    }
+
+    public Set<String> getUserSessionsByBrokerSessionId(String realm, String brokerSessionId) {
+        return lookup(byBrokerSessionId, realm, brokerSessionId);
+    }
+
+    public Set<String> getUserSessionsByBrokerUserId(String realm, String brokerUserId) {
+        return lookup(byBrokerUserId, realm, brokerUserId);
+    }
+
+    public Set<String> getClientSessionsByClient(String realm, String client) {
+        return lookup(byClient, realm, client);
+    }
+
+    public int size() {
+        return indexed.size();
+    }
+
+    @CacheEntryCreated
+    public void entryCreated(CacheEntryCreatedEvent<String, SessionEntity> event) {
+        if (!event.isPre()) {
+            add(event.getKey(), event.getValue());
+        }
+    }
+
+    @CacheEntryRemoved
+    public void entryRemoved(CacheEntryRemovedEvent<String, SessionEntity> event) {
+        if (!event.isPre()) {
+            remove(event.getKey());
+        }
+    }
+
+    void add(String id, SessionEntity entity) {
+        IndexedSession current;
+        if (entity instanceof UserSessionEntity) {
+            UserSessionEntity userSession = (UserSessionEntity) entity;
+            current = new IndexedSession(
+                    key(entity.getRealm(), userSession.getUser()),
+                    key(entity.getRealm(), userSession.getBrokerSessionId()),
+                    key(entity.getRealm(), userSession.getBrokerUserId()),
+                    null);
+        } else if (entity instanceof ClientSessionEntity) {
+            current = new IndexedSession(null, null, null, key(entity.getRealm(), ((ClientSessionEntity) entity).getClient()));
+        } else {
+            return;
+        }
+
+        IndexedSession previous = indexed.put(id, current);
+        if (current.equals(previous)) {
+            return;
+        }
+
+        if (previous != null) {
+            unindex(id, previous);
+        }
+
+        put(byUser, current.user, id);
+        put(byBrokerSessionId, current.brokerSessionId, id);
+        put(byBrokerUserId, current.brokerUserId, id);
+        put(byClient, current.client, id);
+    }
+
+    void remove(String id) {
+        IndexedSession previous = indexed.remove(id);
+        if (previous != null) {
+            unindex(id, previous);
+        }
+    }
+
+    private void unindex(String id, IndexedSession previous) {
+        delete(byUser, previous.user, id);
+        delete(byBrokerSessionId, previous.brokerSessionId, id);
+        delete(byBrokerUserId, previous.brokerUserId, id);
+        delete(byClient, previous.client, id);
+    }
+
+    private static Set<String> lookup(ConcurrentMap<String, Set<String>> map, String realm, String value) {
+        String key = key(realm, value);
+        Set<String> ids = key != null ? map.get(key) : null;
+        return ids != null ? new HashSet<>(ids) : Collections.<String>emptySet();
+    }
+
+    private static void put(ConcurrentMap<String, Set<String>> map, String key, String id) {
+        if (key != null) {
+            // Add inside compute, so the set can't be concurrently dropped by delete() after it became empty
+            map.compute(key, (k, ids) -> {
+                if (ids == null) ids = ConcurrentHashMap.newKeySet();
+                ids.add(id);
+                return ids;
+            });
+        }
+    }
+
+    private static void delete(ConcurrentMap<String, Set<String>> map, String key, String id) {
+        if (key != null) {
+            map.computeIfPresent(key, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private static String key(String realm, String value) {
+        return value != null ? realm + "::" + value : null;
+    }
+
+    private static class IndexedSession {
+
+        private final String user;
+        private final String brokerSessionId;
+        private final String brokerUserId;
+        private final String client;
+
+        private IndexedSession(String user, String brokerSessionId, String brokerUserId, String client) {
+            this.user = user;
+            this.brokerSessionId = brokerSessionId;
+            this.brokerUserId = brokerUserId;
+            this.client = client;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IndexedSession)) return false;
+
+            IndexedSession that = (IndexedSession) o;
+
+            if (user != null ? !user.equals(that.user) : that.user != null) return false;
+            if (brokerSessionId != null ? !brokerSessionId.equals(that.brokerSessionId) : that.brokerSessionId != null) return false;
+            if (brokerUserId != null ? !brokerUserId.equals(that.brokerUserId) : that.brokerUserId != null) return false;
+            return client != null ? client.equals(that.client) : that.client == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = user != null ? user.hashCode() : 0;
+            result = 31 * result + (brokerSessionId != null ? brokerSessionId.hashCode() : 0);
+            result = 31 * result + (brokerUserId != null ? brokerUserId.hashCode() : 0);
+            result = 31 * result + (client != null ? client.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -48,6 +48,8 @@ public class InfinispanUserSessionInitializer {
 
     private static final String STATE_KEY_PREFIX = "distributed::";
 
+    private static final long PROGRESS_LOG_INTERVAL = 10000;
+
     private static final Logger log = Logger.getLogger(InfinispanUserSessionInitializer.class);
 
     private final KeycloakSessionFactory sessionFactory;
@@ -56,6 +58,7 @@ public class InfinispanUserSessionInitializer {
     private final int maxErrors;
     private final int sessionsPerSegment;
     private final String stateKey;
+    private final String name;
 
 
     public InfinispanUserSessionInitializer(KeycloakSessionFactory sessionFactory, Cache<String, Serializable> workCache, SessionLoader sessionLoader, int maxErrors, int sessionsPerSegment, String stateKeySuffix) {
@@ -65,6 +68,7 @@ public class InfinispanUserSessionInitializer {
         this.maxErrors = maxErrors;
         this.sessionsPerSegment = sessionsPerSegment;
         this.stateKey = STATE_KEY_PREFIX + stateKeySuffix;
+        this.name = stateKeySuffix;
     }
 
     public void initCache() {
@@ -166,6 +170,10 @@ public class InfinispanUserSessionInitializer {
         ExecutorService executorService = distributed ? new DefaultExecutorService(workCache, localExecutor) : localExecutor;
 
         int errors = 0;
+        long started = System.currentTimeMillis();
+        long lastProgressLog = started;
+
+        log.infof("Loading %d sessions of %s in %d segments", state.getSessionsCount(), name, state.getSegmentsCount());
 
         try {
             while (!state.isFinished()) {
@@ -183,7 +191,7 @@ public class InfinispanUserSessionInitializer {
                 List<Future<WorkerResult>> futures = new LinkedList<>();
                 for (Integer segment : segments) {
                     SessionInitializerWorker worker = new SessionInitializerWorker();
-                    worker.setWorkerEnvironment(segment, sessionsPerSegment, sessionLoader);
+                    worker.setWorkerEnvironment(segment, state.getSegmentsCount(), sessionsPerSegment, sessionLoader);
                     if (!distributed) {
                         worker.setEnvironment(workCache, null);
                     }
@@ -222,7 +230,15 @@ public class InfinispanUserSessionInitializer {
                 if (log.isDebugEnabled()) {
                     log.debug("New initializer state pushed. The state is: " + state.printState());
                 }
+
+                long now = System.currentTimeMillis();
+                if (now - lastProgressLog >= PROGRESS_LOG_INTERVAL && !state.isFinished()) {
+                    lastProgressLog = now;
+                    log.infof("Loading sessions of %s: %d of %d segments finished after %d ms", name, state.getFinishedSegmentsCount(), state.getSegmentsCount(), now - started);
+                }
             }
+
+            log.infof("Loaded %d sessions of %s in %d ms", state.getSessionsCount(), name, System.currentTimeMillis() - started);
         } finally {
             if (distributed) {
                 executorService.shutdown();
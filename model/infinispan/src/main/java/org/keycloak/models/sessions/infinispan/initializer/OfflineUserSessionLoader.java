@@ -33,10 +33,28 @@ public class OfflineUserSessionLoader implements SessionLoader {
 
     private static final Logger log = Logger.getLogger(OfflineUserSessionLoader.class);
 
+    // False if the refreshes of sessions are persisted, so the persisted timestamps are valid
+    private final boolean resetTimestamps;
+
+    public OfflineUserSessionLoader() {
+        this(true);
+    }
+
+    public OfflineUserSessionLoader(boolean resetTimestamps) {
+        this.resetTimestamps = resetTimestamps;
+    }
+
     @Override
     public void init(KeycloakSession session) {
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
 
+        if (!resetTimestamps) {
+            log.debug("Clearing detached sessions from persistent storage");
+
+            persister.clearDetachedUserSessions();
+            return;
+        }
+
         // TODO: check if update of timestamps in persister can be skipped entirely
         int clusterStartupTime = session.getProvider(ClusterProvider.class).getClusterStartupTime();
 
@@ -53,13 +71,19 @@ public class OfflineUserSessionLoader implements SessionLoader {
     }
 
     @Override
-    public boolean loadSessions(KeycloakSession session, int first, int max) {
+    public String loadSessions(KeycloakSession session, int segment, int segmentsCount, String lastSessionId, int max) {
         if (log.isTraceEnabled()) {
-            log.tracef("Loading sessions - first: %d, max: %d", first, max);
+            log.tracev("Loading sessions - segment: {0}, lastSessionId: {1}, max: {2}", segment, lastSessionId, max);
+        }
+
+        String minSessionId = getSegmentBoundary(segment, segmentsCount);
+        String maxSessionId = getSegmentBoundary(segment + 1, segmentsCount);
+        if (lastSessionId == null) {
+            lastSessionId = minSessionId;
         }
 
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        List<UserSessionModel> sessions = persister.loadUserSessions(first, max, true);
+        List<UserSessionModel> sessions = persister.loadUserSessions(lastSessionId, maxSessionId, max, true);
 
         for (UserSessionModel persistentSession : sessions) {
 
@@ -72,8 +96,22 @@ public class OfflineUserSessionLoader implements SessionLoader {
             }
         }
 
-        return true;
+        return sessions.size() < max ? null : sessions.get(sessions.size() - 1).getId();
     }
 
+    /**
+     * Session IDs are random UUIDs, so the segments split the range of the first 8 hexadecimal digits evenly. Segment contains
+     * IDs greater than its boundary and not greater than boundary of the next segment. First and last segment are not bounded,
+     * so all the IDs are covered regardless of their format.
+     *
+     * @return boundary of the segment or null if the segment isn't bounded
+     */
+    static String getSegmentBoundary(int segment, int segmentsCount) {
+        if (segment <= 0 || segment >= segmentsCount) {
+            return null;
+        }
+        long boundary = (segment * 0x100000000L) / segmentsCount;
+        return String.format("%08x", boundary);
+    }
 
 }
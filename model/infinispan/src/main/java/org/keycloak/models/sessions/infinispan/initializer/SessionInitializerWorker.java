@@ -37,13 +37,15 @@ public class SessionInitializerWorker implements DistributedCallable<String, Ser
     private static final Logger log = Logger.getLogger(SessionInitializerWorker.class);
 
     private int segment;
+    private int segmentsCount;
     private int sessionsPerSegment;
     private SessionLoader sessionLoader;
 
     private transient Cache<String, Serializable> workCache;
 
-    public void setWorkerEnvironment(int segment, int sessionsPerSegment, SessionLoader sessionLoader) {
+    public void setWorkerEnvironment(int segment, int segmentsCount, int sessionsPerSegment, SessionLoader sessionLoader) {
         this.segment = segment;
+        this.segmentsCount = segmentsCount;
         this.sessionsPerSegment = sessionsPerSegment;
         this.sessionLoader = sessionLoader;
     }
@@ -65,17 +67,18 @@ public class SessionInitializerWorker implements DistributedCallable<String, Ser
             return InfinispanUserSessionInitializer.WorkerResult.create(segment, false);
         }
 
-        final int first = segment * sessionsPerSegment;
-        final int max = sessionsPerSegment;
+        // Segment may contain more sessions than expected. Every page is loaded in separate transaction
+        final String[] lastSessionId = new String[1];
+        do {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
 
-        KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+                @Override
+                public void run(KeycloakSession session) {
+                    lastSessionId[0] = sessionLoader.loadSessions(session, segment, segmentsCount, lastSessionId[0], sessionsPerSegment);
+                }
 
-            @Override
-            public void run(KeycloakSession session) {
-                sessionLoader.loadSessions(session, first, max);
-            }
-
-        });
+            });
+        } while (lastSessionId[0] != null);
 
         return InfinispanUserSessionInitializer.WorkerResult.create(segment, true);
     }
@@ -30,5 +30,11 @@ public interface SessionLoader extends Serializable {
 
     int getSessionsCount(KeycloakSession session);
 
-    boolean loadSessions(KeycloakSession session, int first, int max);
+    /**
+     * Load next page of sessions of the segment. Segments are ranges of session IDs, so the sessions are paged by ID instead of offset
+     *
+     * @param lastSessionId ID of the last session loaded from this segment or null if loading of the segment just started
+     * @return ID of the last loaded session or null if there are no more sessions in the segment
+     */
+    String loadSessions(KeycloakSession session, int segment, int segmentsCount, String lastSessionId, int max);
 }
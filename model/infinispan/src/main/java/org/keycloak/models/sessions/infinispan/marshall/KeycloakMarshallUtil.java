@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.marshall;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact encoding of the values used by the externalizers. Sizes are written as variable length integers and null is encoded
+ * as size 0, so the empty string, set or map costs single byte.
+ */
+public class KeycloakMarshallUtil {
+
+    public static void writeVarInt(ObjectOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(ObjectInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    public static void writeString(ObjectOutput out, String str) throws IOException {
+        if (str == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        // Not writeUTF as notes can exceed its 64k limit
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    public static String readString(ObjectInput in) throws IOException {
+        int size = readVarInt(in);
+        if (size == 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[size - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStringCollection(ObjectOutput out, Collection<String> collection) throws IOException {
+        if (collection == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        writeVarInt(out, collection.size() + 1);
+        for (String str : collection) {
+            writeString(out, str);
+        }
+    }
+
+    public static Set<String> readStringSet(ObjectInput in) throws IOException {
+        int size = readVarInt(in);
+        if (size == 0) {
+            return null;
+        }
+
+        Set<String> set = new HashSet<>(capacity(size - 1));
+        for (int i = 1; i < size; i++) {
+            set.add(readString(in));
+        }
+        return set;
+    }
+
+    public static void writeStringMap(ObjectOutput out, Map<String, String> map) throws IOException {
+        if (map == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        writeVarInt(out, map.size() + 1);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    public static Map<String, String> readStringMap(ObjectInput in) throws IOException {
+        int size = readVarInt(in);
+        if (size == 0) {
+            return null;
+        }
+
+        Map<String, String> map = new HashMap<>(capacity(size - 1));
+        for (int i = 1; i < size; i++) {
+            map.put(readString(in), readString(in));
+        }
+        return map;
+    }
+
+    public static <E extends Enum<E>> void writeEnum(ObjectOutput out, E value) throws IOException {
+        // Written by name, so reordering of the constants doesn't break the sessions of the nodes with previous version
+        writeString(out, value != null ? value.name() : null);
+    }
+
+    public static <E extends Enum<E>> E readEnum(ObjectInput in, Class<E> type) throws IOException {
+        String name = readString(in);
+        return name != null ? Enum.valueOf(type, name) : null;
+    }
+
+    public static void checkVersion(ObjectInput in, int supportedVersion, Class<?> type) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != supportedVersion) {
+            throw new IOException("Unsupported version " + version + " of " + type.getSimpleName());
+        }
+    }
+
+    static int capacity(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1);
+    }
+
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.marshall;
+
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientInitialAccessEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntityDelta;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
+import org.keycloak.models.sessions.infinispan.entities.MapDelta;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SetDelta;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntityDelta;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.keycloak.models.sessions.infinispan.marshall.KeycloakMarshallUtil.*;
+
+/**
+ * <p>Externalizers of the entities stored in the session caches. The entities are written field by field in the fixed order
+ * instead of Java serialization, which writes class descriptors and field names. Every entity starts with the version byte, so
+ * the format can be changed in the future while still reading the entities written by the previous version.</p>
+ *
+ * <p>Registered as advanced externalizers, the class of the entity is written just as the externalizer id. The entities are
+ * also annotated with {@link org.infinispan.commons.marshall.SerializeWith}, so they are written by the externalizers even with
+ * the container managed cache container, where the externalizers aren't registered.</p>
+ *
+ * <p>Updates of the user and client sessions are replicated as {@link UserSessionEntityDelta} and {@link ClientSessionEntityDelta},
+ * which contain just the changed entries of the notes and other collections.</p>
+ *
+ * <p>Entities of the realm and user caches don't need the externalizers, as those caches are in invalidation mode and just the
+ * String keys are sent to the other nodes.</p>
+ */
+public class SessionExternalizers {
+
+    // Infinispan reserves ids below 2000 for its own externalizers
+    public static final int USER_SESSION_ENTITY = 2100;
+    public static final int CLIENT_SESSION_ENTITY = 2101;
+    public static final int LOGIN_FAILURE_ENTITY = 2102;
+    public static final int LOGIN_FAILURE_KEY = 2103;
+    public static final int CLIENT_INITIAL_ACCESS_ENTITY = 2104;
+    public static final int USER_SESSION_ENTITY_DELTA = 2105;
+    public static final int CLIENT_SESSION_ENTITY_DELTA = 2106;
+
+    private static final int VERSION_1 = 1;
+
+    // Written before the changes of the collection in the delta
+    private static final int UNCHANGED = 0;
+    private static final int CHANGED = 1;
+    private static final int REPLACED = 2;
+    private static final int REPLACED_WITH_NULL = 3;
+
+    public static List<AdvancedExternalizer<?>> getExternalizers() {
+        return Arrays.<AdvancedExternalizer<?>>asList(
+                new UserSessionEntityExternalizer(),
+                new ClientSessionEntityExternalizer(),
+                new LoginFailureEntityExternalizer(),
+                new LoginFailureKeyExternalizer(),
+                new ClientInitialAccessEntityExternalizer(),
+                new UserSessionEntityDeltaExternalizer(),
+                new ClientSessionEntityDeltaExternalizer()
+        );
+    }
+
+    public static void register(GlobalConfigurationBuilder gcb) {
+        for (AdvancedExternalizer<?> externalizer : getExternalizers()) {
+            gcb.serialization().addAdvancedExternalizer(externalizer);
+        }
+    }
+
+    private static void writeSessionEntity(ObjectOutput out, SessionEntity entity) throws IOException {
+        out.writeByte(VERSION_1);
+        writeString(out, entity.getId());
+        writeString(out, entity.getRealm());
+    }
+
+    private static void readSessionEntity(ObjectInput in, SessionEntity entity) throws IOException {
+        checkVersion(in, VERSION_1, entity.getClass());
+        entity.setId(readString(in));
+        entity.setRealm(readString(in));
+    }
+
+    private static void writeUserSessionFields(ObjectOutput out, UserSessionEntity entity) throws IOException {
+        writeSessionEntity(out, entity);
+        writeString(out, entity.getUser());
+        writeString(out, entity.getBrokerSessionId());
+        writeString(out, entity.getBrokerUserId());
+        writeString(out, entity.getLoginUsername());
+        writeString(out, entity.getIpAddress());
+        writeString(out, entity.getAuthMethod());
+        out.writeBoolean(entity.isRememberMe());
+        out.writeInt(entity.getStarted());
+        out.writeInt(entity.getLastSessionRefresh());
+        writeEnum(out, entity.getState());
+    }
+
+    private static UserSessionEntity readUserSessionFields(ObjectInput in) throws IOException {
+        UserSessionEntity entity = new UserSessionEntity();
+        readSessionEntity(in, entity);
+        entity.setUser(readString(in));
+        entity.setBrokerSessionId(readString(in));
+        entity.setBrokerUserId(readString(in));
+        entity.setLoginUsername(readString(in));
+        entity.setIpAddress(readString(in));
+        entity.setAuthMethod(readString(in));
+        entity.setRememberMe(in.readBoolean());
+        entity.setStarted(in.readInt());
+        entity.setLastSessionRefresh(in.readInt());
+        entity.setState(readEnum(in, UserSessionModel.State.class));
+        return entity;
+    }
+
+    private static void writeClientSessionFields(ObjectOutput out, ClientSessionEntity entity) throws IOException {
+        writeSessionEntity(out, entity);
+        writeString(out, entity.getClient());
+        writeString(out, entity.getUserSession());
+        writeString(out, entity.getAuthMethod());
+        writeString(out, entity.getRedirectUri());
+        out.writeInt(entity.getTimestamp());
+        writeString(out, entity.getAction());
+        writeString(out, entity.getAuthUserId());
+    }
+
+    private static ClientSessionEntity readClientSessionFields(ObjectInput in) throws IOException {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        readSessionEntity(in, entity);
+        entity.setClient(readString(in));
+        entity.setUserSession(readString(in));
+        entity.setAuthMethod(readString(in));
+        entity.setRedirectUri(readString(in));
+        entity.setTimestamp(in.readInt());
+        entity.setAction(readString(in));
+        entity.setAuthUserId(readString(in));
+        return entity;
+    }
+
+    private static void writeExecutionStatusMap(ObjectOutput out, Map<String, ClientSessionModel.ExecutionStatus> map) throws IOException {
+        if (map == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        writeVarInt(out, map.size() + 1);
+        for (Map.Entry<String, ClientSessionModel.ExecutionStatus> status : map.entrySet()) {
+            writeString(out, status.getKey());
+            writeEnum(out, status.getValue());
+        }
+    }
+
+    private static Map<String, ClientSessionModel.ExecutionStatus> readExecutionStatusMap(ObjectInput in) throws IOException {
+        int size = readVarInt(in);
+        if (size == 0) {
+            return null;
+        }
+
+        Map<String, ClientSessionModel.ExecutionStatus> map = new HashMap<>(capacity(size - 1));
+        for (int i = 1; i < size; i++) {
+            map.put(readString(in), readEnum(in, ClientSessionModel.ExecutionStatus.class));
+        }
+        return map;
+    }
+
+    private static void writeDeltaType(ObjectOutput out, Object delta, boolean replaced, boolean nulled) throws IOException {
+        if (delta == null) {
+            out.writeByte(UNCHANGED);
+        } else if (nulled) {
+            out.writeByte(REPLACED_WITH_NULL);
+        } else {
+            out.writeByte(replaced ? REPLACED : CHANGED);
+        }
+    }
+
+    private static void writeSetDelta(ObjectOutput out, SetDelta delta) throws IOException {
+        writeDeltaType(out, delta, delta != null && delta.isReplaced(), delta != null && delta.isNulled());
+        if (delta != null && !delta.isNulled()) {
+            writeStringCollection(out, delta.getAdded());
+            if (!delta.isReplaced()) {
+                writeStringCollection(out, delta.getRemoved());
+            }
+        }
+    }
+
+    private static SetDelta readSetDelta(ObjectInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case UNCHANGED:
+                return null;
+            case REPLACED_WITH_NULL:
+                return new SetDelta(true, true, new HashSet<String>(), new HashSet<String>());
+            case REPLACED:
+                return new SetDelta(true, false, readStringSet(in), new HashSet<String>());
+            default:
+                return new SetDelta(false, false, readStringSet(in), readStringSet(in));
+        }
+    }
+
+    private static void writeStringMapDelta(ObjectOutput out, MapDelta<String> delta) throws IOException {
+        writeDeltaType(out, delta, delta != null && delta.isReplaced(), delta != null && delta.isNulled());
+        if (delta != null && !delta.isNulled()) {
+            writeStringMap(out, delta.getChanges());
+        }
+    }
+
+    private static MapDelta<String> readStringMapDelta(ObjectInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case UNCHANGED:
+                return null;
+            case REPLACED_WITH_NULL:
+                return new MapDelta<>(true, true, new HashMap<String, String>());
+            default:
+                return new MapDelta<>(type == REPLACED, false, readStringMap(in));
+        }
+    }
+
+    private static void writeExecutionStatusDelta(ObjectOutput out, MapDelta<ClientSessionModel.ExecutionStatus> delta) throws IOException {
+        writeDeltaType(out, delta, delta != null && delta.isReplaced(), delta != null && delta.isNulled());
+        if (delta != null && !delta.isNulled()) {
+            writeExecutionStatusMap(out, delta.getChanges());
+        }
+    }
+
+    private static MapDelta<ClientSessionModel.ExecutionStatus> readExecutionStatusDelta(ObjectInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case UNCHANGED:
+                return null;
+            case REPLACED_WITH_NULL:
+                return new MapDelta<>(true, true, new HashMap<String, ClientSessionModel.ExecutionStatus>());
+            default:
+                return new MapDelta<>(type == REPLACED, false, readExecutionStatusMap(in));
+        }
+    }
+
+    public static class UserSessionEntityExternalizer implements AdvancedExternalizer<UserSessionEntity> {
+
+        @Override
+        public void writeObject(ObjectOutput out, UserSessionEntity entity) throws IOException {
+            writeUserSessionFields(out, entity);
+            writeStringCollection(out, entity.getClientSessions());
+            writeStringMap(out, entity.getNotes());
+        }
+
+        @Override
+        public UserSessionEntity readObject(ObjectInput in) throws IOException {
+            UserSessionEntity entity = readUserSessionFields(in);
+            entity.setClientSessions(readStringSet(in));
+            entity.setNotes(readStringMap(in));
+            entity.commit();
+            return entity;
+        }
+
+        @Override
+        public Set<Class<? extends UserSessionEntity>> getTypeClasses() {
+            return Collections.<Class<? extends UserSessionEntity>>singleton(UserSessionEntity.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return USER_SESSION_ENTITY;
+        }
+    }
+
+    public static class ClientSessionEntityExternalizer implements AdvancedExternalizer<ClientSessionEntity> {
+
+        @Override
+        public void writeObject(ObjectOutput out, ClientSessionEntity entity) throws IOException {
+            writeClientSessionFields(out, entity);
+            writeStringCollection(out, entity.getRoles());
+            writeStringCollection(out, entity.getProtocolMappers());
+            writeStringMap(out, entity.getNotes());
+            writeStringMap(out, entity.getUserSessionNotes());
+            writeExecutionStatusMap(out, entity.getAuthenticatorStatus());
+            writeStringCollection(out, entity.getRequiredActions());
+        }
+
+        @Override
+        public ClientSessionEntity readObject(ObjectInput in) throws IOException {
+            ClientSessionEntity entity = readClientSessionFields(in);
+            entity.setRoles(readStringSet(in));
+            entity.setProtocolMappers(readStringSet(in));
+            entity.setNotes(readStringMap(in));
+            entity.setUserSessionNotes(readStringMap(in));
+            entity.setAuthenticatorStatus(readExecutionStatusMap(in));
+            Set<String> requiredActions = readStringSet(in);
+            if (requiredActions != null) {
+                entity.getRequiredActions().addAll(requiredActions);
+            }
+            entity.commit();
+            return entity;
+        }
+
+        @Override
+        public Set<Class<? extends ClientSessionEntity>> getTypeClasses() {
+            return Collections.<Class<? extends ClientSessionEntity>>singleton(ClientSessionEntity.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return CLIENT_SESSION_ENTITY;
+        }
+    }
+
+    public static class UserSessionEntityDeltaExternalizer implements AdvancedExternalizer<UserSessionEntityDelta> {
+
+        @Override
+        public void writeObject(ObjectOutput out, UserSessionEntityDelta delta) throws IOException {
+            writeUserSessionFields(out, delta.getFields());
+            writeSetDelta(out, delta.getClientSessions());
+            writeStringMapDelta(out, delta.getNotes());
+            out.writeBoolean(delta.isComplete());
+        }
+
+        @Override
+        public UserSessionEntityDelta readObject(ObjectInput in) throws IOException {
+            UserSessionEntity fields = readUserSessionFields(in);
+            SetDelta clientSessions = readSetDelta(in);
+            MapDelta<String> notes = readStringMapDelta(in);
+            return new UserSessionEntityDelta(fields, notes, clientSessions, in.readBoolean());
+        }
+
+        @Override
+        public Set<Class<? extends UserSessionEntityDelta>> getTypeClasses() {
+            return Collections.<Class<? extends UserSessionEntityDelta>>singleton(UserSessionEntityDelta.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return USER_SESSION_ENTITY_DELTA;
+        }
+    }
+
+    public static class ClientSessionEntityDeltaExternalizer implements AdvancedExternalizer<ClientSessionEntityDelta> {
+
+        @Override
+        public void writeObject(ObjectOutput out, ClientSessionEntityDelta delta) throws IOException {
+            writeClientSessionFields(out, delta.getFields());
+            writeSetDelta(out, delta.getRoles());
+            writeSetDelta(out, delta.getProtocolMappers());
+            writeStringMapDelta(out, delta.getNotes());
+            writeStringMapDelta(out, delta.getUserSessionNotes());
+            writeExecutionStatusDelta(out, delta.getAuthenticatorStatus());
+            writeSetDelta(out, delta.getRequiredActions());
+            out.writeBoolean(delta.isComplete());
+        }
+
+        @Override
+        public ClientSessionEntityDelta readObject(ObjectInput in) throws IOException {
+            ClientSessionEntity fields = readClientSessionFields(in);
+            SetDelta roles = readSetDelta(in);
+            SetDelta protocolMappers = readSetDelta(in);
+            MapDelta<String> notes = readStringMapDelta(in);
+            MapDelta<String> userSessionNotes = readStringMapDelta(in);
+            MapDelta<ClientSessionModel.ExecutionStatus> authenticatorStatus = readExecutionStatusDelta(in);
+            SetDelta requiredActions = readSetDelta(in);
+            return new ClientSessionEntityDelta(fields, roles, protocolMappers, notes, userSessionNotes, authenticatorStatus, requiredActions,
+                    in.readBoolean());
+        }
+
+        @Override
+        public Set<Class<? extends ClientSessionEntityDelta>> getTypeClasses() {
+            return Collections.<Class<? extends ClientSessionEntityDelta>>singleton(ClientSessionEntityDelta.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return CLIENT_SESSION_ENTITY_DELTA;
+        }
+    }
+
+    public static class ClientInitialAccessEntityExternalizer implements AdvancedExternalizer<ClientInitialAccessEntity> {
+
+        @Override
+        public void writeObject(ObjectOutput out, ClientInitialAccessEntity entity) throws IOException {
+            writeSessionEntity(out, entity);
+            out.writeInt(entity.getTimestamp());
+            out.writeInt(entity.getExpiration());
+            out.writeInt(entity.getCount());
+            out.writeInt(entity.getRemainingCount());
+        }
+
+        @Override
+        public ClientInitialAccessEntity readObject(ObjectInput in) throws IOException {
+            ClientInitialAccessEntity entity = new ClientInitialAccessEntity();
+            readSessionEntity(in, entity);
+            entity.setTimestamp(in.readInt());
+            entity.setExpiration(in.readInt());
+            entity.setCount(in.readInt());
+            entity.setRemainingCount(in.readInt());
+            return entity;
+        }
+
+        @Override
+        public Set<Class<? extends ClientInitialAccessEntity>> getTypeClasses() {
+            return Collections.<Class<? extends ClientInitialAccessEntity>>singleton(ClientInitialAccessEntity.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return CLIENT_INITIAL_ACCESS_ENTITY;
+        }
+    }
+
+    public static class LoginFailureEntityExternalizer implements AdvancedExternalizer<LoginFailureEntity> {
+
+        @Override
+        public void writeObject(ObjectOutput out, LoginFailureEntity entity) throws IOException {
+            out.writeByte(VERSION_1);
+            writeString(out, entity.getUsername());
+            writeString(out, entity.getRealm());
+            out.writeInt(entity.getFailedLoginNotBefore());
+            out.writeInt(entity.getNumFailures());
+            out.writeLong(entity.getLastFailure());
+            writeString(out, entity.getLastIPFailure());
+        }
+
+        @Override
+        public LoginFailureEntity readObject(ObjectInput in) throws IOException {
+            checkVersion(in, VERSION_1, LoginFailureEntity.class);
+            LoginFailureEntity entity = new LoginFailureEntity();
+            entity.setUsername(readString(in));
+            entity.setRealm(readString(in));
+            entity.setFailedLoginNotBefore(in.readInt());
+            entity.setNumFailures(in.readInt());
+            entity.setLastFailure(in.readLong());
+            entity.setLastIPFailure(readString(in));
+            return entity;
+        }
+
+        @Override
+        public Set<Class<? extends LoginFailureEntity>> getTypeClasses() {
+            return Collections.<Class<? extends LoginFailureEntity>>singleton(LoginFailureEntity.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return LOGIN_FAILURE_ENTITY;
+        }
+    }
+
+    public static class LoginFailureKeyExternalizer implements AdvancedExternalizer<LoginFailureKey> {
+
+        @Override
+        public void writeObject(ObjectOutput out, LoginFailureKey key) throws IOException {
+            out.writeByte(VERSION_1);
+            writeString(out, key.getRealm());
+            writeString(out, key.getUsername());
+        }
+
+        @Override
+        public LoginFailureKey readObject(ObjectInput in) throws IOException {
+            checkVersion(in, VERSION_1, LoginFailureKey.class);
+            return new LoginFailureKey(readString(in), readString(in));
+        }
+
+        @Override
+        public Set<Class<? extends LoginFailureKey>> getTypeClasses() {
+            return Collections.<Class<? extends LoginFailureKey>>singleton(LoginFailureKey.class);
+        }
+
+        @Override
+        public Integer getId() {
+            return LOGIN_FAILURE_KEY;
+        }
+    }
+}
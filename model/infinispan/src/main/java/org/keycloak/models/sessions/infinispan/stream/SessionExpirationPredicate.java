@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.stream;
+
+import org.keycloak.models.sessions.infinispan.entities.ClientInitialAccessEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Matches expired userSessions, dettached clientSessions and clientInitialAccess entries of any of the configured realms. Allows
+ * to expire sessions of all realms in single pass through the cache instead of doing separate pass for each realm and each type of entity.
+ */
+public class SessionExpirationPredicate implements Predicate<Map.Entry<String, SessionEntity>>, Serializable {
+
+    private final boolean offline;
+
+    private final int currentTime;
+
+    private final Map<String, RealmExpiration> realms = new HashMap<>();
+
+    private SessionExpirationPredicate(boolean offline, int currentTime) {
+        this.offline = offline;
+        this.currentTime = currentTime;
+    }
+
+    public static SessionExpirationPredicate create(boolean offline, int currentTime) {
+        return new SessionExpirationPredicate(offline, currentTime);
+    }
+
+    /**
+     * @param realm realm ID
+     * @param expired userSessions started before this time are expired
+     * @param expiredRefresh userSessions (and offline clientSessions) not refreshed after this time are expired
+     * @param expiredDettachedClientSession clientSessions without userSession created before this time are expired. Ignored for offline sessions
+     */
+    public SessionExpirationPredicate realm(String realm, int expired, int expiredRefresh, int expiredDettachedClientSession) {
+        realms.put(realm, new RealmExpiration(expired, expiredRefresh, expiredDettachedClientSession));
+        return this;
+    }
+
+    @Override
+    public boolean test(Map.Entry<String, SessionEntity> entry) {
+        SessionEntity e = entry.getValue();
+
+        RealmExpiration expiration = realms.get(e.getRealm());
+        if (expiration == null) {
+            return false;
+        }
+
+        if (e instanceof UserSessionEntity) {
+            UserSessionEntity entity = (UserSessionEntity) e;
+            if (offline) {
+                return entity.getLastSessionRefresh() <= expiration.expiredRefresh;
+            } else {
+                return entity.getStarted() <= expiration.expired || entity.getLastSessionRefresh() <= expiration.expiredRefresh;
+            }
+        }
+
+        if (e instanceof ClientSessionEntity) {
+            ClientSessionEntity entity = (ClientSessionEntity) e;
+            if (offline) {
+                return entity.getTimestamp() <= expiration.expiredRefresh;
+            } else {
+                return entity.getUserSession() == null && entity.getTimestamp() <= expiration.expiredDettachedClientSession;
+            }
+        }
+
+        if (e instanceof ClientInitialAccessEntity && !offline) {
+            ClientInitialAccessEntity entity = (ClientInitialAccessEntity) e;
+            return entity.getRemainingCount() <= 0 || (entity.getExpiration() > 0 && (entity.getTimestamp() + entity.getExpiration()) < currentTime);
+        }
+
+        return false;
+    }
+
+    private static class RealmExpiration implements Serializable {
+
+        private final int expired;
+        private final int expiredRefresh;
+        private final int expiredDettachedClientSession;
+
+        private RealmExpiration(int expired, int expiredRefresh, int expiredDettachedClientSession) {
+            this.expired = expired;
+            this.expiredRefresh = expiredRefresh;
+            this.expiredDettachedClientSession = expiredDettachedClientSession;
+        }
+    }
+}
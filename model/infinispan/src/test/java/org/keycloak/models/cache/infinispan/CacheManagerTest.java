@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.transaction.LockingMode;
+import org.infinispan.transaction.TransactionMode;
+import org.infinispan.transaction.lookup.DummyTransactionManagerLookup;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+import java.util.Arrays;
+
+/**
+ * Objects loaded by single transaction are added to the cache with single lock of their revisions
+ */
+public class CacheManagerTest {
+
+    private static final long STARTUP_REVISION = 10;
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, Revisioned> cache;
+    private Cache<String, Long> revisions;
+    private RealmCacheManager realmCache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("realms", new ConfigurationBuilder().build());
+
+        ConfigurationBuilder revisionsConfigBuilder = new ConfigurationBuilder();
+        revisionsConfigBuilder.invocationBatching().enable()
+                .transaction().transactionMode(TransactionMode.TRANSACTIONAL);
+        revisionsConfigBuilder.transaction().transactionManagerLookup(new DummyTransactionManagerLookup());
+        revisionsConfigBuilder.transaction().lockingMode(LockingMode.PESSIMISTIC);
+        cacheManager.defineConfiguration("revisions", revisionsConfigBuilder.build());
+
+        cache = cacheManager.getCache("realms");
+        revisions = cacheManager.getCache("revisions");
+        realmCache = new RealmCacheManager(cache, revisions);
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testAddRevisionedBatch() {
+        revisions.put("updatedInTransaction", 20L);
+        revisions.put("older", 3L);
+        revisions.put("newer", 8L);
+
+        AbstractRevisioned missing = new AbstractRevisioned(0L, "missing");
+        AbstractRevisioned updatedInTransaction = new AbstractRevisioned(7L, "updatedInTransaction");
+        AbstractRevisioned older = new AbstractRevisioned(7L, "older");
+        AbstractRevisioned newer = new AbstractRevisioned(7L, "newer");
+        realmCache.addRevisioned(Arrays.asList(missing, updatedInTransaction, older, newer), STARTUP_REVISION);
+
+        // Missing revision is initialized to the current counter, older revision is updated to the one of the object
+        Assert.assertSame(missing, cache.get("missing"));
+        Assert.assertEquals(Long.valueOf(realmCache.getCurrentCounter()), revisions.get("missing"));
+        Assert.assertSame(older, cache.get("older"));
+        Assert.assertEquals(Long.valueOf(7L), revisions.get("older"));
+
+        // Revision changed after the transaction start or newer than the object, so these aren't cached
+        Assert.assertNull(cache.get("updatedInTransaction"));
+        Assert.assertNull(cache.get("newer"));
+        Assert.assertEquals(Long.valueOf(20L), revisions.get("updatedInTransaction"));
+        Assert.assertEquals(Long.valueOf(8L), revisions.get("newer"));
+
+        // All the objects were processed in single batch, which released its locks
+        Assert.assertEquals("1", realmCache.getOperationalInfo().get("revisionBatches"));
+        Assert.assertEquals("4", realmCache.getOperationalInfo().get("revisionBatchObjects"));
+        for (String id : Arrays.asList("missing", "updatedInTransaction", "older", "newer")) {
+            Assert.assertFalse(revisions.getAdvancedCache().getLockManager().isLocked(id));
+        }
+    }
+
+    @Test
+    public void testAddRevisionedSingle() {
+        AbstractRevisioned object = new AbstractRevisioned(0L, "object");
+        realmCache.addRevisioned(object, STARTUP_REVISION);
+        realmCache.addRevisioned(Arrays.<Revisioned>asList(), STARTUP_REVISION);
+
+        // Empty collection doesn't run any batch
+        Assert.assertSame(object, cache.get("object"));
+        Assert.assertEquals("1", realmCache.getOperationalInfo().get("revisionBatches"));
+        Assert.assertEquals("1", realmCache.getOperationalInfo().get("revisionBatchObjects"));
+    }
+
+}
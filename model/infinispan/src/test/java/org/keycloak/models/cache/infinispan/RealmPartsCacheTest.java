@@ -0,0 +1,296 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.transaction.LockingMode;
+import org.infinispan.transaction.TransactionMode;
+import org.infinispan.transaction.lookup.DummyTransactionManagerLookup;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.AuthenticationFlowModel;
+import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransaction;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RealmProvider;
+import org.keycloak.models.UserFederationMapperModel;
+import org.keycloak.models.cache.infinispan.entities.CachedRealm;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmAuthentication;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmIdentityProviders;
+import org.keycloak.models.cache.infinispan.entities.CachedRealmUserFederation;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Identity providers, authentication flows and user federation are cached separately from the realm. Changing one of them
+ * must reload just that part, while the realm and the other parts stay cached.
+ */
+public class RealmPartsCacheTest {
+
+    private static final String REALM_ID = "test-realm";
+
+    private EmbeddedCacheManager cacheManager;
+    private RealmCacheManager realmCache;
+
+    // Number of calls of the database realm methods
+    private final Map<String, Integer> calls = new HashMap<>();
+    private final List<KeycloakTransaction> transactions = new ArrayList<>();
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("realms", new ConfigurationBuilder().build());
+
+        ConfigurationBuilder revisionsConfigBuilder = new ConfigurationBuilder();
+        revisionsConfigBuilder.invocationBatching().enable()
+                .transaction().transactionMode(TransactionMode.TRANSACTIONAL);
+        revisionsConfigBuilder.transaction().transactionManagerLookup(new DummyTransactionManagerLookup());
+        revisionsConfigBuilder.transaction().lockingMode(LockingMode.PESSIMISTIC);
+        cacheManager.defineConfiguration("revisions", revisionsConfigBuilder.build());
+
+        Cache<String, Revisioned> cache = cacheManager.getCache("realms");
+        Cache<String, Long> revisions = cacheManager.getCache("revisions");
+        realmCache = new RealmCacheManager(cache, revisions);
+
+        // Load the realm and all its parts to the cache
+        RealmCacheSession session = begin();
+        readParts(session.getRealm(REALM_ID));
+        commit();
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testIdentityProviderUpdate() {
+        CachedRealm realm = getCachedRealm();
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+
+        RealmCacheSession session = begin();
+        session.getRealm(REALM_ID).updateIdentityProvider(new IdentityProviderModel());
+        commit();
+
+        Assert.assertNull(getCachedIdentityProviders());
+        assertPartsReloaded(1, 0, 0);
+
+        Assert.assertSame(realm, getCachedRealm());
+        Assert.assertSame(authentication, getCachedAuthentication());
+        Assert.assertSame(userFederation, getCachedUserFederation());
+        Assert.assertNotNull(getCachedIdentityProviders());
+    }
+
+    @Test
+    public void testAuthenticationFlowUpdate() {
+        CachedRealm realm = getCachedRealm();
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        CachedRealmUserFederation userFederation = getCachedUserFederation();
+
+        RealmCacheSession session = begin();
+        session.getRealm(REALM_ID).updateAuthenticationFlow(new AuthenticationFlowModel());
+        commit();
+
+        Assert.assertNull(getCachedAuthentication());
+        assertPartsReloaded(0, 1, 0);
+
+        Assert.assertSame(realm, getCachedRealm());
+        Assert.assertSame(identityProviders, getCachedIdentityProviders());
+        Assert.assertSame(userFederation, getCachedUserFederation());
+        Assert.assertNotNull(getCachedAuthentication());
+    }
+
+    @Test
+    public void testUserFederationMapperUpdate() {
+        CachedRealm realm = getCachedRealm();
+        CachedRealmIdentityProviders identityProviders = getCachedIdentityProviders();
+        CachedRealmAuthentication authentication = getCachedAuthentication();
+
+        RealmCacheSession session = begin();
+        session.getRealm(REALM_ID).updateUserFederationMapper(new UserFederationMapperModel());
+        commit();
+
+        Assert.assertNull(getCachedUserFederation());
+        assertPartsReloaded(0, 0, 1);
+
+        Assert.assertSame(realm, getCachedRealm());
+        Assert.assertSame(identityProviders, getCachedIdentityProviders());
+        Assert.assertSame(authentication, getCachedAuthentication());
+        Assert.assertNotNull(getCachedUserFederation());
+    }
+
+    /**
+     * Read all the parts in new session and check how many times each of them was loaded from the database
+     */
+    private void assertPartsReloaded(int identityProviders, int authentication, int userFederation) {
+        int realmLoads = getCalls("getRealmCacheEntry");
+        int identityProvidersLoads = getCalls("getIdentityProviders");
+        int authenticationLoads = getCalls("getAuthenticationFlows");
+        int userFederationLoads = getCalls("getUserFederationProviders");
+
+        RealmCacheSession session = begin();
+        readParts(session.getRealm(REALM_ID));
+        commit();
+
+        Assert.assertEquals(realmLoads, getCalls("getRealmCacheEntry"));
+        Assert.assertEquals(identityProvidersLoads + identityProviders, getCalls("getIdentityProviders"));
+        Assert.assertEquals(authenticationLoads + authentication, getCalls("getAuthenticationFlows"));
+        Assert.assertEquals(userFederationLoads + userFederation, getCalls("getUserFederationProviders"));
+    }
+
+    private void readParts(RealmModel realm) {
+        Assert.assertTrue(realm instanceof RealmAdapter);
+        realm.getIdentityProviders();
+        realm.getAuthenticationFlows();
+        realm.getUserFederationProviders();
+    }
+
+    private CachedRealm getCachedRealm() {
+        return realmCache.get(REALM_ID, CachedRealm.class);
+    }
+
+    private CachedRealmIdentityProviders getCachedIdentityProviders() {
+        return realmCache.get(REALM_ID + RealmCacheSession.REALM_IDENTITY_PROVIDERS_SUFFIX, CachedRealmIdentityProviders.class);
+    }
+
+    private CachedRealmAuthentication getCachedAuthentication() {
+        return realmCache.get(REALM_ID + RealmCacheSession.REALM_AUTHENTICATION_SUFFIX, CachedRealmAuthentication.class);
+    }
+
+    private CachedRealmUserFederation getCachedUserFederation() {
+        return realmCache.get(REALM_ID + RealmCacheSession.REALM_USER_FEDERATION_SUFFIX, CachedRealmUserFederation.class);
+    }
+
+    private int getCalls(String method) {
+        Integer count = calls.get(method);
+        return count != null ? count : 0;
+    }
+
+    private void called(String method) {
+        calls.put(method, getCalls(method) + 1);
+    }
+
+    private RealmCacheSession begin() {
+        transactions.clear();
+        RealmCacheSession session = new RealmCacheSession(realmCache, createSession());
+        for (KeycloakTransaction transaction : transactions) {
+            transaction.begin();
+        }
+        return session;
+    }
+
+    private void commit() {
+        for (KeycloakTransaction transaction : transactions) {
+            transaction.commit();
+        }
+    }
+
+    private KeycloakSession createSession() {
+        final KeycloakTransactionManager transactionManager = proxy(KeycloakTransactionManager.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().startsWith("enlist")) {
+                    transactions.add((KeycloakTransaction) args[0]);
+                }
+                return null;
+            }
+
+        });
+
+        final RealmProvider delegate = proxy(RealmProvider.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return method.getName().equals("getRealm") ? createRealm() : null;
+            }
+
+        });
+
+        return proxy(KeycloakSession.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getTransaction":
+                        return transactionManager;
+                    case "getProvider":
+                        return delegate;
+                    default:
+                        return null;
+                }
+            }
+
+        });
+    }
+
+    /**
+     * Realm of the database without any clients, roles, flows or providers. Counts the calls of its methods
+     */
+    private RealmModel createRealm() {
+        return proxy(RealmModel.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                // Only CachedRealm reads the display name
+                called(method.getName().equals("getDisplayName") ? "getRealmCacheEntry" : method.getName());
+
+                Class<?> type = method.getReturnType();
+                if (method.getName().equals("getId")) {
+                    return REALM_ID;
+                } else if (List.class.isAssignableFrom(type)) {
+                    return new ArrayList<>();
+                } else if (Set.class.isAssignableFrom(type)) {
+                    return new HashSet<>();
+                } else if (Map.class.isAssignableFrom(type)) {
+                    return new HashMap<>();
+                } else if (type == boolean.class) {
+                    return false;
+                } else if (type == int.class) {
+                    return 0;
+                } else if (type == long.class) {
+                    return 0L;
+                } else {
+                    return null;
+                }
+            }
+
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(RealmPartsCacheTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+}
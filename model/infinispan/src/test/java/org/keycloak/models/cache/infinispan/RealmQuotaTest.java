@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
+import org.keycloak.models.cache.infinispan.entities.InRealm;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+public class RealmQuotaTest {
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, Revisioned> cache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("users", new ConfigurationBuilder().build());
+        cache = cacheManager.getCache("users");
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        RealmQuota quota = RealmQuota.register(cache, 2);
+
+        put("a1", "realm-a");
+        put("a2", "realm-a");
+        put("b1", "realm-b");
+        put("a3", "realm-a");
+
+        // Large realm evicts just its own entries
+        Assert.assertFalse(cache.containsKey("a1"));
+        Assert.assertTrue(cache.containsKey("a2"));
+        Assert.assertTrue(cache.containsKey("a3"));
+        Assert.assertTrue(cache.containsKey("b1"));
+        Assert.assertEquals(2, quota.getSize("realm-a"));
+        Assert.assertEquals(1, quota.getSize("realm-b"));
+        Assert.assertEquals(1, quota.getEvictions());
+
+        // a2 was used recently, so a3 is evicted
+        cache.get("a2");
+        put("a4", "realm-a");
+        Assert.assertTrue(cache.containsKey("a2"));
+        Assert.assertFalse(cache.containsKey("a3"));
+        Assert.assertTrue(cache.containsKey("a4"));
+        Assert.assertEquals(2, quota.getEvictions());
+
+        cache.remove("a2");
+        cache.evict("a4");
+        Assert.assertEquals(0, quota.getSize("realm-a"));
+    }
+
+    @Test
+    public void testEntriesWithoutRealmIgnored() {
+        RealmQuota quota = RealmQuota.register(cache, 1);
+
+        cache.put("realm-a", new AbstractRevisioned(1L, "realm-a"));
+        cache.put("realm-b", new AbstractRevisioned(1L, "realm-b"));
+
+        Assert.assertTrue(cache.containsKey("realm-a"));
+        Assert.assertTrue(cache.containsKey("realm-b"));
+        Assert.assertEquals(0, quota.getEvictions());
+    }
+
+    private void put(String key, String realm) {
+        cache.put(key, new TestEntry(key, realm));
+    }
+
+    private static class TestEntry extends AbstractRevisioned implements InRealm {
+
+        private final String realm;
+
+        private TestEntry(String id, String realm) {
+            super(1L, id);
+            this.realm = realm;
+        }
+
+        @Override
+        public String getRealm() {
+            return realm;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.cache.infinispan.CacheManager;
+import org.keycloak.models.cache.infinispan.entities.AbstractRevisioned;
+import org.keycloak.models.cache.infinispan.entities.RealmListQuery;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+import org.keycloak.models.cache.infinispan.stream.RealmQueryPredicate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class InvalidationIndexTest {
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, Revisioned> cache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("realms", new ConfigurationBuilder().build());
+        cache = cacheManager.getCache("realms");
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testIndexUpdatedFromCacheEvents() {
+        InvalidationIndex index = InvalidationIndex.register(cache);
+
+        cache.put("q1", new RealmListQuery(1L, "q1", "realm1"));
+        cache.put("q2", new RealmListQuery(1L, "q2", new HashSet<>(Arrays.asList("realm1", "realm2"))));
+        cache.putForExternalRead("invalidation.keyq1", new AbstractRevisioned(-1L, "invalidation.keyq1"));
+
+        Assert.assertEquals(2, index.size());
+        assertKeys(index.getRealmQueries("realm1"), "q1", "q2");
+        assertKeys(index.getRealmQueries("realm2"), "q2");
+
+        cache.put("q2", new RealmListQuery(2L, "q2", "realm3"));
+        assertKeys(index.getRealmQueries("realm1"), "q1");
+        assertKeys(index.getRealmQueries("realm2"));
+        assertKeys(index.getRealmQueries("realm3"), "q2");
+
+        cache.remove("q1");
+        cache.evict("q2");
+
+        Assert.assertEquals(0, index.size());
+        assertKeys(index.getRealmQueries("realm1"));
+        assertKeys(index.getRealmQueries("realm3"));
+    }
+
+    @Test
+    public void testIndexFilledWithCurrentState() {
+        cache.put("q1", new RealmListQuery(1L, "q1", "realm1"));
+
+        InvalidationIndex index = InvalidationIndex.register(cache);
+
+        Assert.assertEquals(1, index.size());
+        assertKeys(index.getRealmQueries("realm1"), "q1");
+    }
+
+    @Test
+    public void testPendingInvalidations() {
+        Map<String, Revisioned> pending = new LinkedHashMap<>();
+        pending.put("q1", new RealmListQuery(1L, "q1", "realm1"));
+        pending.put("q2", new RealmListQuery(1L, "q2", "realm2"));
+
+        Set<String> invalidations = new HashSet<>();
+        CacheManager.addPendingInvalidations(pending, RealmQueryPredicate.create().realm("realm1"), invalidations);
+
+        assertKeys(invalidations, "q1");
+    }
+
+    private void assertKeys(Set<String> actual, String... expected) {
+        Assert.assertEquals(expected.length, actual.size());
+        for (String key : expected) {
+            Assert.assertTrue(actual.contains(key));
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.cache.impl.AbstractDelegatingAdvancedCache;
+import org.infinispan.commons.util.concurrent.NotifyingFuture;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntityDelta;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
+
+public class InfinispanKeycloakTransactionTest {
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, SessionEntity> sessions;
+    private Cache<LoginFailureKey, LoginFailureEntity> loginFailures;
+    private InfinispanUserSessionProvider provider;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("sessions", new ConfigurationBuilder().build());
+        cacheManager.defineConfiguration("offlineSessions", new ConfigurationBuilder().build());
+        cacheManager.defineConfiguration("loginFailures", new ConfigurationBuilder().build());
+        sessions = cacheManager.getCache("sessions");
+        loginFailures = cacheManager.getCache("loginFailures");
+        Cache<String, SessionEntity> offlineSessions = cacheManager.getCache("offlineSessions");
+
+        final KeycloakTransactionManager tx = proxy(KeycloakTransactionManager.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return null;
+            }
+
+        });
+
+        KeycloakSession session = proxy(KeycloakSession.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return method.getName().equals("getTransaction") ? tx : null;
+            }
+
+        });
+
+        provider = new InfinispanUserSessionProvider(session, sessions, offlineSessions, loginFailures);
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testCommit() {
+        LoginFailureKey loginFailureKey = new LoginFailureKey("test", "john");
+        loginFailures.put(loginFailureKey, new LoginFailureEntity());
+
+        UserSessionEntity userSession = userSession("user-session");
+        ClientSessionEntity clientSession = new ClientSessionEntity();
+        clientSession.setId("client-session");
+        clientSession.setRealm("test");
+        userSession.addClientSession(clientSession.getId());
+
+        provider.getTx().put(sessions, userSession.getId(), userSession);
+        provider.getTx().put(sessions, clientSession.getId(), clientSession);
+        provider.getTx().remove(loginFailures, loginFailureKey);
+        provider.getTx().commit();
+
+        Assert.assertSame(userSession, sessions.get(userSession.getId()));
+        Assert.assertSame(clientSession, sessions.get(clientSession.getId()));
+        Assert.assertFalse(loginFailures.containsKey(loginFailureKey));
+
+        // Tracked changes are forgotten after commit
+        Assert.assertNull(((UserSessionEntityDelta) userSession.changes()).getClientSessions());
+    }
+
+    @Test
+    public void testLoginCommitIsAsync() {
+        List<String> operations = new ArrayList<>();
+        Cache<String, SessionEntity> sessions = new CountingCache<>(this.sessions.getAdvancedCache(), operations);
+        Cache<LoginFailureKey, LoginFailureEntity> loginFailures = new CountingCache<>(this.loginFailures.getAdvancedCache(), operations);
+
+        LoginFailureKey loginFailureKey = new LoginFailureKey("test", "john");
+        loginFailures.put(loginFailureKey, new LoginFailureEntity());
+        UserSessionEntity existing = userSession("existing-session");
+        sessions.put(existing.getId(), existing);
+        existing.commit();
+        operations.clear();
+
+        // Login creates the user session with its client session, resets the login failures and refreshes the existing session
+        UserSessionEntity userSession = userSession("user-session");
+        ClientSessionEntity clientSession = new ClientSessionEntity();
+        clientSession.setId("client-session");
+        clientSession.setRealm("test");
+        userSession.addClientSession(clientSession.getId());
+        existing.setLastSessionRefresh(3000);
+
+        provider.getTx().put(sessions, userSession.getId(), userSession);
+        provider.getTx().put(sessions, clientSession.getId(), clientSession);
+        provider.getTx().remove(loginFailures, loginFailureKey);
+        provider.getTx().replace(sessions, existing.getId(), existing);
+        provider.getTx().commit();
+
+        // New sessions are put in single bulk operation, the refresh sends just the changes and nothing waits for single operation
+        Assert.assertEquals(Arrays.asList("putAllAsync", "removeAsync", "putAsync"), operations);
+
+        Assert.assertSame(userSession, sessions.get(userSession.getId()));
+        Assert.assertSame(clientSession, sessions.get(clientSession.getId()));
+        Assert.assertFalse(loginFailures.containsKey(loginFailureKey));
+        Assert.assertEquals(3000, ((UserSessionEntity) sessions.get(existing.getId())).getLastSessionRefresh());
+    }
+
+    @Test
+    public void testReplaceMergesChanges() {
+        UserSessionEntity cached = userSession("user-session");
+        cached.setNote("note1", "value1");
+        sessions.put(cached.getId(), cached);
+
+        // Copy of the session, for example read from the other owner
+        UserSessionEntity userSession = userSession("user-session");
+        userSession.setNote("note1", "value1");
+        userSession.commit();
+        userSession.setNote("note2", "value2");
+        userSession.setLastSessionRefresh(3000);
+
+        provider.getTx().replace(sessions, userSession.getId(), userSession);
+        provider.getTx().commit();
+
+        // Just the changes are merged into the cached entry, the unchanged note stays
+        Assert.assertSame(cached, sessions.get(cached.getId()));
+        Assert.assertEquals(3000, cached.getLastSessionRefresh());
+        Assert.assertEquals("value1", cached.getNotes().get("note1"));
+        Assert.assertEquals("value2", cached.getNotes().get("note2"));
+        Assert.assertNull(((UserSessionEntityDelta) userSession.changes()).getNotes());
+    }
+
+    @Test
+    public void testReplaceDoesNotRecreateRemovedSession() {
+        SessionIndex index = SessionIndex.register(sessions);
+
+        UserSessionEntity userSession = userSession("user-session");
+        sessions.put(userSession.getId(), userSession);
+        userSession.commit();
+        userSession.setNote("note", "value");
+
+        provider.getTx().replace(sessions, userSession.getId(), userSession);
+
+        // Logout or expiration on the other node before the commit
+        sessions.remove(userSession.getId());
+
+        provider.getTx().commit();
+
+        Assert.assertFalse(sessions.containsKey(userSession.getId()));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testFailure() {
+        final RuntimeException failure = new RuntimeException("Timeout");
+        loginFailures.addListener(new FailingListener(failure));
+
+        LoginFailureKey loginFailureKey = new LoginFailureKey("test", "john");
+        loginFailures.put(loginFailureKey, new LoginFailureEntity());
+
+        UserSessionEntity userSession = userSession("user-session");
+        provider.getTx().put(sessions, userSession.getId(), userSession);
+        provider.getTx().remove(loginFailures, loginFailureKey);
+
+        try {
+            provider.getTx().commit();
+            Assert.fail("Expected failure");
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (cause != null && cause != failure) {
+                cause = cause.getCause();
+            }
+            Assert.assertSame(failure, cause);
+        }
+
+        // Other operations are not cancelled by the failure
+        Assert.assertSame(userSession, sessions.get(userSession.getId()));
+    }
+
+    private static UserSessionEntity userSession(String id) {
+        UserSessionEntity userSession = new UserSessionEntity();
+        userSession.setId(id);
+        userSession.setRealm("test");
+        userSession.setUser("john");
+        return userSession;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InfinispanKeycloakTransactionTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+
+    /**
+     * Records the write operations called on the cache. Blocking and async operations are recorded under their own names
+     */
+    private static class CountingCache<K, V> extends AbstractDelegatingAdvancedCache<K, V> {
+
+        private final List<String> operations;
+
+        private CountingCache(AdvancedCache<K, V> cache, final List<String> operations) {
+            super(cache, new AdvancedCacheWrapper<K, V>() {
+
+                @Override
+                public AdvancedCache<K, V> wrap(AdvancedCache<K, V> cache) {
+                    return new CountingCache<>(cache, operations);
+                }
+
+            });
+            this.operations = operations;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            operations.add("put");
+            return super.put(key, value);
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            operations.add("putIfAbsent");
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> map) {
+            operations.add("putAll");
+            super.putAll(map);
+        }
+
+        @Override
+        public V replace(K key, V value) {
+            operations.add("replace");
+            return super.replace(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            operations.add("remove");
+            return super.remove(key);
+        }
+
+        @Override
+        public NotifyingFuture<V> putAsync(K key, V value) {
+            operations.add("putAsync");
+            return super.putAsync(key, value);
+        }
+
+        @Override
+        public NotifyingFuture<Void> putAllAsync(Map<? extends K, ? extends V> data) {
+            operations.add("putAllAsync");
+            return super.putAllAsync(data);
+        }
+
+        @Override
+        public NotifyingFuture<V> replaceAsync(K key, V value) {
+            operations.add("replaceAsync");
+            return super.replaceAsync(key, value);
+        }
+
+        @Override
+        public NotifyingFuture<V> removeAsync(Object key) {
+            operations.add("removeAsync");
+            return super.removeAsync(key);
+        }
+    }
+
+    @Listener
+    public static class FailingListener {
+
+        private final RuntimeException failure;
+
+        public FailingListener(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @CacheEntryRemoved
+        public void entryRemoved(CacheEntryRemovedEvent<Object, Object> event) {
+            if (event.isPre()) {
+                throw failure;
+            }
+        }
+    }
+}
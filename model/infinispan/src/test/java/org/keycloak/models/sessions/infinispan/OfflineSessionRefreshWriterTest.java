@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.sessions.infinispan;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.session.DisabledUserSessionPersisterProvider;
+import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.utils.PreShutdownEvent;
+import org.keycloak.provider.ProviderEventListener;
+
+public class OfflineSessionRefreshWriterTest {
+
+    @Test
+    public void testCoalesced() {
+        TestPersister persister = new TestPersister();
+        OfflineSessionRefreshWriter writer = new OfflineSessionRefreshWriter(createSessionFactory(persister), 60);
+        try {
+            writer.sessionRefreshed("s1", 1000);
+            writer.sessionRefreshed("s1", 1130);
+            writer.sessionRefreshed("s1", 1100);
+            writer.sessionRefreshed("s2", 1090);
+            writer.sessionRefreshed("s3", 1210);
+            Assert.assertEquals(3, writer.getPendingCount());
+
+            writer.flush();
+
+            // Times are rounded down to the flush interval, so s1 and s2 are updated together
+            Assert.assertEquals(2, persister.updates.size());
+            Assert.assertEquals(1080, persister.updates.get(0).lastSessionRefresh);
+            Assert.assertEquals(new HashSet<>(Arrays.asList("s1", "s2")), new HashSet<>(persister.updates.get(0).userSessionIds));
+            Assert.assertEquals(1200, persister.updates.get(1).lastSessionRefresh);
+            Assert.assertEquals(Arrays.asList("s3"), persister.updates.get(1).userSessionIds);
+            Assert.assertEquals(0, writer.getPendingCount());
+
+            writer.flush();
+            Assert.assertEquals(2, persister.updates.size());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testRetryAndFlushOnClose() {
+        TestPersister persister = new TestPersister();
+        OfflineSessionRefreshWriter writer = new OfflineSessionRefreshWriter(createSessionFactory(persister), 60);
+
+        persister.fail = true;
+        writer.sessionRefreshed("s1", 1000);
+        writer.flush();
+        Assert.assertEquals(1, writer.getPendingCount());
+
+        persister.fail = false;
+        writer.close();
+
+        Assert.assertEquals(1, persister.updates.size());
+        Assert.assertEquals(960, persister.updates.get(0).lastSessionRefresh);
+        Assert.assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    public void testFlushOnPreShutdownEvent() {
+        TestPersister persister = new TestPersister();
+        List<ProviderEventListener> listeners = new ArrayList<>();
+        OfflineSessionRefreshWriter writer = new OfflineSessionRefreshWriter(createSessionFactory(persister, listeners), 60);
+
+        writer.sessionRefreshed("s1", 1000);
+        for (ProviderEventListener listener : listeners) {
+            listener.onEvent(new PreShutdownEvent());
+        }
+
+        Assert.assertEquals(1, persister.updates.size());
+        Assert.assertEquals(0, writer.getPendingCount());
+
+        // Closing of the provider factory afterwards doesn't write anything
+        persister.fail = true;
+        writer.close();
+        Assert.assertEquals(1, persister.updates.size());
+    }
+
+    private static KeycloakSessionFactory createSessionFactory(UserSessionPersisterProvider persister) {
+        return createSessionFactory(persister, new ArrayList<ProviderEventListener>());
+    }
+
+    private static KeycloakSessionFactory createSessionFactory(final UserSessionPersisterProvider persister, final List<ProviderEventListener> listeners) {
+        final KeycloakTransactionManager tx = proxy(KeycloakTransactionManager.class, new InvocationHandler() {
+
+            private boolean active;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "begin":
+                        active = true;
+                        return null;
+                    case "commit":
+                    case "rollback":
+                        active = false;
+                        return null;
+                    case "isActive":
+                        return active;
+                    case "getRollbackOnly":
+                        return false;
+                    default:
+                        return null;
+                }
+            }
+
+        });
+
+        final KeycloakSession session = proxy(KeycloakSession.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "getTransaction":
+                        return tx;
+                    case "getProvider":
+                        return persister;
+                    default:
+                        return null;
+                }
+            }
+
+        });
+
+        return proxy(KeycloakSessionFactory.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "create":
+                        return session;
+                    case "register":
+                        listeners.add((ProviderEventListener) args[0]);
+                        return null;
+                    default:
+                        return null;
+                }
+            }
+
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(OfflineSessionRefreshWriterTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+
+    private static class Update {
+
+        private final List<String> userSessionIds;
+        private final int lastSessionRefresh;
+
+        private Update(Collection<String> userSessionIds, int lastSessionRefresh) {
+            this.userSessionIds = new ArrayList<>(userSessionIds);
+            this.lastSessionRefresh = lastSessionRefresh;
+        }
+    }
+
+    private static class TestPersister extends DisabledUserSessionPersisterProvider {
+
+        private final List<Update> updates = new ArrayList<>();
+        private boolean fail;
+
+        @Override
+        public void updateLastSessionRefreshes(Collection<String> userSessionIds, int lastSessionRefresh, boolean offline) {
+            if (fail) {
+                throw new RuntimeException("Failed");
+            }
+            Assert.assertTrue(offline);
+            updates.add(new Update(userSessionIds, lastSessionRefresh));
+        }
+    }
+}
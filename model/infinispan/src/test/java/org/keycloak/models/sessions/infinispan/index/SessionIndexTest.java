@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+import java.util.Set;
+
+public class SessionIndexTest {
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, SessionEntity> cache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("sessions", new ConfigurationBuilder().build());
+        cache = cacheManager.getCache("sessions");
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testIndexUpdatedFromCacheEvents() {
+        SessionIndex index = SessionIndex.register(cache);
+
+        cache.put("us1", userSession("us1", "realm1", "user1", "broker1"));
+        cache.put("us2", userSession("us2", "realm1", "user1", null));
+        cache.put("us3", userSession("us3", "realm2", "user1", null));
+        cache.put("cs1", clientSession("cs1", "realm1", "client1", "us1"));
+
+        Assert.assertEquals(4, index.size());
+        assertIds(index.getUserSessionsByUser("realm1", "user1"), "us1", "us2");
+        assertIds(index.getUserSessionsByUser("realm2", "user1"), "us3");
+        assertIds(index.getUserSessionsByBrokerSessionId("realm1", "broker1"), "us1");
+        assertIds(index.getClientSessionsByClient("realm1", "client1"), "cs1");
+        assertIds(index.getClientSessionsByClient("realm2", "client1"));
+
+        cache.replace("us1", userSession("us1", "realm1", "user1", "broker1"));
+        assertIds(index.getUserSessionsByUser("realm1", "user1"), "us1", "us2");
+
+        cache.remove("us1");
+        cache.remove("cs1");
+
+        Assert.assertEquals(2, index.size());
+        assertIds(index.getUserSessionsByUser("realm1", "user1"), "us2");
+        assertIds(index.getUserSessionsByBrokerSessionId("realm1", "broker1"));
+        assertIds(index.getClientSessionsByClient("realm1", "client1"));
+    }
+
+    @Test
+    public void testIndexFilledWithCurrentState() {
+        cache.put("us1", userSession("us1", "realm1", "user1", null));
+        cache.put("cs1", clientSession("cs1", "realm1", "client1", "us1"));
+
+        SessionIndex index = SessionIndex.register(cache);
+
+        Assert.assertEquals(2, index.size());
+        assertIds(index.getUserSessionsByUser("realm1", "user1"), "us1");
+        assertIds(index.getClientSessionsByClient("realm1", "client1"), "cs1");
+    }
+
+    @Test
+    public void testUnregister() {
+        SessionIndex index = SessionIndex.register(cache);
+        cache.put("us1", userSession("us1", "realm1", "user1", null));
+
+        index.unregister();
+        cache.put("us2", userSession("us2", "realm1", "user1", null));
+
+        Assert.assertEquals(1, index.size());
+        assertIds(index.getUserSessionsByUser("realm1", "user1"), "us1");
+    }
+
+    private void assertIds(Set<String> actual, String... expected) {
+        Assert.assertEquals(expected.length, actual.size());
+        for (String id : expected) {
+            Assert.assertTrue(actual.contains(id));
+        }
+    }
+
+    private UserSessionEntity userSession(String id, String realm, String user, String brokerSessionId) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealm(realm);
+        entity.setUser(user);
+        entity.setBrokerSessionId(brokerSessionId);
+        return entity;
+    }
+
+    private ClientSessionEntity clientSession(String id, String realm, String client, String userSession) {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        entity.setId(id);
+        entity.setRealm(realm);
+        entity.setClient(client);
+        entity.setUserSession(userSession);
+        return entity;
+    }
+}
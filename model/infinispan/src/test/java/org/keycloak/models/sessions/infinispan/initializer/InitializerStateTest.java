@@ -38,6 +38,8 @@ public class InitializerStateTest {
 
         state.markSegmentFinished(1);
         state.markSegmentFinished(2);
+        Assert.assertEquals(6, state.getSegmentsCount());
+        Assert.assertEquals(2, state.getFinishedSegmentsCount());
         segments = state.getUnfinishedSegments(4);
         assertContains(segments, 4, 0, 3, 4, 5);
 
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.sessions.infinispan.initializer;
+
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OfflineUserSessionLoaderTest {
+
+    @Test
+    public void testSegmentBoundaries() {
+        Assert.assertNull(OfflineUserSessionLoader.getSegmentBoundary(0, 1));
+        Assert.assertNull(OfflineUserSessionLoader.getSegmentBoundary(1, 1));
+        Assert.assertEquals("80000000", OfflineUserSessionLoader.getSegmentBoundary(1, 2));
+        Assert.assertEquals("00000002", OfflineUserSessionLoader.getSegmentBoundary(1, Integer.MAX_VALUE));
+        Assert.assertEquals("ffff0000", OfflineUserSessionLoader.getSegmentBoundary(65535, 65536));
+    }
+
+    @Test
+    public void testSegmentsCoverAllIds() {
+        int segmentsCount = 50;
+        int[] counts = new int[segmentsCount];
+        for (int i = 0; i < 10000; i++) {
+            String id = UUID.randomUUID().toString();
+            int matching = 0;
+            for (int segment = 0; segment < segmentsCount; segment++) {
+                String min = OfflineUserSessionLoader.getSegmentBoundary(segment, segmentsCount);
+                String max = OfflineUserSessionLoader.getSegmentBoundary(segment + 1, segmentsCount);
+                if ((min == null || id.compareTo(min) > 0) && (max == null || id.compareTo(max) <= 0)) {
+                    matching++;
+                    counts[segment]++;
+                }
+            }
+            Assert.assertEquals(1, matching);
+        }
+
+        // Segments are roughly the same size
+        for (int count : counts) {
+            Assert.assertTrue(count > 100 && count < 300);
+        }
+
+        // Also IDs in other format belong to some segment
+        Assert.assertNull(OfflineUserSessionLoader.getSegmentBoundary(0, segmentsCount));
+        Assert.assertNull(OfflineUserSessionLoader.getSegmentBoundary(segmentsCount, segmentsCount));
+    }
+}
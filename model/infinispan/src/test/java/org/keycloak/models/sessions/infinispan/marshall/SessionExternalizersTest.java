@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.marshall;
+
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ClientSessionModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.ClientSessionEntityDelta;
+import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntityDelta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+
+public class SessionExternalizersTest {
+
+    @Test
+    public void testUserSession() throws Exception {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(UUID.randomUUID().toString());
+        entity.setRealm("test");
+        entity.setUser(UUID.randomUUID().toString());
+        entity.setLoginUsername("john-doh@localhost");
+        entity.setIpAddress("127.0.0.1");
+        entity.setAuthMethod("openid-connect");
+        entity.setRememberMe(true);
+        entity.setStarted(1000);
+        entity.setLastSessionRefresh(2000);
+        entity.setClientSessions(new HashSet<>(Arrays.asList(UUID.randomUUID().toString(), UUID.randomUUID().toString())));
+        entity.setState(UserSessionModel.State.LOGGING_IN);
+        Map<String, String> notes = new HashMap<>();
+        notes.put("note", "value");
+        notes.put("empty", null);
+        entity.setNotes(notes);
+
+        UserSessionEntity read = roundTrip(new SessionExternalizers.UserSessionEntityExternalizer(), entity);
+
+        Assert.assertEquals(entity.getId(), read.getId());
+        Assert.assertEquals(entity.getRealm(), read.getRealm());
+        Assert.assertEquals(entity.getUser(), read.getUser());
+        Assert.assertNull(read.getBrokerSessionId());
+        Assert.assertEquals(entity.getLoginUsername(), read.getLoginUsername());
+        Assert.assertEquals(entity.getIpAddress(), read.getIpAddress());
+        Assert.assertEquals(entity.getAuthMethod(), read.getAuthMethod());
+        Assert.assertTrue(read.isRememberMe());
+        Assert.assertEquals(1000, read.getStarted());
+        Assert.assertEquals(2000, read.getLastSessionRefresh());
+        Assert.assertEquals(entity.getClientSessions(), read.getClientSessions());
+        Assert.assertEquals(UserSessionModel.State.LOGGING_IN, read.getState());
+        Assert.assertEquals(notes, read.getNotes());
+    }
+
+    @Test
+    public void testClientSession() throws Exception {
+        ClientSessionEntity entity = createClientSession();
+        ClientSessionEntity read = roundTrip(new SessionExternalizers.ClientSessionEntityExternalizer(), entity);
+
+        Assert.assertEquals(entity.getId(), read.getId());
+        Assert.assertEquals(entity.getClient(), read.getClient());
+        Assert.assertEquals(entity.getUserSession(), read.getUserSession());
+        Assert.assertEquals(entity.getRedirectUri(), read.getRedirectUri());
+        Assert.assertEquals(entity.getTimestamp(), read.getTimestamp());
+        Assert.assertEquals(entity.getAction(), read.getAction());
+        Assert.assertEquals(entity.getRoles(), read.getRoles());
+        Assert.assertNull(read.getProtocolMappers());
+        Assert.assertEquals(entity.getNotes(), read.getNotes());
+        Assert.assertNull(read.getUserSessionNotes());
+        Assert.assertEquals(entity.getAuthenticatorStatus(), read.getAuthenticatorStatus());
+        Assert.assertEquals(entity.getRequiredActions(), read.getRequiredActions());
+
+        // Long notes (for example SAML requests) exceed the limit of writeUTF
+        char[] longNote = new char[100000];
+        Arrays.fill(longNote, 'x');
+        entity.getNotes().put("long", new String(longNote));
+        read = roundTrip(new SessionExternalizers.ClientSessionEntityExternalizer(), entity);
+        Assert.assertEquals(entity.getNotes(), read.getNotes());
+    }
+
+    @Test
+    public void testUserSessionDelta() throws Exception {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(UUID.randomUUID().toString());
+        entity.setRealm("test");
+        entity.setUser(UUID.randomUUID().toString());
+        entity.setState(UserSessionModel.State.LOGGING_IN);
+        entity.addClientSession("client-session-1");
+        entity.setNote("note1", "value1");
+
+        // Entity put to the other node, which doesn't have it yet
+        UserSessionEntity other = (UserSessionEntity) roundTrip(new SessionExternalizers.UserSessionEntityDeltaExternalizer(), (UserSessionEntityDelta) entity.delta()).merge(null);
+        entity.commit();
+        Assert.assertEquals(entity.getId(), other.getId());
+        Assert.assertEquals(entity.getUser(), other.getUser());
+        Assert.assertEquals(entity.getClientSessions(), other.getClientSessions());
+        Assert.assertEquals(entity.getNotes(), other.getNotes());
+
+        entity.setState(UserSessionModel.State.LOGGED_IN);
+        entity.setLastSessionRefresh(3000);
+        entity.addClientSession("client-session-2");
+        entity.removeClientSession("client-session-1");
+        entity.setNote("note2", "value2");
+        entity.removeNote("note1");
+
+        UserSessionEntityDelta delta = roundTrip(new SessionExternalizers.UserSessionEntityDeltaExternalizer(), (UserSessionEntityDelta) entity.changes());
+        Assert.assertFalse(delta.isComplete());
+        Assert.assertSame(other, delta.merge(other));
+        Assert.assertEquals(UserSessionModel.State.LOGGED_IN, other.getState());
+        Assert.assertEquals(3000, other.getLastSessionRefresh());
+        Assert.assertEquals(entity.getClientSessions(), other.getClientSessions());
+        Assert.assertEquals(entity.getNotes(), other.getNotes());
+
+        // Changes don't recreate the session removed in the meantime
+        Assert.assertNull(delta.merge(null));
+
+        // Nothing changed after commit, so notes and client sessions are not included
+        entity.commit();
+        delta = (UserSessionEntityDelta) entity.changes();
+        Assert.assertNull(delta.getNotes());
+        Assert.assertNull(delta.getClientSessions());
+
+        // Whole entity is still sent when the entity itself is put
+        delta = (UserSessionEntityDelta) entity.delta();
+        Assert.assertTrue(delta.isComplete());
+        Assert.assertEquals(entity.getNotes(), delta.getNotes().apply(null));
+    }
+
+    @Test
+    public void testClientSessionDelta() throws Exception {
+        ClientSessionEntity entity = createClientSession();
+        ClientSessionEntity other = roundTrip(new SessionExternalizers.ClientSessionEntityExternalizer(), entity);
+        entity.commit();
+
+        entity.setAction("AUTHENTICATE");
+        entity.setNote("state", "123");
+        entity.removeNote("scope");
+        entity.setUserSessionNote("user-note", "value");
+        entity.setAuthenticatorStatus("otp", ClientSessionModel.ExecutionStatus.CHALLENGED);
+        entity.addRequiredAction("VERIFY_EMAIL");
+        entity.removeRequiredAction("UPDATE_PASSWORD");
+        entity.setProtocolMappers(null);
+
+        ClientSessionEntityDelta delta = roundTrip(new SessionExternalizers.ClientSessionEntityDeltaExternalizer(), (ClientSessionEntityDelta) entity.changes());
+        Assert.assertNull(delta.getRoles());
+        Assert.assertNull(delta.merge(null));
+        delta.merge(other);
+
+        Assert.assertEquals("AUTHENTICATE", other.getAction());
+        Assert.assertEquals(entity.getRoles(), other.getRoles());
+        Assert.assertNull(other.getProtocolMappers());
+        Assert.assertEquals(entity.getNotes(), other.getNotes());
+        Assert.assertEquals(entity.getUserSessionNotes(), other.getUserSessionNotes());
+        Assert.assertEquals(entity.getAuthenticatorStatus(), other.getAuthenticatorStatus());
+        Assert.assertEquals(entity.getRequiredActions(), other.getRequiredActions());
+
+        entity.clearAuthenticatorStatus();
+        roundTrip(new SessionExternalizers.ClientSessionEntityDeltaExternalizer(), (ClientSessionEntityDelta) entity.changes()).merge(other);
+        Assert.assertTrue(other.getAuthenticatorStatus().isEmpty());
+
+        // Entity on the other node, which doesn't have it yet
+        ClientSessionEntity created = (ClientSessionEntity) roundTrip(new SessionExternalizers.ClientSessionEntityDeltaExternalizer(), (ClientSessionEntityDelta) entity.delta()).merge(null);
+        Assert.assertEquals(entity.getRoles(), created.getRoles());
+        Assert.assertEquals(entity.getNotes(), created.getNotes());
+        Assert.assertEquals(entity.getRequiredActions(), created.getRequiredActions());
+    }
+
+    @Test
+    public void testDeltaSize() throws Exception {
+        ClientSessionEntity entity = createClientSession();
+        for (int i = 0; i < 20; i++) {
+            entity.getNotes().put("note" + i, UUID.randomUUID().toString());
+        }
+        entity.commit();
+
+        entity.setNote("state", "123");
+
+        int full = write(new SessionExternalizers.ClientSessionEntityExternalizer(), entity).length;
+        int delta = write(new SessionExternalizers.ClientSessionEntityDeltaExternalizer(), (ClientSessionEntityDelta) entity.changes()).length;
+
+        Assert.assertTrue("Delta size " + delta + ", full size " + full, delta * 3 < full);
+    }
+
+    @Test
+    public void testLoginFailureKey() throws Exception {
+        LoginFailureKey key = new LoginFailureKey("test", "john");
+        Assert.assertEquals(key, roundTrip(new SessionExternalizers.LoginFailureKeyExternalizer(), key));
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        ClientSessionEntity entity = createClientSession();
+
+        int compact = write(new SessionExternalizers.ClientSessionEntityExternalizer(), entity).length;
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(entity);
+        }
+
+        Assert.assertTrue("Compact size " + compact + ", serialized size " + serialized.size(), compact * 3 < serialized.size());
+    }
+
+    private static ClientSessionEntity createClientSession() {
+        ClientSessionEntity entity = new ClientSessionEntity();
+        entity.setId(UUID.randomUUID().toString());
+        entity.setRealm("test");
+        entity.setClient(UUID.randomUUID().toString());
+        entity.setUserSession(UUID.randomUUID().toString());
+        entity.setAuthMethod("openid-connect");
+        entity.setRedirectUri("http://localhost:8180/app/auth");
+        entity.setTimestamp(1000);
+        entity.setAction("CODE_TO_TOKEN");
+        entity.setRoles(new HashSet<>(Arrays.asList(UUID.randomUUID().toString(), UUID.randomUUID().toString())));
+        Map<String, String> notes = new HashMap<>();
+        notes.put("scope", "openid");
+        notes.put("response_type", "code");
+        entity.setNotes(notes);
+        entity.getAuthenticatorStatus().put(UUID.randomUUID().toString(), ClientSessionModel.ExecutionStatus.SUCCESS);
+        entity.getRequiredActions().add("UPDATE_PASSWORD");
+        return entity;
+    }
+
+    private static <T> T roundTrip(AdvancedExternalizer<T> externalizer, T object) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(write(externalizer, object)))) {
+            T read = externalizer.readObject(in);
+            Assert.assertEquals(-1, in.read());
+            return read;
+        }
+    }
+
+    private static <T> byte[] write(AdvancedExternalizer<T> externalizer, T object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            externalizer.writeObject(out, object);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -24,6 +24,7 @@ import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.AdminEventQuery;
 import org.keycloak.events.admin.AuthDetails;
 import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.AsyncEventStoreWriter;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
@@ -46,9 +47,15 @@ public class JpaEventStoreProvider implements EventStoreProvider {
     private static final Logger logger = Logger.getLogger(JpaEventStoreProvider.class);
 
     private EntityManager em;
+    private AsyncEventStoreWriter asyncWriter;
 
     public JpaEventStoreProvider(EntityManager em) {
+        this(em, null);
+    }
+
+    public JpaEventStoreProvider(EntityManager em, AsyncEventStoreWriter asyncWriter) {
         this.em = em;
+        this.asyncWriter = asyncWriter;
     }
 
     @Override
@@ -73,7 +80,11 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
-        em.persist(convertEvent(event));
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(event);
+        } else {
+            em.persist(convertEvent(event));
+        }
     }
 
     @Override
@@ -98,7 +109,11 @@ public class JpaEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent event, boolean includeRepresentation) {
-        em.persist(convertAdminEvent(event, includeRepresentation));
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(event, includeRepresentation);
+        } else {
+            em.persist(convertAdminEvent(event, includeRepresentation));
+        }
     }
 
     @Override
@@ -19,35 +19,88 @@ package org.keycloak.events.jpa;
 
 import org.keycloak.Config;
 import org.keycloak.connections.jpa.JpaConnectionProvider;
+import org.keycloak.events.AsyncEventStoreWriter;
+import org.keycloak.events.Event;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
+import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import javax.persistence.EntityManager;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class JpaEventStoreProviderFactory implements EventStoreProviderFactory {
+public class JpaEventStoreProviderFactory implements EventStoreProviderFactory, ServerInfoAwareProviderFactory {
 
     public static final String ID = "jpa";
 
+    private Config.Scope config;
+    private AsyncEventStoreWriter asyncWriter;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         JpaConnectionProvider connection = session.getProvider(JpaConnectionProvider.class);
-        return new JpaEventStoreProvider(connection.getEntityManager());
+        return new JpaEventStoreProvider(connection.getEntityManager(), asyncWriter);
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {
+    public void postInit(final KeycloakSessionFactory factory) {
+        asyncWriter = AsyncEventStoreWriter.create(ID, config, new AsyncEventStoreWriter.BatchWriter() {
+
+            @Override
+            public void write(final List<Event> events, final List<AdminEvent> adminEvents) {
+                KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        // Whole batch is flushed at once, so it's sent in JDBC batches when hibernate.jdbc.batch_size is configured
+                        EntityManager em = session.getProvider(JpaConnectionProvider.class).getEntityManager();
+                        for (Event event : events) {
+                            em.persist(JpaEventStoreProvider.convertEvent(event));
+                        }
+                        for (AdminEvent adminEvent : adminEvents) {
+                            em.persist(JpaEventStoreProvider.convertAdminEvent(adminEvent, true));
+                        }
+                        em.flush();
+                    }
+
+                });
+            }
 
+        });
+
+        if (asyncWriter != null) {
+            asyncWriter.start();
+        }
     }
 
     @Override
     public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        if (asyncWriter != null) {
+            info.putAll(asyncWriter.getStatistics().getOperationalInfo());
+        }
+        return info;
     }
 
     @Override
@@ -470,6 +470,53 @@ public class JpaUserProvider implements UserProvider {
         return users;
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        // Username and email are stored lowercase and names have lowercase copies. Just the prefix matching on those columns, so it can use the indexes
+        StringBuilder builder = new StringBuilder("select u from UserEntity u where u.realmId = :realmId and (u.serviceAccountClientLink is null)");
+        String firstName = null;
+        String lastName = null;
+        if (search != null) {
+            search = search.trim().toLowerCase();
+            int spaceIndex = search.lastIndexOf(' ');
+            if (spaceIndex > -1) {
+                firstName = search.substring(0, spaceIndex).trim();
+                lastName = search.substring(spaceIndex).trim();
+                builder.append(" and u.firstNameLower like :firstName escape '!' and u.lastNameLower like :lastName escape '!'");
+            } else {
+                builder.append(" and (u.username like :search escape '!' or u.email like :search escape '!'" +
+                        " or u.firstNameLower like :search escape '!' or u.lastNameLower like :search escape '!')");
+            }
+        }
+        if (lastUsername != null) {
+            builder.append(" and u.username > :lastUsername");
+        }
+        builder.append(" order by u.username");
+
+        TypedQuery<UserEntity> query = em.createQuery(builder.toString(), UserEntity.class);
+        query.setParameter("realmId", realm.getId());
+        if (firstName != null) {
+            query.setParameter("firstName", toPrefixPattern(firstName));
+            query.setParameter("lastName", toPrefixPattern(lastName));
+        } else if (search != null) {
+            query.setParameter("search", toPrefixPattern(search));
+        }
+        if (lastUsername != null) {
+            query.setParameter("lastUsername", lastUsername);
+        }
+        if (maxResults != -1) {
+            query.setMaxResults(maxResults);
+        }
+        List<UserEntity> results = query.getResultList();
+        List<UserModel> users = new ArrayList<UserModel>();
+        for (UserEntity entity : results) users.add(new UserAdapter(session, realm, em, entity));
+        return users;
+    }
+
+    private static String toPrefixPattern(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
     @Override
     public List<UserModel> searchForUserByUserAttribute(String attrName, String attrValue, RealmModel realm) {
         TypedQuery<UserAttributeEntity> query = em.createNamedQuery("getAttributesByNameAndValue", UserAttributeEntity.class);
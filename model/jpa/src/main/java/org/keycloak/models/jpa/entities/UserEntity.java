@@ -74,6 +74,12 @@ public class UserEntity {
     protected String lastName;
     @Column(name = "EMAIL")
     protected String email;
+
+    // Lowercase copies of the names, so that they can be searched by prefix with an index
+    @Column(name = "FIRST_NAME_LOWER")
+    protected String firstNameLower;
+    @Column(name = "LAST_NAME_LOWER")
+    protected String lastNameLower;
     @Column(name = "ENABLED")
     protected boolean enabled;
     @Column(name = "TOTP")
@@ -133,6 +139,11 @@ public class UserEntity {
 
     public void setFirstName(String firstName) {
         this.firstName = firstName;
+        this.firstNameLower = KeycloakModelUtils.toLowerCaseSafe(firstName);
+    }
+
+    public String getFirstNameLower() {
+        return firstNameLower;
     }
 
     public String getLastName() {
@@ -141,6 +152,11 @@ public class UserEntity {
 
     public void setLastName(String lastName) {
         this.lastName = lastName;
+        this.lastNameLower = KeycloakModelUtils.toLowerCaseSafe(lastName);
+    }
+
+    public String getLastNameLower() {
+        return lastNameLower;
     }
 
     public String getEmail() {
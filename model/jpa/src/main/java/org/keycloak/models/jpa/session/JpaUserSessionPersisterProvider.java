@@ -18,6 +18,7 @@
 package org.keycloak.models.jpa.session;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -43,6 +44,8 @@ import org.keycloak.models.session.UserSessionPersisterProvider;
  */
 public class JpaUserSessionPersisterProvider implements UserSessionPersisterProvider {
 
+    private static final int UPDATE_BATCH_SIZE = 500;
+
     private final KeycloakSession session;
     private final EntityManager em;
 
@@ -187,6 +190,21 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
         num = em.createNamedQuery("updateUserSessionsTimestamps").setParameter("lastSessionRefresh", time).executeUpdate();
     }
 
+    @Override
+    public void updateLastSessionRefreshes(Collection<String> userSessionIds, int lastSessionRefresh, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        // Some databases limit number of parameters in the "IN" clause
+        List<String> ids = new ArrayList<>(userSessionIds);
+        for (int i = 0; i < ids.size(); i += UPDATE_BATCH_SIZE) {
+            em.createNamedQuery("updateUserSessionsLastSessionRefresh")
+                    .setParameter("lastSessionRefresh", lastSessionRefresh)
+                    .setParameter("offline", offlineStr)
+                    .setParameter("userSessionIds", ids.subList(i, Math.min(i + UPDATE_BATCH_SIZE, ids.size())))
+                    .executeUpdate();
+        }
+    }
+
     @Override
     public List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline) {
         String offlineStr = offlineToString(offline);
@@ -203,7 +221,6 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
 
         List<PersistentUserSessionEntity> results = query.getResultList();
         List<UserSessionModel> result = new ArrayList<>();
-        List<String> userSessionIds = new ArrayList<>();
         for (PersistentUserSessionEntity entity : results) {
             RealmModel realm = session.realms().getRealm(entity.getRealmId());
             UserModel user = session.users().getUserById(entity.getUserId(), realm);
@@ -215,38 +232,90 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
             }
 
             result.add(toAdapter(realm, user, entity));
-            userSessionIds.add(entity.getUserSessionId());
         }
 
-        if (!userSessionIds.isEmpty()) {
-            TypedQuery<PersistentClientSessionEntity> query2 = em.createNamedQuery("findClientSessionsByUserSessions", PersistentClientSessionEntity.class);
-            query2.setParameter("userSessionIds", userSessionIds);
-            query2.setParameter("offline", offlineStr);
-            List<PersistentClientSessionEntity> clientSessions = query2.getResultList();
-
-            // Assume both userSessions and clientSessions ordered by userSessionId
-            int j = 0;
-            for (UserSessionModel ss : result) {
-                PersistentUserSessionAdapter userSession = (PersistentUserSessionAdapter) ss;
-                List<ClientSessionModel> currentClientSessions = userSession.getClientSessions(); // This is empty now and we want to fill it
-
-                boolean next = true;
-                while (next && j < clientSessions.size()) {
-                    PersistentClientSessionEntity clientSession = clientSessions.get(j);
-                    if (clientSession.getUserSessionId().equals(userSession.getId())) {
-                        PersistentClientSessionAdapter clientSessAdapter = toAdapter(userSession.getRealm(), userSession, clientSession);
-                        currentClientSessions.add(clientSessAdapter);
-                        j++;
-                    } else {
-                        next = false;
-                    }
-                }
+        loadClientSessions(result, offlineStr);
+        return result;
+    }
+
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline) {
+        String offlineStr = offlineToString(offline);
+
+        StringBuilder queryStr = new StringBuilder("select sess from PersistentUserSessionEntity sess where sess.offline = :offline");
+        if (lastUserSessionId != null) {
+            queryStr.append(" and sess.userSessionId > :lastUserSessionId");
+        }
+        if (maxUserSessionId != null) {
+            queryStr.append(" and sess.userSessionId <= :maxUserSessionId");
+        }
+        queryStr.append(" order by sess.userSessionId");
+
+        TypedQuery<PersistentUserSessionEntity> query = em.createQuery(queryStr.toString(), PersistentUserSessionEntity.class);
+        query.setParameter("offline", offlineStr);
+        if (lastUserSessionId != null) {
+            query.setParameter("lastUserSessionId", lastUserSessionId);
+        }
+        if (maxUserSessionId != null) {
+            query.setParameter("maxUserSessionId", maxUserSessionId);
+        }
+        query.setMaxResults(maxResults);
+
+        List<PersistentUserSessionEntity> results = query.getResultList();
+        List<UserSessionModel> result = new ArrayList<>();
+        for (PersistentUserSessionEntity entity : results) {
+            RealmModel realm = session.realms().getRealm(entity.getRealmId());
+            UserModel user = session.users().getUserById(entity.getUserId(), realm);
+
+            // Case when user was deleted in the meantime
+            if (user == null) {
+                onUserRemoved(realm, entity.getUserId());
+                return loadUserSessions(lastUserSessionId, maxUserSessionId, maxResults, offline);
             }
+
+            result.add(toAdapter(realm, user, entity));
         }
 
+        loadClientSessions(result, offlineStr);
         return result;
     }
 
+    // Fill clientSessions of all the userSessions with single query
+    private void loadClientSessions(List<UserSessionModel> userSessions, String offlineStr) {
+        if (userSessions.isEmpty()) {
+            return;
+        }
+
+        List<String> userSessionIds = new ArrayList<>();
+        for (UserSessionModel userSession : userSessions) {
+            userSessionIds.add(userSession.getId());
+        }
+
+        TypedQuery<PersistentClientSessionEntity> query2 = em.createNamedQuery("findClientSessionsByUserSessions", PersistentClientSessionEntity.class);
+        query2.setParameter("userSessionIds", userSessionIds);
+        query2.setParameter("offline", offlineStr);
+        List<PersistentClientSessionEntity> clientSessions = query2.getResultList();
+
+        // Assume both userSessions and clientSessions ordered by userSessionId
+        int j = 0;
+        for (UserSessionModel ss : userSessions) {
+            PersistentUserSessionAdapter userSession = (PersistentUserSessionAdapter) ss;
+            List<ClientSessionModel> currentClientSessions = userSession.getClientSessions(); // This is empty now and we want to fill it
+
+            boolean next = true;
+            while (next && j < clientSessions.size()) {
+                PersistentClientSessionEntity clientSession = clientSessions.get(j);
+                if (clientSession.getUserSessionId().equals(userSession.getId())) {
+                    PersistentClientSessionAdapter clientSessAdapter = toAdapter(userSession.getRealm(), userSession, clientSession);
+                    currentClientSessions.add(clientSessAdapter);
+                    j++;
+                } else {
+                    next = false;
+                }
+            }
+        }
+    }
+
     private PersistentUserSessionAdapter toAdapter(RealmModel realm, UserModel user, PersistentUserSessionEntity entity) {
         PersistentUserSessionModel model = new PersistentUserSessionModel();
         model.setUserSessionId(entity.getUserSessionId());
@@ -45,6 +45,7 @@ import org.keycloak.models.jpa.entities.UserEntity;
         @NamedQuery(name="findUserSessionsCount", query="select count(sess) from PersistentUserSessionEntity sess where sess.offline = :offline"),
         @NamedQuery(name="findUserSessions", query="select sess from PersistentUserSessionEntity sess where sess.offline = :offline order by sess.userSessionId"),
         @NamedQuery(name="updateUserSessionsTimestamps", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh"),
+        @NamedQuery(name="updateUserSessionsLastSessionRefresh", query="update PersistentUserSessionEntity c set lastSessionRefresh = :lastSessionRefresh where c.offline = :offline and c.userSessionId IN (:userSessionIds)"),
 
 })
 @Table(name="OFFLINE_USER_SESSION")
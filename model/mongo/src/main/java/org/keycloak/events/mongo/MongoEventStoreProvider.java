@@ -25,6 +25,7 @@ import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.events.admin.AdminEventQuery;
 import org.keycloak.events.admin.AuthDetails;
 import org.keycloak.events.admin.OperationType;
+import org.keycloak.events.AsyncEventStoreWriter;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventQuery;
 import org.keycloak.events.EventStoreProvider;
@@ -40,10 +41,16 @@ public class MongoEventStoreProvider implements EventStoreProvider {
     
     private DBCollection events;
     private DBCollection adminEvents;
+    private AsyncEventStoreWriter asyncWriter;
 
     public MongoEventStoreProvider(DBCollection events, DBCollection adminEvents) {
+        this(events, adminEvents, null);
+    }
+
+    public MongoEventStoreProvider(DBCollection events, DBCollection adminEvents, AsyncEventStoreWriter asyncWriter) {
         this.events = events;
         this.adminEvents = adminEvents;
+        this.asyncWriter = asyncWriter;
     }
 
     @Override
@@ -71,7 +78,11 @@ public class MongoEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(Event event) {
-        events.insert(convertEvent(event));
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(event);
+        } else {
+            events.insert(convertEvent(event));
+        }
     }
 
     @Override
@@ -99,7 +110,11 @@ public class MongoEventStoreProvider implements EventStoreProvider {
 
     @Override
     public void onEvent(AdminEvent adminEvent, boolean includeRepresentation) {
-        adminEvents.insert(convertAdminEvent(adminEvent, includeRepresentation));
+        if (asyncWriter != null) {
+            asyncWriter.onEvent(adminEvent, includeRepresentation);
+        } else {
+            adminEvents.insert(convertAdminEvent(adminEvent, includeRepresentation));
+        }
     }
 
     @Override
@@ -151,7 +166,7 @@ public class MongoEventStoreProvider implements EventStoreProvider {
         return event;
     }
     
-    private static DBObject convertAdminEvent(AdminEvent adminEvent, boolean includeRepresentation) {
+    static DBObject convertAdminEvent(AdminEvent adminEvent, boolean includeRepresentation) {
         BasicDBObject e = new BasicDBObject();
         e.put("time", adminEvent.getTime());
         e.put("realmId", adminEvent.getRealmId());
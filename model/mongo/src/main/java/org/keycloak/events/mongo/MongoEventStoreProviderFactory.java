@@ -17,25 +17,41 @@
 
 package org.keycloak.events.mongo;
 
+import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import org.jboss.logging.Logger;
 import org.keycloak.Config;
 import org.keycloak.connections.mongo.MongoConnectionProvider;
+import org.keycloak.events.AsyncEventStoreWriter;
+import org.keycloak.events.Event;
 import org.keycloak.events.EventStoreProvider;
 import org.keycloak.events.EventStoreProviderFactory;
+import org.keycloak.events.admin.AdminEvent;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.provider.ServerInfoAwareProviderFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
  */
-public class MongoEventStoreProviderFactory implements EventStoreProviderFactory {
+public class MongoEventStoreProviderFactory implements EventStoreProviderFactory, ServerInfoAwareProviderFactory {
 
     protected static final Logger logger = Logger.getLogger(MongoEventStoreProviderFactory.class);
 
     public static final String ID = "mongo";
 
+    private Config.Scope config;
+    private AsyncEventStoreWriter asyncWriter;
+
     @Override
     public EventStoreProvider create(KeycloakSession session) {
         MongoConnectionProvider connection = session.getProvider(MongoConnectionProvider.class);
@@ -46,20 +62,67 @@ public class MongoEventStoreProviderFactory implements EventStoreProviderFactory
         collection.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
         adminCollection.setWriteConcern(WriteConcern.UNACKNOWLEDGED);
 
-        return new MongoEventStoreProvider(collection, adminCollection);
+        return new MongoEventStoreProvider(collection, adminCollection, asyncWriter);
     }
 
     @Override
     public void init(Config.Scope config) {
+        this.config = config;
     }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {
+    public void postInit(final KeycloakSessionFactory factory) {
+        asyncWriter = AsyncEventStoreWriter.create(ID, config, new AsyncEventStoreWriter.BatchWriter() {
+
+            @Override
+            public void write(final List<Event> events, final List<AdminEvent> adminEvents) {
+                KeycloakModelUtils.runJobInTransaction(factory, new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        DB db = session.getProvider(MongoConnectionProvider.class).getDB();
+
+                        // Writes are acknowledged, as they are not on the request path and failed batches need to be detected
+                        if (!events.isEmpty()) {
+                            List<DBObject> objects = new ArrayList<>(events.size());
+                            for (Event event : events) {
+                                objects.add(MongoEventStoreProvider.convertEvent(event));
+                            }
+                            db.getCollection("events").insert(objects, WriteConcern.ACKNOWLEDGED);
+                        }
+                        if (!adminEvents.isEmpty()) {
+                            List<DBObject> objects = new ArrayList<>(adminEvents.size());
+                            for (AdminEvent adminEvent : adminEvents) {
+                                objects.add(MongoEventStoreProvider.convertAdminEvent(adminEvent, true));
+                            }
+                            db.getCollection("adminEvents").insert(objects, WriteConcern.ACKNOWLEDGED);
+                        }
+                    }
 
+                });
+            }
+
+        });
+
+        if (asyncWriter != null) {
+            asyncWriter.start();
+        }
     }
 
     @Override
     public void close() {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
+    }
+
+    @Override
+    public Map<String, String> getOperationalInfo() {
+        Map<String, String> info = new LinkedHashMap<>();
+        if (asyncWriter != null) {
+            info.putAll(asyncWriter.getStatistics().getOperationalInfo());
+        }
+        return info;
     }
 
     @Override
@@ -234,6 +234,43 @@ public class MongoUserProvider implements UserProvider {
         return convertUserEntities(realm, users);
     }
 
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        QueryBuilder builder = new QueryBuilder()
+                .and("realmId").is(realm.getId())
+                .and("serviceAccountClientLink").is(null);
+
+        if (search != null) {
+            search = search.trim().toLowerCase();
+            int spaceInd = search.lastIndexOf(" ");
+            if (spaceInd != -1) {
+                Pattern firstNamePattern = Pattern.compile("^" + Pattern.quote(search.substring(0, spaceInd).trim()), Pattern.CASE_INSENSITIVE);
+                Pattern lastNamePattern = Pattern.compile("^" + Pattern.quote(search.substring(spaceInd + 1).trim()), Pattern.CASE_INSENSITIVE);
+                builder.and("firstName").regex(firstNamePattern)
+                        .and("lastName").regex(lastNamePattern);
+            } else {
+                // Username and email are stored lowercase, so the anchored case-sensitive pattern can use the index
+                Pattern pattern = Pattern.compile("^" + Pattern.quote(search));
+                Pattern namePattern = Pattern.compile("^" + Pattern.quote(search), Pattern.CASE_INSENSITIVE);
+                builder.or(
+                        new QueryBuilder().put("username").regex(pattern).get(),
+                        new QueryBuilder().put("email").regex(pattern).get(),
+                        new QueryBuilder().put("firstName").regex(namePattern).get(),
+                        new QueryBuilder().put("lastName").regex(namePattern).get()
+                );
+            }
+        }
+
+        if (lastUsername != null) {
+            builder.and("username").greaterThan(lastUsername);
+        }
+
+        DBObject sort = new BasicDBObject("username", 1);
+
+        List<MongoUserEntity> users = getMongoStore().loadEntities(MongoUserEntity.class, builder.get(), sort, -1, maxResults, invocationContext);
+        return convertUserEntities(realm, users);
+    }
+
     @Override
     public List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm) {
         return searchForUserByAttributes(attributes, realm, -1, -1);
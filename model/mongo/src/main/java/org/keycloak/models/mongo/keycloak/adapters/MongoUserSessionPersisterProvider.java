@@ -18,6 +18,7 @@
 package org.keycloak.models.mongo.keycloak.adapters;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -272,6 +273,19 @@ public class MongoUserSessionPersisterProvider implements UserSessionPersisterPr
         getMongoStore().updateEntities(MongoOnlineUserSessionEntity.class, query, update, invocationContext);
     }
 
+    @Override
+    public void updateLastSessionRefreshes(Collection<String> userSessionIds, int lastSessionRefresh, boolean offline) {
+        DBObject query = new QueryBuilder()
+                .and("_id").in(userSessionIds)
+                .get();
+
+        DBObject update = new QueryBuilder()
+                .and("$set").is(new BasicDBObject("lastSessionRefresh", lastSessionRefresh)).get();
+
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+        getMongoStore().updateEntities(clazz, query, update, invocationContext);
+    }
+
     @Override
     public List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline) {
         DBObject query = new QueryBuilder()
@@ -299,6 +313,39 @@ public class MongoUserSessionPersisterProvider implements UserSessionPersisterPr
         return results;
     }
 
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline) {
+        QueryBuilder queryBuilder = new QueryBuilder();
+        if (lastUserSessionId != null) {
+            queryBuilder.and("_id").greaterThan(lastUserSessionId);
+        }
+        if (maxUserSessionId != null) {
+            queryBuilder.and("_id").lessThanEquals(maxUserSessionId);
+        }
+        DBObject query = queryBuilder.get();
+        DBObject sort = new BasicDBObject("_id", 1);
+
+        Class<? extends MongoUserSessionEntity> clazz = offline ? MongoOfflineUserSessionEntity.class : MongoOnlineUserSessionEntity.class;
+
+        List<? extends MongoUserSessionEntity> entities = getMongoStore().loadEntities(clazz, query, sort, 0, maxResults, invocationContext);
+
+        List<UserSessionModel> results = new LinkedList<>();
+        for (MongoUserSessionEntity entity : entities) {
+            RealmModel realm = session.realms().getRealm(entity.getRealmId());
+            UserModel user = session.users().getUserById(entity.getUserId(), realm);
+
+            // Case when user was deleted in the meantime
+            if (user == null) {
+                onUserRemoved(realm, entity.getUserId());
+                return loadUserSessions(lastUserSessionId, maxUserSessionId, maxResults, offline);
+            }
+
+            PersistentUserSessionAdapter userSession = toAdapter(realm, user, entity);
+            results.add(userSession);
+        }
+        return results;
+    }
+
     private PersistentUserSessionAdapter toAdapter(RealmModel realm, UserModel user, PersistentUserSessionEntity entity) {
         PersistentUserSessionModel model = new PersistentUserSessionModel();
         model.setUserSessionId(entity.getId());
@@ -147,8 +147,7 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
         }
 
         public String encoded() throws ProcessingException, ConfigurationException, IOException {
-            byte[] responseBytes = DocumentUtil.getDocumentAsString(document).getBytes("UTF-8");
-            return PostBindingUtil.base64Encode(new String(responseBytes));
+            return PostBindingUtil.base64Encode(document);
         }
         public Document getDocument() {
             return document;
@@ -267,9 +266,8 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
     }
 
     public void signAssertion(Document samlDocument) throws ProcessingException {
-        Element originalAssertionElement = org.keycloak.saml.common.util.DocumentUtil.getChildElement(samlDocument.getDocumentElement(), new QName(JBossSAMLURIConstants.ASSERTION_NSURI.get(), JBossSAMLConstants.ASSERTION.get()));
-        if (originalAssertionElement == null) return;
-        Node clonedAssertionElement = originalAssertionElement.cloneNode(true);
+        Element assertionElement = org.keycloak.saml.common.util.DocumentUtil.getChildElement(samlDocument.getDocumentElement(), new QName(JBossSAMLURIConstants.ASSERTION_NSURI.get(), JBossSAMLConstants.ASSERTION.get()));
+        if (assertionElement == null) return;
         Document temporaryDocument;
 
         try {
@@ -278,28 +276,32 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
             throw new ProcessingException(e);
         }
 
-        temporaryDocument.adoptNode(clonedAssertionElement);
-        temporaryDocument.appendChild(clonedAssertionElement);
+        // Move the assertion to the temporary document for signing and back instead of cloning it
+        Node parentNode = assertionElement.getParentNode();
+        Node nextSibling = assertionElement.getNextSibling();
 
-        signDocument(temporaryDocument);
+        temporaryDocument.adoptNode(assertionElement);
+        temporaryDocument.appendChild(assertionElement);
 
-        samlDocument.adoptNode(clonedAssertionElement);
-
-        Element parentNode = (Element) originalAssertionElement.getParentNode();
-
-        parentNode.replaceChild(clonedAssertionElement, originalAssertionElement);
+        try {
+            signDocument(temporaryDocument);
+        } finally {
+            // Put the assertion back even when signing fails, so the document isn't left without it
+            samlDocument.adoptNode(assertionElement);
+            parentNode.insertBefore(assertionElement, nextSibling);
+        }
     }
 
 
     public String buildHtmlPostResponse(Document responseDoc, String actionUrl, boolean asRequest) throws ProcessingException, ConfigurationException, IOException {
-        byte[] responseBytes = org.keycloak.saml.common.util.DocumentUtil.getDocumentAsString(responseDoc).getBytes("UTF-8");
-        String samlResponse = PostBindingUtil.base64Encode(new String(responseBytes));
+        String samlResponse = PostBindingUtil.base64Encode(responseDoc);
 
         return buildHtml(samlResponse, actionUrl, asRequest);
     }
 
     public String buildHtml(String samlResponse, String actionUrl, boolean asRequest) {
-        StringBuilder builder = new StringBuilder();
+        // Size the builder for the encoded message, so it's not copied when growing
+        StringBuilder builder = new StringBuilder(samlResponse.length() + 1024);
 
         String key = GeneralConstants.SAML_RESPONSE_KEY;
 
@@ -315,7 +317,7 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
         builder.append("<BODY Onload=\"document.forms[0].submit()\">");
 
         builder.append("<FORM METHOD=\"POST\" ACTION=\"" + actionUrl + "\">");
-        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"" + key + "\"" + " VALUE=\"" + samlResponse + "\"/>");
+        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"" + key + "\"" + " VALUE=\"").append(samlResponse).append("\"/>");
 
         if (isNotNull(relayState)) {
             builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"RelayState\" " + "VALUE=\"" + escapeAttribute(relayState) + "\"/>");
@@ -332,11 +334,11 @@ public class BaseSAML2BindingBuilder<T extends BaseSAML2BindingBuilder> {
     }
 
     public String base64Encoded(Document document) throws ConfigurationException, ProcessingException, IOException  {
-        String documentAsString = DocumentUtil.getDocumentAsString(document);
-        logger.debugv("saml docment: {0}", documentAsString);
-        byte[] responseBytes = documentAsString.getBytes("UTF-8");
+        if (logger.isDebugEnabled()) {
+            logger.debugv("saml docment: {0}", DocumentUtil.getDocumentAsString(document));
+        }
 
-        return RedirectBindingUtil.deflateBase64URLEncode(responseBytes);
+        return RedirectBindingUtil.deflateBase64URLEncode(document);
     }
 
 
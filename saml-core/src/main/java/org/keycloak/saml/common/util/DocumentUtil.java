@@ -49,6 +49,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -245,6 +246,24 @@ public class DocumentUtil {
         return sw.toString();
     }
 
+    /**
+     * Write the DOM node to the stream as UTF-8 encoded XML without converting it to string first
+     *
+     * @param node
+     * @param os
+     *
+     * @throws ProcessingException
+     * @throws ConfigurationException
+     */
+    public static void writeNode(Node node, OutputStream os) throws ProcessingException, ConfigurationException {
+        Transformer xformer = TransformerUtil.getTransformer();
+        try {
+            xformer.transform(new DOMSource(node), new StreamResult(os));
+        } catch (TransformerException e) {
+            throw logger.processingError(e);
+        }
+    }
+
     /**
      * Marshall a DOM Element as string
      *
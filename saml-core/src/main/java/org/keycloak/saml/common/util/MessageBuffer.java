@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.saml.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffer for serialization and encoding of SAML messages. It's sized for the typical signed message, so it doesn't need to grow
+ * while the message is written, and its content is read without copying it.
+ */
+public final class MessageBuffer extends ByteArrayOutputStream {
+
+    // Typical signed SAML response with single assertion, also when base64 encoded
+    public static final int INITIAL_SIZE = 8 * 1024;
+
+    public MessageBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * @return stream reading the content of the buffer without copying it. Buffer must not be written before the stream is consumed
+     */
+    public InputStream toInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * @return content of the buffer, which contains just ASCII characters (for example base64 encoded data)
+     */
+    public String toAsciiString() {
+        return new String(buf, 0, count, StandardCharsets.US_ASCII);
+    }
+}
@@ -239,12 +239,28 @@ public class StaxParserUtil {
      * @return
      */
     public static XMLEventReader getXMLEventReader(InputStream is) {
+        return getXMLEventReader(is, true);
+    }
+
+    /**
+     * Get the XML event reader
+     *
+     * @param is
+     * @param supportDtd whether the DTD of the document is processed. When false, the DOCTYPE is still reported as event,
+     * but the entities declared by it aren't expanded
+     *
+     * @return
+     */
+    public static XMLEventReader getXMLEventReader(InputStream is, boolean supportDtd) {
         XMLInputFactory xmlInputFactory = null;
         XMLEventReader xmlEventReader = null;
         try {
             xmlInputFactory = getXMLInputFactory();
             xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
             xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            if (!supportDtd) {
+                xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            }
             xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
             xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
 
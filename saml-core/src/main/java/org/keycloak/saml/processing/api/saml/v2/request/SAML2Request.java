@@ -24,6 +24,7 @@ import org.keycloak.saml.common.exceptions.ConfigurationException;
 import org.keycloak.saml.common.exceptions.ParsingException;
 import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.common.util.DocumentUtil;
+import org.keycloak.saml.common.util.MessageBuffer;
 import org.keycloak.saml.common.util.StaxUtil;
 import org.keycloak.dom.saml.v2.SAML2Object;
 import org.keycloak.saml.processing.core.parsers.saml.SAMLParser;
@@ -32,7 +33,6 @@ import org.keycloak.saml.processing.core.saml.v2.common.SAMLDocumentHolder;
 import org.keycloak.saml.processing.core.saml.v2.util.XMLTimeUtil;
 import org.keycloak.saml.processing.core.saml.v2.writers.SAMLRequestWriter;
 import org.keycloak.saml.processing.core.saml.v2.writers.SAMLResponseWriter;
-import org.keycloak.saml.processing.core.util.JAXPValidationUtil;
 import org.keycloak.dom.saml.v2.assertion.NameIDType;
 import org.keycloak.dom.saml.v2.protocol.AuthnRequestType;
 import org.keycloak.dom.saml.v2.protocol.LogoutRequestType;
@@ -42,8 +42,6 @@ import org.keycloak.dom.saml.v2.protocol.ResponseType;
 import org.w3c.dom.Document;
 
 import javax.xml.datatype.XMLGregorianCalendar;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -159,14 +157,8 @@ public class SAML2Request {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlDocument = DocumentUtil.getDocument(is);
-
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        SAML2Object requestType = (SAML2Object) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
-
-        samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
-        return requestType;
+        samlDocumentHolder = new SAMLParser().parseDocumentHolder(is);
+        return samlDocumentHolder.getSamlObject();
     }
 
     /**
@@ -186,14 +178,8 @@ public class SAML2Request {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlDocument = DocumentUtil.getDocument(is);
-
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        RequestAbstractType requestType = (RequestAbstractType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
-
-        samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
-        return requestType;
+        samlDocumentHolder = new SAMLParser().parseDocumentHolder(is);
+        return (RequestAbstractType) samlDocumentHolder.getSamlObject();
     }
 
     /**
@@ -213,14 +199,8 @@ public class SAML2Request {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlDocument = DocumentUtil.getDocument(is);
-
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlDocument);
-
-        AuthnRequestType requestType = (AuthnRequestType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
-        samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
-        return requestType;
+        samlDocumentHolder = new SAMLParser().parseDocumentHolder(is);
+        return (AuthnRequestType) samlDocumentHolder.getSamlObject();
     }
 
     /**
@@ -265,16 +245,15 @@ public class SAML2Request {
      * @throws ConfigurationException
      */
     public Document convert(RequestAbstractType rat) throws ProcessingException, ConfigurationException, ParsingException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-        SAMLRequestWriter writer = new SAMLRequestWriter(StaxUtil.getXMLStreamWriter(bos));
+        MessageBuffer buffer = new MessageBuffer();
+        SAMLRequestWriter writer = new SAMLRequestWriter(StaxUtil.getXMLStreamWriter(buffer));
         if (rat instanceof AuthnRequestType) {
             writer.write((AuthnRequestType) rat);
         } else if (rat instanceof LogoutRequestType) {
             writer.write((LogoutRequestType) rat);
         }
 
-        return DocumentUtil.getDocument(new String(bos.toByteArray()));
+        return DocumentUtil.getDocument(buffer.toInputStream());
     }
 
     /**
@@ -289,12 +268,11 @@ public class SAML2Request {
      * @throws ConfigurationException
      */
     public Document convert(ResponseType responseType) throws ProcessingException, ParsingException, ConfigurationException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(baos));
+        MessageBuffer buffer = new MessageBuffer();
+        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(buffer));
         writer.write(responseType);
 
-        ByteArrayInputStream bis = new ByteArrayInputStream(baos.toByteArray());
-        return DocumentUtil.getDocument(bis);
+        return DocumentUtil.getDocument(buffer.toInputStream());
     }
 
     /**
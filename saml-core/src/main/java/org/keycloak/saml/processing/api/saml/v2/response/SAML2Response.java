@@ -16,6 +16,7 @@
  */
 package org.keycloak.saml.processing.api.saml.v2.response;
 
+import org.keycloak.common.util.StreamUtil;
 import org.keycloak.saml.common.PicketLinkLogger;
 import org.keycloak.saml.common.PicketLinkLoggerFactory;
 import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
@@ -24,6 +25,7 @@ import org.keycloak.saml.common.exceptions.ParsingException;
 import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.common.exceptions.fed.IssueInstantMissingException;
 import org.keycloak.saml.common.util.DocumentUtil;
+import org.keycloak.saml.common.util.MessageBuffer;
 import org.keycloak.saml.common.util.StaxUtil;
 import org.keycloak.saml.processing.core.parsers.saml.SAMLParser;
 import org.keycloak.saml.processing.core.saml.v2.common.IDGenerator;
@@ -64,8 +66,7 @@ import org.w3c.dom.Node;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 import javax.xml.namespace.QName;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
@@ -372,11 +373,7 @@ public class SAML2Response {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlDocument = DocumentUtil.getDocument(is);
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlDocument);
-
-        return (EncryptedAssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        return (EncryptedAssertionType) parse(is);
 
     }
 
@@ -394,11 +391,20 @@ public class SAML2Response {
     public AssertionType getAssertionType(InputStream is) throws ParsingException, ConfigurationException, ProcessingException {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
-        Document samlDocument = DocumentUtil.getDocument(is);
+        return (AssertionType) parse(is);
+    }
 
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        return (AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+    // Assertions are parsed in single pass by StAX without building DOM
+    private Object parse(InputStream is) throws ParsingException, ProcessingException {
+        byte[] samlBytes;
+        try {
+            samlBytes = StreamUtil.readBytes(is);
+        } catch (IOException e) {
+            throw logger.parserException(e);
+        }
+
+        JAXPValidationUtil.checkSchemaValidation(samlBytes);
+        return new SAMLParser().parseMessage(samlBytes);
     }
 
     /**
@@ -424,15 +430,8 @@ public class SAML2Response {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlResponseDocument = DocumentUtil.getDocument(is);
-
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlResponseDocument);
-
-        ResponseType responseType = (ResponseType) samlParser.parse(DocumentUtil.getNodeAsStream(samlResponseDocument));
-
-        samlDocumentHolder = new SAMLDocumentHolder(responseType, samlResponseDocument);
-        return responseType;
+        samlDocumentHolder = new SAMLParser().parseDocumentHolder(is);
+        return (ResponseType) samlDocumentHolder.getSamlObject();
     }
 
     /**
@@ -451,20 +450,13 @@ public class SAML2Response {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
-        Document samlResponseDocument = DocumentUtil.getDocument(is);
+        samlDocumentHolder = new SAMLParser().parseDocumentHolder(is);
 
         if (logger.isTraceEnabled()) {
-            logger.trace("SAML Response Document: " + DocumentUtil.asString(samlResponseDocument));
+            logger.trace("SAML Response Document: " + DocumentUtil.asString(samlDocumentHolder.getSamlDocument()));
         }
 
-        SAMLParser samlParser = new SAMLParser();
-        JAXPValidationUtil.checkSchemaValidation(samlResponseDocument);
-
-        InputStream responseStream = DocumentUtil.getNodeAsStream(samlResponseDocument);
-        SAML2Object responseType = (SAML2Object) samlParser.parse(responseStream);
-
-        samlDocumentHolder = new SAMLDocumentHolder(responseType, samlResponseDocument);
-        return responseType;
+        return samlDocumentHolder.getSamlObject();
 
     }
 
@@ -500,9 +492,8 @@ public class SAML2Response {
      */
     public Document convert(StatusResponseType responseType) throws ProcessingException, ConfigurationException,
             ParsingException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(bos));
+        MessageBuffer buffer = new MessageBuffer();
+        SAMLResponseWriter writer = new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(buffer));
 
         if (responseType instanceof ResponseType) {
             ResponseType response = (ResponseType) responseType;
@@ -511,7 +502,7 @@ public class SAML2Response {
             writer.write(responseType, new QName(PROTOCOL_NSURI.get(), JBossSAMLConstants.LOGOUT_RESPONSE.get(), "samlp"));
         }
 
-        return DocumentUtil.getDocument(new ByteArrayInputStream(bos.toByteArray()));
+        return DocumentUtil.getDocument(buffer.toInputStream());
     }
 
     /**
@@ -16,21 +16,32 @@
  */
 package org.keycloak.saml.processing.core.parsers.saml;
 
+import org.keycloak.common.util.StreamUtil;
+import org.keycloak.dom.saml.v2.SAML2Object;
 import org.keycloak.saml.common.ErrorCodes;
 import org.keycloak.saml.common.constants.JBossSAMLConstants;
 import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
 import org.keycloak.saml.common.exceptions.ParsingException;
+import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.common.parsers.AbstractParser;
 import org.keycloak.saml.common.util.StaxParserUtil;
 import org.keycloak.saml.processing.core.parsers.saml.metadata.SAMLEntitiesDescriptorParser;
 import org.keycloak.saml.processing.core.parsers.saml.metadata.SAMLEntityDescriptorParser;
 import org.keycloak.saml.processing.core.saml.v1.SAML11Constants;
+import org.keycloak.saml.processing.core.saml.v2.common.SAMLDocumentHolder;
+import org.keycloak.saml.processing.core.util.JAXPValidationUtil;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Parse SAML payload
  *
@@ -39,6 +50,63 @@ import javax.xml.stream.events.XMLEvent;
  */
 public class SAMLParser extends AbstractParser {
 
+    /**
+     * Parse the SAML message in single pass by StAX. DOM of the message, which is needed just for validation of the
+     * signature, is built lazily by the returned holder.
+     *
+     * @param is stream with the serialized SAML message
+     *
+     * @return holder with the parsed message
+     *
+     * @throws ParsingException
+     * @throws ProcessingException
+     */
+    public SAMLDocumentHolder parseDocumentHolder(InputStream is) throws ParsingException, ProcessingException {
+        byte[] samlBytes;
+        try {
+            samlBytes = StreamUtil.readBytes(is);
+        } catch (IOException e) {
+            throw logger.parserException(e);
+        }
+
+        JAXPValidationUtil.checkSchemaValidation(samlBytes);
+
+        SAML2Object samlObject = (SAML2Object) parseMessage(samlBytes);
+        return new SAMLDocumentHolder(samlObject, samlBytes);
+    }
+
+    /**
+     * Parse the serialized SAML message received from the other party. The message is rejected when it contains DOCTYPE,
+     * the same way as when it's parsed to DOM (see DocumentUtil#feature_disallow_doctype_decl), so the messages, which are
+     * parsed just by StAX, can't expand the entities.
+     *
+     * @param samlBytes serialized SAML message
+     *
+     * @return parsed message
+     *
+     * @throws ParsingException
+     */
+    public Object parseMessage(byte[] samlBytes) throws ParsingException {
+        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(new ByteArrayInputStream(samlBytes), false);
+        try {
+            while (xmlEventReader.hasNext()) {
+                XMLEvent xmlEvent = xmlEventReader.peek();
+                if (xmlEvent.getEventType() == XMLStreamConstants.DTD) {
+                    throw logger.parserError(new IllegalStateException("DOCTYPE is not allowed in SAML message"));
+                }
+                if (xmlEvent.isStartElement()) {
+                    break;
+                }
+                xmlEventReader.nextEvent();
+            }
+            xmlEventReader = filterWhitespaces(xmlEventReader);
+        } catch (XMLStreamException e) {
+            throw logger.parserException(e);
+        }
+
+        return parse(xmlEventReader);
+    }
+
     /**
      * @see {@link org.keycloak.saml.common.parsers.ParserNamespaceSupport#parse(XMLEventReader)}
      */
@@ -17,11 +17,17 @@
 package org.keycloak.saml.processing.core.saml.v2.common;
 
 import org.keycloak.dom.saml.v2.SAML2Object;
+import org.keycloak.saml.common.util.DocumentUtil;
 import org.w3c.dom.Document;
 
+import java.io.ByteArrayInputStream;
+
 /**
  * A Holder class that can store the SAML object as well as the corresponding DOM object.
  *
+ * When the holder is created from the serialized message, the DOM object is built lazily on the first access. It's needed
+ * just for validation of the signature, so the parsing of the message to DOM is avoided otherwise.
+ *
  * Users of this class need to make it threadsafe by having one instance per thread (ThreadLocal)
  *
  * @author Anil.Saldhana@redhat.com
@@ -31,6 +37,7 @@ public class SAMLDocumentHolder {
 
     private SAML2Object samlObject;
     private Document samlDocument;
+    private byte[] samlBytes;
 
     public SAMLDocumentHolder(SAML2Object samlObject) {
         this.samlObject = samlObject;
@@ -45,6 +52,11 @@ public class SAMLDocumentHolder {
         this.samlDocument = samlDocument;
     }
 
+    public SAMLDocumentHolder(SAML2Object samlObject, byte[] samlBytes) {
+        this.samlObject = samlObject;
+        this.samlBytes = samlBytes;
+    }
+
     public SAML2Object getSamlObject() {
         return samlObject;
     }
@@ -54,10 +66,21 @@ public class SAMLDocumentHolder {
     }
 
     public Document getSamlDocument() {
+        if (samlDocument == null && samlBytes != null) {
+            try {
+                samlDocument = DocumentUtil.getDocument(new ByteArrayInputStream(samlBytes));
+            } catch (Exception e) {
+                // Message was already successfully parsed by SAMLParser#parseMessage, which rejects DOCTYPE the same way as the
+                // DOM parser, so the same bytes can't fail here
+                throw new RuntimeException("Could not build DOM of the SAML message", e);
+            }
+            samlBytes = null;
+        }
         return samlDocument;
     }
 
     public void setSamlDocument(Document samlDocument) {
         this.samlDocument = samlDocument;
+        this.samlBytes = null;
     }
 }
\ No newline at end of file
@@ -32,6 +32,7 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -76,6 +77,23 @@ public class JAXPValidationUtil {
         }
     }
 
+    /**
+     * Based on system property "picketlink.schema.validate" set to "true", do schema validation of the serialized document
+     *
+     * @param samlBytes
+     *
+     * @throws org.keycloak.saml.common.exceptions.ProcessingException
+     */
+    public static void checkSchemaValidation(byte[] samlBytes) throws ProcessingException {
+        if (SecurityActions.getSystemProperty("picketlink.schema.validate", "false").equalsIgnoreCase("true")) {
+            try {
+                JAXPValidationUtil.validate(new ByteArrayInputStream(samlBytes));
+            } catch (Exception e) {
+                throw logger.processingError(e);
+            }
+        }
+    }
+
     public static Validator validator() throws SAXException, IOException {
         SystemPropertiesUtil.ensure();
 
@@ -18,7 +18,12 @@ package org.keycloak.saml.processing.web.util;
 
 import org.keycloak.saml.common.PicketLinkLogger;
 import org.keycloak.saml.common.PicketLinkLoggerFactory;
+import org.keycloak.saml.common.exceptions.ConfigurationException;
+import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.common.util.Base64;
+import org.keycloak.saml.common.util.DocumentUtil;
+import org.keycloak.saml.common.util.MessageBuffer;
+import org.w3c.dom.Node;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -45,6 +50,21 @@ public class PostBindingUtil {
         return Base64.encodeBytes(stringToEncode.getBytes("UTF-8"), Base64.DONT_BREAK_LINES);
     }
 
+    /**
+     * Serialize the DOM node as UTF-8 and apply base64 encoding on it in single pass
+     *
+     * @param node
+     *
+     * @return
+     */
+    public static String base64Encode(Node node) throws ConfigurationException, ProcessingException, IOException {
+        MessageBuffer buffer = new MessageBuffer();
+        Base64.OutputStream base64 = new Base64.OutputStream(buffer, Base64.ENCODE | Base64.DONT_BREAK_LINES);
+        DocumentUtil.writeNode(node, base64);
+        base64.close();
+        return buffer.toAsciiString();
+    }
+
     /**
      * Apply base64 decoding on the message and return the byte array
      *
@@ -16,14 +16,21 @@
  */
 package org.keycloak.saml.processing.web.util;
 
+import org.keycloak.saml.common.exceptions.ConfigurationException;
+import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.common.util.Base64;
+import org.keycloak.saml.common.util.DocumentUtil;
+import org.keycloak.saml.common.util.MessageBuffer;
 import org.keycloak.saml.processing.api.util.DeflateUtil;
 import org.keycloak.saml.common.util.StringUtil;
+import org.w3c.dom.Node;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Utility class for SAML HTTP/Redirect binding
@@ -114,6 +121,31 @@ public class RedirectBindingUtil {
         return base64URLEncode(deflatedMsg);
     }
 
+    /**
+     * Serialize the DOM node as UTF-8 and apply deflate compression followed by base64 encoding in single pass. Result is
+     * URL encoded.
+     *
+     * @param node
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    public static String deflateBase64URLEncode(Node node) throws ConfigurationException, ProcessingException, IOException {
+        MessageBuffer buffer = new MessageBuffer();
+        Deflater deflater = new Deflater(Deflater.DEFLATED, true);
+        try {
+            Base64.OutputStream base64 = new Base64.OutputStream(buffer, Base64.ENCODE | Base64.DONT_BREAK_LINES);
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(base64, deflater);
+            DocumentUtil.writeNode(node, deflaterStream);
+            deflaterStream.finish();
+            base64.close();
+            return urlEncode(buffer.toAsciiString());
+        } finally {
+            deflater.end();
+        }
+    }
+
     /**
      * Apply deflate compression followed by base64 encoding
      *
@@ -39,6 +39,18 @@ public interface HttpClientProvider extends Provider {
      */
     public int postText(String uri, String text) throws IOException;
 
+    /**
+     * Helper method for sending more requests concurrently. Request is sent by the bounded pool of threads shared by all
+     * sessions. It's aborted if it's not completed within the timeout.
+     *
+     * @param uri
+     * @param text
+     * @param timeout timeout in milliseconds
+     * @param callback notified exactly once when the request is finished. Also when it can't be sent, for example because the
+     *                 provider is being closed
+     */
+    public void postTextAsync(String uri, String text, long timeout, ResponseCallback callback);
+
     /**
      * Helper method
      *
@@ -47,4 +59,18 @@ public interface HttpClientProvider extends Provider {
      * @throws IOException
      */
     public InputStream get(String uri) throws IOException;
+
+    /**
+     * Outcome of the request sent by {@link #postTextAsync(String, String, long, ResponseCallback)}
+     */
+    public interface ResponseCallback {
+
+        void completed(int status);
+
+        /**
+         * @param e failure of the request. Also when the request was aborted after the timeout or wasn't sent at all
+         */
+        void failed(IOException e);
+
+    }
 }
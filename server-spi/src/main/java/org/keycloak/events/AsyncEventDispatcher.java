@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Hands the events over from the request threads to the worker threads through bounded in-memory queues. Workers take the
+ * events from their queue in batches of up to <code>batchSize</code> events. Worker waits up to <code>batchTimeout</code> ms for
+ * the batch to be filled, so with zero timeout the batch contains just the events, which are already queued.</p>
+ *
+ * <p>Every worker has its own queue. Events with the same key are always handled by the same worker, so they are handled in
+ * the order they were dispatched.</p>
+ *
+ * <p>When the queue is full, the event is handled according to the {@link OverflowPolicy}. Used by the async event store writer
+ * and the async event listeners.</p>
+ */
+public class AsyncEventDispatcher<T> {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventDispatcher.class);
+
+    // How often the idle workers check whether they should stop
+    private static final long POLL_INTERVAL = 1000;
+
+    public enum OverflowPolicy {
+
+        /**
+         * Block the caller until there is space in the queue
+         */
+        BLOCK,
+
+        /**
+         * Drop the event
+         */
+        DROP,
+
+        /**
+         * Save the event to the local spill file and handle it later
+         */
+        SPILL,
+
+        /**
+         * Handle the event synchronously in the caller thread
+         */
+        CALLER_RUNS;
+
+        /**
+         * @return policy with given name (case insensitive) or default policy if the name is null
+         * @throws IllegalArgumentException if the policy doesn't exist or isn't supported by the caller
+         */
+        public static OverflowPolicy parse(String name, OverflowPolicy defaultPolicy, OverflowPolicy... supported) {
+            if (name == null) {
+                return defaultPolicy;
+            }
+            for (OverflowPolicy policy : supported) {
+                if (policy.name().equalsIgnoreCase(name.trim())) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported overflow policy '" + name + "'. Supported policies are " + java.util.Arrays.toString(supported));
+        }
+    }
+
+    public interface Handler<T> {
+
+        /**
+         * Handle the batch in the worker thread
+         */
+        void handle(List<T> batch);
+
+        /**
+         * Handle the event, which didn't fit to the queue, in the caller thread. Called for {@link OverflowPolicy#SPILL} and
+         * {@link OverflowPolicy#CALLER_RUNS} policies
+         */
+        void overflow(T event);
+
+        /**
+         * Called by the worker thread when there was no event to handle for a while
+         */
+        void idle();
+
+    }
+
+    private final String name;
+    private final Handler<T> handler;
+    private final List<BlockingQueue<T>> queues;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final long batchTimeout;
+    private final OverflowPolicy overflowPolicy;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+
+    private volatile boolean running;
+    private List<Thread> workers;
+
+    public AsyncEventDispatcher(String name, Handler<T> handler, int workers, int queueSize, int batchSize, long batchTimeout, OverflowPolicy overflowPolicy) {
+        if (workers <= 0 || queueSize <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Workers count, queue size and batch size of " + name + " must be positive");
+        }
+
+        this.name = name;
+        this.handler = handler;
+        this.queueCapacity = queueSize;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.overflowPolicy = overflowPolicy;
+        this.queues = new ArrayList<BlockingQueue<T>>(workers);
+
+        int workerQueueSize = (queueSize + workers - 1) / workers;
+        for (int i = 0; i < workers; i++) {
+            queues.add(new ArrayBlockingQueue<T>(workerQueueSize));
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        workers = new ArrayList<Thread>(queues.size());
+        for (int i = 0; i < queues.size(); i++) {
+            final BlockingQueue<T> queue = queues.get(i);
+            Thread worker = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    runWorker(queue);
+                }
+
+            }, queues.size() == 1 ? name : name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        logger.debugf("Started %s. Workers: %d, queue size: %d, batch size: %d, overflow policy: %s", name, queues.size(), queueCapacity,
+                batchSize, overflowPolicy);
+    }
+
+    /**
+     * Stop the workers after the events, which are already queued, are handled.
+     */
+    public void close() {
+        List<Thread> toJoin;
+        synchronized (this) {
+            running = false;
+            toJoin = workers;
+            workers = null;
+        }
+
+        if (toJoin != null) {
+            for (Thread worker : toJoin) {
+                try {
+                    worker.join(batchTimeout + POLL_INTERVAL + 30000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void dispatch(String key, T event) {
+        int worker = key != null ? (key.hashCode() & Integer.MAX_VALUE) % queues.size() : 0;
+        BlockingQueue<T> queue = queues.get(worker);
+        if (queue.offer(event)) {
+            enqueued.incrementAndGet();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    // Don't block forever if the workers were already stopped
+                    while (running) {
+                        if (queue.offer(event, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                            enqueued.incrementAndGet();
+                            return;
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                drop(1);
+                break;
+            case SPILL:
+            case CALLER_RUNS:
+                overflowed.incrementAndGet();
+                handler.overflow(event);
+                break;
+            default:
+                drop(1);
+        }
+    }
+
+    /**
+     * Count the events, which were lost, and log it
+     */
+    public void drop(int count) {
+        // Log just the first dropped event of each thousand to not flood the log when the workers are overloaded
+        long total = dropped.getAndAdd(count);
+        if (total == 0 || total / 1000 != (total + count) / 1000) {
+            logger.warnf("Events can't be handled by %s. Dropped %d events so far", name, total + count);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Current number of events waiting in the queues of all workers
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (BlockingQueue<T> queue : queues) {
+            size += queue.size();
+        }
+        return size;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getEnqueued() {
+        return enqueued.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Number of events passed to {@link Handler#overflow(Object)}
+     */
+    public long getOverflowed() {
+        return overflowed.get();
+    }
+
+    private void runWorker(BlockingQueue<T> queue) {
+        List<T> batch = new ArrayList<T>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(batchTimeout > 0 ? Math.min(batchTimeout, POLL_INTERVAL) : POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    long deadline = System.currentTimeMillis() + batchTimeout;
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - batch.size());
+
+                    while (batch.size() < batchSize) {
+                        long wait = deadline - System.currentTimeMillis();
+                        T next = wait > 0 ? queue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                }
+            } catch (InterruptedException ie) {
+                logger.warnf("Worker of %s interrupted", name);
+                running = false;
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    handler.handle(batch);
+                } else if (running) {
+                    handler.idle();
+                }
+            } catch (RuntimeException re) {
+                logger.errorf(re, "Failed to handle %d events by %s", batch.size(), name);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.events.AsyncEventDispatcher.OverflowPolicy;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakSessionTask;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Wraps the factory of the event listener, which has the "async" option enabled, so the events are sent to the listener
+ * by the worker threads instead of the request thread. Login then doesn't wait for the external systems the listener talks to
+ * (SMTP server, SIEM etc). Every worker has its own bounded queue and sends the events to the listener created with its own
+ * {@link KeycloakSession}. Events of the realm are always handled by the same worker, so they are received in the order they
+ * were sent.</p>
+ *
+ * <p>When the queue is full, the event is handled according to the overflow policy. It either blocks the caller until there
+ * is space in the queue, drops the event, or sends it to the listener synchronously in the caller thread. The last one
+ * doesn't keep the ordering with the events still waiting in the queue.</p>
+ *
+ * <p>Worker sends the events, which are queued, to the listener in single transaction. When the transaction fails, every event
+ * of the batch is sent again in its own transaction, so the listener may receive some events twice.</p>
+ *
+ * <p>Listeners used asynchronously must not rely on the context of the HTTP request in the session they are created with.</p>
+ */
+public class AsyncEventListenerProviderFactory implements EventListenerProviderFactory {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventListenerProviderFactory.class);
+
+    public static final int DEFAULT_WORKERS = 1;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final EventListenerProviderFactory delegate;
+    private final AsyncEventDispatcher<Task> dispatcher;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private volatile KeycloakSessionFactory sessionFactory;
+
+    public AsyncEventListenerProviderFactory(EventListenerProviderFactory delegate, int workers, int queueSize, OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            throw new IllegalArgumentException("Spill overflow policy isn't supported by async event listener");
+        }
+
+        this.delegate = delegate;
+        this.dispatcher = new AsyncEventDispatcher<Task>("keycloak-event-listener-" + delegate.getId(), new AsyncEventDispatcher.Handler<Task>() {
+
+            @Override
+            public void handle(List<Task> batch) {
+                sendBatch(batch);
+            }
+
+            @Override
+            public void overflow(Task task) {
+                task.source.sendSync(task);
+            }
+
+            @Override
+            public void idle() {
+            }
+
+        }, workers, queueSize, MAX_BATCH_SIZE, 0, overflowPolicy);
+    }
+
+    /**
+     * Wrap the factory, if the "async" option is enabled in the config of the event listener. The factory must already be
+     * initialized.
+     *
+     * @return the wrapper or the passed factory if async mode isn't enabled
+     */
+    public static EventListenerProviderFactory wrap(EventListenerProviderFactory factory, Config.Scope config) {
+        if (config == null || !config.getBoolean("async", false)) {
+            return factory;
+        }
+
+        OverflowPolicy overflowPolicy = OverflowPolicy.parse(config.get("asyncOverflowPolicy"), OverflowPolicy.BLOCK,
+                OverflowPolicy.BLOCK, OverflowPolicy.DROP, OverflowPolicy.CALLER_RUNS);
+        return new AsyncEventListenerProviderFactory(factory,
+                config.getInt("asyncWorkers", DEFAULT_WORKERS),
+                config.getInt("asyncQueueSize", DEFAULT_QUEUE_SIZE),
+                overflowPolicy);
+    }
+
+    @Override
+    public EventListenerProvider create(KeycloakSession session) {
+        return new AsyncEventListenerProvider(session);
+    }
+
+    @Override
+    public void init(Config.Scope config) {
+        // Delegate is initialized before it's wrapped
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        delegate.postInit(factory);
+        start(factory);
+    }
+
+    public void start(KeycloakSessionFactory factory) {
+        sessionFactory = factory;
+        dispatcher.start();
+    }
+
+    /**
+     * Stop the workers after the events, which are already queued, are sent to the listener. Then close the wrapped factory.
+     */
+    @Override
+    public void close() {
+        dispatcher.close();
+        logger.debug(getStatistics());
+
+        delegate.close();
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId();
+    }
+
+    public EventListenerProviderFactory getDelegate() {
+        return delegate;
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(getId(), dispatcher.getQueueSize(), dispatcher.getQueueCapacity(), dispatcher.getEnqueued(), sent.get(),
+                dispatcher.getDropped(), failed.get(), retried.get(), dispatcher.getOverflowed(), totalLatency.get(), maxLatency.get());
+    }
+
+    private void sendBatch(final List<Task> batch) {
+        // Failures of the single events don't stop the rest of the batch, they are counted when the transaction is committed
+        final List<Task> rejected = new ArrayList<Task>();
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    EventListenerProvider listener = delegate.create(session);
+                    try {
+                        for (Task task : batch) {
+                            try {
+                                send(listener, task);
+                            } catch (RuntimeException re) {
+                                logger.errorf(re, "Failed to send event to the listener %s", getId());
+                                rejected.add(task);
+                            }
+                        }
+                    } finally {
+                        listener.close();
+                    }
+                }
+
+            });
+        } catch (RuntimeException re) {
+            logger.warnf(re, "Failed to send batch of %d events to the listener %s. Sending them one by one", batch.size(), getId());
+            retried.addAndGet(batch.size());
+            for (Task task : batch) {
+                sendInTransaction(task);
+            }
+            return;
+        }
+
+        for (Task task : batch) {
+            handled(task, !rejected.contains(task));
+        }
+    }
+
+    private void sendInTransaction(final Task task) {
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, new KeycloakSessionTask() {
+
+                @Override
+                public void run(KeycloakSession session) {
+                    EventListenerProvider listener = delegate.create(session);
+                    try {
+                        send(listener, task);
+                    } finally {
+                        listener.close();
+                    }
+                }
+
+            });
+            handled(task, true);
+        } catch (RuntimeException re) {
+            logger.errorf(re, "Failed to send event to the listener %s", getId());
+            handled(task, false);
+        }
+    }
+
+    private static void send(EventListenerProvider listener, Task task) {
+        if (task.event != null) {
+            listener.onEvent(task.event);
+        } else {
+            listener.onEvent(task.adminEvent, task.includeRepresentation);
+        }
+    }
+
+    private void handled(Task task, boolean success) {
+        if (success) {
+            sent.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.created);
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+
+    private class AsyncEventListenerProvider implements EventListenerProvider {
+
+        private final KeycloakSession session;
+
+        // Created just when the event is sent in the caller thread
+        private EventListenerProvider syncListener;
+
+        private AsyncEventListenerProvider(KeycloakSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            // Event instance is reused by EventBuilder, so it must be copied
+            dispatcher.dispatch(event.getRealmId(), new Task(this, event.clone(), null, false));
+        }
+
+        @Override
+        public void onEvent(AdminEvent event, boolean includeRepresentation) {
+            dispatcher.dispatch(event.getRealmId(), new Task(this, null, copy(event), includeRepresentation));
+        }
+
+        private void sendSync(Task task) {
+            if (syncListener == null) {
+                syncListener = delegate.create(session);
+            }
+            try {
+                send(syncListener, task);
+                handled(task, true);
+            } catch (RuntimeException re) {
+                logger.errorf(re, "Failed to send event to the listener %s", getId());
+                handled(task, false);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (syncListener != null) {
+                syncListener.close();
+            }
+        }
+
+    }
+
+    private static AdminEvent copy(AdminEvent adminEvent) {
+        AdminEvent copy = new AdminEvent();
+        copy.setTime(adminEvent.getTime());
+        copy.setRealmId(adminEvent.getRealmId());
+        copy.setAuthDetails(adminEvent.getAuthDetails());
+        copy.setOperationType(adminEvent.getOperationType());
+        copy.setResourcePath(adminEvent.getResourcePath());
+        copy.setError(adminEvent.getError());
+        copy.setRepresentation(adminEvent.getRepresentation());
+        return copy;
+    }
+
+    private static class Task {
+
+        private final AsyncEventListenerProvider source;
+        private final Event event;
+        private final AdminEvent adminEvent;
+        private final boolean includeRepresentation;
+        private final long created = System.nanoTime();
+
+        private Task(AsyncEventListenerProvider source, Event event, AdminEvent adminEvent, boolean includeRepresentation) {
+            this.source = source;
+            this.event = event;
+            this.adminEvent = adminEvent;
+            this.includeRepresentation = includeRepresentation;
+        }
+    }
+
+    public static class Statistics {
+
+        private final String name;
+        private final int queueSize;
+        private final int queueCapacity;
+        private final long enqueued;
+        private final long sent;
+        private final long dropped;
+        private final long failed;
+        private final long retried;
+        private final long callerRuns;
+        private final long totalLatency;
+        private final long maxLatency;
+
+        private Statistics(String name, int queueSize, int queueCapacity, long enqueued, long sent, long dropped, long failed,
+                           long retried, long callerRuns, long totalLatency, long maxLatency) {
+            this.name = name;
+            this.queueSize = queueSize;
+            this.queueCapacity = queueCapacity;
+            this.enqueued = enqueued;
+            this.sent = sent;
+            this.dropped = dropped;
+            this.failed = failed;
+            this.retried = retried;
+            this.callerRuns = callerRuns;
+            this.totalLatency = totalLatency;
+            this.maxLatency = maxLatency;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Current number of events waiting in the queues of all workers
+         */
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        /**
+         * Number of events successfully received by the listener, including the ones sent in the caller thread
+         */
+        public long getSent() {
+            return sent;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * Number of events sent again one by one, because the transaction of their batch failed
+         */
+        public long getRetried() {
+            return retried;
+        }
+
+        public long getCallerRuns() {
+            return callerRuns;
+        }
+
+        /**
+         * Average time in ms from sending the event until it was handled by the listener
+         */
+        public long getAverageLatency() {
+            long handled = sent + failed;
+            return handled > 0 ? totalLatency / handled : 0;
+        }
+
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Async event listener %s: queueSize=%d, queueCapacity=%d, enqueued=%d, sent=%d, dropped=%d, failed=%d, retried=%d, callerRuns=%d, averageLatency=%d ms, maxLatency=%d ms",
+                    name, queueSize, queueCapacity, enqueued, sent, dropped, failed, retried, callerRuns, getAverageLatency(), maxLatency);
+        }
+    }
+}
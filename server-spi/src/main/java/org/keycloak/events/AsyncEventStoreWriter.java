@@ -0,0 +1,484 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.events.AsyncEventDispatcher.OverflowPolicy;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Writes events to the store in the background, so saving of the event doesn't add the database round-trip to the login
+ * request. Events are queued in the bounded in-memory queue and the single writer thread flushes them in batches of
+ * <code>batchSize</code> events, or after <code>flushInterval</code> ms when the batch isn't full.</p>
+ *
+ * <p>When the queue is full, the event is handled according to the overflow policy. It either blocks the caller until there
+ * is space in the queue, drops the event, writes it synchronously in the caller thread or appends it to the local spill file.
+ * Spilled events (and the batches, which failed to be written with the spill policy) are written to the store by the writer
+ * thread one batch at a time while the queue is empty, so replay never delays the live events.</p>
+ */
+public class AsyncEventStoreWriter {
+
+    private static final Logger logger = Logger.getLogger(AsyncEventStoreWriter.class);
+
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private static final long REPLAY_RETRY_INTERVAL = 60000;
+
+    public interface BatchWriter {
+
+        /**
+         * Write the batch to the store. It's expected that whole batch is written in single transaction.
+         */
+        void write(List<Event> events, List<AdminEvent> adminEvents);
+
+    }
+
+    private final String name;
+    private final BatchWriter batchWriter;
+    private final AsyncEventDispatcher<Object> dispatcher;
+    private final File spillFile;
+    private final File replayFile;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Object spillLock = new Object();
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // Accessed just by the writer thread
+    private BufferedReader replayReader;
+    private long nextReplay;
+
+    public AsyncEventStoreWriter(String name, BatchWriter batchWriter, int queueSize, int batchSize, long flushInterval,
+                                 OverflowPolicy overflowPolicy, File spillFile) {
+        if (overflowPolicy == OverflowPolicy.SPILL && spillFile == null) {
+            throw new IllegalArgumentException("Spill file is required for spill overflow policy");
+        }
+
+        this.name = name;
+        this.batchWriter = batchWriter;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = spillFile;
+        this.replayFile = spillFile != null ? new File(spillFile.getPath() + ".replay") : null;
+        this.dispatcher = new AsyncEventDispatcher<Object>("keycloak-events-" + name, new AsyncEventDispatcher.Handler<Object>() {
+
+            @Override
+            public void handle(List<Object> batch) {
+                if (!flush(batch) && AsyncEventStoreWriter.this.overflowPolicy == OverflowPolicy.SPILL) {
+                    spill(batch);
+                }
+            }
+
+            @Override
+            public void overflow(Object event) {
+                if (AsyncEventStoreWriter.this.overflowPolicy == OverflowPolicy.SPILL) {
+                    spill(Collections.singletonList(event));
+                } else {
+                    flush(Collections.singletonList(event));
+                }
+            }
+
+            @Override
+            public void idle() {
+                if (AsyncEventStoreWriter.this.spillFile != null) {
+                    replaySpilled();
+                }
+            }
+
+        }, 1, queueSize, batchSize, flushInterval, overflowPolicy);
+    }
+
+    /**
+     * Create writer configured by the "async*" options of the event store provider.
+     *
+     * @return writer or null if async mode isn't enabled
+     */
+    public static AsyncEventStoreWriter create(String name, Config.Scope config, BatchWriter batchWriter) {
+        if (config == null || !config.getBoolean("async", false)) {
+            return null;
+        }
+
+        OverflowPolicy overflowPolicy = OverflowPolicy.parse(config.get("asyncOverflowPolicy"), OverflowPolicy.BLOCK,
+                OverflowPolicy.BLOCK, OverflowPolicy.DROP, OverflowPolicy.SPILL, OverflowPolicy.CALLER_RUNS);
+
+        String spillFile = config.get("asyncSpillFile");
+        if (spillFile == null) {
+            String dir = System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir"));
+            spillFile = new File(dir, "keycloak-events-" + name + ".spill").getPath();
+        }
+
+        return new AsyncEventStoreWriter(name, batchWriter,
+                config.getInt("asyncQueueSize", DEFAULT_QUEUE_SIZE),
+                config.getInt("asyncBatchSize", DEFAULT_BATCH_SIZE),
+                config.getLong("asyncFlushInterval", DEFAULT_FLUSH_INTERVAL),
+                overflowPolicy,
+                new File(spillFile));
+    }
+
+    public void start() {
+        dispatcher.start();
+    }
+
+    /**
+     * Stop the writer thread after the events, which are already queued, are written to the store.
+     */
+    public void close() {
+        dispatcher.close();
+        closeReplay();
+
+        logger.debug(getStatistics());
+    }
+
+    public void onEvent(Event event) {
+        // Event instance is reused by EventBuilder, so it must be copied
+        dispatcher.dispatch(null, event.clone());
+    }
+
+    public void onEvent(AdminEvent adminEvent, boolean includeRepresentation) {
+        dispatcher.dispatch(null, copy(adminEvent, includeRepresentation));
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(name, dispatcher.getQueueSize(), dispatcher.getQueueCapacity(), dispatcher.getEnqueued(), written.get(),
+                batches.get(), dispatcher.getDropped(), spilled.get(), replayed.get(), failed.get());
+    }
+
+    private boolean flush(List<Object> batch) {
+        List<Event> events = new ArrayList<Event>();
+        List<AdminEvent> adminEvents = new ArrayList<AdminEvent>();
+        for (Object o : batch) {
+            if (o instanceof Event) {
+                events.add((Event) o);
+            } else {
+                adminEvents.add((AdminEvent) o);
+            }
+        }
+
+        try {
+            batchWriter.write(events, adminEvents);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+            return true;
+        } catch (RuntimeException re) {
+            logger.errorf(re, "Failed to write batch of %d events to the store %s", batch.size(), name);
+            if (overflowPolicy != OverflowPolicy.SPILL) {
+                failed.addAndGet(batch.size());
+            }
+            return false;
+        }
+    }
+
+    private void spill(List<Object> events) {
+        synchronized (spillLock) {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), StandardCharsets.UTF_8))) {
+                for (Object o : events) {
+                    SpilledEvent spilledEvent = new SpilledEvent();
+                    if (o instanceof Event) {
+                        spilledEvent.setEvent((Event) o);
+                    } else {
+                        spilledEvent.setAdminEvent((AdminEvent) o);
+                    }
+                    writer.write(JsonSerialization.writeValueAsString(spilledEvent));
+                    writer.write('\n');
+                }
+                spilled.addAndGet(events.size());
+            } catch (IOException ioe) {
+                logger.errorf(ioe, "Failed to spill %d events to file %s", events.size(), spillFile);
+                dispatcher.drop(events.size());
+            }
+        }
+    }
+
+    // Replays the spilled events batch by batch until the file is done or live events arrive
+    private void replaySpilled() {
+        long now = System.currentTimeMillis();
+        if (now < nextReplay) {
+            return;
+        }
+
+        while (dispatcher.isRunning() && dispatcher.getQueueSize() == 0) {
+            if (replayReader == null && !openReplay()) {
+                return;
+            }
+
+            List<Object> batch;
+            try {
+                batch = readSpilled(replayReader);
+            } catch (IOException ioe) {
+                logger.errorf(ioe, "Failed to read spill file %s", replayFile);
+                closeReplay();
+                nextReplay = now + REPLAY_RETRY_INTERVAL;
+                return;
+            }
+
+            if (batch.isEmpty()) {
+                closeReplay();
+                if (!replayFile.delete()) {
+                    logger.warnf("Failed to delete spill file %s", replayFile);
+                }
+                continue;
+            }
+
+            if (flush(batch)) {
+                replayed.addAndGet(batch.size());
+            } else {
+                // Failed batch is spilled again and the rest of the file is retried later from where it stopped
+                spilled.addAndGet(-batch.size());
+                spill(batch);
+                nextReplay = now + REPLAY_RETRY_INTERVAL;
+                return;
+            }
+        }
+    }
+
+    private boolean openReplay() {
+        // Events spilled meanwhile are appended to new spill file
+        synchronized (spillLock) {
+            if (!replayFile.exists()) {
+                if (!spillFile.exists() || spillFile.length() == 0) {
+                    return false;
+                }
+                if (!spillFile.renameTo(replayFile)) {
+                    logger.warnf("Failed to rename spill file %s", spillFile);
+                    nextReplay = System.currentTimeMillis() + REPLAY_RETRY_INTERVAL;
+                    return false;
+                }
+            }
+        }
+
+        try {
+            replayReader = new BufferedReader(new InputStreamReader(new FileInputStream(replayFile), StandardCharsets.UTF_8));
+            return true;
+        } catch (IOException ioe) {
+            logger.errorf(ioe, "Failed to open spill file %s", replayFile);
+            nextReplay = System.currentTimeMillis() + REPLAY_RETRY_INTERVAL;
+            return false;
+        }
+    }
+
+    // Events not replayed yet are moved back to the spill file, so they aren't written twice after restart
+    private void closeReplay() {
+        if (replayReader == null) {
+            return;
+        }
+
+        try {
+            List<Object> batch;
+            while (!(batch = readSpilled(replayReader)).isEmpty()) {
+                spilled.addAndGet(-batch.size());
+                spill(batch);
+            }
+            replayReader.close();
+            replayReader = null;
+            if (!replayFile.delete()) {
+                logger.warnf("Failed to delete spill file %s", replayFile);
+            }
+        } catch (IOException ioe) {
+            logger.errorf(ioe, "Failed to read spill file %s", replayFile);
+            try {
+                replayReader.close();
+            } catch (IOException ignore) {
+            }
+            replayReader = null;
+        }
+    }
+
+    private List<Object> readSpilled(BufferedReader reader) throws IOException {
+        List<Object> batch = new ArrayList<Object>(batchSize);
+        String line;
+        while (batch.size() < batchSize && (line = reader.readLine()) != null) {
+            Object event = parseSpilled(line);
+            if (event != null) {
+                batch.add(event);
+            }
+        }
+        return batch;
+    }
+
+    private Object parseSpilled(String line) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            SpilledEvent spilledEvent = JsonSerialization.readValue(line, SpilledEvent.class);
+            return spilledEvent.getEvent() != null ? spilledEvent.getEvent() : spilledEvent.getAdminEvent();
+        } catch (IOException ioe) {
+            logger.warnf(ioe, "Failed to parse spilled event from file %s", replayFile);
+            failed.incrementAndGet();
+            return null;
+        }
+    }
+
+    private static AdminEvent copy(AdminEvent adminEvent, boolean includeRepresentation) {
+        AdminEvent copy = new AdminEvent();
+        copy.setTime(adminEvent.getTime());
+        copy.setRealmId(adminEvent.getRealmId());
+        copy.setAuthDetails(adminEvent.getAuthDetails());
+        copy.setOperationType(adminEvent.getOperationType());
+        copy.setResourcePath(adminEvent.getResourcePath());
+        copy.setError(adminEvent.getError());
+        if (includeRepresentation) {
+            copy.setRepresentation(adminEvent.getRepresentation());
+        }
+        return copy;
+    }
+
+    public static class SpilledEvent {
+
+        private Event event;
+        private AdminEvent adminEvent;
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public void setEvent(Event event) {
+            this.event = event;
+        }
+
+        public AdminEvent getAdminEvent() {
+            return adminEvent;
+        }
+
+        public void setAdminEvent(AdminEvent adminEvent) {
+            this.adminEvent = adminEvent;
+        }
+    }
+
+    public static class Statistics {
+
+        private final String name;
+        private final int queueSize;
+        private final int queueCapacity;
+        private final long enqueued;
+        private final long written;
+        private final long batches;
+        private final long dropped;
+        private final long spilled;
+        private final long replayed;
+        private final long failed;
+
+        private Statistics(String name, int queueSize, int queueCapacity, long enqueued, long written, long batches, long dropped,
+                           long spilled, long replayed, long failed) {
+            this.name = name;
+            this.queueSize = queueSize;
+            this.queueCapacity = queueCapacity;
+            this.enqueued = enqueued;
+            this.written = written;
+            this.batches = batches;
+            this.dropped = dropped;
+            this.spilled = spilled;
+            this.replayed = replayed;
+            this.failed = failed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Current number of events waiting in the queue
+         */
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Number of events appended to the spill file. Events written back to the spill file after failed replay aren't counted twice
+         */
+        public long getSpilled() {
+            return spilled;
+        }
+
+        public long getReplayed() {
+            return replayed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return statistics for the "Server Info" page of the admin console
+         */
+        public Map<String, String> getOperationalInfo() {
+            Map<String, String> info = new LinkedHashMap<String, String>();
+            info.put("asyncQueueSize", String.valueOf(queueSize));
+            info.put("asyncQueueCapacity", String.valueOf(queueCapacity));
+            info.put("asyncEnqueued", String.valueOf(enqueued));
+            info.put("asyncWritten", String.valueOf(written));
+            info.put("asyncBatches", String.valueOf(batches));
+            info.put("asyncDropped", String.valueOf(dropped));
+            info.put("asyncSpilled", String.valueOf(spilled));
+            info.put("asyncReplayed", String.valueOf(replayed));
+            info.put("asyncFailed", String.valueOf(failed));
+            return info;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Async event store writer %s: queueSize=%d, queueCapacity=%d, enqueued=%d, written=%d, batches=%d, dropped=%d, spilled=%d, replayed=%d, failed=%d",
+                    name, queueSize, queueCapacity, enqueued, written, batches, dropped, spilled, replayed, failed);
+        }
+    }
+}
@@ -56,6 +56,8 @@ public class LDAPConstants {
 
     public static final String SEARCH_SCOPE = "searchScope";
     public static final String CONNECTION_POOLING = "connectionPooling";
+    public static final String CONNECTION_POOLING_MAX_SIZE = "connectionPoolingMaxSize";
+    public static final String CONNECTION_POOLING_IDLE_TIMEOUT = "connectionPoolingIdleTimeout";
     public static final String PAGINATION = "pagination";
 
     public static final String EDIT_MODE = "editMode";
@@ -64,6 +66,14 @@ public class LDAPConstants {
     public static final String BATCH_SIZE_FOR_SYNC = "batchSizeForSync";
     public static final int DEFAULT_BATCH_SIZE_FOR_SYNC = 1000;
 
+    // Count of users imported in single transaction during sync process
+    public static final String BATCH_SIZE_FOR_IMPORT = "batchSizeForImport";
+    public static final int DEFAULT_BATCH_SIZE_FOR_IMPORT = 50;
+
+    // Count of threads importing users during sync process
+    public static final String SYNC_THREADS = "syncThreads";
+    public static final int DEFAULT_SYNC_THREADS = 1;
+
     // Config option to specify if registrations will be synced or not
     public static final String SYNC_REGISTRATIONS = "syncRegistrations";
 
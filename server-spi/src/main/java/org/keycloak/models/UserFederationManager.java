@@ -157,6 +157,50 @@ public class UserFederationManager implements UserProvider {
         return user;
     }
 
+    /**
+     * Validate and proxy the page of users. Users linked to the same provider are validated at once instead of one by one.
+     * Users, which weren't confirmed by the batch validation, are validated again one by one before they are removed.
+     *
+     * @return validated users in the same order like passed users. Invalid users are removed
+     */
+    protected List<UserModel> validateAndProxyUsers(RealmModel realm, List<UserModel> users) {
+        // Federation link -> users linked to it, which weren't yet validated in this session
+        Map<String, List<UserModel>> toValidate = new HashMap<>();
+        for (UserModel user : users) {
+            if (user.getFederationLink() != null && !managedUsers.containsKey(user.getId())) {
+                List<UserModel> linked = toValidate.get(user.getFederationLink());
+                if (linked == null) {
+                    linked = new LinkedList<>();
+                    toValidate.put(user.getFederationLink(), linked);
+                }
+                linked.add(user);
+            }
+        }
+
+        for (List<UserModel> linked : toValidate.values()) {
+            UserFederationProvider link = getFederationLink(realm, linked.get(0));
+            if (linked.size() < 2 || link == null) {
+                continue;
+            }
+
+            Map<String, UserModel> validated = link.validateAndProxy(realm, linked);
+            for (UserModel user : linked) {
+                UserModel validatedProxyUser = validated.get(user.getId());
+                if (validatedProxyUser != null) {
+                    managedUsers.put(user.getId(), validatedProxyUser);
+                }
+            }
+        }
+
+        // Users not found by the batch validation are validated again one by one, so just the really invalid users are deleted
+        List<UserModel> results = new ArrayList<>(users.size());
+        for (UserModel user : users) {
+            user = validateAndProxyUser(realm, user);
+            if (user != null) results.add(user);
+        }
+        return results;
+    }
+
     @Override
     public void addFederatedIdentity(RealmModel realm, UserModel user, FederatedIdentityModel socialLink) {
         validateUser(realm, user);
@@ -297,9 +341,7 @@ public class UserFederationManager implements UserProvider {
             List<UserModel> query = pagedQuery.query(realm, first, max);
             if (query == null || query.size() == 0) return results;
             int added = 0;
-            for (UserModel user : query) {
-                user = validateAndProxyUser(realm, user);
-                if (user == null) continue;
+            for (UserModel user : validateAndProxyUsers(realm, query)) {
                 results.add(user);
                 added++;
             }
@@ -335,6 +377,37 @@ public class UserFederationManager implements UserProvider {
 
     @Override
     public List<UserModel> searchForUser(final String search, RealmModel realm, int firstResult, int maxResults) {
+        federationLoad(realm, getSearchAttributes(search));
+        return query(new PaginatedQuery() {
+            @Override
+            public List<UserModel> query(RealmModel realm, int first, int max) {
+                return session.userStorage().searchForUser(search, realm, first, max);
+            }
+        }, realm, firstResult, maxResults);
+    }
+
+    @Override
+    public List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults) {
+        if (search != null) {
+            federationLoad(realm, getSearchAttributes(search));
+        }
+
+        List<UserModel> results = new LinkedList<UserModel>();
+        String last = lastUsername;
+        while (maxResults == -1 || results.size() < maxResults) {
+            int max = maxResults == -1 ? -1 : maxResults - results.size();
+            List<UserModel> query = session.userStorage().searchForUserByPrefix(search, realm, last, max);
+            if (query == null || query.size() == 0) return results;
+            results.addAll(validateAndProxyUsers(realm, query));
+
+            // Users removed during validation are replaced from the next page
+            if (max == -1 || query.size() < max) return results;
+            last = query.get(query.size() - 1).getUsername();
+        }
+        return results;
+    }
+
+    private Map<String, String> getSearchAttributes(String search) {
         Map<String, String> attributes = new HashMap<String, String>();
         int spaceIndex = search.lastIndexOf(' ');
         if (spaceIndex > -1) {
@@ -349,13 +422,7 @@ public class UserFederationManager implements UserProvider {
             attributes.put(UserModel.LAST_NAME, search.trim());
             attributes.put(UserModel.USERNAME, search.trim().toLowerCase());
         }
-        federationLoad(realm, attributes);
-        return query(new PaginatedQuery() {
-            @Override
-            public List<UserModel> query(RealmModel realm, int first, int max) {
-                return session.userStorage().searchForUser(search, realm, first, max);
-            }
-        }, realm, firstResult, maxResults);
+        return attributes;
     }
 
     @Override
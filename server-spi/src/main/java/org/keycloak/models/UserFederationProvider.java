@@ -72,6 +72,17 @@ public interface UserFederationProvider extends Provider {
      */
     UserModel validateAndProxy(RealmModel realm, UserModel local);
 
+    /**
+     * Same as {@link #validateAndProxy(RealmModel, UserModel)} but for all the passed users. It's used when listing or searching
+     * users. Providers able to validate more users with single request to the federation backend should do it here, others can
+     * just call {@link #validateAndProxy(RealmModel, UserModel)} for each user.
+     *
+     * @param realm
+     * @param locals local users linked to this provider
+     * @return proxied users keyed by ID of the local user. Users, which were not validated, are not included in the map
+     */
+    Map<String, UserModel> validateAndProxy(RealmModel realm, List<UserModel> locals);
+
     /**
      * Should user registrations be synchronized with this provider?
      * FYI, only one provider will be chosen (by priority) to have this synchronization
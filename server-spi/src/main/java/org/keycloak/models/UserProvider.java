@@ -57,6 +57,11 @@ public interface UserProvider extends Provider {
     List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm);
     List<UserModel> searchForUserByAttributes(Map<String, String> attributes, RealmModel realm, int firstResult, int maxResults);
 
+    // Users (service accounts excluded) with username, email, first name or last name starting with "search" case-insensitively. With "search" like "john do"
+    // the first name must start with "john" and the last name with "do". Null "search" matches all users. Results are ordered by username and
+    // start after the user with username "lastUsername", so the next page is obtained by passing username of the last user of the previous page
+    List<UserModel> searchForUserByPrefix(String search, RealmModel realm, String lastUsername, int maxResults);
+
     // Searching by UserModel.attribute (not property)
     List<UserModel> searchForUserByUserAttribute(String attrName, String attrValue, RealmModel realm);
 
@@ -45,6 +45,10 @@ public interface UserSessionProvider extends Provider {
 
     // Implementation should propagate removal of expired userSessions to userSessionPersister too
     void removeExpired(RealmModel realm);
+
+    // Same like removeExpired(realm), but for all the passed realms at once. Implementation may remove them in a single pass
+    void removeExpired(List<RealmModel> realms);
+
     void removeUserSessions(RealmModel realm);
     void removeClientSession(RealmModel realm, ClientSessionModel clientSession);
 
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache;
+
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+
+import java.util.Set;
+
+/**
+ * User returned by {@link CacheUserProvider}, which is able to cache data computed from the user and the realm model.
+ */
+public interface CachedUserModel extends UserModel {
+
+    /**
+     * Same as {@link org.keycloak.models.utils.RoleUtils#getScopedRoleMappings(ClientModel, UserModel)}. Result may be cached
+     * until the user or anything in the realm model (roles, groups, clients, client templates) is changed.
+     *
+     * @return new set, which can be modified by the caller
+     */
+    Set<RoleModel> getScopedRoleMappings(ClientModel client);
+}
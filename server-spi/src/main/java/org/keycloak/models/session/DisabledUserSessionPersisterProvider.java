@@ -17,6 +17,7 @@
 
 package org.keycloak.models.session;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -114,11 +115,21 @@ public class DisabledUserSessionPersisterProvider implements UserSessionPersiste
 
     }
 
+    @Override
+    public void updateLastSessionRefreshes(Collection<String> userSessionIds, int lastSessionRefresh, boolean offline) {
+
+    }
+
     @Override
     public List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline) {
         return Collections.emptyList();
     }
 
+    @Override
+    public List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline) {
+        return Collections.emptyList();
+    }
+
     @Override
     public int getUserSessionsCount(boolean offline) {
         return 0;
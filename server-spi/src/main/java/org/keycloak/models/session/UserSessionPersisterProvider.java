@@ -17,6 +17,7 @@
 
 package org.keycloak.models.session;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.keycloak.models.ClientModel;
@@ -55,9 +56,16 @@ public interface UserSessionPersisterProvider extends Provider {
     // Update "lastSessionRefresh" of all userSessions and "timestamp" of all clientSessions to specified time
     void updateAllTimestamps(int time);
 
+    // Update "lastSessionRefresh" of specified userSessions to specified time. Used to persist refreshes of sessions in bulk
+    void updateLastSessionRefreshes(Collection<String> userSessionIds, int lastSessionRefresh, boolean offline);
+
     // Called during startup. For each userSession, it loads also clientSessions
     List<UserSessionModel> loadUserSessions(int firstResult, int maxResults, boolean offline);
 
+    // Called during startup. Same as above, but pages by the userSession ID instead of offset. It loads userSessions with ID greater than lastUserSessionId
+    // and not greater than maxUserSessionId ordered by ID. Null means the ID is not bounded from that side
+    List<UserSessionModel> loadUserSessions(String lastUserSessionId, String maxUserSessionId, int maxResults, boolean offline);
+
     int getUserSessionsCount(boolean offline);
 
 }
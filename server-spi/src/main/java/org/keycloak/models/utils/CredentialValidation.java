@@ -20,7 +20,7 @@ package org.keycloak.models.utils;
 import org.keycloak.hash.PasswordHashManager;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureUtils;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.OTPPolicy;
 import org.keycloak.models.PasswordPolicy;
@@ -92,7 +92,7 @@ public class CredentialValidation {
     public static boolean validPasswordToken(RealmModel realm, UserModel user, String encodedPasswordToken) {
         try {
             JWSInput jws = new JWSInput(encodedPasswordToken);
-            if (!RSAProvider.verify(jws, realm.getPublicKey())) {
+            if (!SignatureUtils.verify(jws, realm.getPublicKey())) {
                 return false;
             }
             PasswordToken passwordToken = jws.readJsonContent(PasswordToken.class);
@@ -18,7 +18,9 @@
 package org.keycloak.models.utils;
 
 import org.bouncycastle.openssl.PEMWriter;
+import org.bouncycastle.util.io.pem.PemObject;
 import org.keycloak.common.util.Base64Url;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.models.AuthenticationExecutionModel;
 import org.keycloak.models.AuthenticationFlowModel;
 import org.keycloak.models.ClientModel;
@@ -48,6 +50,7 @@ import org.keycloak.common.util.PemUtils;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -56,6 +59,8 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
+import java.security.spec.ECGenParameterSpec;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -71,6 +76,10 @@ import java.util.UUID;
  */
 public final class KeycloakModelUtils {
 
+    public static final String GENERATE_KEYS = "GENERATE";
+
+    private static final Algorithm[] GENERATE_KEYS_ALGORITHMS = { Algorithm.RS256, Algorithm.ES256, Algorithm.ES384, Algorithm.ES512 };
+
     private KeycloakModelUtils() {
     }
 
@@ -129,10 +138,16 @@ public final class KeycloakModelUtils {
     }
 
     public static String getPemFromKey(Key key) {
+        // PEMWriter uses SEC1 format for EC private keys. Write them as PKCS8 (and X.509 for public keys), which is understood by DerUtils
+        Object pemObject = key;
+        if (key instanceof ECKey) {
+            pemObject = new PemObject(key instanceof PrivateKey ? "PRIVATE KEY" : "PUBLIC KEY", key.getEncoded());
+        }
+
         StringWriter writer = new StringWriter();
         PEMWriter pemWriter = new PEMWriter(writer);
         try {
-            pemWriter.writeObject(key);
+            pemWriter.writeObject(pemObject);
             pemWriter.flush();
             pemWriter.close();
         } catch (IOException e) {
@@ -157,12 +172,40 @@ public final class KeycloakModelUtils {
     }
 
     public static void generateRealmKeys(RealmModel realm) {
+        generateRealmKeys(realm, Algorithm.RS256);
+    }
+
+    /**
+     * Generate realm keys suitable for given signature algorithm. RSA 2048 keys for RS256. EC keys on curve P-256, P-384 or
+     * P-521 for ES256, ES384 and ES512. Tokens are always signed with RS256 when realm has RSA keys, so RS384 and RS512 are
+     * not supported
+     */
+    public static void generateRealmKeys(RealmModel realm, Algorithm algorithm) {
         KeyPair keyPair = null;
         try {
-            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
-            generator.initialize(2048);
+            KeyPairGenerator generator;
+            switch (algorithm) {
+                case RS256:
+                    generator = KeyPairGenerator.getInstance("RSA");
+                    generator.initialize(2048);
+                    break;
+                case ES256:
+                    generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp256r1"));
+                    break;
+                case ES384:
+                    generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp384r1"));
+                    break;
+                case ES512:
+                    generator = KeyPairGenerator.getInstance("EC");
+                    generator.initialize(new ECGenParameterSpec("secp521r1"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported realm key algorithm " + algorithm);
+            }
             keyPair = generator.generateKeyPair();
-        } catch (NoSuchAlgorithmException e) {
+        } catch (GeneralSecurityException e) {
             throw new RuntimeException(e);
         }
         realm.setPrivateKey(keyPair.getPrivate());
@@ -178,6 +221,32 @@ public final class KeycloakModelUtils {
         realm.setCodeSecret(generateCodeSecret());
     }
 
+    /**
+     * Parse value of publicKey from realm representation. Returns the algorithm if keys should be generated ("GENERATE" for
+     * RS256 or "GENERATE:ES256" etc. for another algorithm) and null otherwise
+     *
+     * @throws IllegalArgumentException if keys should be generated for an algorithm, which is not supported
+     */
+    public static Algorithm getGenerateKeysAlgorithm(String publicKey) {
+        if (publicKey == null || !publicKey.startsWith(GENERATE_KEYS)) {
+            return null;
+        }
+        if (publicKey.equals(GENERATE_KEYS)) {
+            return Algorithm.RS256;
+        }
+        if (publicKey.charAt(GENERATE_KEYS.length()) != ':') {
+            return null;
+        }
+
+        String algorithm = publicKey.substring(GENERATE_KEYS.length() + 1);
+        for (Algorithm supported : GENERATE_KEYS_ALGORITHMS) {
+            if (supported.name().equals(algorithm)) {
+                return supported;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported algorithm for generated realm keys: " + algorithm);
+    }
+
     public static void generateRealmCertificate(RealmModel realm) {
         X509Certificate certificate = null;
         try {
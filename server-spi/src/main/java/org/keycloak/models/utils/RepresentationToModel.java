@@ -18,6 +18,7 @@
 package org.keycloak.models.utils;
 
 import org.keycloak.hash.Pbkdf2PasswordHashProvider;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.models.ClientTemplateModel;
 import org.keycloak.models.Constants;
 import org.keycloak.common.util.Base64;
@@ -724,8 +725,9 @@ public class RepresentationToModel {
             realm.setUserFederationProviders(providerModels);
         }
 
-        if ("GENERATE".equals(rep.getPublicKey())) {
-            KeycloakModelUtils.generateRealmKeys(realm);
+        Algorithm keysAlgorithm = KeycloakModelUtils.getGenerateKeysAlgorithm(rep.getPublicKey());
+        if (keysAlgorithm != null) {
+            KeycloakModelUtils.generateRealmKeys(realm, keysAlgorithm);
         } else {
             if (rep.getPrivateKey() != null && rep.getPublicKey() != null) {
                 realm.setPrivateKeyPem(rep.getPrivateKey());
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.utils;
+
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientTemplateModel;
+import org.keycloak.models.GroupModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class RoleUtils {
+
+    /**
+     * @return role mappings of the user including role mappings of all the user's groups and their parent groups
+     */
+    public static Set<RoleModel> getDeepUserRoleMappings(UserModel user) {
+        Set<RoleModel> roleMappings = new HashSet<>(user.getRoleMappings());
+        for (GroupModel group : user.getGroups()) {
+            addGroupRoles(group, roleMappings);
+        }
+        return roleMappings;
+    }
+
+    public static void addGroupRoles(GroupModel group, Set<RoleModel> roleMappings) {
+        roleMappings.addAll(group.getRoleMappings());
+        if (group.getParentId() == null) return;
+        addGroupRoles(group.getParent(), roleMappings);
+    }
+
+    /**
+     * Roles of the user available in the scope of the client. The "scope" parameter of the request is not applied.
+     *
+     * @return new set, which can be modified by the caller
+     */
+    public static Set<RoleModel> getScopedRoleMappings(ClientModel client, UserModel user) {
+        Set<RoleModel> roleMappings = getDeepUserRoleMappings(user);
+
+        ClientTemplateModel template = client.getClientTemplate();
+        boolean useTemplateScope = template != null && client.useTemplateScope();
+
+        if ((useTemplateScope && template.isFullScopeAllowed()) || client.isFullScopeAllowed()) {
+            return roleMappings;
+        }
+
+        Set<RoleModel> scopeMappings = new HashSet<>();
+        if (useTemplateScope) {
+            scopeMappings.addAll(template.getScopeMappings());
+        }
+        scopeMappings.addAll(client.getRoles());
+        scopeMappings.addAll(client.getScopeMappings());
+        return applyScope(roleMappings, scopeMappings);
+    }
+
+    /**
+     * <p>Roles reachable from the scope mappings through composite roles, which are contained in some of the role mappings. The
+     * walk doesn't continue below the role contained in the role mapping.</p>
+     *
+     * <p>Result is same as walking the scope mappings separately for every role mapping, but every composite role is expanded
+     * just once. Role mappings, which can still reach the role without passing through some role they contain, are tracked as
+     * a bitset per role.</p>
+     *
+     * @return new set, which can be modified by the caller
+     */
+    public static Set<RoleModel> applyScope(Collection<RoleModel> roleMappings, Collection<RoleModel> scopeMappings) {
+        Set<RoleModel> requested = new HashSet<>();
+        if (roleMappings.isEmpty() || scopeMappings.isEmpty()) {
+            return requested;
+        }
+
+        List<RoleModel> roles = new ArrayList<>(roleMappings);
+
+        // Index all the roles reachable from the scope mappings
+        Map<String, Integer> index = new HashMap<>();
+        List<RoleModel> nodes = new ArrayList<>();
+        List<int[]> composites = new ArrayList<>();
+        Deque<RoleModel> toIndex = new ArrayDeque<>();
+        for (RoleModel scope : scopeMappings) {
+            addNode(scope, index, nodes, toIndex);
+        }
+        while (!toIndex.isEmpty()) {
+            RoleModel node = toIndex.poll();
+            if (!node.isComposite()) {
+                composites.add(null);
+                continue;
+            }
+            Set<RoleModel> contained = node.getComposites();
+            int[] children = new int[contained.size()];
+            int i = 0;
+            for (RoleModel child : contained) {
+                children[i++] = addNode(child, index, nodes, toIndex);
+            }
+            composites.add(children);
+        }
+
+        // For every indexed role the role mappings, which contain it
+        BitSet[] containedIn = new BitSet[nodes.size()];
+        for (int i = 0; i < containedIn.length; i++) {
+            containedIn[i] = new BitSet(roles.size());
+        }
+        for (int r = 0; r < roles.size(); r++) {
+            for (String id : expand(roles.get(r))) {
+                Integer node = index.get(id);
+                if (node != null) containedIn[node].set(r);
+            }
+        }
+
+        // Propagate role mappings down from the scope mappings, until they reach the role they contain
+        BitSet all = new BitSet(roles.size());
+        all.set(0, roles.size());
+        BitSet[] reaching = new BitSet[nodes.size()];
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        for (RoleModel scope : scopeMappings) {
+            int node = index.get(scope.getId());
+            if (reaching[node] == null) {
+                reaching[node] = (BitSet) all.clone();
+                toVisit.add(node);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            int node = toVisit.poll();
+            int[] children = composites.get(node);
+            if (children == null) continue;
+
+            BitSet passing = (BitSet) reaching[node].clone();
+            passing.andNot(containedIn[node]);
+            if (passing.isEmpty()) continue;
+
+            for (int child : children) {
+                if (reaching[child] == null) {
+                    reaching[child] = (BitSet) passing.clone();
+                    toVisit.add(child);
+                } else {
+                    BitSet added = (BitSet) passing.clone();
+                    added.andNot(reaching[child]);
+                    if (!added.isEmpty()) {
+                        reaching[child].or(added);
+                        toVisit.add(child);
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            if (reaching[i] != null && reaching[i].intersects(containedIn[i])) {
+                requested.add(nodes.get(i));
+            }
+        }
+        return requested;
+    }
+
+    private static int addNode(RoleModel role, Map<String, Integer> index, List<RoleModel> nodes, Deque<RoleModel> toIndex) {
+        Integer node = index.get(role.getId());
+        if (node == null) {
+            node = nodes.size();
+            index.put(role.getId(), node);
+            nodes.add(role);
+            toIndex.add(role);
+        }
+        return node;
+    }
+
+    /**
+     * @return ids of the role and all the roles it contains through composite roles
+     */
+    private static Set<String> expand(RoleModel role) {
+        Set<String> expanded = new HashSet<>();
+        Deque<RoleModel> toExpand = new ArrayDeque<>();
+        expanded.add(role.getId());
+        toExpand.add(role);
+        while (!toExpand.isEmpty()) {
+            RoleModel current = toExpand.poll();
+            if (!current.isComposite()) continue;
+            for (RoleModel child : current.getComposites()) {
+                if (expanded.add(child.getId())) {
+                    toExpand.add(child);
+                }
+            }
+        }
+        return expanded;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.Config;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class AsyncEventListenerProviderFactoryTest {
+
+    @Test
+    public void testOrderingPerRealm() {
+        TestListenerFactory listenerFactory = new TestListenerFactory();
+        AsyncEventListenerProviderFactory factory = new AsyncEventListenerProviderFactory(listenerFactory, 2, 1000,
+                AsyncEventDispatcher.OverflowPolicy.BLOCK);
+
+        EventListenerProvider listener = factory.create(null);
+        Event event = new Event();
+        for (int i = 0; i < 100; i++) {
+            // Event instance is reused as in EventBuilder
+            event.setRealmId(i % 2 == 0 ? "realm-a" : "realm-b");
+            event.setUserId(String.valueOf(i));
+            listener.onEvent(event);
+        }
+        AdminEvent adminEvent = new AdminEvent();
+        adminEvent.setRealmId("realm-a");
+        adminEvent.setRepresentation("rep");
+        listener.onEvent(adminEvent, false);
+        listener.close();
+
+        factory.postInit(createSessionFactory());
+        factory.close();
+
+        Assert.assertEquals(100, listenerFactory.events.size());
+        int lastA = -1;
+        int lastB = -1;
+        for (Event received : listenerFactory.events) {
+            int i = Integer.parseInt(received.getUserId());
+            if (received.getRealmId().equals("realm-a")) {
+                Assert.assertTrue(i > lastA);
+                lastA = i;
+            } else {
+                Assert.assertTrue(i > lastB);
+                lastB = i;
+            }
+        }
+        Assert.assertEquals(1, listenerFactory.adminEvents.size());
+        Assert.assertNotSame(adminEvent, listenerFactory.adminEvents.get(0));
+        Assert.assertTrue(listenerFactory.closed);
+
+        AsyncEventListenerProviderFactory.Statistics stats = factory.getStatistics();
+        Assert.assertEquals(101, stats.getEnqueued());
+        Assert.assertEquals(101, stats.getSent());
+        Assert.assertEquals(0, stats.getQueueSize());
+    }
+
+    @Test
+    public void testOverflow() {
+        TestListenerFactory listenerFactory = new TestListenerFactory();
+        AsyncEventListenerProviderFactory dropFactory = new AsyncEventListenerProviderFactory(listenerFactory, 1, 1,
+                AsyncEventDispatcher.OverflowPolicy.DROP);
+
+        EventListenerProvider listener = dropFactory.create(null);
+        listener.onEvent(createEvent("user1"));
+        listener.onEvent(createEvent("user2"));
+
+        Assert.assertEquals(1, dropFactory.getStatistics().getEnqueued());
+        Assert.assertEquals(1, dropFactory.getStatistics().getDropped());
+        Assert.assertEquals(0, listenerFactory.events.size());
+
+        AsyncEventListenerProviderFactory callerRunsFactory = new AsyncEventListenerProviderFactory(listenerFactory, 1, 1,
+                AsyncEventDispatcher.OverflowPolicy.CALLER_RUNS);
+
+        listener = callerRunsFactory.create(null);
+        listener.onEvent(createEvent("user1"));
+        listener.onEvent(createEvent("user2"));
+
+        Assert.assertEquals(1, callerRunsFactory.getStatistics().getEnqueued());
+        Assert.assertEquals(1, callerRunsFactory.getStatistics().getCallerRuns());
+        Assert.assertEquals(1, listenerFactory.events.size());
+        Assert.assertEquals("user2", listenerFactory.events.get(0).getUserId());
+    }
+
+    @Test
+    public void testRetryFailedBatch() {
+        TestListenerFactory listenerFactory = new TestListenerFactory();
+        AsyncEventListenerProviderFactory factory = new AsyncEventListenerProviderFactory(listenerFactory, 1, 100,
+                AsyncEventDispatcher.OverflowPolicy.BLOCK);
+
+        EventListenerProvider listener = factory.create(null);
+        for (int i = 0; i < 3; i++) {
+            listener.onEvent(createEvent("user" + i));
+        }
+        listener.close();
+
+        // Transaction of the batch fails, then the events are sent one by one
+        factory.start(createSessionFactory(1));
+        factory.close();
+
+        AsyncEventListenerProviderFactory.Statistics stats = factory.getStatistics();
+        Assert.assertEquals(3, stats.getRetried());
+        Assert.assertEquals(3, stats.getSent());
+        Assert.assertEquals(0, stats.getFailed());
+        Assert.assertEquals(6, listenerFactory.events.size());
+        Assert.assertEquals("user2", listenerFactory.events.get(5).getUserId());
+    }
+
+    @Test
+    public void testWrapDisabled() {
+        TestListenerFactory listenerFactory = new TestListenerFactory();
+        Assert.assertSame(listenerFactory, AsyncEventListenerProviderFactory.wrap(listenerFactory, null));
+    }
+
+    private static Event createEvent(String userId) {
+        Event event = new Event();
+        event.setRealmId("realm");
+        event.setUserId(userId);
+        return event;
+    }
+
+    private static KeycloakSessionFactory createSessionFactory() {
+        return createSessionFactory(0);
+    }
+
+    private static KeycloakSessionFactory createSessionFactory(final int failedCommits) {
+        final KeycloakTransactionManager tx = proxy(KeycloakTransactionManager.class, new InvocationHandler() {
+
+            private boolean active;
+            private int failures = failedCommits;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "begin":
+                        active = true;
+                        return null;
+                    case "commit":
+                        active = false;
+                        if (failures > 0) {
+                            failures--;
+                            throw new RuntimeException("Commit failed");
+                        }
+                        return null;
+                    case "rollback":
+                        active = false;
+                        return null;
+                    case "isActive":
+                        return active;
+                    case "getRollbackOnly":
+                        return false;
+                    default:
+                        return null;
+                }
+            }
+
+        });
+
+        return proxy(KeycloakSessionFactory.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!method.getName().equals("create")) {
+                    return null;
+                }
+                return proxy(KeycloakSession.class, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return method.getName().equals("getTransaction") ? tx : null;
+                    }
+
+                });
+            }
+
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(AsyncEventListenerProviderFactoryTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+
+    private static class TestListenerFactory implements EventListenerProviderFactory {
+
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+        private final List<AdminEvent> adminEvents = Collections.synchronizedList(new ArrayList<AdminEvent>());
+        private boolean closed;
+
+        @Override
+        public EventListenerProvider create(KeycloakSession session) {
+            return new EventListenerProvider() {
+
+                @Override
+                public void onEvent(Event event) {
+                    events.add(event);
+                }
+
+                @Override
+                public void onEvent(AdminEvent event, boolean includeRepresentation) {
+                    adminEvents.add(event);
+                }
+
+                @Override
+                public void close() {
+                }
+
+            };
+        }
+
+        @Override
+        public void init(Config.Scope config) {
+        }
+
+        @Override
+        public void postInit(KeycloakSessionFactory factory) {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public String getId() {
+            return "test";
+        }
+    }
+}
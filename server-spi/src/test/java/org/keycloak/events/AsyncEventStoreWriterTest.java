@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.events;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.OperationType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class AsyncEventStoreWriterTest {
+
+    @Test
+    public void testBatches() throws Exception {
+        TestBatchWriter batchWriter = new TestBatchWriter();
+        AsyncEventStoreWriter writer = new AsyncEventStoreWriter("test", batchWriter, 100, 2, 50, AsyncEventDispatcher.OverflowPolicy.BLOCK, null);
+
+        for (int i = 0; i < 5; i++) {
+            writer.onEvent(createEvent("user" + i));
+        }
+        writer.onEvent(createAdminEvent(), false);
+        writer.start();
+        writer.close();
+
+        Assert.assertEquals(5, batchWriter.events.size());
+        Assert.assertEquals(1, batchWriter.adminEvents.size());
+        Assert.assertNull(batchWriter.adminEvents.get(0).getRepresentation());
+
+        AsyncEventStoreWriter.Statistics stats = writer.getStatistics();
+        Assert.assertEquals(6, stats.getWritten());
+        Assert.assertEquals(3, stats.getBatches());
+        Assert.assertEquals(0, stats.getQueueSize());
+        Assert.assertEquals("6", stats.getOperationalInfo().get("asyncWritten"));
+        Assert.assertEquals("3", stats.getOperationalInfo().get("asyncBatches"));
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        TestBatchWriter batchWriter = new TestBatchWriter();
+        AsyncEventStoreWriter writer = new AsyncEventStoreWriter("test", batchWriter, 1, 10, 50, AsyncEventDispatcher.OverflowPolicy.DROP, null);
+
+        writer.onEvent(createEvent("user1"));
+        writer.onEvent(createEvent("user2"));
+
+        Assert.assertEquals(1, writer.getStatistics().getEnqueued());
+        Assert.assertEquals(1, writer.getStatistics().getDropped());
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        File spillFile = File.createTempFile("keycloak-events", ".spill");
+        spillFile.delete();
+
+        try {
+            TestBatchWriter batchWriter = new TestBatchWriter();
+            AsyncEventStoreWriter writer = new AsyncEventStoreWriter("test", batchWriter, 1, 10, 20, AsyncEventDispatcher.OverflowPolicy.SPILL, spillFile);
+
+            writer.onEvent(createEvent("user1"));
+            writer.onEvent(createEvent("user2"));
+            writer.onEvent(createAdminEvent(), true);
+
+            Assert.assertEquals(2, writer.getStatistics().getSpilled());
+            Assert.assertTrue(spillFile.length() > 0);
+
+            writer.start();
+            for (int i = 0; i < 100 && writer.getStatistics().getReplayed() < 2; i++) {
+                Thread.sleep(10);
+            }
+            writer.close();
+
+            Assert.assertEquals(2, writer.getStatistics().getReplayed());
+            Assert.assertEquals(2, batchWriter.events.size());
+            Assert.assertEquals("user2", batchWriter.events.get(1).getUserId());
+            Assert.assertEquals("rep", batchWriter.adminEvents.get(0).getRepresentation());
+            Assert.assertFalse(spillFile.exists() && spillFile.length() > 0);
+        } finally {
+            spillFile.delete();
+            new File(spillFile.getPath() + ".replay").delete();
+        }
+    }
+
+    @Test
+    public void testReplayBatches() throws Exception {
+        File spillFile = File.createTempFile("keycloak-events", ".spill");
+        spillFile.delete();
+
+        try {
+            TestBatchWriter batchWriter = new TestBatchWriter();
+            AsyncEventStoreWriter writer = new AsyncEventStoreWriter("test", batchWriter, 1, 2, 20, AsyncEventDispatcher.OverflowPolicy.SPILL, spillFile);
+
+            for (int i = 0; i < 6; i++) {
+                writer.onEvent(createEvent("user" + i));
+            }
+            Assert.assertEquals(5, writer.getStatistics().getSpilled());
+
+            writer.start();
+            for (int i = 0; i < 100 && writer.getStatistics().getReplayed() < 5; i++) {
+                Thread.sleep(10);
+            }
+            writer.close();
+
+            // Spilled events are replayed in batches, not all at once
+            Assert.assertEquals(5, writer.getStatistics().getReplayed());
+            Assert.assertEquals(4, writer.getStatistics().getBatches());
+            Assert.assertEquals(6, batchWriter.events.size());
+            Assert.assertFalse(new File(spillFile.getPath() + ".replay").exists());
+        } finally {
+            spillFile.delete();
+            new File(spillFile.getPath() + ".replay").delete();
+        }
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        TestBatchWriter batchWriter = new TestBatchWriter();
+        AsyncEventStoreWriter writer = new AsyncEventStoreWriter("test", batchWriter, 1, 10, 50, AsyncEventDispatcher.OverflowPolicy.CALLER_RUNS, null);
+
+        writer.onEvent(createEvent("user1"));
+        writer.onEvent(createEvent("user2"));
+
+        Assert.assertEquals(1, batchWriter.events.size());
+        Assert.assertEquals("user2", batchWriter.events.get(0).getUserId());
+        Assert.assertEquals(1, writer.getStatistics().getWritten());
+    }
+
+    @Test
+    public void testUnsupportedPolicy() {
+        try {
+            AsyncEventDispatcher.OverflowPolicy.parse("discard", AsyncEventDispatcher.OverflowPolicy.BLOCK,
+                    AsyncEventDispatcher.OverflowPolicy.BLOCK, AsyncEventDispatcher.OverflowPolicy.DROP);
+            Assert.fail("Expected failure");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        Assert.assertEquals(AsyncEventDispatcher.OverflowPolicy.DROP, AsyncEventDispatcher.OverflowPolicy.parse("drop",
+                AsyncEventDispatcher.OverflowPolicy.BLOCK, AsyncEventDispatcher.OverflowPolicy.BLOCK, AsyncEventDispatcher.OverflowPolicy.DROP));
+    }
+
+    private static Event createEvent(String userId) {
+        Event event = new Event();
+        event.setTime(System.currentTimeMillis());
+        event.setType(EventType.LOGIN);
+        event.setRealmId("realm");
+        event.setUserId(userId);
+        event.setDetails(Collections.singletonMap("username", userId));
+        return event;
+    }
+
+    private static AdminEvent createAdminEvent() {
+        AdminEvent adminEvent = new AdminEvent();
+        adminEvent.setTime(System.currentTimeMillis());
+        adminEvent.setRealmId("realm");
+        adminEvent.setOperationType(OperationType.CREATE);
+        adminEvent.setResourcePath("users/1");
+        adminEvent.setRepresentation("rep");
+        return adminEvent;
+    }
+
+    private static class TestBatchWriter implements AsyncEventStoreWriter.BatchWriter {
+
+        private final List<Event> events = Collections.synchronizedList(new ArrayList<Event>());
+        private final List<AdminEvent> adminEvents = Collections.synchronizedList(new ArrayList<AdminEvent>());
+
+        @Override
+        public void write(List<Event> events, List<AdminEvent> adminEvents) {
+            this.events.addAll(events);
+            this.adminEvents.addAll(adminEvents);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.util.PemUtils;
+import org.keycloak.jose.jws.Algorithm;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+
+public class KeycloakModelUtilsTest {
+
+    @Test
+    public void testGenerateKeysAlgorithm() {
+        Assert.assertNull(KeycloakModelUtils.getGenerateKeysAlgorithm(null));
+        Assert.assertNull(KeycloakModelUtils.getGenerateKeysAlgorithm("MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA"));
+        Assert.assertEquals(Algorithm.RS256, KeycloakModelUtils.getGenerateKeysAlgorithm("GENERATE"));
+        Assert.assertEquals(Algorithm.ES384, KeycloakModelUtils.getGenerateKeysAlgorithm("GENERATE:ES384"));
+
+        for (String unsupported : new String[] { "GENERATE:RS512", "GENERATE:HS256", "GENERATE:foo" }) {
+            try {
+                KeycloakModelUtils.getGenerateKeysAlgorithm(unsupported);
+                Assert.fail("Expected failure for " + unsupported);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testPemFromECKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+
+        String privateKeyPem = KeycloakModelUtils.getPemFromKey(keyPair.getPrivate());
+        String publicKeyPem = KeycloakModelUtils.getPemFromKey(keyPair.getPublic());
+
+        Assert.assertEquals(((ECPrivateKey) keyPair.getPrivate()).getS(), ((ECPrivateKey) PemUtils.decodePrivateKey(privateKeyPem)).getS());
+        Assert.assertEquals(((ECPublicKey) keyPair.getPublic()).getW(), ((ECPublicKey) PemUtils.decodePublicKey(publicKeyPem)).getW());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.keycloak.models.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.RoleContainerModel;
+import org.keycloak.models.RoleModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class RoleUtilsTest {
+
+    @Test
+    public void testApplyScope() {
+        TestRole user = new TestRole("user");
+        TestRole admin = new TestRole("admin", user);
+        TestRole view = new TestRole("view");
+        TestRole manage = new TestRole("manage", view);
+        TestRole all = new TestRole("all", admin, manage);
+
+        // Walk stops at the role contained in the role mapping
+        Assert.assertEquals(roles(admin), RoleUtils.applyScope(roles(admin), roles(all)));
+        Assert.assertEquals(roles(user), RoleUtils.applyScope(roles(user), roles(all)));
+        Assert.assertEquals(roles(view), RoleUtils.applyScope(roles(manage, user), roles(view)));
+        Assert.assertEquals(roles(user, manage), RoleUtils.applyScope(roles(user, manage), roles(all)));
+        Assert.assertEquals(Collections.emptySet(), RoleUtils.applyScope(roles(view), roles(admin)));
+    }
+
+    @Test
+    public void testApplyScopeCycle() {
+        TestRole a = new TestRole("a");
+        TestRole b = new TestRole("b", a);
+        a.composites.add(b);
+        TestRole c = new TestRole("c");
+
+        // b contains a through the cycle
+        Assert.assertEquals(roles(a), RoleUtils.applyScope(roles(b, c), roles(a)));
+    }
+
+    @Test
+    public void testApplyScopeSameAsWalkPerRoleMapping() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<TestRole> roles = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                roles.add(new TestRole("role" + i));
+            }
+            for (TestRole role : roles) {
+                int composites = random.nextInt(4) == 0 ? random.nextInt(4) : 0;
+                for (int i = 0; i < composites; i++) {
+                    role.composites.add(roles.get(random.nextInt(roles.size())));
+                }
+            }
+
+            Set<RoleModel> roleMappings = new HashSet<>();
+            Set<RoleModel> scopeMappings = new HashSet<>();
+            for (int i = 0; i < 5; i++) {
+                roleMappings.add(roles.get(random.nextInt(roles.size())));
+                scopeMappings.add(roles.get(random.nextInt(roles.size())));
+            }
+
+            Set<RoleModel> expected = new HashSet<>();
+            for (RoleModel role : roleMappings) {
+                for (RoleModel scope : scopeMappings) {
+                    walk(role, scope, new HashSet<RoleModel>(), expected);
+                }
+            }
+
+            Assert.assertEquals(expected, RoleUtils.applyScope(roleMappings, scopeMappings));
+        }
+    }
+
+    // Walk of the scope mapping done for every role mapping separately
+    private static void walk(RoleModel role, RoleModel scope, Set<RoleModel> visited, Set<RoleModel> requested) {
+        if (!visited.add(scope)) return;
+        if (role.hasRole(scope)) {
+            requested.add(scope);
+            return;
+        }
+        for (RoleModel contained : scope.getComposites()) {
+            walk(role, contained, visited, requested);
+        }
+    }
+
+    private static Set<RoleModel> roles(RoleModel... roles) {
+        return new HashSet<RoleModel>(Arrays.asList(roles));
+    }
+
+    private static class TestRole implements RoleModel {
+
+        private final String name;
+        private final Set<RoleModel> composites = new LinkedHashSet<>();
+
+        private TestRole(String name, RoleModel... composites) {
+            this.name = name;
+            this.composites.addAll(Arrays.asList(composites));
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return null;
+        }
+
+        @Override
+        public void setDescription(String description) {
+        }
+
+        @Override
+        public String getId() {
+            return name;
+        }
+
+        @Override
+        public void setName(String name) {
+        }
+
+        @Override
+        public boolean isScopeParamRequired() {
+            return false;
+        }
+
+        @Override
+        public void setScopeParamRequired(boolean scopeParamRequired) {
+        }
+
+        @Override
+        public boolean isComposite() {
+            return !composites.isEmpty();
+        }
+
+        @Override
+        public void addCompositeRole(RoleModel role) {
+            composites.add(role);
+        }
+
+        @Override
+        public void removeCompositeRole(RoleModel role) {
+            composites.remove(role);
+        }
+
+        @Override
+        public Set<RoleModel> getComposites() {
+            return composites;
+        }
+
+        @Override
+        public boolean isClientRole() {
+            return false;
+        }
+
+        @Override
+        public String getContainerId() {
+            return null;
+        }
+
+        @Override
+        public RoleContainerModel getContainer() {
+            return null;
+        }
+
+        @Override
+        public boolean hasRole(RoleModel role) {
+            return this.equals(role) || contains(role, new HashSet<RoleModel>());
+        }
+
+        private boolean contains(RoleModel role, Set<RoleModel> visited) {
+            if (!visited.add(this)) return false;
+            for (RoleModel contained : composites) {
+                if (contained.equals(role) || ((TestRole) contained).contains(role, visited)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -36,7 +36,17 @@ import org.keycloak.common.util.KeystoreUtil;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.KeyStore;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -48,6 +58,10 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
     private volatile CloseableHttpClient httpClient;
     private Config.Scope config;
 
+    // Pool for sending of async requests and timer for aborting them after timeout
+    private ThreadPoolExecutor asyncExecutor;
+    private ScheduledThreadPoolExecutor asyncTimer;
+
     @Override
     public HttpClientProvider create(KeycloakSession session) {
         lazyInit(session);
@@ -65,18 +79,18 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
 
             @Override
             public int postText(String uri, String text) throws IOException {
-                HttpPost request = new HttpPost(uri);
-                request.setEntity(EntityBuilder.create().setText(text).setContentType(ContentType.TEXT_PLAIN).build());
-                HttpResponse response = httpClient.execute(request);
-                try {
-                    return response.getStatusLine().getStatusCode();
-                } finally {
-                    HttpEntity entity = response.getEntity();
-                    if (entity != null) {
-                        InputStream is = entity.getContent();
-                        if (is != null) is.close();
-                    }
+                return DefaultHttpClientFactory.this.postText(createPost(uri, text));
+            }
 
+            @Override
+            public void postTextAsync(String uri, String text, long timeout, ResponseCallback callback) {
+                AsyncRequest request = new AsyncRequest(createPost(uri, text), callback);
+                try {
+                    // Abort also requests, which didn't start yet when the pool is busy
+                    request.scheduleAbort(asyncTimer, timeout);
+                    asyncExecutor.execute(request);
+                } catch (RejectedExecutionException ree) {
+                    request.failed(new IOException("HTTP client is closed", ree));
                 }
             }
 
@@ -92,8 +106,36 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
         };
     }
 
+    private HttpPost createPost(String uri, String text) {
+        HttpPost request = new HttpPost(uri);
+        request.setEntity(EntityBuilder.create().setText(text).setContentType(ContentType.TEXT_PLAIN).build());
+        return request;
+    }
+
+    private int postText(HttpPost request) throws IOException {
+        HttpResponse response = httpClient.execute(request);
+        try {
+            return response.getStatusLine().getStatusCode();
+        } finally {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                InputStream is = entity.getContent();
+                if (is != null) is.close();
+            }
+
+        }
+    }
+
     @Override
     public void close() {
+        if (asyncExecutor != null) {
+            // Requests waiting in the queue won't be sent, so the callers waiting for them are notified now
+            for (Runnable request : asyncExecutor.shutdownNow()) {
+                ((AsyncRequest) request).failed(new IOException("HTTP client is closed"));
+            }
+            asyncTimer.shutdownNow();
+        }
+
         try {
             if (httpClient != null) {
                 httpClient.close();
@@ -166,6 +208,15 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
                             throw new RuntimeException("Failed to load keystore", e);
                         }
                     }
+                    // When both pool and queue are full, request is sent by the caller thread. After close it's rejected
+                    int asyncPoolSize = config.getInt("async-pool-size", 16);
+                    int asyncQueueSize = config.getInt("async-queue-size", 1000);
+                    asyncExecutor = new ThreadPoolExecutor(asyncPoolSize, asyncPoolSize, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(asyncQueueSize), new DaemonThreadFactory("http-client-async"), new CallerRunsUnlessShutdownPolicy());
+                    asyncExecutor.allowCoreThreadTimeOut(true);
+                    asyncTimer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("http-client-timeout"));
+                    asyncTimer.setRemoveOnCancelPolicy(true);
+
                     httpClient = builder.build();
                 }
             }
@@ -177,6 +228,95 @@ public class DefaultHttpClientFactory implements HttpClientFactory {
 
     }
 
+    /**
+     * Request sent by the async pool. Callback is notified just once, even if the request is failed by {@link #close()} while
+     * it's being sent.
+     */
+    private class AsyncRequest implements Runnable {
+
+        private final HttpPost request;
+        private final HttpClientProvider.ResponseCallback callback;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile ScheduledFuture<?> abort;
 
+        private AsyncRequest(HttpPost request, HttpClientProvider.ResponseCallback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+
+        private void scheduleAbort(ScheduledExecutorService timer, long timeout) {
+            abort = timer.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    request.abort();
+                }
+
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            int status;
+            try {
+                status = postText(request);
+            } catch (IOException e) {
+                failed(e);
+                return;
+            } catch (RuntimeException e) {
+                failed(new IOException(e));
+                return;
+            }
+
+            if (finish()) {
+                callback.completed(status);
+            }
+        }
+
+        private void failed(IOException e) {
+            if (finish()) {
+                callback.failed(e);
+            }
+        }
+
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            if (abort != null) {
+                abort.cancel(false);
+            }
+            return true;
+        }
+    }
+
+    // Same as CallerRunsPolicy, but fails the request instead of silently discarding it when the pool was already shut down
+    private static class CallerRunsUnlessShutdownPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("HTTP client is closed");
+            }
+            r.run();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 
 }
@@ -17,8 +17,12 @@
 package org.keycloak.services;
 
 import org.keycloak.Config;
+import org.keycloak.events.AsyncEventListenerProviderFactory;
+import org.keycloak.events.EventListenerProvider;
+import org.keycloak.events.EventListenerProviderFactory;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.PreShutdownEvent;
 import org.keycloak.provider.Provider;
 import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventListener;
@@ -102,7 +106,7 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
                     logger.spiMayChange(factory.getId(), factory.getClass().getName(), spi.getName());
                 }
 
-                factories.put(factory.getId(), factory);
+                factories.put(factory.getId(), wrap(spi, factory, scope));
 
                 logger.debugv("Loaded SPI {0} (provider = {1})", spi.getName(), provider);
             } else {
@@ -115,7 +119,7 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
                             logger.spiMayChange(factory.getId(), factory.getClass().getName(), spi.getName());
                         }
 
-                        factories.put(factory.getId(), factory);
+                        factories.put(factory.getId(), wrap(spi, factory, scope));
                     } else {
                         logger.debugv("SPI {0} provider {1} disabled", spi.getName(), factory.getId());
                     }
@@ -175,6 +179,9 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
     }
 
     public void close() {
+        // Factories are closed in no particular order, so the listeners still needing other providers are notified first
+        publish(new PreShutdownEvent());
+
         for (Map<String, ProviderFactory> factories : factoriesMap.values()) {
             for (ProviderFactory factory : factories.values()) {
                 factory.close();
@@ -182,6 +189,13 @@ public class DefaultKeycloakSessionFactory implements KeycloakSessionFactory {
         }
     }
 
+    private ProviderFactory wrap(Spi spi, ProviderFactory factory, Config.Scope scope) {
+        if (spi.getProviderClass() == EventListenerProvider.class) {
+            return AsyncEventListenerProviderFactory.wrap((EventListenerProviderFactory) factory, scope);
+        }
+        return factory;
+    }
+
     private boolean isInternal(ProviderFactory<?> factory) {
         return factory.getClass().getPackage().getName().startsWith("org.keycloak");
     }
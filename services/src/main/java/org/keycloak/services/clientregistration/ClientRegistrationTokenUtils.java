@@ -21,7 +21,7 @@ import org.keycloak.common.util.Time;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.jose.jws.JWSInputException;
-import org.keycloak.jose.jws.crypto.RSAProvider;
+import org.keycloak.jose.jws.crypto.SignatureUtils;
 import org.keycloak.models.ClientInitialAccessModel;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeycloakSession;
@@ -64,7 +64,7 @@ public class ClientRegistrationTokenUtils {
             return null;
         }
 
-        if (!RSAProvider.verify(input, realm.getPublicKey())) {
+        if (!SignatureUtils.verify(input, realm.getPublicKey())) {
             return null;
         }
 
@@ -104,7 +104,7 @@ public class ClientRegistrationTokenUtils {
         jwt.issuer(issuer);
         jwt.audience(issuer);
 
-        String token = new JWSBuilder().jsonContent(jwt).rsa256(realm.getPrivateKey());
+        String token = new JWSBuilder().jsonContent(jwt).sign(realm.getPrivateKey());
         return token;
     }
 
@@ -16,6 +16,7 @@
  */
 package org.keycloak.services.managers;
 
+import org.keycloak.Config;
 import org.keycloak.TokenIdGenerator;
 import org.keycloak.connections.httpclient.HttpClientProvider;
 import org.keycloak.constants.AdapterConstants;
@@ -39,6 +40,7 @@ import org.keycloak.common.util.Time;
 
 import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -47,6 +49,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -120,9 +124,11 @@ public class ResourceAdminManager {
         logger.debugv("logging out {0} resources ", clientSessions.size());
         //logger.infov("logging out resources: {0}", clientSessions);
 
+        AdminRequests requests = new AdminRequests();
         for (Map.Entry<ClientModel, List<ClientSessionModel>> entry : clientSessions.entrySet()) {
-            logoutClientSessions(requestUri, realm, entry.getKey(), entry.getValue());
+            logoutClientSessions(requests, requestUri, realm, entry.getKey(), entry.getValue());
         }
+        requests.complete();
     }
 
     private void putClientSessions(MultivaluedHashMap<ClientModel, ClientSessionModel> clientSessions, UserSessionModel userSession) {
@@ -143,14 +149,29 @@ public class ResourceAdminManager {
             ourAppClientSessions = clientSessions.get(resource);
         }
 
-        logoutClientSessions(requestUri, realm, resource, ourAppClientSessions);
+        AdminRequests requests = new AdminRequests();
+        logoutClientSessions(requests, requestUri, realm, resource, ourAppClientSessions);
+        requests.complete();
     }
 
+    /**
+     * @return true if logout requests were successfully sent to all hosts. In async mode the result isn't known yet, so it's
+     * true if the logout requests were sent
+     */
     public boolean logoutClientSession(URI requestUri, RealmModel realm, ClientModel resource, ClientSessionModel clientSession) {
-        return logoutClientSessions(requestUri, realm, resource, Arrays.asList(clientSession));
+        AdminRequests requests = new AdminRequests();
+        if (!logoutClientSessions(requests, requestUri, realm, resource, Arrays.asList(clientSession))) {
+            return false;
+        }
+
+        GlobalRequestResult result = requests.complete();
+        return requests.async || (result.getSuccessRequests() != null && result.getFailedRequests() == null);
     }
 
-    protected boolean logoutClientSessions(URI requestUri, RealmModel realm, ClientModel resource, List<ClientSessionModel> clientSessions) {
+    /**
+     * @return false if there is nothing to send
+     */
+    protected boolean logoutClientSessions(AdminRequests requests, URI requestUri, RealmModel realm, ClientModel resource, List<ClientSessionModel> clientSessions) {
         String managementUrl = getManagementUrl(requestUri, resource);
         if (managementUrl != null) {
 
@@ -175,16 +196,13 @@ public class ResourceAdminManager {
             }
 
             if (managementUrl.contains(CLIENT_SESSION_HOST_PROPERTY)) {
-                boolean allPassed = true;
                 // Send logout separately to each host (needed for single-sign-out in cluster for non-distributable apps - KEYCLOAK-748)
                 for (Map.Entry<String, List<String>> entry : adapterSessionIds.entrySet()) {
                     String host = entry.getKey();
                     List<String> sessionIds = entry.getValue();
                     String currentHostMgmtUrl = managementUrl.replace(CLIENT_SESSION_HOST_PROPERTY, host);
-                    allPassed = sendLogoutRequest(realm, resource, sessionIds, userSessions, 0, currentHostMgmtUrl) && allPassed;
+                    sendLogoutRequest(requests, realm, resource, sessionIds, userSessions, 0, currentHostMgmtUrl);
                 }
-
-                return allPassed;
             } else {
                 // Send single logout request
                 List<String> allSessionIds = new ArrayList<String>();
@@ -192,8 +210,9 @@ public class ResourceAdminManager {
                     allSessionIds.addAll(currentIds);
                 }
 
-                return sendLogoutRequest(realm, resource, allSessionIds, userSessions, 0, managementUrl);
+                sendLogoutRequest(requests, realm, resource, allSessionIds, userSessions, 0, managementUrl);
             }
+            return true;
         } else {
             logger.debugv("Can't logout {0}: no management url", resource.getClientId());
             return false;
@@ -207,106 +226,79 @@ public class ResourceAdminManager {
         List<ClientModel> resources = realm.getClients();
         logger.debugv("logging out {0} resources ", resources.size());
 
-        GlobalRequestResult finalResult = new GlobalRequestResult();
+        AdminRequests requests = new AdminRequests();
         for (ClientModel resource : resources) {
-            GlobalRequestResult currentResult = logoutClient(requestUri, realm, resource, realm.getNotBefore());
-            finalResult.addAll(currentResult);
+            logoutClient(requests, requestUri, realm, resource, realm.getNotBefore());
         }
-        return finalResult;
+        return requests.complete();
     }
 
     public GlobalRequestResult logoutClient(URI requestUri, RealmModel realm, ClientModel resource) {
         resource.setNotBefore(Time.currentTime());
-        return logoutClient(requestUri, realm, resource, resource.getNotBefore());
+
+        AdminRequests requests = new AdminRequests();
+        logoutClient(requests, requestUri, realm, resource, resource.getNotBefore());
+        return requests.complete();
     }
 
 
-    protected GlobalRequestResult logoutClient(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
+    protected void logoutClient(AdminRequests requests, URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
         List<String> mgmtUrls = getAllManagementUrls(requestUri, resource);
         if (mgmtUrls.isEmpty()) {
             logger.debug("No management URL or no registered cluster nodes for the client " + resource.getClientId());
-            return new GlobalRequestResult();
+            return;
         }
 
         if (logger.isDebugEnabled()) logger.debug("Send logoutClient for URLs: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendLogoutRequest(realm, resource, null, null, notBefore, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            sendLogoutRequest(requests, realm, resource, null, null, notBefore, mgmtUrl);
         }
-        return result;
     }
 
-    protected boolean sendLogoutRequest(RealmModel realm, ClientModel resource, List<String> adapterSessionIds, List<String> userSessions, int notBefore, String managementUrl) {
+    protected void sendLogoutRequest(AdminRequests requests, RealmModel realm, ClientModel resource, List<String> adapterSessionIds, List<String> userSessions, int notBefore, String managementUrl) {
         LogoutAction adminAction = new LogoutAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, resource.getClientId(), adapterSessionIds, notBefore, userSessions);
         String token = new TokenManager().encodeToken(realm, adminAction);
         if (logger.isDebugEnabled()) logger.debugv("logout resource {0} url: {1} sessionIds: " + adapterSessionIds, resource.getClientId(), managementUrl);
-        URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_LOGOUT).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("logout success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.logoutFailed(e, resource.getClientId());
-            return false;
-        }
+        requests.send(AdminRequestType.LOGOUT, resource, managementUrl, AdapterConstants.K_LOGOUT, token);
     }
 
     public GlobalRequestResult pushRealmRevocationPolicy(URI requestUri, RealmModel realm) {
-        GlobalRequestResult finalResult = new GlobalRequestResult();
+        AdminRequests requests = new AdminRequests();
         for (ClientModel client : realm.getClients()) {
-            GlobalRequestResult currentResult = pushRevocationPolicy(requestUri, realm, client, realm.getNotBefore());
-            finalResult.addAll(currentResult);
+            pushRevocationPolicy(requests, requestUri, realm, client, realm.getNotBefore());
         }
-        return finalResult;
+        return requests.complete();
     }
 
     public GlobalRequestResult pushClientRevocationPolicy(URI requestUri, RealmModel realm, ClientModel client) {
-        return pushRevocationPolicy(requestUri, realm, client, client.getNotBefore());
+        AdminRequests requests = new AdminRequests();
+        pushRevocationPolicy(requests, requestUri, realm, client, client.getNotBefore());
+        return requests.complete();
     }
 
 
-    protected GlobalRequestResult pushRevocationPolicy(URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
+    protected void pushRevocationPolicy(AdminRequests requests, URI requestUri, RealmModel realm, ClientModel resource, int notBefore) {
         List<String> mgmtUrls = getAllManagementUrls(requestUri, resource);
         if (mgmtUrls.isEmpty()) {
             logger.debugf("No management URL or no registered cluster nodes for the client %s", resource.getClientId());
-            return new GlobalRequestResult();
+            return;
         }
 
         if (logger.isDebugEnabled()) logger.debug("Sending push revocation to URLS: " + mgmtUrls);
 
         // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
         for (String mgmtUrl : mgmtUrls) {
-            if (sendPushRevocationPolicyRequest(realm, resource, notBefore, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            sendPushRevocationPolicyRequest(requests, realm, resource, notBefore, mgmtUrl);
         }
-        return result;
     }
 
-    protected boolean sendPushRevocationPolicyRequest(RealmModel realm, ClientModel resource, int notBefore, String managementUrl) {
+    protected void sendPushRevocationPolicyRequest(AdminRequests requests, RealmModel realm, ClientModel resource, int notBefore, String managementUrl) {
         PushNotBeforeAction adminAction = new PushNotBeforeAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, resource.getClientId(), notBefore);
         String token = new TokenManager().encodeToken(realm, adminAction);
         logger.debugv("pushRevocation resource: {0} url: {1}", resource.getClientId(), managementUrl);
-        URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_PUSH_NOT_BEFORE).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("pushRevocation success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.failedToSendRevocation(e);
-            return false;
-        }
+        requests.send(AdminRequestType.PUSH_NOT_BEFORE, resource, managementUrl, AdapterConstants.K_PUSH_NOT_BEFORE, token);
     }
 
     public GlobalRequestResult testNodesAvailability(URI requestUri, RealmModel realm, ClientModel client) {
@@ -319,32 +311,145 @@ public class ResourceAdminManager {
 
         if (logger.isDebugEnabled()) logger.debug("Sending test nodes availability: " + mgmtUrls);
 
-        // Propagate this to all hosts
-        GlobalRequestResult result = new GlobalRequestResult();
+        // Propagate this to all hosts. Always wait for the result as the caller is interested in it
+        AdminRequests requests = new AdminRequests(false);
         for (String mgmtUrl : mgmtUrls) {
-            if (sendTestNodeAvailabilityRequest(realm, client, mgmtUrl)) {
-                result.addSuccessRequest(mgmtUrl);
-            } else {
-                result.addFailedRequest(mgmtUrl);
-            }
+            sendTestNodeAvailabilityRequest(requests, realm, client, mgmtUrl);
         }
-        return result;
+        return requests.complete();
     }
 
-    protected boolean sendTestNodeAvailabilityRequest(RealmModel realm, ClientModel client, String managementUrl) {
+    protected void sendTestNodeAvailabilityRequest(AdminRequests requests, RealmModel realm, ClientModel client, String managementUrl) {
         TestAvailabilityAction adminAction = new TestAvailabilityAction(TokenIdGenerator.generateId(), Time.currentTime() + 30, client.getClientId());
         String token = new TokenManager().encodeToken(realm, adminAction);
         logger.debugv("testNodes availability resource: {0} url: {1}", client.getClientId(), managementUrl);
-        URI target = UriBuilder.fromUri(managementUrl).path(AdapterConstants.K_TEST_AVAILABLE).build();
-        try {
-            int status = session.getProvider(HttpClientProvider.class).postText(target.toString(), token);
-            boolean success = status == 204 || status == 200;
-            logger.debugf("testAvailability success for %s: %s", managementUrl, success);
-            return success;
-        } catch (IOException e) {
-            logger.availabilityTestFailed(managementUrl);
+        requests.send(AdminRequestType.TEST_AVAILABILITY, client, managementUrl, AdapterConstants.K_TEST_AVAILABLE, token);
+    }
+
+    protected enum AdminRequestType {
+        LOGOUT, PUSH_NOT_BEFORE, TEST_AVAILABILITY
+    }
+
+    /**
+     * Requests to the adapters, which are sent concurrently. Model is read and tokens are encoded by the calling thread,
+     * just HTTP requests are sent by the pool of {@link HttpClientProvider}.
+     */
+    protected class AdminRequests {
+
+        private final boolean async;
+        private final List<AdminRequest> requests = new LinkedList<>();
+
+        private AdminRequests() {
+            this(Settings.ASYNC);
+        }
+
+        private AdminRequests(boolean async) {
+            this.async = async;
+        }
+
+        protected void send(AdminRequestType type, ClientModel client, String managementUrl, String path, String token) {
+            URI target = UriBuilder.fromUri(managementUrl).path(path).build();
+            AdminRequest request = new AdminRequest(type, client.getClientId(), managementUrl);
+            requests.add(request);
+            session.getProvider(HttpClientProvider.class).postTextAsync(target.toString(), token, Settings.REQUEST_TIMEOUT, request);
+        }
+
+        /**
+         * Wait until all requests are finished. In async mode, it returns immediately with empty result and the outcome of the
+         * requests is just logged once they are finished.
+         */
+        protected GlobalRequestResult complete() {
+            if (async) {
+                return new GlobalRequestResult();
+            }
+
+            GlobalRequestResult result = new GlobalRequestResult();
+            for (AdminRequest request : requests) {
+                if (request.await()) {
+                    result.addSuccessRequest(request.managementUrl);
+                } else {
+                    result.addFailedRequest(request.managementUrl);
+                }
+            }
+            return result;
+        }
+    }
+
+    // Config of the "resourceAdmin" scope, which is read once when the manager is used for the first time
+    private static class Settings {
+
+        private static final Config.Scope CONFIG = Config.scope("resourceAdmin");
+
+        // Timeout of single request to the adapter in milliseconds
+        private static final long REQUEST_TIMEOUT = CONFIG.getLong("requestTimeout", 10000L);
+
+        // If true, logout and push notBefore requests are sent in background and methods return without waiting for the result
+        private static final boolean ASYNC = CONFIG.getBoolean("async", false);
+
+    }
+
+    private static class AdminRequest implements HttpClientProvider.ResponseCallback {
+
+        // Requests are aborted by HttpClientProvider after the timeout. The wait is bounded anyway, so the caller isn't blocked
+        // if the request got lost
+        private static final long AWAIT_GRACE_PERIOD = 5000;
+
+        private final AdminRequestType type;
+        private final String clientId;
+        private final String managementUrl;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean success;
+
+        private AdminRequest(AdminRequestType type, String clientId, String managementUrl) {
+            this.type = type;
+            this.clientId = clientId;
+            this.managementUrl = managementUrl;
+        }
+
+        @Override
+        public void completed(int status) {
+            success = finished(status, null);
+            done.countDown();
+        }
+
+        @Override
+        public void failed(IOException e) {
+            success = finished(null, e);
+            done.countDown();
+        }
+
+        private boolean await() {
+            try {
+                if (!done.await(Settings.REQUEST_TIMEOUT + AWAIT_GRACE_PERIOD, TimeUnit.MILLISECONDS)) {
+                    return finished(null, new InterruptedIOException("Timeout when waiting for " + type + " request to " + managementUrl));
+                }
+                return success;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return finished(null, new InterruptedIOException("Interrupted when waiting for " + type + " request to " + managementUrl));
+            }
+        }
+
+        private boolean finished(Integer statusCode, IOException failure) {
+            if (failure == null) {
+                boolean success = statusCode == 204 || statusCode == 200;
+                logger.debugf("%s success for %s: %s", type, managementUrl, success);
+                return success;
+            }
+
+            switch (type) {
+                case LOGOUT:
+                    logger.logoutFailed(failure, clientId);
+                    break;
+                case PUSH_NOT_BEFORE:
+                    logger.failedToSendRevocation(failure);
+                    break;
+                case TEST_AVAILABILITY:
+                    logger.availabilityTestFailed(managementUrl);
+                    break;
+            }
             return false;
         }
-   }
+    }
 
 }
@@ -33,6 +33,7 @@ import org.keycloak.events.admin.AdminEventQuery;
 import org.keycloak.events.admin.OperationType;
 import org.keycloak.exportimport.ClientDescriptionConverter;
 import org.keycloak.exportimport.ClientDescriptionConverterFactory;
+import org.keycloak.jose.jws.Algorithm;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.jose.jws.JWSInput;
 import org.keycloak.models.ClientModel;
@@ -260,7 +261,14 @@ public class RealmAdminResource {
 
         logger.debug("updating realm: " + realm.getName());
         try {
-            if (!"GENERATE".equals(rep.getPublicKey()) && (rep.getPrivateKey() != null && rep.getPublicKey() != null)) {
+            Algorithm generateKeysAlgorithm;
+            try {
+                generateKeysAlgorithm = KeycloakModelUtils.getGenerateKeysAlgorithm(rep.getPublicKey());
+            } catch (IllegalArgumentException e) {
+                return ErrorResponse.error(e.getMessage(), Status.BAD_REQUEST);
+            }
+
+            if (generateKeysAlgorithm == null && (rep.getPrivateKey() != null && rep.getPublicKey() != null)) {
                 try {
                     KeyPairVerifier.verify(rep.getPrivateKey(), rep.getPublicKey());
                 } catch (VerificationException e) {
@@ -644,6 +644,8 @@ public class UsersResource {
      * @param username
      * @param first Pagination offset
      * @param maxResults Pagination size
+     * @param after Username of the last user of the previous page. When present, users are searched by prefix of username, first or last name,
+     *              or email and the page starts after this user instead of at the pagination offset. Use empty value for the first page
      * @return
      */
     @GET
@@ -655,7 +657,8 @@ public class UsersResource {
                                              @QueryParam("email") String email,
                                              @QueryParam("username") String username,
                                              @QueryParam("first") Integer firstResult,
-                                             @QueryParam("max") Integer maxResults) {
+                                             @QueryParam("max") Integer maxResults,
+                                             @QueryParam("after") String after) {
         auth.requireView();
 
         firstResult = firstResult != null ? firstResult : -1;
@@ -663,7 +666,10 @@ public class UsersResource {
 
         List<UserRepresentation> results = new ArrayList<UserRepresentation>();
         List<UserModel> userModels;
-        if (search != null) {
+        if (after != null && last == null && first == null && email == null && username == null) {
+            String lastUsername = after.isEmpty() ? null : after;
+            userModels = session.users().searchForUserByPrefix(search != null ? search.trim() : null, realm, lastUsername, maxResults);
+        } else if (search != null) {
             userModels = session.users().searchForUser(search.trim(), realm, firstResult, maxResults);
         } else if (last != null || first != null || email != null || username != null) {
             Map<String, String> attributes = new HashMap<String, String>();
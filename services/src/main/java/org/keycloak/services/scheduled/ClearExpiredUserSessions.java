@@ -18,7 +18,6 @@
 package org.keycloak.services.scheduled;
 
 import org.keycloak.models.KeycloakSession;
-import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserSessionProvider;
 import org.keycloak.timer.ScheduledTask;
 
@@ -30,9 +29,7 @@ public class ClearExpiredUserSessions implements ScheduledTask {
     @Override
     public void run(KeycloakSession session) {
         UserSessionProvider sessions = session.sessions();
-        for (RealmModel realm : session.realms().getRealms()) {
-            sessions.removeExpired(realm);
-        }
+        sessions.removeExpired(session.realms().getRealms());
     }
 
 }
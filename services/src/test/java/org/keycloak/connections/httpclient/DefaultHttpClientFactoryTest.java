@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.connections.httpclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests sending of async requests by {@link DefaultHttpClientFactory}
+ */
+public class DefaultHttpClientFactoryTest {
+
+    private static final String PREFIX = "keycloak.test.httpclient.";
+
+    private static final int POOL_SIZE = 4;
+
+    private HttpServer server;
+    private String uri;
+
+    // Requests received by the server wait until it's released
+    private final CountDownLatch received = new CountDownLatch(POOL_SIZE);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private DefaultHttpClientFactory factory;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                received.countDown();
+                int status;
+                try {
+                    status = release.await(10, TimeUnit.SECONDS) ? 200 : 500;
+                } catch (InterruptedException e) {
+                    status = 500;
+                }
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+            }
+
+        });
+        server.start();
+        uri = "http://localhost:" + server.getAddress().getPort() + "/";
+
+        System.setProperty(PREFIX + "async-pool-size", String.valueOf(POOL_SIZE));
+        System.setProperty(PREFIX + "async-queue-size", "10");
+        factory = new DefaultHttpClientFactory();
+        factory.init(new Config.SystemPropertiesScope(PREFIX));
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        factory.close();
+        server.stop(0);
+        System.clearProperty(PREFIX + "async-pool-size");
+        System.clearProperty(PREFIX + "async-queue-size");
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        HttpClientProvider provider = factory.create(createSession());
+
+        Callback[] callbacks = new Callback[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            callbacks[i] = new Callback();
+            provider.postTextAsync(uri, "text", 10000, callbacks[i]);
+        }
+
+        // All requests must be sent before any of them is completed
+        Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+        release.countDown();
+
+        for (Callback callback : callbacks) {
+            Assert.assertTrue(callback.await());
+            Assert.assertEquals(Integer.valueOf(200), callback.status);
+            Assert.assertNull(callback.failure);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        HttpClientProvider provider = factory.create(createSession());
+
+        Callback callback = new Callback();
+        provider.postTextAsync(uri, "text", 200, callback);
+
+        Assert.assertTrue(callback.await());
+        Assert.assertNull(callback.status);
+        Assert.assertNotNull(callback.failure);
+    }
+
+    @Test
+    public void testCloseFailsQueuedRequests() throws Exception {
+        HttpClientProvider provider = factory.create(createSession());
+
+        Callback[] running = new Callback[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            running[i] = new Callback();
+            provider.postTextAsync(uri, "text", 10000, running[i]);
+        }
+        Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        // Pool is busy, so these wait in the queue
+        Callback[] queued = new Callback[3];
+        for (int i = 0; i < queued.length; i++) {
+            queued[i] = new Callback();
+            provider.postTextAsync(uri, "text", 10000, queued[i]);
+        }
+
+        factory.close();
+
+        for (Callback callback : queued) {
+            Assert.assertTrue(callback.await());
+            Assert.assertNull(callback.status);
+            Assert.assertNotNull(callback.failure);
+        }
+
+        // Request sent after close is failed right away
+        Callback rejected = new Callback();
+        provider.postTextAsync(uri, "text", 10000, rejected);
+        Assert.assertEquals(0, rejected.done.getCount());
+        Assert.assertNotNull(rejected.failure);
+
+        // Requests, which were already being sent, are notified too
+        release.countDown();
+        for (Callback callback : running) {
+            Assert.assertTrue(callback.await());
+        }
+    }
+
+    private static KeycloakSession createSession() {
+        // Truststore isn't available, so all other methods aren't needed
+        return (KeycloakSession) Proxy.newProxyInstance(KeycloakSession.class.getClassLoader(), new Class[] { KeycloakSession.class },
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("getProvider")) {
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+
+                });
+    }
+
+    private static class Callback implements HttpClientProvider.ResponseCallback {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Integer status;
+        private volatile IOException failure;
+
+        @Override
+        public void completed(int status) {
+            this.status = status;
+            done.countDown();
+        }
+
+        @Override
+        public void failed(IOException e) {
+            this.failure = e;
+            done.countDown();
+        }
+
+        private boolean await() throws InterruptedException {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ import org.keycloak.models.UserModel;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -48,6 +49,18 @@ public class DummyUserFederationProvider implements UserFederationProvider {
         return local;
     }
 
+    @Override
+    public Map<String, UserModel> validateAndProxy(RealmModel realm, List<UserModel> locals) {
+        Map<String, UserModel> result = new HashMap<String, UserModel>();
+        for (UserModel local : locals) {
+            UserModel proxied = validateAndProxy(realm, local);
+            if (proxied != null) {
+                result.put(local.getId(), proxied);
+            }
+        }
+        return result;
+    }
+
     @Override
     public boolean synchronizeRegistrations() {
         return true;
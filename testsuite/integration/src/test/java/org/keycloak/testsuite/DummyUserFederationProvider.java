@@ -50,6 +50,18 @@ public class DummyUserFederationProvider implements UserFederationProvider {
         return local;
     }
 
+    @Override
+    public Map<String, UserModel> validateAndProxy(RealmModel realm, List<UserModel> locals) {
+        Map<String, UserModel> result = new HashMap<String, UserModel>();
+        for (UserModel local : locals) {
+            UserModel proxied = validateAndProxy(realm, local);
+            if (proxied != null) {
+                result.put(local.getId(), proxied);
+            }
+        }
+        return result;
+    }
+
     @Override
     public boolean synchronizeRegistrations() {
         return true;
@@ -380,6 +380,27 @@ public class UserSessionProviderTest {
         }
     }
 
+    @Test
+    public void testRemoveAllExpired() {
+        try {
+            Time.setOffset(-(realm.getSsoSessionMaxLifespan() + 1));
+            String expired = session.sessions().createUserSession(realm, session.users().getUserByUsername("user1", realm), "user1", "127.0.0.1", "form", true, null, null).getId();
+
+            Time.setOffset(0);
+            String valid = session.sessions().createUserSession(realm, session.users().getUserByUsername("user1", realm), "user1", "127.0.0.1", "form", true, null, null).getId();
+
+            resetSession();
+
+            session.sessions().removeExpired(session.realms().getRealms());
+            resetSession();
+
+            assertNull(session.sessions().getUserSession(realm, expired));
+            assertNotNull(session.sessions().getUserSession(realm, valid));
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
     // KEYCLOAK-2508
     @Test
     public void testRemovingExpiredSession() {
@@ -56,6 +56,7 @@ public class TestsuiteCLI {
             UserCommands.Create.class,
             UserCommands.Remove.class,
             UserCommands.Count.class,
+            UserCommands.Search.class,
             UserCommands.GetUser.class,
             SyncDummyFederationProviderCommand.class
     };
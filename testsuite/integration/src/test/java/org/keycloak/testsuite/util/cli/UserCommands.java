@@ -222,6 +222,95 @@ public class UserCommands {
     }
 
 
+    public static class Search extends AbstractCommand {
+
+        private String realmName;
+        private String search;
+        private int pageSize;
+
+        @Override
+        public String getName() {
+            return "searchUsers";
+        }
+
+        private class StateHolder {
+            String lastUsername;
+            int offset;
+            int pages;
+            int found;
+            boolean finished;
+        };
+
+        @Override
+        protected void doRunCommand(KeycloakSession session) {
+            realmName = getArg(0);
+            search = getArg(1).equals("-") ? null : getArg(1);
+            pageSize = getIntArg(2);
+            int maxPages = getIntArg(3);
+
+            final StateHolder keyset = new StateHolder();
+            long start = System.currentTimeMillis();
+            while (!keyset.finished && keyset.pages < maxPages) {
+                KeycloakModelUtils.runJobInTransaction(session.getKeycloakSessionFactory(), new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        List<UserModel> users = session.users().searchForUserByPrefix(search, getRealm(session), keyset.lastUsername, pageSize);
+                        updateState(keyset, users);
+                    }
+                });
+            }
+            long keysetTime = System.currentTimeMillis() - start;
+            log.infof("Keyset pagination: %d users in %d pages found in %d ms", keyset.found, keyset.pages, keysetTime);
+
+            final StateHolder offset = new StateHolder();
+            start = System.currentTimeMillis();
+            while (!offset.finished && offset.pages < maxPages) {
+                KeycloakModelUtils.runJobInTransaction(session.getKeycloakSessionFactory(), new KeycloakSessionTask() {
+
+                    @Override
+                    public void run(KeycloakSession session) {
+                        RealmModel realm = getRealm(session);
+                        List<UserModel> users = search == null ? session.users().getUsers(realm, offset.offset, pageSize, false)
+                                : session.users().searchForUser(search, realm, offset.offset, pageSize);
+                        updateState(offset, users);
+                    }
+                });
+            }
+            long offsetTime = System.currentTimeMillis() - start;
+            log.infof("Offset pagination with substring search: %d users in %d pages found in %d ms", offset.found, offset.pages, offsetTime);
+        }
+
+        private RealmModel getRealm(KeycloakSession session) {
+            RealmModel realm = session.realms().getRealmByName(realmName);
+            if (realm == null) {
+                log.errorf("Unknown realm: %s", realmName);
+                throw new HandledException();
+            }
+            return realm;
+        }
+
+        private void updateState(StateHolder state, List<UserModel> users) {
+            state.pages++;
+            state.found += users.size();
+            state.offset += users.size();
+            if (users.size() < pageSize) {
+                state.finished = true;
+            } else {
+                state.lastUsername = users.get(users.size() - 1).getUsername();
+            }
+        }
+
+        @Override
+        public String printUsage() {
+            return super.printUsage() + " <realm-name> <search> <page-size> <max-pages>. " +
+                    "\nPages through the users found by 'search' (use '-' for all users) with prefix search and keyset pagination and then with substring search and offset pagination, and prints the times. " +
+                    "\nUsers can be created with createUsers command\n" +
+                    "Example usage: " + super.printUsage() + " demo test1 100 1000";
+        }
+    }
+
+
     public static class GetUser extends AbstractCommand {
 
         @Override